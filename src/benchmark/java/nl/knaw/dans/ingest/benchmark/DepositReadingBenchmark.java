@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.benchmark;
+
+import gov.loc.repository.bagit.reader.BagReader;
+import nl.knaw.dans.ingest.core.deposit.BagDirResolverImpl;
+import nl.knaw.dans.ingest.core.deposit.DepositFileListerImpl;
+import nl.knaw.dans.ingest.core.deposit.DepositReaderImpl;
+import nl.knaw.dans.ingest.core.deposit.SizeDistribution;
+import nl.knaw.dans.ingest.core.deposit.SyntheticDepositGenerator;
+import nl.knaw.dans.ingest.core.domain.Deposit;
+import nl.knaw.dans.ingest.core.domain.FileInfo;
+import nl.knaw.dans.ingest.core.io.BagDataManagerImpl;
+import nl.knaw.dans.ingest.core.io.FileServiceImpl;
+import nl.knaw.dans.ingest.core.service.ManifestHelperImpl;
+import nl.knaw.dans.ingest.core.service.XmlReaderImpl;
+import nl.knaw.dans.ingest.core.service.mapper.mapping.FileElement;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a deposit from disk and deriving the file metadata for Dataverse from it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DepositReadingBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int numberOfFiles;
+
+    @Param({ "small", "large" })
+    public String ddmSize;
+
+    private Path inbox;
+    private Path depositDir;
+    private DepositReaderImpl depositReader;
+    private Deposit deposit;
+
+    @Setup
+    public void setUp() throws Throwable {
+        inbox = Files.createTempDirectory("deposit-reading-benchmark");
+        depositDir = SyntheticDepositGenerator.builder()
+            .numberOfFiles(SizeDistribution.fixed(numberOfFiles))
+            .fileSize(SizeDistribution.fixed(32))
+            .metadataValues("large".equals(ddmSize) ? 200 : 0)
+            .build()
+            .generate(inbox, 1)
+            .get(0);
+        var fileService = new FileServiceImpl();
+        depositReader = new DepositReaderImpl(new XmlReaderImpl(), new BagDirResolverImpl(fileService), fileService, new BagDataManagerImpl(new BagReader()),
+            new DepositFileListerImpl(), new ManifestHelperImpl());
+        deposit = depositReader.readDeposit(depositDir);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(inbox.toFile());
+    }
+
+    @Benchmark
+    public Deposit readDeposit() throws Throwable {
+        return depositReader.readDeposit(depositDir);
+    }
+
+    @Benchmark
+    public Map<Path, FileInfo> pathToFileInfo() {
+        return FileElement.pathToFileInfo(deposit, false);
+    }
+}
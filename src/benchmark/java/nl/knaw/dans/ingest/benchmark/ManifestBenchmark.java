@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.benchmark;
+
+import gov.loc.repository.bagit.domain.Bag;
+import gov.loc.repository.bagit.reader.BagReader;
+import nl.knaw.dans.ingest.core.deposit.SizeDistribution;
+import nl.knaw.dans.ingest.core.deposit.SyntheticDepositGenerator;
+import nl.knaw.dans.ingest.core.service.ManifestHelperImpl;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding a SHA-1 payload manifest to a bag that only has an MD5 manifest. The SHA-1 manifest is removed again after every invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ManifestBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int numberOfFiles;
+
+    private final BagReader bagReader = new BagReader();
+    private final ManifestHelperImpl manifestHelper = new ManifestHelperImpl();
+
+    private Path inbox;
+    private Path depositDir;
+    private Bag bag;
+
+    @Setup
+    public void setUp() throws Exception {
+        inbox = Files.createTempDirectory("manifest-benchmark");
+        depositDir = SyntheticDepositGenerator.builder()
+            .numberOfFiles(SizeDistribution.fixed(numberOfFiles))
+            .fileSize(SizeDistribution.fixed(32))
+            .manifestAlgorithm("md5")
+            .build()
+            .generate(inbox, 1)
+            .get(0);
+    }
+
+    @Setup(Level.Invocation)
+    public void readBag() throws Exception {
+        Files.deleteIfExists(depositDir.resolve("bag/manifest-sha1.txt"));
+        bag = bagReader.read(depositDir.resolve("bag"));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(inbox.toFile());
+    }
+
+    @Benchmark
+    public Bag ensureSha1ManifestPresent() throws Exception {
+        manifestHelper.ensureSha1ManifestPresent(bag);
+        return bag;
+    }
+}
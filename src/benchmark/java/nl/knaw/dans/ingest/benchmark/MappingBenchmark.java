@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.benchmark;
+
+import nl.knaw.dans.ingest.config.IngestFlowConfig;
+import nl.knaw.dans.ingest.core.deposit.SyntheticDepositGenerator;
+import nl.knaw.dans.ingest.core.service.XmlReaderImpl;
+import nl.knaw.dans.ingest.core.service.mapper.DepositToDvDatasetMetadataMapper;
+import nl.knaw.dans.ingest.core.service.mapper.MappingTestHelper;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the mapping of the DDM of a deposit to the dataset metadata in Dataverse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MappingBenchmark {
+
+    @Param({ "small", "large" })
+    public String ddmSize;
+
+    private DepositToDvDatasetMetadataMapper mapper;
+    private Document ddm;
+
+    @Setup
+    public void setUp() throws Exception {
+        IngestFlowConfig config = MappingTestHelper.getIngestFlowConfig();
+        mapper = new DepositToDvDatasetMetadataMapper(
+            true,
+            Set.of("citation", "dansRights", "dansRelationMetadata", "dansArchaeologyMetadata", "dansTemporalSpatial", "dansDataVaultMetadata"),
+            config.getIso1ToDataverseLanguage(),
+            config.getIso2ToDataverseLanguage(),
+            config.getAbrReportCodeToTerm(),
+            config.getAbrAcquisitionMethodCodeToTerm(),
+            config.getAbrComplexTypeCodeToTerm(),
+            config.getAbrArtifactCodeToTerm(),
+            config.getAbrPeriodCodeToTerm(),
+            config.getSpatialCoverageCountryTerms(),
+            config.getDataSuppliers(),
+            config.getSkipFields(),
+            false);
+        var generator = SyntheticDepositGenerator.builder().metadataValues("large".equals(ddmSize) ? 200 : 0).build();
+        ddm = new XmlReaderImpl().readXmlString(generator.ddm("Synthetic dataset"));
+    }
+
+    @Benchmark
+    public Dataset toDataverseDataset() throws Exception {
+        return mapper.toDataverseDataset(ddm, null, "2023-01-01", MappingTestHelper.mockedContact, MappingTestHelper.mockedVaultMetadata, "user001", false, null, null);
+    }
+}
@@ -16,6 +16,9 @@
 
 package nl.knaw.dans.ingest;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheck;
 import io.dropwizard.client.JerseyClientBuilder;
 import io.dropwizard.core.Application;
 import io.dropwizard.core.setup.Bootstrap;
@@ -24,39 +27,74 @@ import io.dropwizard.db.PooledDataSourceFactory;
 import io.dropwizard.forms.MultiPartBundle;
 import io.dropwizard.hibernate.HibernateBundle;
 import io.dropwizard.hibernate.UnitOfWorkAwareProxyFactory;
+import nl.knaw.dans.ingest.config.CircuitBreakerConfig;
 import nl.knaw.dans.ingest.config.DdIngestFlowConfiguration;
 import nl.knaw.dans.ingest.config.IngestFlowConfigReader;
 import nl.knaw.dans.ingest.core.AutoIngestArea;
 import nl.knaw.dans.ingest.core.BlockedTarget;
 import nl.knaw.dans.ingest.core.CsvMessageBodyWriter;
 import nl.knaw.dans.ingest.core.ImportArea;
+import nl.knaw.dans.ingest.core.Lease;
+import nl.knaw.dans.ingest.core.QueuedDeposit;
 import nl.knaw.dans.ingest.core.TaskEvent;
+import nl.knaw.dans.ingest.core.dataverse.DataverseCallRecorder;
+import nl.knaw.dans.ingest.core.sequencing.AdmissionController;
 import nl.knaw.dans.ingest.core.sequencing.TargetedTaskSequenceManager;
+import nl.knaw.dans.ingest.core.sequencing.TaskCoordinator;
+import nl.knaw.dans.ingest.core.sequencing.TaskLifecycleListener;
+import nl.knaw.dans.ingest.core.sequencing.WeightedFairScheduler;
 import nl.knaw.dans.ingest.core.service.BlockedTargetService;
 import nl.knaw.dans.ingest.core.service.BlockedTargetServiceImpl;
+import nl.knaw.dans.ingest.core.service.CircuitBreaker;
+import nl.knaw.dans.ingest.core.service.CircuitBreakingDansBagValidator;
+import nl.knaw.dans.ingest.core.service.ClusterCoordinator;
 import nl.knaw.dans.ingest.core.service.DansBagValidator;
 import nl.knaw.dans.ingest.core.service.DansBagValidatorImpl;
 import nl.knaw.dans.ingest.core.service.DepositIngestTaskFactoryBuilder;
+import nl.knaw.dans.ingest.core.service.DepositQueueRecorder;
+import nl.knaw.dans.ingest.core.service.DepositQueueService;
+import nl.knaw.dans.ingest.core.service.DepositQueueServiceImpl;
 import nl.knaw.dans.ingest.core.service.EnqueuingService;
 import nl.knaw.dans.ingest.core.service.EnqueuingServiceImpl;
+import nl.knaw.dans.ingest.core.service.LeaseService;
+import nl.knaw.dans.ingest.core.service.LeaseServiceImpl;
+import nl.knaw.dans.ingest.core.service.SimulatedDansBagValidator;
+import nl.knaw.dans.ingest.core.service.StuckDepositWatchdog;
 import nl.knaw.dans.ingest.core.service.TaskEventService;
 import nl.knaw.dans.ingest.core.service.TaskEventServiceImpl;
+import nl.knaw.dans.ingest.core.simulation.Simulation;
 import nl.knaw.dans.ingest.db.BlockedTargetDAO;
+import nl.knaw.dans.ingest.db.LeaseDAO;
+import nl.knaw.dans.ingest.db.QueuedDepositDAO;
 import nl.knaw.dans.ingest.db.TaskEventDAO;
+import nl.knaw.dans.ingest.health.AdmissionHealthCheck;
 import nl.knaw.dans.ingest.health.DansBagValidatorHealthCheck;
 import nl.knaw.dans.ingest.resources.BlockedTargetsResource;
+import nl.knaw.dans.ingest.resources.EngineResource;
 import nl.knaw.dans.ingest.resources.EventsResource;
 import nl.knaw.dans.ingest.resources.ImportsResource;
 import nl.knaw.dans.ingest.resources.MigrationsResource;
+import nl.knaw.dans.ingest.resources.QueuesResource;
+import nl.knaw.dans.ingest.resources.SimulationResource;
 import nl.knaw.dans.lib.util.DataverseHealthCheck;
 import org.glassfish.jersey.media.multipart.MultiPartFeature;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Collectors;
 
 public class DdIngestFlowApplication extends Application<DdIngestFlowConfiguration> {
+    public static final String IMPORT_AREA = "import";
+    public static final String MIGRATION_AREA = "migration";
+    public static final String AUTO_INGEST_AREA = "auto-ingest";
 
-    private final HibernateBundle<DdIngestFlowConfiguration> hibernateBundle = new HibernateBundle<>(TaskEvent.class, BlockedTarget.class) {
+    private final HibernateBundle<DdIngestFlowConfiguration> hibernateBundle = new HibernateBundle<>(TaskEvent.class, BlockedTarget.class, QueuedDeposit.class, Lease.class) {
 
         @Override
         public PooledDataSourceFactory getDataSourceFactory(DdIngestFlowConfiguration configuration) {
@@ -83,65 +121,207 @@ public class DdIngestFlowApplication extends Application<DdIngestFlowConfigurati
     public void run(final DdIngestFlowConfiguration configuration, final Environment environment) throws IOException, URISyntaxException {
         final var ingestFlowConfig = configuration.getIngestFlow();
         final var taskExecutor = ingestFlowConfig.getTaskQueue().build(environment);
-        final var targetedTaskSequenceManager = new TargetedTaskSequenceManager(taskExecutor);
+        registerExecutorMetrics(environment, "task-queue", taskExecutor);
+        final var schedulerConfig = ingestFlowConfig.getScheduler();
+        final var scheduler = new WeightedFairScheduler(taskExecutor, schedulerConfig.getWorkerSlots(), environment.metrics());
+        schedulerConfig.getAreas().forEach((area, areaConfig) -> scheduler.configureArea(area, areaConfig.getWeight(), areaConfig.getReservedSlots()));
+        final var laneConfig = schedulerConfig.getLanes();
+        scheduler.configureLanes(laneConfig.getLargeDepositSize().toBytes(), laneConfig.getLargeDepositFiles(), laneConfig.getLargeSlots(),
+            laneConfig.getSmallSlots() != null ? laneConfig.getSmallSlots() : schedulerConfig.getWorkerSlots());
+
+        final QueuedDepositDAO queuedDepositDAO = new QueuedDepositDAO(hibernateBundle.getSessionFactory());
+        final DepositQueueService depositQueueService = new UnitOfWorkAwareProxyFactory(hibernateBundle)
+            .create(DepositQueueServiceImpl.class, QueuedDepositDAO.class, queuedDepositDAO);
+        final var clusterConfig = ingestFlowConfig.getCluster();
+        ClusterCoordinator clusterCoordinator = null;
+        if (clusterConfig.isEnabled()) {
+            final LeaseDAO leaseDAO = new LeaseDAO(hibernateBundle.getSessionFactory());
+            final LeaseService leaseService = new UnitOfWorkAwareProxyFactory(hibernateBundle).create(LeaseServiceImpl.class, LeaseDAO.class, leaseDAO);
+            final var nodeId = clusterConfig.getNodeId() != null ? clusterConfig.getNodeId() : InetAddress.getLocalHost().getHostName();
+            clusterCoordinator = new ClusterCoordinator(nodeId, leaseService, depositQueueService,
+                Duration.ofMillis(clusterConfig.getLeaseDuration().toMilliseconds()),
+                Duration.ofMillis(clusterConfig.getHeartbeatInterval().toMilliseconds()),
+                Duration.ofMillis(clusterConfig.getTargetRetryDelay().toMilliseconds()));
+        }
+        final var admissionController = new AdmissionController(schedulerConfig.getHighWaterMark(), schedulerConfig.getLowWaterMark(), environment.metrics());
+        final var taskLifecycleListener = TaskLifecycleListener.all(admissionController, new DepositQueueRecorder(depositQueueService));
+        final var targetedTaskSequenceManager = new TargetedTaskSequenceManager(scheduler, taskLifecycleListener,
+            clusterCoordinator != null ? clusterCoordinator : TaskCoordinator.LOCAL);
+        targetedTaskSequenceManager.setMaxCoalescedTasks(ingestFlowConfig.getMaxCoalescedDeposits());
+        targetedTaskSequenceManager.setMetricRegistry(environment.metrics());
+        targetedTaskSequenceManager.setRetryExecutor(environment.lifecycle().scheduledExecutorService("sequencer-retry-%d").threads(1).build());
+        if (schedulerConfig.getPrepareThreads() > 0) {
+            final var prepareExecutor = environment.lifecycle().executorService("deposit-prepare-%d")
+                .minThreads(schedulerConfig.getPrepareThreads())
+                .maxThreads(schedulerConfig.getPrepareThreads())
+                .build();
+            targetedTaskSequenceManager.setPrepareExecutor(prepareExecutor, schedulerConfig.getMaxPreparedDeposits());
+        }
 
         IngestFlowConfigReader.readIngestFlowConfiguration(ingestFlowConfig);
 
-        final var dansBagValidatorClient = new JerseyClientBuilder(environment)
-            .withProvider(MultiPartFeature.class)
-            .using(configuration.getValidateDansBag().getHttpClient())
-            .build(getName());
+        final var simulationConfig = configuration.getSimulation();
+        Simulation simulation = null;
+        final DansBagValidator dansBagValidator;
+        DataverseHealthCheck dataverseHealthCheck = null;
+        DansBagValidatorHealthCheck dansBagValidatorHealthCheck = null;
+        CircuitBreaker dataverseCircuitBreaker = null;
+        if (simulationConfig.isEnabled()) {
+            simulation = new Simulation(simulationConfig.getLatencies(), environment.metrics());
+            dansBagValidator = new SimulatedDansBagValidator(simulation);
+        }
+        else {
+            final var dansBagValidatorClient = new JerseyClientBuilder(environment)
+                .withProvider(MultiPartFeature.class)
+                .using(configuration.getValidateDansBag().getHttpClient())
+                .build(getName());
+
+            final var dansBagValidatorImpl = new DansBagValidatorImpl(
+                dansBagValidatorClient,
+                configuration.getValidateDansBag().getBaseUrl(),
+                configuration.getValidateDansBag().getPingUrl());
 
-        final DansBagValidator dansBagValidator = new DansBagValidatorImpl(
-            dansBagValidatorClient,
-            configuration.getValidateDansBag().getBaseUrl(),
-            configuration.getValidateDansBag().getPingUrl());
+            // Use the default configuration for the health checks. No API key is required.
+            dataverseHealthCheck = new DataverseHealthCheck(configuration.getDataverse().build());
+            dansBagValidatorHealthCheck = new DansBagValidatorHealthCheck(dansBagValidatorImpl);
+            dataverseCircuitBreaker = createCircuitBreaker(environment, ingestFlowConfig.getCircuitBreaker(), "Dataverse", dataverseHealthCheck, scheduler);
+            dansBagValidator = new CircuitBreakingDansBagValidator(dansBagValidatorImpl,
+                createCircuitBreaker(environment, ingestFlowConfig.getCircuitBreaker(), "DansBagValidator", dansBagValidatorHealthCheck, scheduler));
+        }
 
         final BlockedTargetDAO blockedTargetDAO = new BlockedTargetDAO(hibernateBundle.getSessionFactory());
         final BlockedTargetService blockedTargetService = new UnitOfWorkAwareProxyFactory(hibernateBundle)
             .create(BlockedTargetServiceImpl.class, BlockedTargetDAO.class, blockedTargetDAO);
 
-        final EnqueuingService enqueuingService = new EnqueuingServiceImpl(targetedTaskSequenceManager, 3 /* Must support importArea, migrationArea and autoIngestArea */);
+        final EnqueuingService enqueuingService = new EnqueuingServiceImpl(targetedTaskSequenceManager, admissionController, 3 /* Must support importArea, migrationArea and autoIngestArea */);
         final TaskEventDAO taskEventDAO = new TaskEventDAO(hibernateBundle.getSessionFactory());
         final TaskEventService taskEventService = new UnitOfWorkAwareProxyFactory(hibernateBundle).create(TaskEventServiceImpl.class, TaskEventDAO.class, taskEventDAO);
-        final var taskFactoryBuilder = new DepositIngestTaskFactoryBuilder(configuration, dansBagValidator, blockedTargetService);
+        final var taskFactoryBuilder = new DepositIngestTaskFactoryBuilder(configuration, dansBagValidator, blockedTargetService, simulation);
+        taskFactoryBuilder.setDataverseCircuitBreaker(dataverseCircuitBreaker);
+        if (ingestFlowConfig.getFileOperationConcurrency() > 1) {
+            // Each deposit being processed can have fileOperationConcurrency operations on the pool at the same time
+            final var fileOperationThreads = ingestFlowConfig.getFileOperationConcurrency() * schedulerConfig.getWorkerSlots();
+            taskFactoryBuilder.setFileOperationExecutor(environment.lifecycle().executorService("file-operation-%d")
+                .minThreads(fileOperationThreads)
+                .maxThreads(fileOperationThreads)
+                .build());
+        }
+        final var watchdogConfig = ingestFlowConfig.getWatchdog();
+        StuckDepositWatchdog stuckDepositWatchdog = null;
+        if (watchdogConfig.isEnabled()) {
+            final var dataverseCallRecorder = new DataverseCallRecorder();
+            taskFactoryBuilder.setDataverseCallRecorder(dataverseCallRecorder);
+            stuckDepositWatchdog = new StuckDepositWatchdog(targetedTaskSequenceManager, dataverseCallRecorder,
+                Duration.ofMillis(watchdogConfig.getCheckInterval().toMilliseconds()),
+                Duration.ofMillis(watchdogConfig.getDefaultThreshold().toMilliseconds()),
+                watchdogConfig.getStageThresholds().entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, e -> Duration.ofMillis(e.getValue().toMilliseconds()))),
+                environment.metrics(),
+                environment.lifecycle().scheduledExecutorService("stuck-deposit-watchdog-%d").threads(1).build());
+        }
+
+        final var preflightExecutor = environment.lifecycle().executorService("batch-preflight-%d")
+            .minThreads(schedulerConfig.getPreflightThreads())
+            .maxThreads(schedulerConfig.getPreflightThreads())
+            .build();
 
         final var importAreaConfig = ingestFlowConfig.getImportConfig();
         final var migrationAreaConfig = ingestFlowConfig.getMigration();
         final var autoIngestAreaConfig = ingestFlowConfig.getAutoIngest();
 
         final ImportArea importArea = new ImportArea(
+            IMPORT_AREA,
             importAreaConfig.getInbox(),
             importAreaConfig.getOutbox(),
             taskFactoryBuilder.createTaskFactory(environment, "dd-ingest-flow/import", importAreaConfig,  false),
             taskEventService,
-            enqueuingService);
+            enqueuingService,
+            depositQueueService,
+            preflightExecutor);
 
         // Can be phased out after migration.
         final ImportArea migrationArea = new ImportArea(
+            MIGRATION_AREA,
             migrationAreaConfig.getInbox(),
             migrationAreaConfig.getOutbox(),
             taskFactoryBuilder.createTaskFactory(environment, "dd-ingest-flow/migration", migrationAreaConfig,true),
             taskEventService,
-            enqueuingService);
+            enqueuingService,
+            depositQueueService,
+            preflightExecutor);
 
         final AutoIngestArea autoIngestArea = new AutoIngestArea(
+            AUTO_INGEST_AREA,
             autoIngestAreaConfig.getInbox(),
             autoIngestAreaConfig.getOutbox(),
             taskFactoryBuilder.createTaskFactory(environment, "dd-ingest-flow/auto-ingest", autoIngestAreaConfig,  false),
             taskEventService,
-            enqueuingService
+            enqueuingService,
+            depositQueueService
         );
 
-        // Use the default configuration for the health checks. No API key is required.
-        environment.healthChecks().register("Dataverse", new DataverseHealthCheck(configuration.getDataverse().build()));
-        environment.healthChecks().register("DansBagValidator", new DansBagValidatorHealthCheck(dansBagValidator));
+        if (simulation == null) {
+            environment.healthChecks().register("Dataverse", dataverseHealthCheck);
+            environment.healthChecks().register("DansBagValidator", dansBagValidatorHealthCheck);
+        }
+        else {
+            environment.jersey().register(new SimulationResource(simulation));
+        }
+        environment.healthChecks().register("Admission", new AdmissionHealthCheck(admissionController,
+            Duration.ofMillis(schedulerConfig.getMaxPausedTime().toMilliseconds())));
 
+        if (clusterCoordinator != null) {
+            clusterCoordinator.registerArea(importArea);
+            clusterCoordinator.registerArea(migrationArea);
+            clusterCoordinator.registerArea(autoIngestArea);
+            // Before the areas, so that stale leases of this node are released before its deposits are resumed
+            environment.lifecycle().manage(clusterCoordinator);
+        }
+        environment.lifecycle().manage(importArea);
+        environment.lifecycle().manage(migrationArea);
         environment.lifecycle().manage(autoIngestArea);
+        if (stuckDepositWatchdog != null) {
+            environment.lifecycle().manage(stuckDepositWatchdog);
+        }
         environment.jersey().register(new ImportsResource(importArea));
         environment.jersey().register(new MigrationsResource(migrationArea));
         environment.jersey().register(new EventsResource(taskEventDAO));
         environment.jersey().register(new BlockedTargetsResource(blockedTargetService));
+        environment.jersey().register(new QueuesResource(scheduler, targetedTaskSequenceManager, taskExecutor));
+        environment.jersey().register(new EngineResource(scheduler, targetedTaskSequenceManager, List.of(IMPORT_AREA, MIGRATION_AREA, AUTO_INGEST_AREA)));
         environment.jersey().register(new CsvMessageBodyWriter());
     }
+
+    private static void registerExecutorMetrics(Environment environment, String name, Executor executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            final var pool = (ThreadPoolExecutor) executor;
+            environment.metrics().register(MetricRegistry.name("executor", name, "active"), (Gauge<Integer>) pool::getActiveCount);
+            environment.metrics().register(MetricRegistry.name("executor", name, "queued"), (Gauge<Integer>) () -> pool.getQueue().size());
+        }
+    }
+
+    /*
+     * While the service is unavailable, no new tasks are dispatched. The tasks that are running are held at their next call to the service.
+     */
+    private static CircuitBreaker createCircuitBreaker(Environment environment, CircuitBreakerConfig config, String name, HealthCheck healthCheck,
+        WeightedFairScheduler scheduler) {
+        final var probeExecutor = environment.lifecycle().scheduledExecutorService("circuit-breaker-" + name + "-%d").threads(1).build();
+        final var circuitBreaker = new CircuitBreaker(name, healthCheck, config.getFailureThreshold(),
+            Duration.ofMillis(config.getProbeInterval().toMilliseconds()),
+            Duration.ofMillis(config.getMaxHoldTime().toMilliseconds()),
+            probeExecutor);
+        circuitBreaker.addListener(new CircuitBreaker.Listener() {
+
+            @Override
+            public void opened(String name) {
+                scheduler.pause(name + " unavailable");
+            }
+
+            @Override
+            public void closed(String name) {
+                scheduler.resume(name + " unavailable");
+            }
+        });
+        return circuitBreaker;
+    }
 }
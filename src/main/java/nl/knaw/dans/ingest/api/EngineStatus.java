@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.api;
+
+import java.util.List;
+
+public class EngineStatus {
+    private boolean paused;
+    private List<String> pauseReasons;
+    private List<String> pausedAreas;
+    private List<InFlightDeposit> inFlight;
+
+    public EngineStatus() {
+    }
+
+    public EngineStatus(boolean paused, List<String> pauseReasons, List<String> pausedAreas, List<InFlightDeposit> inFlight) {
+        this.paused = paused;
+        this.pauseReasons = pauseReasons;
+        this.pausedAreas = pausedAreas;
+        this.inFlight = inFlight;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    public List<String> getPauseReasons() {
+        return pauseReasons;
+    }
+
+    public void setPauseReasons(List<String> pauseReasons) {
+        this.pauseReasons = pauseReasons;
+    }
+
+    public List<String> getPausedAreas() {
+        return pausedAreas;
+    }
+
+    public void setPausedAreas(List<String> pausedAreas) {
+        this.pausedAreas = pausedAreas;
+    }
+
+    public List<InFlightDeposit> getInFlight() {
+        return inFlight;
+    }
+
+    public void setInFlight(List<InFlightDeposit> inFlight) {
+        this.inFlight = inFlight;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.api;
+
+import java.time.OffsetDateTime;
+
+public class InFlightDeposit {
+    private String area;
+    private String target;
+    private String depositPath;
+    private String stage;
+    private String thread;
+    private OffsetDateTime started;
+
+    public InFlightDeposit() {
+    }
+
+    public InFlightDeposit(String area, String target, String depositPath, String stage, String thread, OffsetDateTime started) {
+        this.area = area;
+        this.target = target;
+        this.depositPath = depositPath;
+        this.stage = stage;
+        this.thread = thread;
+        this.started = started;
+    }
+
+    public String getArea() {
+        return area;
+    }
+
+    public void setArea(String area) {
+        this.area = area;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public String getDepositPath() {
+        return depositPath;
+    }
+
+    public void setDepositPath(String depositPath) {
+        this.depositPath = depositPath;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    public void setThread(String thread) {
+        this.thread = thread;
+    }
+
+    public OffsetDateTime getStarted() {
+        return started;
+    }
+
+    public void setStarted(OffsetDateTime started) {
+        this.started = started;
+    }
+}
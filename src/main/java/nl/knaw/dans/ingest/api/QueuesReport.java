@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.api;
+
+import java.util.List;
+
+public class QueuesReport {
+    private int activeTargets;
+    private Long oldestWaitingAgeSeconds;
+    private ExecutorStats executor;
+    private List<AreaQueue> areas;
+    private List<TargetQueue> targets;
+
+    public QueuesReport() {
+    }
+
+    public QueuesReport(int activeTargets, Long oldestWaitingAgeSeconds, ExecutorStats executor, List<AreaQueue> areas, List<TargetQueue> targets) {
+        this.activeTargets = activeTargets;
+        this.oldestWaitingAgeSeconds = oldestWaitingAgeSeconds;
+        this.executor = executor;
+        this.areas = areas;
+        this.targets = targets;
+    }
+
+    public int getActiveTargets() {
+        return activeTargets;
+    }
+
+    public void setActiveTargets(int activeTargets) {
+        this.activeTargets = activeTargets;
+    }
+
+    public Long getOldestWaitingAgeSeconds() {
+        return oldestWaitingAgeSeconds;
+    }
+
+    public void setOldestWaitingAgeSeconds(Long oldestWaitingAgeSeconds) {
+        this.oldestWaitingAgeSeconds = oldestWaitingAgeSeconds;
+    }
+
+    public ExecutorStats getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(ExecutorStats executor) {
+        this.executor = executor;
+    }
+
+    public List<AreaQueue> getAreas() {
+        return areas;
+    }
+
+    public void setAreas(List<AreaQueue> areas) {
+        this.areas = areas;
+    }
+
+    public List<TargetQueue> getTargets() {
+        return targets;
+    }
+
+    public void setTargets(List<TargetQueue> targets) {
+        this.targets = targets;
+    }
+
+    public static class ExecutorStats {
+        private int activeThreads;
+        private int poolSize;
+        private int queued;
+
+        public ExecutorStats() {
+        }
+
+        public ExecutorStats(int activeThreads, int poolSize, int queued) {
+            this.activeThreads = activeThreads;
+            this.poolSize = poolSize;
+            this.queued = queued;
+        }
+
+        public int getActiveThreads() {
+            return activeThreads;
+        }
+
+        public void setActiveThreads(int activeThreads) {
+            this.activeThreads = activeThreads;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public void setQueued(int queued) {
+            this.queued = queued;
+        }
+    }
+
+    public static class AreaQueue {
+        private String area;
+        private int waitingTargets;
+        private int running;
+        private long started;
+        private double meanTimeInQueueMillis;
+        private double p95TimeInQueueMillis;
+        private double maxTimeInQueueMillis;
+
+        public AreaQueue() {
+        }
+
+        public AreaQueue(String area, int waitingTargets, int running, long started, double meanTimeInQueueMillis, double p95TimeInQueueMillis,
+            double maxTimeInQueueMillis) {
+            this.area = area;
+            this.waitingTargets = waitingTargets;
+            this.running = running;
+            this.started = started;
+            this.meanTimeInQueueMillis = meanTimeInQueueMillis;
+            this.p95TimeInQueueMillis = p95TimeInQueueMillis;
+            this.maxTimeInQueueMillis = maxTimeInQueueMillis;
+        }
+
+        public String getArea() {
+            return area;
+        }
+
+        public void setArea(String area) {
+            this.area = area;
+        }
+
+        public int getWaitingTargets() {
+            return waitingTargets;
+        }
+
+        public void setWaitingTargets(int waitingTargets) {
+            this.waitingTargets = waitingTargets;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+
+        public void setRunning(int running) {
+            this.running = running;
+        }
+
+        public long getStarted() {
+            return started;
+        }
+
+        public void setStarted(long started) {
+            this.started = started;
+        }
+
+        public double getMeanTimeInQueueMillis() {
+            return meanTimeInQueueMillis;
+        }
+
+        public void setMeanTimeInQueueMillis(double meanTimeInQueueMillis) {
+            this.meanTimeInQueueMillis = meanTimeInQueueMillis;
+        }
+
+        public double getP95TimeInQueueMillis() {
+            return p95TimeInQueueMillis;
+        }
+
+        public void setP95TimeInQueueMillis(double p95TimeInQueueMillis) {
+            this.p95TimeInQueueMillis = p95TimeInQueueMillis;
+        }
+
+        public double getMaxTimeInQueueMillis() {
+            return maxTimeInQueueMillis;
+        }
+
+        public void setMaxTimeInQueueMillis(double maxTimeInQueueMillis) {
+            this.maxTimeInQueueMillis = maxTimeInQueueMillis;
+        }
+    }
+
+    public static class TargetQueue {
+        private String target;
+        private int queueLength;
+        private Long oldestWaitingAgeSeconds;
+        private InFlightDeposit running;
+
+        public TargetQueue() {
+        }
+
+        public TargetQueue(String target, int queueLength, Long oldestWaitingAgeSeconds, InFlightDeposit running) {
+            this.target = target;
+            this.queueLength = queueLength;
+            this.oldestWaitingAgeSeconds = oldestWaitingAgeSeconds;
+            this.running = running;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public void setTarget(String target) {
+            this.target = target;
+        }
+
+        public int getQueueLength() {
+            return queueLength;
+        }
+
+        public void setQueueLength(int queueLength) {
+            this.queueLength = queueLength;
+        }
+
+        public Long getOldestWaitingAgeSeconds() {
+            return oldestWaitingAgeSeconds;
+        }
+
+        public void setOldestWaitingAgeSeconds(Long oldestWaitingAgeSeconds) {
+            this.oldestWaitingAgeSeconds = oldestWaitingAgeSeconds;
+        }
+
+        public InFlightDeposit getRunning() {
+            return running;
+        }
+
+        public void setRunning(InFlightDeposit running) {
+            this.running = running;
+        }
+    }
+}
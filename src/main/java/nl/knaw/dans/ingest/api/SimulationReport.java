@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.api;
+
+import java.util.List;
+
+public class SimulationReport {
+    private long processedDeposits;
+    private double elapsedSeconds;
+    private double depositsPerHour;
+    private List<Timing> stages;
+    private List<Timing> operations;
+
+    public SimulationReport() {
+    }
+
+    public SimulationReport(long processedDeposits, double elapsedSeconds, double depositsPerHour, List<Timing> stages, List<Timing> operations) {
+        this.processedDeposits = processedDeposits;
+        this.elapsedSeconds = elapsedSeconds;
+        this.depositsPerHour = depositsPerHour;
+        this.stages = stages;
+        this.operations = operations;
+    }
+
+    public long getProcessedDeposits() {
+        return processedDeposits;
+    }
+
+    public void setProcessedDeposits(long processedDeposits) {
+        this.processedDeposits = processedDeposits;
+    }
+
+    public double getElapsedSeconds() {
+        return elapsedSeconds;
+    }
+
+    public void setElapsedSeconds(double elapsedSeconds) {
+        this.elapsedSeconds = elapsedSeconds;
+    }
+
+    public double getDepositsPerHour() {
+        return depositsPerHour;
+    }
+
+    public void setDepositsPerHour(double depositsPerHour) {
+        this.depositsPerHour = depositsPerHour;
+    }
+
+    public List<Timing> getStages() {
+        return stages;
+    }
+
+    public void setStages(List<Timing> stages) {
+        this.stages = stages;
+    }
+
+    public List<Timing> getOperations() {
+        return operations;
+    }
+
+    public void setOperations(List<Timing> operations) {
+        this.operations = operations;
+    }
+
+    public static class Timing {
+        private String name;
+        private long count;
+        private double totalSeconds;
+        private double meanMillis;
+        private double p95Millis;
+        private double percentage;
+
+        public Timing() {
+        }
+
+        public Timing(String name, long count, double totalSeconds, double meanMillis, double p95Millis, double percentage) {
+            this.name = name;
+            this.count = count;
+            this.totalSeconds = totalSeconds;
+            this.meanMillis = meanMillis;
+            this.p95Millis = p95Millis;
+            this.percentage = percentage;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+
+        public double getTotalSeconds() {
+            return totalSeconds;
+        }
+
+        public void setTotalSeconds(double totalSeconds) {
+            this.totalSeconds = totalSeconds;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public void setMeanMillis(double meanMillis) {
+            this.meanMillis = meanMillis;
+        }
+
+        public double getP95Millis() {
+            return p95Millis;
+        }
+
+        public void setP95Millis(double p95Millis) {
+            this.p95Millis = p95Millis;
+        }
+
+        public double getPercentage() {
+            return percentage;
+        }
+
+        public void setPercentage(double percentage) {
+            this.percentage = percentage;
+        }
+    }
+}
@@ -24,6 +24,7 @@ public class StartImport {
 
     private boolean isBatch = false;
     private boolean continuePrevious = false;
+    private boolean preflight = false;
 
     public Path getInputPath() {
         return inputPath;
@@ -51,12 +52,21 @@ public class StartImport {
         this.continuePrevious = continuePrevious;
     }
 
+    public boolean isPreflight() {
+        return preflight;
+    }
+
+    public void setPreflight(boolean preflight) {
+        this.preflight = preflight;
+    }
+
     @Override
     public String toString() {
         return "StartImport{" +
             "inputPath=" + inputPath +
             ", isBatch=" + isBatch +
             ", continuePrevious=" + continuePrevious +
+            ", preflight=" + preflight +
             '}';
     }
 }
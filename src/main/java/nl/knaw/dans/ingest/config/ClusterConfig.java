@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.config;
+
+import io.dropwizard.util.Duration;
+import lombok.Data;
+
+import javax.validation.constraints.NotNull;
+
+@Data
+public class ClusterConfig {
+
+    private boolean enabled = false;
+
+    /**
+     * Identifies this instance in the leases. Must be unique within the cluster and should stay the same across restarts, so that an instance that is restarted
+     * immediately gets back its own leases. Defaults to the host name.
+     */
+    private String nodeId;
+
+    /**
+     * Must be several times the heartbeat interval, so that a lease is not lost when one heartbeat is late.
+     */
+    @NotNull
+    private Duration leaseDuration = Duration.minutes(2);
+
+    @NotNull
+    private Duration heartbeatInterval = Duration.seconds(20);
+
+    @NotNull
+    private Duration targetRetryDelay = Duration.seconds(5);
+}
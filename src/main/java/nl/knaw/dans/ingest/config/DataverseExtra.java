@@ -15,10 +15,17 @@
  */
 package nl.knaw.dans.ingest.config;
 
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
 public class DataverseExtra {
     private int publishAwaitUnlockMaxRetries;
     private int publishAwaitUnlockWaitTimeMs;
 
+    @Valid
+    @NotNull
+    private LockWatcherConfig lockWatcher = new LockWatcherConfig();
+
     public int getPublishAwaitUnlockMaxRetries() {
         return publishAwaitUnlockMaxRetries;
     }
@@ -34,4 +41,12 @@ public class DataverseExtra {
     public void setPublishAwaitUnlockWaitTimeMs(int publishAwaitUnlockWaitTimeMs) {
         this.publishAwaitUnlockWaitTimeMs = publishAwaitUnlockWaitTimeMs;
     }
+
+    public LockWatcherConfig getLockWatcher() {
+        return lockWatcher;
+    }
+
+    public void setLockWatcher(LockWatcherConfig lockWatcher) {
+        this.lockWatcher = lockWatcher;
+    }
 }
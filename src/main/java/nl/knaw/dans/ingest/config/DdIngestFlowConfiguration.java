@@ -27,6 +27,7 @@ import nl.knaw.dans.ingest.config.ValidateDansBagConfig;
 import nl.knaw.dans.lib.util.DataverseClientFactory;
 import org.apache.commons.lang3.StringUtils;
 
+import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
 @Data
@@ -40,6 +41,7 @@ public class DdIngestFlowConfiguration extends Configuration {
     private DataverseClientFactory dataverse;
 
     @NotNull
+    @Valid
     private DataverseExtra dataverseExtra;
 
     @NotNull
@@ -48,6 +50,10 @@ public class DdIngestFlowConfiguration extends Configuration {
     @NotNull
     private DataSourceFactory taskEventDatabase;
 
+    @NotNull
+    @Valid
+    private SimulationConfig simulation = new SimulationConfig();
+
     public IngestFlowConfig getIngestFlow() {
         applyDefaults(ingestFlow.getAutoIngest());
         applyDefaults(ingestFlow.getImportConfig());
@@ -20,6 +20,7 @@ import lombok.Data;
 import nl.knaw.dans.lib.util.ExecutorServiceFactory;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.nio.file.Path;
 import java.util.List;
@@ -66,6 +67,33 @@ public class IngestFlowConfig {
     @Valid
     private ExecutorServiceFactory taskQueue;
 
+    @NotNull
+    @Valid
+    private TaskSchedulerConfig scheduler = new TaskSchedulerConfig();
+
+    @NotNull
+    @Valid
+    private ClusterConfig cluster = new ClusterConfig();
+
+    @NotNull
+    @Valid
+    private CircuitBreakerConfig circuitBreaker = new CircuitBreakerConfig();
+
+    @NotNull
+    @Valid
+    private RetryConfig retry = new RetryConfig();
+
+    @NotNull
+    @Valid
+    private WatchdogConfig watchdog = new WatchdogConfig();
+
+    /**
+     * The maximum number of consecutive queued update deposits for the same dataset that are combined into one new version. 1 means that deposits are not
+     * combined.
+     */
+    @Min(1)
+    private int maxCoalescedDeposits = 1;
+
     @NotNull
     private Map<String, String> iso1ToDataverseLanguage;
 
@@ -97,4 +125,9 @@ public class IngestFlowConfig {
     private String vaultMetadataKey;
 
     private boolean deleteDraftOnFailure;
+
+    private boolean resumeFailedCreation;
+
+    @Min(1)
+    private int fileOperationConcurrency = 1;
 }
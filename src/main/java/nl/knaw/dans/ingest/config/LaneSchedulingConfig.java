@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.config;
+
+import io.dropwizard.util.DataSize;
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+@Data
+public class LaneSchedulingConfig {
+
+    @NotNull
+    private DataSize largeDepositSize = DataSize.gibibytes(10);
+
+    @Min(1)
+    private long largeDepositFiles = 10000;
+
+    @Min(1)
+    private int largeSlots = 1;
+
+    // Defaults to the number of worker slots
+    @Min(1)
+    private Integer smallSlots;
+}
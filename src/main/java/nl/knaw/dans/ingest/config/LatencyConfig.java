@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.config;
+
+import io.dropwizard.util.Duration;
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * A log-normal latency distribution. Half of the samples are below the median. The spread is the standard deviation of the logarithm of the latency; 0
+ * gives the median every time, 0.5 gives about 90% of the samples between 0.45 and 2.3 times the median.
+ */
+@Data
+public class LatencyConfig {
+
+    @NotNull
+    private Duration median = Duration.milliseconds(0);
+
+    @Min(0)
+    private double spread = 0;
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.config;
+
+import io.dropwizard.util.Duration;
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+public class RetryConfig {
+
+    // For the idempotent Dataverse operations that have no entry in operations
+    @NotNull
+    @Valid
+    private RetryPolicyConfig defaultOperation = new RetryPolicyConfig();
+
+    // By operation name, e.g., getDatasetState
+    @NotNull
+    @Valid
+    private Map<String, RetryPolicyConfig> operations = new HashMap<>();
+
+    // For deposits that fail with a transient error before the dataset is changed
+    @NotNull
+    @Valid
+    private RetryPolicyConfig task = new RetryPolicyConfig(3, Duration.minutes(1), Duration.minutes(30));
+}
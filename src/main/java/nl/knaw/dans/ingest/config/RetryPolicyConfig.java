@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.config;
+
+import io.dropwizard.util.Duration;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+@Data
+@NoArgsConstructor
+public class RetryPolicyConfig {
+
+    // Including the first attempt; 1 means no retries
+    @Min(1)
+    private int maxAttempts = 3;
+
+    @NotNull
+    private Duration initialDelay = Duration.seconds(1);
+
+    @NotNull
+    private Duration maxDelay = Duration.seconds(30);
+
+    // Fraction of each delay that is randomly left out, so that retries of different tasks are spread out
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    private double jitter = 0.5;
+
+    public RetryPolicyConfig(int maxAttempts, Duration initialDelay, Duration maxDelay) {
+        this.maxAttempts = maxAttempts;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+    }
+}
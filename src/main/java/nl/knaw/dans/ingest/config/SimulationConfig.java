@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.config;
+
+import lombok.Data;
+import nl.knaw.dans.ingest.core.simulation.Simulation.Operation;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class SimulationConfig {
+
+    /**
+     * If enabled, the deposits are processed against an in-process stand-in for Dataverse and the DANS bag validator. Nothing is sent to the configured
+     * Dataverse or validator.
+     */
+    private boolean enabled = false;
+
+    /**
+     * The latency of each simulated operation. Operations that are not configured take no time.
+     */
+    @NotNull
+    @Valid
+    private Map<Operation, LatencyConfig> latencies = new HashMap<>();
+
+    /**
+     * The metadata blocks that the simulated Dataverse reports as active.
+     */
+    @NotNull
+    private List<String> metadataBlocks = List.of("citation", "dansRights", "dansRelationMetadata", "dansArchaeologyMetadata", "dansTemporalSpatial",
+        "dansDataVaultMetadata");
+}
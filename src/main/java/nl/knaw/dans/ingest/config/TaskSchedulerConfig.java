@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.config;
+
+import io.dropwizard.util.Duration;
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+public class TaskSchedulerConfig {
+
+    @Min(1)
+    private int workerSlots = 2;
+
+    @Min(0)
+    private int prepareThreads = 0;
+
+    @Min(1)
+    private int maxPreparedDeposits = 10;
+
+    @Min(0)
+    private int checkThreads = 4;
+
+    @Min(0)
+    private int preCheckThreads = 6;
+
+    @Min(1)
+    private int preflightThreads = 4;
+
+    @Min(1)
+    private int highWaterMark = 1000;
+
+    @Min(0)
+    private int lowWaterMark = 500;
+
+    @NotNull
+    private Duration maxPausedTime = Duration.hours(1);
+
+    @NotNull
+    @Valid
+    private LaneSchedulingConfig lanes = new LaneSchedulingConfig();
+
+    @NotNull
+    @Valid
+    private Map<String, AreaSchedulingConfig> areas = new HashMap<>();
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.config;
+
+import io.dropwizard.util.Duration;
+import lombok.Data;
+
+import javax.validation.constraints.NotNull;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+public class WatchdogConfig {
+
+    private boolean enabled = true;
+
+    @NotNull
+    private Duration checkInterval = Duration.minutes(1);
+
+    // For the stages that have no entry in stageThresholds
+    @NotNull
+    private Duration defaultThreshold = Duration.hours(6);
+
+    // By stage name, e.g., CHECKING
+    @NotNull
+    private Map<String, Duration> stageThresholds = new HashMap<>(Map.of(
+        "READING", Duration.minutes(30),
+        "CHECKING", Duration.hours(1),
+        "PUBLISHING", Duration.hours(2),
+        "SUBMITTING_FOR_REVIEW", Duration.minutes(30),
+        "FINISHING", Duration.minutes(30)));
+}
@@ -16,7 +16,9 @@
 package nl.knaw.dans.ingest.core;
 
 import nl.knaw.dans.ingest.core.service.DepositIngestTaskFactory;
+import nl.knaw.dans.ingest.core.service.DepositQueueService;
 import nl.knaw.dans.ingest.core.service.EnqueuingService;
+import nl.knaw.dans.ingest.core.service.ResumedDepositsTaskSource;
 import nl.knaw.dans.ingest.core.service.TaskEventService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,23 +26,41 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.stream.Stream;
 
 public class AbstractIngestArea {
     private static final Logger log = LoggerFactory.getLogger(AbstractIngestArea.class);
+    protected final String name;
     protected final Path inboxDir;
     protected final Path outboxDir;
     protected final DepositIngestTaskFactory taskFactory;
     protected final TaskEventService taskEventService;
     protected final EnqueuingService enqueuingService;
+    protected final DepositQueueService depositQueueService;
 
-    public AbstractIngestArea(Path inboxDir, Path outboxDir,
-        DepositIngestTaskFactory taskFactory, TaskEventService taskEventService, EnqueuingService enqueuingService) {
+    public AbstractIngestArea(String name, Path inboxDir, Path outboxDir,
+        DepositIngestTaskFactory taskFactory, TaskEventService taskEventService, EnqueuingService enqueuingService, DepositQueueService depositQueueService) {
+        this.name = name;
         this.inboxDir = inboxDir.toAbsolutePath();
         this.outboxDir = outboxDir.toAbsolutePath();
         this.taskFactory = taskFactory;
         this.taskEventService = taskEventService;
         this.enqueuingService = enqueuingService;
+        this.depositQueueService = depositQueueService;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Enqueues deposits of this area that were enqueued earlier, in the given order.
+     *
+     * @param queuedDeposits the deposits to resume
+     */
+    public void resumeDeposits(List<QueuedDeposit> queuedDeposits) {
+        enqueuingService.executeEnqueue(name, new ResumedDepositsTaskSource(name, () -> queuedDeposits, depositQueueService, taskEventService, taskFactory));
     }
 
     protected static boolean nonEmpty(Path p) throws IOException {
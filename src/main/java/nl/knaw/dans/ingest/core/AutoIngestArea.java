@@ -17,7 +17,9 @@ package nl.knaw.dans.ingest.core;
 
 import io.dropwizard.lifecycle.Managed;
 import nl.knaw.dans.ingest.core.service.DepositIngestTaskFactory;
+import nl.knaw.dans.ingest.core.service.DepositQueueService;
 import nl.knaw.dans.ingest.core.service.EnqueuingService;
+import nl.knaw.dans.ingest.core.service.ResumedDepositsTaskSource;
 import nl.knaw.dans.ingest.core.service.TaskEventService;
 import nl.knaw.dans.ingest.core.service.UnboundedTargetedTaskSource;
 
@@ -26,17 +28,18 @@ import java.nio.file.Path;
 public class AutoIngestArea extends AbstractIngestArea implements Managed {
     private UnboundedTargetedTaskSource taskSource;
 
-    public AutoIngestArea(Path inboxDir, Path outboxDir, DepositIngestTaskFactory taskFactory,
-        TaskEventService taskEventService, EnqueuingService enqueuingService) {
-        super(inboxDir, outboxDir, taskFactory, taskEventService, enqueuingService);
+    public AutoIngestArea(String name, Path inboxDir, Path outboxDir, DepositIngestTaskFactory taskFactory,
+        TaskEventService taskEventService, EnqueuingService enqueuingService, DepositQueueService depositQueueService) {
+        super(name, inboxDir, outboxDir, taskFactory, taskEventService, enqueuingService, depositQueueService);
     }
 
     @Override
     public void start() throws Exception {
         validateInDir(inboxDir);
         initOutbox(outboxDir, true);
-        taskSource = new UnboundedTargetedTaskSource("auto-ingest", inboxDir, outboxDir, taskEventService, taskFactory);
-        enqueuingService.executeEnqueue(taskSource);
+        var resumedTasks = new ResumedDepositsTaskSource(name, depositQueueService, taskEventService, taskFactory);
+        taskSource = new UnboundedTargetedTaskSource(name, inboxDir, outboxDir, taskEventService, taskFactory, resumedTasks);
+        enqueuingService.executeEnqueue(name, taskSource);
     }
 
     @Override
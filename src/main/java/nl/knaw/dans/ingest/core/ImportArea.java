@@ -15,9 +15,13 @@
  */
 package nl.knaw.dans.ingest.core;
 
+import io.dropwizard.lifecycle.Managed;
+import nl.knaw.dans.ingest.core.service.BatchPreflightTaskSource;
 import nl.knaw.dans.ingest.core.service.DepositIngestTask;
 import nl.knaw.dans.ingest.core.service.DepositIngestTaskFactory;
+import nl.knaw.dans.ingest.core.service.DepositQueueService;
 import nl.knaw.dans.ingest.core.service.EnqueuingService;
+import nl.knaw.dans.ingest.core.service.ResumedDepositsTaskSource;
 import nl.knaw.dans.ingest.core.service.SingleDepositTargetedTaskSourceImpl;
 import nl.knaw.dans.ingest.core.service.TargetedTaskSource;
 import nl.knaw.dans.ingest.core.service.TargetedTaskSourceImpl;
@@ -30,17 +34,43 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.stream.Stream;
 
-public class ImportArea extends AbstractIngestArea {
+public class ImportArea extends AbstractIngestArea implements Managed {
     private static final Logger log = LoggerFactory.getLogger(ImportArea.class);
 
-    public ImportArea(Path inboxDir, Path outboxDir, DepositIngestTaskFactory taskFactory, TaskEventService taskEventService, EnqueuingService enqueuingService) {
-        super(inboxDir, outboxDir, taskFactory, taskEventService, enqueuingService);
+    private final Executor preflightExecutor;
+
+    public ImportArea(String name, Path inboxDir, Path outboxDir, DepositIngestTaskFactory taskFactory, TaskEventService taskEventService, EnqueuingService enqueuingService,
+        DepositQueueService depositQueueService, Executor preflightExecutor) {
+        super(name, inboxDir, outboxDir, taskFactory, taskEventService, enqueuingService, depositQueueService);
+        this.preflightExecutor = preflightExecutor;
+    }
+
+    /**
+     * Resumes the deposits of batches that were still enqueued or in progress when the service was stopped, so that these batches do not have to be restarted
+     * with the 'continue' option.
+     */
+    @Override
+    public void start() {
+        enqueuingService.executeEnqueue(name, new ResumedDepositsTaskSource(name, depositQueueService, taskEventService, taskFactory));
     }
 
-    public String startImport(Path inputPath, boolean isBatch, boolean continuePrevious) {
-        log.trace("startBatch({}, {})", inputPath, continuePrevious);
+    /**
+     * Starts the import of a single deposit or a batch of deposits.
+     *
+     * @param inputPath        the deposit or batch directory, absolute or relative to the inbox
+     * @param isBatch          whether the input path is a batch directory
+     * @param continuePrevious whether to continue a batch of which the outbox already contains deposits
+     * @param preflight        whether to check all deposits of the batch before enqueuing them (see {@link BatchPreflightTaskSource})
+     * @return the name of the import
+     */
+    public String startImport(Path inputPath, boolean isBatch, boolean continuePrevious, boolean preflight) {
+        log.trace("startBatch({}, {}, {})", inputPath, continuePrevious, preflight);
+        if (preflight && !isBatch) {
+            throw new IllegalArgumentException("Pre-flight check is only supported for a batch");
+        }
         Path relativeInputDir;
         if (inputPath.isAbsolute()) {
             relativeInputDir = inboxDir.relativize(inputPath);
@@ -74,11 +104,14 @@ public class ImportArea extends AbstractIngestArea {
         TargetedTaskSource<DepositIngestTask> taskSource;
         if (isBatch) {
             taskSource = new TargetedTaskSourceImpl(taskName, batchInDir, batchOutDir, taskEventService, taskFactory);
+            if (preflight) {
+                taskSource = new BatchPreflightTaskSource(taskSource, preflightExecutor, batchOutDir.resolve(BatchPreflightTaskSource.REPORT_FILE));
+            }
         }
         else {
             taskSource = new SingleDepositTargetedTaskSourceImpl(taskName, inboxDir.resolve(relativeInputDir), batchOutDir, taskEventService, taskFactory);
         }
-        enqueuingService.executeEnqueue(taskSource);
+        enqueuingService.executeEnqueue(name, taskSource);
         return relativeInputDir.toString();
     }
 
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.OffsetDateTime;
+
+/**
+ * A lease on a shared resource (a deposit or a target) held by one instance of the service in cluster mode. The owner must renew the lease before it
+ * expires; after that, another instance may take it over.
+ */
+@Entity
+@Table(name = "lease")
+public class Lease {
+
+    @Id
+    @Column(name = "resource", nullable = false)
+    private String resource;
+
+    @Column(name = "owner", nullable = false)
+    private String owner;
+
+    @Column(name = "acquired", nullable = false)
+    private OffsetDateTime acquired;
+
+    @Column(name = "expires", nullable = false)
+    private OffsetDateTime expires;
+
+    public Lease() {
+    }
+
+    public Lease(String resource, String owner, OffsetDateTime acquired, OffsetDateTime expires) {
+        this.resource = resource;
+        this.owner = owner;
+        this.acquired = acquired;
+        this.expires = expires;
+    }
+
+    public String getResource() {
+        return resource;
+    }
+
+    public void setResource(String resource) {
+        this.resource = resource;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public OffsetDateTime getAcquired() {
+        return acquired;
+    }
+
+    public void setAcquired(OffsetDateTime acquired) {
+        this.acquired = acquired;
+    }
+
+    public OffsetDateTime getExpires() {
+        return expires;
+    }
+
+    public void setExpires(OffsetDateTime expires) {
+        this.expires = expires;
+    }
+
+    @Override
+    public String toString() {
+        return "Lease{" +
+            "resource='" + resource + '\'' +
+            ", owner='" + owner + '\'' +
+            ", expires=" + expires +
+            '}';
+    }
+}
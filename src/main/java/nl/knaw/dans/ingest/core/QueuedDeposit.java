@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core;
+
+import org.hibernate.annotations.Type;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.OffsetDateTime;
+
+/**
+ * A deposit in the durable task queue. A record is created when the deposit is enqueued, its state is updated when processing starts, and it is deleted
+ * when processing ends, so that deposits that were enqueued or in progress when the service stopped can be resumed when it is started again. The table
+ * therefore only holds the deposits that are still to be processed.
+ */
+@Entity
+@Table(name = "deposit_queue", indexes = {
+    @Index(name = "deposit_queue_area_idx", columnList = "area"),
+    @Index(name = "deposit_queue_target_idx", columnList = "target")
+})
+public class QueuedDeposit {
+    public enum State {
+        ENQUEUED,
+        IN_PROGRESS
+    }
+
+    @Id
+    @Column(name = "deposit_id", nullable = false, length = 36)
+    private String depositId;
+
+    @Column(name = "area", nullable = false)
+    private String area;
+
+    @Column(name = "source")
+    private String source;
+
+    @Column(name = "target")
+    private String target;
+
+    @Column(name = "deposit_path", nullable = false)
+    @Type(type = "text")
+    private String depositPath;
+
+    @Column(name = "outbox_path", nullable = false)
+    @Type(type = "text")
+    private String outboxPath;
+
+    @Column(name = "created")
+    private OffsetDateTime created;
+
+    @Column(name = "enqueued_timestamp", nullable = false)
+    private OffsetDateTime enqueuedTimestamp;
+
+    @Column(name = "state", nullable = false, length = 20)
+    private String state;
+
+    public QueuedDeposit() {
+    }
+
+    public QueuedDeposit(String depositId, String area, String source, String target, String depositPath, String outboxPath, OffsetDateTime created, OffsetDateTime enqueuedTimestamp) {
+        this.depositId = depositId;
+        this.area = area;
+        this.source = source;
+        this.target = target;
+        this.depositPath = depositPath;
+        this.outboxPath = outboxPath;
+        this.created = created;
+        this.enqueuedTimestamp = enqueuedTimestamp;
+        this.state = State.ENQUEUED.name();
+    }
+
+    public String getDepositId() {
+        return depositId;
+    }
+
+    public void setDepositId(String depositId) {
+        this.depositId = depositId;
+    }
+
+    public String getArea() {
+        return area;
+    }
+
+    public void setArea(String area) {
+        this.area = area;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public String getDepositPath() {
+        return depositPath;
+    }
+
+    public void setDepositPath(String depositPath) {
+        this.depositPath = depositPath;
+    }
+
+    public String getOutboxPath() {
+        return outboxPath;
+    }
+
+    public void setOutboxPath(String outboxPath) {
+        this.outboxPath = outboxPath;
+    }
+
+    public OffsetDateTime getCreated() {
+        return created;
+    }
+
+    public void setCreated(OffsetDateTime created) {
+        this.created = created;
+    }
+
+    public OffsetDateTime getEnqueuedTimestamp() {
+        return enqueuedTimestamp;
+    }
+
+    public void setEnqueuedTimestamp(OffsetDateTime enqueuedTimestamp) {
+        this.enqueuedTimestamp = enqueuedTimestamp;
+    }
+
+    public State getState() {
+        return State.valueOf(state);
+    }
+
+    public void setState(State state) {
+        this.state = state.name();
+    }
+}
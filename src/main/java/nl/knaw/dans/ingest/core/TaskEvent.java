@@ -32,13 +32,16 @@ public class TaskEvent {
     public enum EventType {
         ENQUEUE,
         START_PROCESSING,
-        END_PROCESSING
+        END_PROCESSING,
+        STUCK
     }
 
     public enum Result {
         OK,
         FAILED,
-        REJECTED
+        REJECTED,
+        RETRY,
+        WARNING
     }
 
     @Id
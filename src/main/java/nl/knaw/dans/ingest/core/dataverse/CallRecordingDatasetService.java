@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.dataverse;
+
+import nl.knaw.dans.ingest.core.exception.InvalidDatasetStateException;
+import nl.knaw.dans.lib.dataverse.DataverseClient;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.model.search.DatasetResultItem;
+import nl.knaw.dans.lib.dataverse.model.user.AuthenticatedUser;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Records every call to Dataverse in a {@link DataverseCallRecorder}, so that the watchdog can report the last call of a deposit that seems to be stuck.
+ * Calls made directly on the client returned by {@link #_getClient()} are not recorded; they show up in the stack of the worker thread instead.
+ */
+public class CallRecordingDatasetService implements DatasetService {
+    private final DatasetService delegate;
+    private final DataverseCallRecorder recorder;
+
+    public CallRecordingDatasetService(DatasetService delegate, DataverseCallRecorder recorder) {
+        this.delegate = delegate;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public Optional<String> getDatasetUrnNbn(String datasetId) throws IOException, DataverseException {
+        var call = recorder.start("getDatasetUrnNbn", datasetId);
+        try {
+            return delegate.getDatasetUrnNbn(datasetId);
+        }
+        finally {
+            call.finish();
+        }
+    }
+
+    @Override
+    public String getDatasetState(String datasetId) throws IOException, DataverseException {
+        var call = recorder.start("getDatasetState", datasetId);
+        try {
+            return delegate.getDatasetState(datasetId);
+        }
+        finally {
+            call.finish();
+        }
+    }
+
+    @Override
+    public void setEmbargo(String datasetId, Instant dateAvailable, Collection<Integer> fileIds) throws IOException, DataverseException {
+        var call = recorder.start("setEmbargo", datasetId);
+        try {
+            delegate.setEmbargo(datasetId, dateAvailable, fileIds);
+        }
+        finally {
+            call.finish();
+        }
+    }
+
+    @Override
+    public void waitForState(String datasetId, String state) throws InvalidDatasetStateException {
+        var call = recorder.start("waitForState", datasetId);
+        try {
+            delegate.waitForState(datasetId, state);
+        }
+        finally {
+            call.finish();
+        }
+    }
+
+    @Override
+    public void awaitUnlock(String datasetId) throws IOException, DataverseException {
+        var call = recorder.start("awaitUnlock", datasetId);
+        try {
+            delegate.awaitUnlock(datasetId);
+        }
+        finally {
+            call.finish();
+        }
+    }
+
+    @Override
+    public void releaseMigrated(String datasetId, String date) throws IOException, DataverseException {
+        var call = recorder.start("releaseMigrated", datasetId);
+        try {
+            delegate.releaseMigrated(datasetId, date);
+        }
+        finally {
+            call.finish();
+        }
+    }
+
+    @Override
+    public void publishDataset(String datasetId) throws IOException, DataverseException {
+        var call = recorder.start("publishDataset", datasetId);
+        try {
+            delegate.publishDataset(datasetId);
+        }
+        finally {
+            call.finish();
+        }
+    }
+
+    @Override
+    public Optional<AuthenticatedUser> getUserById(String userId) {
+        var call = recorder.start("getUserById", null);
+        try {
+            return delegate.getUserById(userId);
+        }
+        finally {
+            call.finish();
+        }
+    }
+
+    @Override
+    public List<String> getDatasetRoleAssignments(String userId, String datasetId) throws IOException, DataverseException {
+        var call = recorder.start("getDatasetRoleAssignments", datasetId);
+        try {
+            return delegate.getDatasetRoleAssignments(userId, datasetId);
+        }
+        finally {
+            call.finish();
+        }
+    }
+
+    @Override
+    public List<String> getDataverseRoleAssignments(String userId) throws IOException, DataverseException {
+        var call = recorder.start("getDataverseRoleAssignments", null);
+        try {
+            return delegate.getDataverseRoleAssignments(userId);
+        }
+        finally {
+            call.finish();
+        }
+    }
+
+    @Override
+    public DataverseClient _getClient() {
+        return delegate._getClient();
+    }
+
+    @Override
+    public List<DatasetResultItem> searchDatasets(String key, String value) throws IOException, DataverseException {
+        var call = recorder.start("searchDatasets", null);
+        try {
+            return delegate.searchDatasets(key, value);
+        }
+        finally {
+            call.finish();
+        }
+    }
+
+    @Override
+    public List<URI> getLicenses() throws IOException, DataverseException {
+        var call = recorder.start("getLicenses", null);
+        try {
+            return delegate.getLicenses();
+        }
+        finally {
+            call.finish();
+        }
+    }
+
+    @Override
+    public void submitForReview(String persitentId) throws IOException, DataverseException {
+        var call = recorder.start("submitForReview", persitentId);
+        try {
+            delegate.submitForReview(persitentId);
+        }
+        finally {
+            call.finish();
+        }
+    }
+
+    @Override
+    public boolean isDatasetInReview(String persitentId) throws IOException, DataverseException {
+        var call = recorder.start("isDatasetInReview", persitentId);
+        try {
+            return delegate.isDatasetInReview(persitentId);
+        }
+        finally {
+            call.finish();
+        }
+    }
+}
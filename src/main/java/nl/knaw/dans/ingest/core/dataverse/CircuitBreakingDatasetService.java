@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.dataverse;
+
+import nl.knaw.dans.ingest.core.exception.InvalidDatasetStateException;
+import nl.knaw.dans.ingest.core.service.CircuitBreaker;
+import nl.knaw.dans.lib.dataverse.DataverseClient;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.model.search.DatasetResultItem;
+import nl.knaw.dans.lib.dataverse.model.user.AuthenticatedUser;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Holds calls to Dataverse while it is known to be unavailable, and reports connection failures and gateway errors to the circuit breaker. Calls made directly
+ * on the client returned by {@link #_getClient()} are not guarded, but the editors wait for the dataset to be unlocked through this service after every
+ * step, so that they are held there.
+ */
+public class CircuitBreakingDatasetService implements DatasetService {
+    private final DatasetService delegate;
+    private final CircuitBreaker circuitBreaker;
+
+    @FunctionalInterface
+    private interface DataverseCall<T> {
+        T call() throws IOException, DataverseException;
+    }
+
+    public CircuitBreakingDatasetService(DatasetService delegate, CircuitBreaker circuitBreaker) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    static boolean isUnavailable(Throwable e) {
+        if (e instanceof DataverseException) {
+            var status = ((DataverseException) e).getStatus();
+            return status == 502 || status == 503 || status == 504;
+        }
+        return CircuitBreaker.isConnectionFailure(e);
+    }
+
+    private <T> T guarded(DataverseCall<T> call) throws IOException, DataverseException {
+        circuitBreaker.awaitClosed();
+        try {
+            var result = call.call();
+            circuitBreaker.recordSuccess();
+            return result;
+        }
+        catch (IOException | DataverseException | RuntimeException e) {
+            if (isUnavailable(e)) {
+                circuitBreaker.recordFailure(e);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<String> getDatasetUrnNbn(String datasetId) throws IOException, DataverseException {
+        return guarded(() -> delegate.getDatasetUrnNbn(datasetId));
+    }
+
+    @Override
+    public String getDatasetState(String datasetId) throws IOException, DataverseException {
+        return guarded(() -> delegate.getDatasetState(datasetId));
+    }
+
+    @Override
+    public void setEmbargo(String datasetId, Instant dateAvailable, Collection<Integer> fileIds) throws IOException, DataverseException {
+        guarded(() -> {
+            delegate.setEmbargo(datasetId, dateAvailable, fileIds);
+            return null;
+        });
+    }
+
+    @Override
+    public void waitForState(String datasetId, String state) throws InvalidDatasetStateException {
+        circuitBreaker.awaitClosed();
+        delegate.waitForState(datasetId, state);
+    }
+
+    @Override
+    public void awaitUnlock(String datasetId) throws IOException, DataverseException {
+        guarded(() -> {
+            delegate.awaitUnlock(datasetId);
+            return null;
+        });
+    }
+
+    @Override
+    public void releaseMigrated(String datasetId, String date) throws IOException, DataverseException {
+        guarded(() -> {
+            delegate.releaseMigrated(datasetId, date);
+            return null;
+        });
+    }
+
+    @Override
+    public void publishDataset(String datasetId) throws IOException, DataverseException {
+        guarded(() -> {
+            delegate.publishDataset(datasetId);
+            return null;
+        });
+    }
+
+    @Override
+    public Optional<AuthenticatedUser> getUserById(String userId) {
+        circuitBreaker.awaitClosed();
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public List<String> getDatasetRoleAssignments(String userId, String datasetId) throws IOException, DataverseException {
+        return guarded(() -> delegate.getDatasetRoleAssignments(userId, datasetId));
+    }
+
+    @Override
+    public List<String> getDataverseRoleAssignments(String userId) throws IOException, DataverseException {
+        return guarded(() -> delegate.getDataverseRoleAssignments(userId));
+    }
+
+    @Override
+    public DataverseClient _getClient() {
+        return delegate._getClient();
+    }
+
+    @Override
+    public List<DatasetResultItem> searchDatasets(String key, String value) throws IOException, DataverseException {
+        return guarded(() -> delegate.searchDatasets(key, value));
+    }
+
+    @Override
+    public List<URI> getLicenses() throws IOException, DataverseException {
+        return guarded(delegate::getLicenses);
+    }
+
+    @Override
+    public void submitForReview(String persitentId) throws IOException, DataverseException {
+        guarded(() -> {
+            delegate.submitForReview(persitentId);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean isDatasetInReview(String persitentId) throws IOException, DataverseException {
+        return guarded(() -> delegate.isDatasetInReview(persitentId));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.dataverse;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * The part of the metadata of a file in a dataset version that is needed to compare the version with a deposit: its path, database id and checksum. For
+ * datasets with many files this takes much less memory than the complete file metadata.
+ */
+public class DatasetFile {
+    private final String directoryLabel;
+    private final String label;
+    private final Integer id;
+    private final String checksumType;
+    private final String checksumValue;
+
+    public DatasetFile(String directoryLabel, String label, Integer id, String checksumType, String checksumValue) {
+        this.directoryLabel = directoryLabel;
+        this.label = label;
+        this.id = id;
+        this.checksumType = checksumType;
+        this.checksumValue = checksumValue;
+    }
+
+    public String getDirectoryLabel() {
+        return directoryLabel;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public Path getPath() {
+        return Path.of(Optional.ofNullable(directoryLabel).orElse(""), label);
+    }
+
+    /**
+     * @return the database id, or null if the file metadata has no dataFile element
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    public String getChecksumType() {
+        return checksumType;
+    }
+
+    public String getChecksumValue() {
+        return checksumValue;
+    }
+
+    @Override
+    public String toString() {
+        return "DatasetFile{path='" + getPath() + "', id=" + id + ", checksum=" + checksumType + ":" + checksumValue + "}";
+    }
+}
@@ -38,6 +38,15 @@ public interface DatasetService {
 
     void waitForState(String datasetId, String state) throws InvalidDatasetStateException;
 
+    /**
+     * Waits until the dataset has no locks.
+     *
+     * @param datasetId the persistent id of the dataset
+     * @throws IOException        if the locks cannot be retrieved
+     * @throws DataverseException if Dataverse returns an error
+     */
+    void awaitUnlock(String datasetId) throws IOException, DataverseException;
+
     void releaseMigrated(String datasetId, String date) throws IOException, DataverseException;
 
     void publishDataset(String datasetId) throws IOException, DataverseException;
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.dataverse;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Remembers the Dataverse calls made for each worker thread, so that they can be reported when the deposit processed by that thread seems to be stuck.
+ * Calls made on a pool thread on behalf of a deposit, e.g. by the checks or the file operations, are recorded for the worker thread that handed the work
+ * to the pool, if the pool was wrapped with {@link #propagating(Executor)}. Only the calls in progress and the last call per worker thread are kept, and the
+ * number of worker threads is bounded by the size of the thread pools, so this does not grow.
+ */
+public class DataverseCallRecorder {
+    private final Map<Long, Calls> calls = new ConcurrentHashMap<>();
+    private final ThreadLocal<Long> owner = new ThreadLocal<>();
+
+    private static class Calls {
+        private final Set<Call> inProgress = ConcurrentHashMap.newKeySet();
+        private volatile Call last;
+    }
+
+    public static class Call {
+        private final String operation;
+        private final String datasetId;
+        private final Instant started;
+        private final Set<Call> inProgress;
+        private volatile Instant finished;
+
+        private Call(String operation, String datasetId, Instant started, Set<Call> inProgress) {
+            this.operation = operation;
+            this.datasetId = datasetId;
+            this.started = started;
+            this.inProgress = inProgress;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public String getDatasetId() {
+            return datasetId;
+        }
+
+        public Instant getStarted() {
+            return started;
+        }
+
+        /**
+         * @return the moment the call returned or failed, or null if it is still in progress
+         */
+        public Instant getFinished() {
+            return finished;
+        }
+
+        public void finish() {
+            finished = Instant.now();
+            inProgress.remove(this);
+        }
+
+        @Override
+        public String toString() {
+            return operation + (datasetId == null ? "" : "(" + datasetId + ")") + " started at " + started
+                + (finished == null ? ", still in progress" : ", finished at " + finished);
+        }
+    }
+
+    /**
+     * Records the start of a call by the current thread, for the worker thread on whose behalf it runs. The caller must call {@link Call#finish()} when the
+     * call returns or fails.
+     *
+     * @param operation the name of the operation
+     * @param datasetId the dataset the call is about, or null
+     * @return the call
+     */
+    public Call start(String operation, String datasetId) {
+        var ownerCalls = calls.computeIfAbsent(getOwner(), id -> new Calls());
+        var call = new Call(operation, datasetId, Instant.now(), ownerCalls.inProgress);
+        ownerCalls.inProgress.add(call);
+        ownerCalls.last = call;
+        return call;
+    }
+
+    /**
+     * Returns the call to report for a worker thread: the oldest call that is still in progress, as that is the one the deposit is most likely waiting for,
+     * or else the last call that was started.
+     *
+     * @param threadId the id of the worker thread
+     * @return the call, or empty if no calls were made for the thread
+     */
+    public Optional<Call> getLastCall(long threadId) {
+        var ownerCalls = calls.get(threadId);
+        if (ownerCalls == null) {
+            return Optional.empty();
+        }
+        return ownerCalls.inProgress.stream()
+            .min(Comparator.comparing(Call::getStarted))
+            .or(() -> Optional.ofNullable(ownerCalls.last));
+    }
+
+    /**
+     * Wraps an executor so that the calls made by the work handed to it are recorded for the thread that handed over the work, instead of for the pool
+     * thread that does it.
+     *
+     * @param executor the executor to wrap
+     * @return the wrapped executor
+     */
+    public Executor propagating(Executor executor) {
+        return command -> {
+            var submitter = getOwner();
+            executor.execute(() -> {
+                var previous = owner.get();
+                owner.set(submitter);
+                try {
+                    command.run();
+                }
+                finally {
+                    if (previous == null) {
+                        owner.remove();
+                    }
+                    else {
+                        owner.set(previous);
+                    }
+                }
+            });
+        };
+    }
+
+    private long getOwner() {
+        var id = owner.get();
+        return id == null ? Thread.currentThread().getId() : id;
+    }
+}
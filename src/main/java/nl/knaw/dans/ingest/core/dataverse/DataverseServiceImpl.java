@@ -17,6 +17,7 @@ package nl.knaw.dans.ingest.core.dataverse;
 
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.ingest.core.exception.InvalidDatasetStateException;
+import nl.knaw.dans.lib.dataverse.DatasetApi;
 import nl.knaw.dans.lib.dataverse.DataverseClient;
 import nl.knaw.dans.lib.dataverse.DataverseException;
 import nl.knaw.dans.lib.dataverse.model.RoleAssignmentReadOnly;
@@ -32,6 +33,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.Date;
@@ -46,19 +48,32 @@ public class DataverseServiceImpl implements DatasetService {
     private final DataverseClient dataverseClient;
     private final int publishAwaitUnlockMillisecondsBetweenRetries;
     private final int publishAwaitUnlockMaxNumberOfRetries;
+    private final LockWatcher lockWatcher;
+    private final Duration awaitUnlockTimeout;
 
     private final SimpleDateFormat dateAvailableFormat = new SimpleDateFormat("yyyy-MM-dd");
 
     public DataverseServiceImpl(DataverseClient dataverseClient, int publishAwaitUnlockMillisecondsBetweenRetries, int publishAwaitUnlockMaxNumberOfRetries) {
+        this(dataverseClient, publishAwaitUnlockMillisecondsBetweenRetries, publishAwaitUnlockMaxNumberOfRetries, null, null);
+    }
+
+    /**
+     * @param lockWatcher        the watcher shared by all tasks to wait for datasets to be unlocked, or null to let each task poll its own dataset
+     * @param awaitUnlockTimeout the maximum time to wait for a dataset to be unlocked, other than after publishing
+     */
+    public DataverseServiceImpl(DataverseClient dataverseClient, int publishAwaitUnlockMillisecondsBetweenRetries, int publishAwaitUnlockMaxNumberOfRetries,
+        LockWatcher lockWatcher, Duration awaitUnlockTimeout) {
         this.dataverseClient = dataverseClient;
         this.publishAwaitUnlockMillisecondsBetweenRetries = publishAwaitUnlockMillisecondsBetweenRetries;
         this.publishAwaitUnlockMaxNumberOfRetries = publishAwaitUnlockMaxNumberOfRetries;
+        this.lockWatcher = lockWatcher;
+        this.awaitUnlockTimeout = awaitUnlockTimeout;
     }
 
     @Override
     public Optional<String> getDatasetUrnNbn(String datasetId) throws IOException, DataverseException {
         var dataset = dataverseClient.dataset(datasetId);
-        dataset.awaitUnlock(publishAwaitUnlockMaxNumberOfRetries, publishAwaitUnlockMillisecondsBetweenRetries);
+        awaitUnlockWithPublishTimeout(datasetId, dataset);
 
         var version = dataset.getVersion();
         var data = version.getData();
@@ -85,7 +100,7 @@ public class DataverseServiceImpl implements DatasetService {
             ArrayUtils.toPrimitive(fileIds.toArray(Integer[]::new)));
 
         api.setEmbargo(embargo);
-        api.awaitUnlock(publishAwaitUnlockMaxNumberOfRetries, publishAwaitUnlockMillisecondsBetweenRetries);
+        awaitUnlockWithPublishTimeout(datasetId, api);
     }
 
     @Override
@@ -119,13 +134,33 @@ public class DataverseServiceImpl implements DatasetService {
         }
     }
 
+    @Override
+    public void awaitUnlock(String datasetId) throws IOException, DataverseException {
+        var dataset = dataverseClient.dataset(datasetId);
+        if (lockWatcher == null) {
+            dataset.awaitUnlock();
+        }
+        else {
+            lockWatcher.awaitUnlock(datasetId, dataset, awaitUnlockTimeout);
+        }
+    }
+
+    private void awaitUnlockWithPublishTimeout(String datasetId, DatasetApi dataset) throws IOException, DataverseException {
+        if (lockWatcher == null) {
+            dataset.awaitUnlock(publishAwaitUnlockMaxNumberOfRetries, publishAwaitUnlockMillisecondsBetweenRetries);
+        }
+        else {
+            lockWatcher.awaitUnlock(datasetId, dataset, Duration.ofMillis((long) publishAwaitUnlockMaxNumberOfRetries * publishAwaitUnlockMillisecondsBetweenRetries));
+        }
+    }
+
     @Override
     public void releaseMigrated(String datasetId, String date) throws IOException, DataverseException {
         var dataset = dataverseClient.dataset(datasetId);
         var datePublishJsonLd = String.format("{\"http://schema.org/datePublished\": \"%s\"}", date);
 
         dataset.releaseMigrated(datePublishJsonLd, true);
-        dataset.awaitUnlock(publishAwaitUnlockMaxNumberOfRetries, publishAwaitUnlockMillisecondsBetweenRetries);
+        awaitUnlockWithPublishTimeout(datasetId, dataset);
     }
 
     @Override
@@ -135,7 +170,7 @@ public class DataverseServiceImpl implements DatasetService {
         if (log.isDebugEnabled()) {
             log.debug("Publish response message: {}", result.getEnvelopeAsJson().toPrettyString());
         }
-        dataset.awaitUnlock(publishAwaitUnlockMaxNumberOfRetries, publishAwaitUnlockMillisecondsBetweenRetries);
+        awaitUnlockWithPublishTimeout(datasetId, dataset);
         log.debug("Dataset {} published", datasetId);
     }
 
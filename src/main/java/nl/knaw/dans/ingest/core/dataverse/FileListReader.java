@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.dataverse;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import nl.knaw.dans.lib.dataverse.DatasetApi;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the file list of a dataset version token by token, keeping only the path, database id and checksum of each file. This avoids building a JSON tree
+ * and a complete {@link nl.knaw.dans.lib.dataverse.model.file.FileMeta} for every file, which for datasets with 100,000 files takes a lot of memory.
+ */
+public class FileListReader {
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * Gets the files of a dataset version.
+     *
+     * @param api     the dataset
+     * @param version the version, e.g., {@code :latest}
+     * @return the files, in the order returned by Dataverse
+     * @throws IOException        if the response cannot be read
+     * @throws DataverseException if Dataverse returns an error
+     */
+    public static List<DatasetFile> getFiles(DatasetApi api, String version) throws IOException, DataverseException {
+        return read(api.getFiles(version).getEnvelopeAsString());
+    }
+
+    /**
+     * Reads the files from a response envelope, i.e., a JSON object with the list of files in its {@code data} field.
+     *
+     * @param envelope the response envelope
+     * @return the files
+     * @throws IOException if the envelope is not valid JSON or has no data field with a list
+     */
+    public static List<DatasetFile> read(String envelope) throws IOException {
+        try (var parser = jsonFactory.createParser(envelope)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.getCurrentName();
+                parser.nextToken();
+                if ("data".equals(field)) {
+                    return readFiles(parser);
+                }
+                parser.skipChildren();
+            }
+            throw new IOException("Response has no data field");
+        }
+    }
+
+    private static List<DatasetFile> readFiles(JsonParser parser) throws IOException {
+        expect(parser.currentToken(), JsonToken.START_ARRAY);
+        var files = new ArrayList<DatasetFile>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            files.add(readFile(parser));
+        }
+        expect(parser.currentToken(), JsonToken.END_ARRAY);
+        return files;
+    }
+
+    private static DatasetFile readFile(JsonParser parser) throws IOException {
+        String directoryLabel = null;
+        String label = null;
+        Integer id = null;
+        String checksumType = null;
+        String checksumValue = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.getCurrentName();
+            var token = parser.nextToken();
+            if ("label".equals(field)) {
+                label = parser.getValueAsString();
+            }
+            else if ("directoryLabel".equals(field)) {
+                directoryLabel = parser.getValueAsString();
+            }
+            else if ("dataFile".equals(field) && token == JsonToken.START_OBJECT) {
+                id = -1;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    var dataFileField = parser.getCurrentName();
+                    var dataFileToken = parser.nextToken();
+                    if ("id".equals(dataFileField)) {
+                        id = parser.getValueAsInt();
+                    }
+                    else if ("checksum".equals(dataFileField) && dataFileToken == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            var checksumField = parser.getCurrentName();
+                            parser.nextToken();
+                            if ("type".equals(checksumField)) {
+                                checksumType = parser.getValueAsString();
+                            }
+                            else if ("value".equals(checksumField)) {
+                                checksumValue = parser.getValueAsString();
+                            }
+                            else {
+                                parser.skipChildren();
+                            }
+                        }
+                    }
+                    else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            else {
+                parser.skipChildren();
+            }
+        }
+        return new DatasetFile(directoryLabel, label, id, checksumType, checksumValue);
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Unexpected token in file list: expected " + expected + ", found " + actual);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.dataverse;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.lib.dataverse.DatasetApi;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for datasets to become unlocked. Instead of every task polling its own dataset in a sleep loop, all datasets that are being waited for are polled
+ * from one thread. Each dataset is polled once per poll interval, however many tasks are waiting for it, and the polls are spread out by a random jitter, so
+ * that tasks that started waiting at the same time do not poll Dataverse at the same time.
+ */
+@Slf4j
+public class LockWatcher {
+    private static final long MIN_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final long pollIntervalNanos;
+    private final double jitter;
+    private final Map<String, Watch> watches = new ConcurrentHashMap<>();
+
+    private static class Waiter {
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final long registered;
+        private final long deadline;
+
+        private Waiter(long registered, long deadline) {
+            this.registered = registered;
+            this.deadline = deadline;
+        }
+    }
+
+    private static class Watch {
+        private final DatasetApi api;
+        private final List<Waiter> waiters = new ArrayList<>();
+        private long nextPoll;
+
+        private Watch(DatasetApi api, long nextPoll) {
+            this.api = api;
+            this.nextPoll = nextPoll;
+        }
+    }
+
+    /**
+     * @param scheduler    the scheduler to poll on; a single thread is enough
+     * @param pollInterval the time between two polls of the same dataset
+     * @param jitter       the fraction of the poll interval by which a poll is moved forward or backward at random
+     */
+    public LockWatcher(ScheduledExecutorService scheduler, Duration pollInterval, double jitter) {
+        if (pollInterval.isNegative() || pollInterval.isZero()) {
+            throw new IllegalArgumentException("pollInterval must be positive");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        this.pollIntervalNanos = pollInterval.toNanos();
+        this.jitter = jitter;
+
+        // Tick more often than the poll interval, so that the jitter actually spreads the polls
+        var tick = Math.max(MIN_TICK_NANOS, pollIntervalNanos / 10);
+        scheduler.scheduleWithFixedDelay(this::pollSafely, tick, tick, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Waits until the dataset has no locks. If the dataset is not locked, and no other task is waiting for it already, this returns after a single request.
+     * The calling thread stays blocked until then: only the polling is shared, not the worker thread. Callers that can continue asynchronously should use
+     * {@link #watch(String, DatasetApi, Duration)} instead.
+     *
+     * @param persistentId the persistent id of the dataset, used to share the polls with other tasks waiting for the same dataset
+     * @param api          the dataset
+     * @param timeout      the maximum time to wait
+     * @throws IOException           if the locks cannot be retrieved, or the wait is interrupted
+     * @throws DataverseException    if Dataverse returns an error
+     * @throws IllegalStateException if the dataset is still locked after the timeout
+     */
+    public void awaitUnlock(String persistentId, DatasetApi api, Duration timeout) throws IOException, DataverseException {
+        if (!watches.containsKey(persistentId) && isUnlocked(api)) {
+            return;
+        }
+
+        var future = watch(persistentId, api, timeout);
+        try {
+            future.get();
+        }
+        catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for dataset " + persistentId + " to be unlocked");
+        }
+        catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof DataverseException) {
+                throw (DataverseException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Registers a wait for the dataset to become unlocked, without blocking. A dataset that is not watched yet is polled on the next tick, rather than after a
+     * full poll interval, so that a dataset that is not locked does not keep the caller waiting.
+     *
+     * @param persistentId the persistent id of the dataset
+     * @param api          the dataset
+     * @param timeout      the maximum time to wait
+     * @return a future that completes when the dataset has no locks, or completes exceptionally if polling fails or the timeout expires
+     */
+    public CompletableFuture<Void> watch(String persistentId, DatasetApi api, Duration timeout) {
+        var now = System.nanoTime();
+        var waiter = new Waiter(now, now + timeout.toNanos());
+        watches.compute(persistentId, (id, watch) -> {
+            var result = watch == null ? new Watch(api, now) : watch;
+            result.waiters.add(waiter);
+            return result;
+        });
+        return waiter.future;
+    }
+
+    public int getNumberOfWatchedDatasets() {
+        return watches.size();
+    }
+
+    private void pollSafely() {
+        try {
+            poll(System.nanoTime());
+        }
+        catch (RuntimeException e) {
+            // An exception would stop the scheduled polling altogether
+            log.error("Unexpected error while polling dataset locks", e);
+        }
+    }
+
+    /**
+     * Polls the datasets that are due, and completes the waiters of those that are no longer locked.
+     *
+     * @param now the current value of {@link System#nanoTime()}
+     */
+    void poll(long now) {
+        for (var entry : watches.entrySet()) {
+            var persistentId = entry.getKey();
+            var watch = entry.getValue();
+            if (watch.nextPoll - now > 0) {
+                continue;
+            }
+
+            boolean unlocked;
+            Exception error = null;
+            try {
+                unlocked = isUnlocked(watch.api);
+            }
+            catch (IOException | DataverseException | RuntimeException e) {
+                log.warn("Could not get the locks of dataset {}", persistentId, e);
+                unlocked = false;
+                error = e;
+            }
+            complete(persistentId, now, unlocked, error);
+        }
+    }
+
+    private void complete(String persistentId, long polled, boolean unlocked, Exception error) {
+        watches.computeIfPresent(persistentId, (id, watch) -> {
+            var remaining = new ArrayList<Waiter>();
+            for (var waiter : watch.waiters) {
+                if (waiter.future.isDone()) {
+                    continue;
+                }
+                // A waiter that registered after the poll started may have seen a newer lock
+                if (waiter.registered - polled > 0) {
+                    remaining.add(waiter);
+                }
+                else if (error != null) {
+                    waiter.future.completeExceptionally(error);
+                }
+                else if (unlocked) {
+                    waiter.future.complete(null);
+                }
+                else if (waiter.deadline - polled <= 0) {
+                    waiter.future.completeExceptionally(new IllegalStateException("Dataset " + persistentId + " is still locked after the wait period"));
+                }
+                else {
+                    remaining.add(waiter);
+                }
+            }
+            if (remaining.isEmpty()) {
+                log.trace("No more waiters for dataset {}", persistentId);
+                return null;
+            }
+            watch.waiters.clear();
+            watch.waiters.addAll(remaining);
+            watch.nextPoll = nextPoll(polled);
+            return watch;
+        });
+    }
+
+    private long nextPoll(long now) {
+        var offset = jitter == 0 ? 0 : ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+        return now + (long) (pollIntervalNanos * (1 + offset));
+    }
+
+    private static boolean isUnlocked(DatasetApi api) throws IOException, DataverseException {
+        return api.getLocks().getData().isEmpty();
+    }
+}
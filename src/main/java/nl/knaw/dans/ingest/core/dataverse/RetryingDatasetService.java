@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.dataverse;
+
+import nl.knaw.dans.ingest.core.exception.InvalidDatasetStateException;
+import nl.knaw.dans.ingest.core.service.RetryPolicy;
+import nl.knaw.dans.lib.dataverse.DataverseClient;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.model.search.DatasetResultItem;
+import nl.knaw.dans.lib.dataverse.model.user.AuthenticatedUser;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Retries the operations that only read from Dataverse, or that can safely be done twice, when they fail transiently. Operations that change a dataset in a
+ * way that cannot be repeated, such as publishing it, are passed on as they are.
+ */
+public class RetryingDatasetService implements DatasetService {
+    private final DatasetService delegate;
+    private final RetryPolicy defaultPolicy;
+    private final Map<String, RetryPolicy> operationPolicies;
+
+    /**
+     * @param delegate          the service to retry the operations of
+     * @param defaultPolicy     the policy for operations that have no policy of their own
+     * @param operationPolicies the policies by operation name, i.e., the name of the method
+     */
+    public RetryingDatasetService(DatasetService delegate, RetryPolicy defaultPolicy, Map<String, RetryPolicy> operationPolicies) {
+        this.delegate = delegate;
+        this.defaultPolicy = defaultPolicy;
+        this.operationPolicies = operationPolicies;
+    }
+
+    private <T> T retry(String operation, RetryPolicy.Attempt<T> attempt) throws IOException, DataverseException {
+        return operationPolicies.getOrDefault(operation, defaultPolicy).call(operation, attempt);
+    }
+
+    @Override
+    public Optional<String> getDatasetUrnNbn(String datasetId) throws IOException, DataverseException {
+        return retry("getDatasetUrnNbn", () -> delegate.getDatasetUrnNbn(datasetId));
+    }
+
+    @Override
+    public String getDatasetState(String datasetId) throws IOException, DataverseException {
+        return retry("getDatasetState", () -> delegate.getDatasetState(datasetId));
+    }
+
+    @Override
+    public void setEmbargo(String datasetId, Instant dateAvailable, Collection<Integer> fileIds) throws IOException, DataverseException {
+        delegate.setEmbargo(datasetId, dateAvailable, fileIds);
+    }
+
+    @Override
+    public void waitForState(String datasetId, String state) throws InvalidDatasetStateException {
+        delegate.waitForState(datasetId, state);
+    }
+
+    @Override
+    public void awaitUnlock(String datasetId) throws IOException, DataverseException {
+        retry("awaitUnlock", () -> {
+            delegate.awaitUnlock(datasetId);
+            return null;
+        });
+    }
+
+    @Override
+    public void releaseMigrated(String datasetId, String date) throws IOException, DataverseException {
+        delegate.releaseMigrated(datasetId, date);
+    }
+
+    @Override
+    public void publishDataset(String datasetId) throws IOException, DataverseException {
+        delegate.publishDataset(datasetId);
+    }
+
+    @Override
+    public Optional<AuthenticatedUser> getUserById(String userId) {
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public List<String> getDatasetRoleAssignments(String userId, String datasetId) throws IOException, DataverseException {
+        return retry("getDatasetRoleAssignments", () -> delegate.getDatasetRoleAssignments(userId, datasetId));
+    }
+
+    @Override
+    public List<String> getDataverseRoleAssignments(String userId) throws IOException, DataverseException {
+        return retry("getDataverseRoleAssignments", () -> delegate.getDataverseRoleAssignments(userId));
+    }
+
+    @Override
+    public DataverseClient _getClient() {
+        return delegate._getClient();
+    }
+
+    @Override
+    public List<DatasetResultItem> searchDatasets(String key, String value) throws IOException, DataverseException {
+        return retry("searchDatasets", () -> delegate.searchDatasets(key, value));
+    }
+
+    @Override
+    public List<URI> getLicenses() throws IOException, DataverseException {
+        return retry("getLicenses", delegate::getLicenses);
+    }
+
+    @Override
+    public void submitForReview(String persitentId) throws IOException, DataverseException {
+        delegate.submitForReview(persitentId);
+    }
+
+    @Override
+    public boolean isDatasetInReview(String persitentId) throws IOException, DataverseException {
+        return retry("isDatasetInReview", () -> delegate.isDatasetInReview(persitentId));
+    }
+}
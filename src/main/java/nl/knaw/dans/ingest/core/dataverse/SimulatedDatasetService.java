@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.dataverse;
+
+import nl.knaw.dans.ingest.core.exception.InvalidDatasetStateException;
+import nl.knaw.dans.ingest.core.simulation.Simulation;
+import nl.knaw.dans.ingest.core.simulation.Simulation.Operation;
+import nl.knaw.dans.lib.dataverse.DataverseClient;
+import nl.knaw.dans.lib.dataverse.model.search.DatasetResultItem;
+import nl.knaw.dans.lib.dataverse.model.user.AuthenticatedUser;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stands in for Dataverse in a dry run. Every method waits for the simulated latency of the operation. The state of the datasets is kept in memory. A
+ * dataset that is searched for is always found, and is released unless it was changed in this dry run. The depositor has every role, so that deposits are
+ * published.
+ */
+public class SimulatedDatasetService implements DatasetService {
+    private static final String DOI_PREFIX = "doi:10.5072/SIMULATION-";
+
+    private final Simulation simulation;
+    private final List<String> roles;
+    private final Map<String, String> states = new ConcurrentHashMap<>();
+
+    public SimulatedDatasetService(Simulation simulation, List<String> roles) {
+        this.simulation = simulation;
+        this.roles = roles;
+    }
+
+    public Simulation getSimulation() {
+        return simulation;
+    }
+
+    public String createDataset() {
+        simulation.call(Operation.CREATE_DATASET);
+        var persistentId = DOI_PREFIX + UUID.randomUUID();
+        states.put(persistentId, "DRAFT");
+        return persistentId;
+    }
+
+    public void importDataset(String persistentId) {
+        simulation.call(Operation.CREATE_DATASET);
+        states.put(persistentId, "DRAFT");
+    }
+
+    public void createDraft(String persistentId) {
+        states.put(persistentId, "DRAFT");
+    }
+
+    @Override
+    public Optional<String> getDatasetUrnNbn(String datasetId) {
+        simulation.call(Operation.GET_URN);
+        return Optional.of("urn:nbn:nl:ui:13-" + UUID.nameUUIDFromBytes(datasetId.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public String getDatasetState(String datasetId) {
+        simulation.call(Operation.GET_DATASET_STATE);
+        return states.getOrDefault(datasetId, "RELEASED");
+    }
+
+    @Override
+    public void setEmbargo(String datasetId, Instant dateAvailable, Collection<Integer> fileIds) {
+        simulation.call(Operation.SET_EMBARGO);
+    }
+
+    @Override
+    public void waitForState(String datasetId, String state) throws InvalidDatasetStateException {
+        var current = getDatasetState(datasetId);
+        if (!state.equals(current)) {
+            throw new InvalidDatasetStateException(String.format(
+                "Dataset did not become %s within the wait period; current state is %s", state, current
+            ));
+        }
+    }
+
+    @Override
+    public void awaitUnlock(String datasetId) {
+        simulation.call(Operation.GET_LOCKS);
+    }
+
+    @Override
+    public void releaseMigrated(String datasetId, String date) {
+        publishDataset(datasetId);
+    }
+
+    @Override
+    public void publishDataset(String datasetId) {
+        simulation.call(Operation.PUBLISH);
+        states.put(datasetId, "RELEASED");
+    }
+
+    @Override
+    public Optional<AuthenticatedUser> getUserById(String userId) {
+        simulation.call(Operation.GET_USER);
+        var user = new AuthenticatedUser();
+        user.setIdentifier("@" + userId);
+        user.setDisplayName(userId);
+        user.setEmail(userId + "@example.org");
+        return Optional.of(user);
+    }
+
+    @Override
+    public List<String> getDatasetRoleAssignments(String userId, String datasetId) {
+        simulation.call(Operation.GET_ROLE_ASSIGNMENTS);
+        return roles;
+    }
+
+    @Override
+    public List<String> getDataverseRoleAssignments(String userId) {
+        simulation.call(Operation.GET_ROLE_ASSIGNMENTS);
+        return roles;
+    }
+
+    /**
+     * There is no client in a dry run; the simulated editors do not use it.
+     */
+    @Override
+    public DataverseClient _getClient() {
+        return null;
+    }
+
+    @Override
+    public List<DatasetResultItem> searchDatasets(String key, String value) {
+        simulation.call(Operation.SEARCH_DATASETS);
+        var item = new DatasetResultItem();
+        item.setGlobalId(DOI_PREFIX + UUID.nameUUIDFromBytes((key + ":" + value).getBytes(StandardCharsets.UTF_8)));
+        return List.of(item);
+    }
+
+    @Override
+    public List<URI> getLicenses() {
+        simulation.call(Operation.GET_LICENSES);
+        return List.of();
+    }
+
+    @Override
+    public void submitForReview(String persistentId) {
+        simulation.call(Operation.SUBMIT_FOR_REVIEW);
+        states.put(persistentId, "INREVIEW");
+    }
+
+    @Override
+    public boolean isDatasetInReview(String persistentId) {
+        simulation.call(Operation.GET_LOCKS);
+        return "INREVIEW".equals(states.get(persistentId));
+    }
+}
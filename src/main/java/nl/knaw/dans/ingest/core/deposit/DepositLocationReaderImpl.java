@@ -19,6 +19,7 @@ import gov.loc.repository.bagit.domain.Metadata;
 import gov.loc.repository.bagit.exceptions.InvalidBagitFileFormatException;
 import gov.loc.repository.bagit.exceptions.UnparsableVersionException;
 import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.ingest.core.domain.DepositLocation;
 import nl.knaw.dans.ingest.core.exception.InvalidDepositException;
 import nl.knaw.dans.ingest.core.exception.MissingTargetException;
@@ -28,11 +29,14 @@ import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeParseException;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
+@Slf4j
 @AllArgsConstructor
 public class DepositLocationReaderImpl implements DepositLocationReader {
     private final BagDataManager bagDataManager;
@@ -45,7 +49,9 @@ public class DepositLocationReaderImpl implements DepositLocationReader {
             var target = getTarget(properties);
             var created = getCreated(properties);
 
-            return new DepositLocation(depositDir, target, depositId.toString(), created);
+            var location = new DepositLocation(depositDir, target, depositId.toString(), created);
+            readBagInfo(location);
+            return location;
         }
         catch (ConfigurationException e) {
             throw new InvalidDepositException("Deposit.properties file could not be read", e);
@@ -84,6 +90,82 @@ public class DepositLocationReaderImpl implements DepositLocationReader {
         }
     }
 
+    /*
+     * Estimates the size of the deposit, so that large deposits can be scheduled in their own lane, and finds out whether it is an update deposit (Is-Version-Of
+     * in bag-info.txt), so that queued updates of the same dataset can be combined. For the size, the Payload-Oxum in bag-info.txt is used if present;
+     * otherwise the entries in the payload manifest are counted and the sizes of their files added up. This is only used for scheduling, so if the bag cannot be
+     * read, the size is left unknown and the deposit is not combined with others; the deposit is validated as usual when it is processed.
+     */
+    void readBagInfo(DepositLocation location) {
+        try (var children = Files.list(location.getDir())) {
+            var bagDirs = children.filter(Files::isDirectory).collect(Collectors.toList());
+            if (bagDirs.size() != 1) {
+                return;
+            }
+            var bagDir = bagDirs.get(0);
+            var metadata = bagDataManager.readBagMetadata(bagDir);
+            location.setUpdate(isUpdate(metadata));
+            var oxum = getPayloadOxum(metadata);
+
+            if (oxum != null) {
+                location.setPayloadSize(oxum[0]);
+                location.setNumberOfFiles(oxum[1]);
+            }
+            else {
+                estimateSizeFromManifest(bagDir, location);
+            }
+        }
+        catch (IOException | UnparsableVersionException | InvalidBagitFileFormatException | RuntimeException e) {
+            log.debug("Could not estimate size of deposit {}", location.getDir(), e);
+        }
+    }
+
+    private boolean isUpdate(Metadata metadata) {
+        var values = metadata == null ? null : metadata.get("Is-Version-Of");
+        return values != null && values.stream().anyMatch(StringUtils::isNotBlank);
+    }
+
+    private long[] getPayloadOxum(Metadata metadata) {
+        var values = metadata == null ? null : metadata.get("Payload-Oxum");
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        var parts = values.get(0).trim().split("\\.");
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            return new long[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]) };
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void estimateSizeFromManifest(Path bagDir, DepositLocation location) throws IOException {
+        try (var tagFiles = Files.list(bagDir)) {
+            var manifest = tagFiles.filter(f -> f.getFileName().toString().matches("manifest-.+\\.txt")).findFirst();
+            if (manifest.isEmpty()) {
+                return;
+            }
+            try (var lines = Files.lines(manifest.get())) {
+                var files = lines
+                    .map(line -> line.split("\\s+", 2))
+                    .filter(parts -> parts.length == 2)
+                    .map(parts -> bagDir.resolve(parts[1]))
+                    .collect(Collectors.toList());
+                var payloadSize = 0L;
+                for (var file : files) {
+                    if (Files.isRegularFile(file)) {
+                        payloadSize += Files.size(file);
+                    }
+                }
+                location.setPayloadSize(payloadSize);
+                location.setNumberOfFiles(files.size());
+            }
+        }
+    }
+
     OffsetDateTime getCreated(Configuration properties) throws InvalidDepositException {
         try {
             var created = properties.getString("creation.timestamp");
@@ -25,6 +25,10 @@ import java.time.OffsetDateTime;
 /**
  * This class represents the location of a deposit that was done in one of the inboxes. It is intended to be a lightweight pointer to the deposit to be used for enqueuing a large number of deposits
  * without incurring the overhead of loading all the deposit metadata into memory.
+ *
+ * The payload size and number of files are estimates taken from the bag when the deposit is found; they are used to schedule large deposits in a separate lane. A
+ * value of 0 means that the size is not known. Whether the deposit is an update of an existing dataset is also taken from the bag, so that queued update deposits
+ * for the same dataset can be combined before they are read.
  */
 @Data
 @NoArgsConstructor
@@ -34,4 +38,11 @@ public class DepositLocation {
     private String target;
     private String depositId;
     private OffsetDateTime created;
+    private long payloadSize;
+    private long numberOfFiles;
+    private boolean update;
+
+    public DepositLocation(Path dir, String target, String depositId, OffsetDateTime created) {
+        this(dir, target, depositId, created, 0, 0, false);
+    }
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of tasks per ingest area that are enqueued and not yet finished (in flight). When the number of tasks in flight for an area reaches
+ * the high-water mark, the area is paused: {@link #admit(String)} blocks until enough tasks have finished to bring the number down to the low-water mark.
+ * So, nothing is dropped, but an enqueuer cannot get further ahead of the workers than the high-water mark. Each area is paused on its own, so that a
+ * large batch in one area does not hold up the enqueuing of deposits in another.
+ *
+ * The controller is a {@link TaskLifecycleListener}, so that it is notified by the {@link TargetedTaskSequenceManager} when a task is finished. A task
+ * that is admitted but not scheduled must be returned with {@link #release(String)}.
+ */
+public class AdmissionController implements TaskLifecycleListener {
+    private static final Logger log = LoggerFactory.getLogger(AdmissionController.class);
+
+    private final int highWaterMark;
+    private final int lowWaterMark;
+    private final MetricRegistry metricRegistry;
+    private final Map<String, AreaAdmission> areas = new LinkedHashMap<>();
+
+    public AdmissionController(int highWaterMark, int lowWaterMark, MetricRegistry metricRegistry) {
+        if (highWaterMark < 1) {
+            throw new IllegalArgumentException("highWaterMark must be at least 1");
+        }
+        if (lowWaterMark < 0 || lowWaterMark >= highWaterMark) {
+            throw new IllegalArgumentException(String.format("lowWaterMark (%d) must be at least 0 and less than highWaterMark (%d)", lowWaterMark, highWaterMark));
+        }
+        this.highWaterMark = highWaterMark;
+        this.lowWaterMark = lowWaterMark;
+        this.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * Admits a task for the area, waiting while the area is paused.
+     *
+     * @param area the ingest area
+     * @throws InterruptedException if the thread is interrupted while waiting; the task is then not admitted
+     */
+    public synchronized void admit(String area) throws InterruptedException {
+        var admission = getOrCreateArea(area);
+
+        if (admission.paused) {
+            var start = System.nanoTime();
+            log.debug("Area {} is paused with {} tasks in flight; waiting", area, admission.inFlight);
+            while (admission.paused) {
+                wait();
+            }
+            if (admission.blockedTime != null) {
+                admission.blockedTime.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        admission.inFlight++;
+        if (admission.inFlight >= highWaterMark) {
+            log.info("Area {} reached the high-water mark of {} tasks in flight; pausing enqueuing", area, highWaterMark);
+            admission.paused = true;
+            admission.pausedSince = System.nanoTime();
+        }
+    }
+
+    /**
+     * Returns the admission of a task that was not scheduled or has finished.
+     *
+     * @param area the ingest area
+     */
+    public synchronized void release(String area) {
+        var admission = getOrCreateArea(area);
+
+        if (admission.inFlight == 0) {
+            log.warn("Release for area {} without admission; ignoring", area);
+            return;
+        }
+        admission.inFlight--;
+        admission.lastReleased = System.nanoTime();
+        if (admission.paused && admission.inFlight <= lowWaterMark) {
+            log.info("Area {} is down to the low-water mark of {} tasks in flight; resuming enqueuing", area, lowWaterMark);
+            admission.paused = false;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void onFinished(String area, TargetedTask task) {
+        release(area);
+    }
+
+    public synchronized int getInFlight(String area) {
+        var admission = areas.get(area);
+        return admission == null ? 0 : admission.inFlight;
+    }
+
+    /**
+     * @param area the ingest area
+     * @return how long the area has been paused, or empty if it is not paused
+     */
+    public synchronized Optional<Duration> getPausedTime(String area) {
+        var admission = areas.get(area);
+        if (admission == null || !admission.paused) {
+            return Optional.empty();
+        }
+        return Optional.of(Duration.ofNanos(System.nanoTime() - admission.pausedSince));
+    }
+
+    /**
+     * Returns how long a paused area has been waiting for a task to finish. This is the time since the last release, or since the area was paused if no
+     * task has finished since then. As the tasks of a large batch keep finishing, this stays short even if the area is paused for a long time.
+     *
+     * @param area the ingest area
+     * @return how long no task of the paused area has finished, or empty if the area is not paused
+     */
+    public synchronized Optional<Duration> getTimeSinceLastRelease(String area) {
+        var admission = areas.get(area);
+        if (admission == null || !admission.paused) {
+            return Optional.empty();
+        }
+        var since = admission.lastReleased - admission.pausedSince > 0 ? admission.lastReleased : admission.pausedSince;
+        return Optional.of(Duration.ofNanos(System.nanoTime() - since));
+    }
+
+    public synchronized Map<String, Integer> getInFlightPerArea() {
+        var result = new LinkedHashMap<String, Integer>();
+        areas.forEach((name, admission) -> result.put(name, admission.inFlight));
+        return result;
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    private AreaAdmission getOrCreateArea(String area) {
+        return areas.computeIfAbsent(area, this::createArea);
+    }
+
+    private AreaAdmission createArea(String area) {
+        var admission = new AreaAdmission();
+        if (metricRegistry != null) {
+            metricRegistry.register(MetricRegistry.name(AdmissionController.class, area, "in-flight"), (Gauge<Integer>) () -> getInFlight(area));
+            metricRegistry.register(MetricRegistry.name(AdmissionController.class, area, "paused"), (Gauge<Boolean>) () -> getPausedTime(area).isPresent());
+            admission.blockedTime = metricRegistry.timer(MetricRegistry.name(AdmissionController.class, area, "blocked-time"));
+        }
+        return admission;
+    }
+
+    private static class AreaAdmission {
+        private int inFlight = 0;
+        private boolean paused = false;
+        private long pausedSince;
+        private long lastReleased;
+        private Timer blockedTime;
+    }
+}
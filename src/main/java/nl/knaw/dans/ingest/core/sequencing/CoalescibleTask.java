@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import java.util.List;
+
+/**
+ * A task that can be processed together with the tasks that are queued after it for the same target. If coalescing is enabled in the
+ * {@link TargetedTaskSequenceManager}, the sequencer hands the consecutive queued tasks that this task can be coalesced with to {@link #runCoalesced(List)},
+ * instead of running them one by one.
+ */
+public interface CoalescibleTask extends TargetedTask {
+
+    boolean canCoalesceWith(TargetedTask other);
+
+    /**
+     * Processes this task together with the given tasks, which were queued after it for the same target.
+     *
+     * @param laterTasks the tasks queued after this task, in order; for each of them {@link #canCoalesceWith(TargetedTask)} returned true
+     */
+    void runCoalesced(List<TargetedTask> laterTasks);
+}
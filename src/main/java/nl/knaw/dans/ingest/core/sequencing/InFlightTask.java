@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import java.time.Instant;
+
+/**
+ * A task that is being processed, together with the ingest area it came from, the thread that processes it and the moment it was started.
+ */
+public class InFlightTask {
+    private final String area;
+    private final TargetedTask task;
+    private final Thread thread;
+    private final Instant started;
+
+    InFlightTask(String area, TargetedTask task, Thread thread, Instant started) {
+        this.area = area;
+        this.task = task;
+        this.thread = thread;
+        this.started = started;
+    }
+
+    public String getArea() {
+        return area;
+    }
+
+    public TargetedTask getTask() {
+        return task;
+    }
+
+    public String getThread() {
+        return thread.getName();
+    }
+
+    public long getThreadId() {
+        return thread.getId();
+    }
+
+    /**
+     * Returns the stack of the thread that processes the task, as it is now. If the task has finished in the meantime, this is the stack of whatever the
+     * thread is doing next.
+     *
+     * @return the stack trace
+     */
+    public StackTraceElement[] getStackTrace() {
+        return thread.getStackTrace();
+    }
+
+    public Instant getStarted() {
+        return started;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+/**
+ * A task with a preparation stage that does not depend on the tasks queued before it for the same target, such as reading and validating a deposit. If a
+ * prepare executor is set on the {@link TargetedTaskSequenceManager}, the preparation is run ahead on that executor while the task is waiting in its
+ * sequencer, so that it overlaps with the processing of other tasks.
+ *
+ * The task must do the preparation at most once. If {@link #run()} is called while the preparation is in progress it must wait for it; if the preparation was
+ * not started yet, {@link #run()} does the work itself and a later call to {@link #prepare()} must do nothing.
+ */
+public interface PreparableTask extends TargetedTask {
+
+    void prepare();
+}
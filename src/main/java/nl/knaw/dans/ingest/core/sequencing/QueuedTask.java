@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import java.time.Instant;
+
+/**
+ * A task waiting in the queue of a {@link TargetedTaskSequencer}, together with the ingest area it was enqueued from and the moment it was enqueued.
+ */
+class QueuedTask {
+    private final String area;
+    private final TargetedTask task;
+    private final Instant enqueued = Instant.now();
+    private volatile boolean startedBefore;
+
+    QueuedTask(String area, TargetedTask task) {
+        this.area = area;
+        this.task = task;
+    }
+
+    Instant getEnqueued() {
+        return enqueued;
+    }
+
+    /**
+     * Marks the task as started.
+     *
+     * @return true if this is the first time the task is started, false if it is started again after it asked to be retried
+     */
+    boolean markStarted() {
+        var first = !startedBefore;
+        startedBefore = true;
+        return first;
+    }
+
+    String getArea() {
+        return area;
+    }
+
+    TargetedTask getTask() {
+        return task;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * A task that can ask to be run again later, because it failed in a way that may not happen again, such as a time-out of a service it depends on. The task is
+ * put back at the front of the queue of its target, so that it is not overtaken by later tasks for the same target, and the target is processed again after
+ * the delay. In the meantime the task does not use a worker slot, and it is not reported as finished.
+ */
+public interface RetryableTask extends TargetedTask {
+
+    /**
+     * Returns the delay after which the task wants to be run again. This is asked after each run of the task on its own; tasks that are run coalesced are
+     * not retried.
+     *
+     * @return the delay, or empty if the task is finished
+     */
+    Optional<Duration> getRetryDelay();
+}
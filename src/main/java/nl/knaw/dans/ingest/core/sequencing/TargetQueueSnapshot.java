@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import java.time.Instant;
+
+/**
+ * The state of the queue of one target at one moment: the task that is being processed, if any, and the tasks waiting behind it. As the snapshot is taken
+ * without locking, the fields may be a few moments apart.
+ */
+public class TargetQueueSnapshot {
+    private final String target;
+    private final int queueLength;
+    private final Instant oldestWaitingSince;
+    private final InFlightTask running;
+
+    TargetQueueSnapshot(String target, int queueLength, Instant oldestWaitingSince, InFlightTask running) {
+        this.target = target;
+        this.queueLength = queueLength;
+        this.oldestWaitingSince = oldestWaitingSince;
+        this.running = running;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the number of tasks waiting, not counting the task that is being processed
+     */
+    public int getQueueLength() {
+        return queueLength;
+    }
+
+    /**
+     * @return the moment the task at the head of the queue was enqueued, or null if no task is waiting
+     */
+    public Instant getOldestWaitingSince() {
+        return oldestWaitingSince;
+    }
+
+    /**
+     * @return the task that is being processed, or null if none
+     */
+    public InFlightTask getRunning() {
+        return running;
+    }
+}
@@ -18,6 +18,7 @@ package nl.knaw.dans.ingest.core.sequencing;
 import nl.knaw.dans.ingest.core.TaskEvent;
 
 import java.nio.file.Path;
+import java.time.Instant;
 
 public interface TargetedTask extends Runnable {
 
@@ -26,4 +27,40 @@ public interface TargetedTask extends Runnable {
     Path getDepositPath();
 
     void writeEvent(TaskEvent.EventType eventType, TaskEvent.Result result, String message);
+
+    /**
+     * Returns the estimated number of payload bytes the task processes. This is used to run large tasks in a separate lane of the {@link WeightedFairScheduler}.
+     *
+     * @return the number of bytes, or 0 if not known
+     */
+    default long getPayloadSize() {
+        return 0;
+    }
+
+    /**
+     * Returns the estimated number of payload files the task processes.
+     *
+     * @return the number of files, or 0 if not known
+     */
+    default long getNumberOfFiles() {
+        return 0;
+    }
+
+    /**
+     * Returns what the task is doing at the moment, for reporting on the tasks that are in flight.
+     *
+     * @return a short name of the stage, or null if not known
+     */
+    default String getStage() {
+        return null;
+    }
+
+    /**
+     * Returns the moment the task entered its current stage.
+     *
+     * @return the moment, or null if not known
+     */
+    default Instant getStageStarted() {
+        return null;
+    }
 }
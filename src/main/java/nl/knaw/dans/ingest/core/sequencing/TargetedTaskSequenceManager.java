@@ -15,45 +15,380 @@
  */
 package nl.knaw.dans.ingest.core.sequencing;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedHashMap;
-import java.util.concurrent.ExecutorService;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Manages the process of ingesting deposits in the correct order by ensuring that deposits that target the same dataset are not concurrently scheduled on different threads. If an unfinished deposit
- * for the same dataset is still present, the next deposit for that dataset will be queued on the same thread, ensuring that it cannot overtake the already processing deposit.
+ * for the same dataset is still present, the next deposit for that dataset will be queued in the same sequencer, ensuring that it cannot overtake the already processing deposit.
+ *
+ * The sequencers are handed to a {@link WeightedFairScheduler} once for every task they hold, so that the worker slots are shared fairly between the ingest areas.
+ *
+ * A deposit that is already enqueued or in progress is not scheduled a second time. This happens, for example, when deposits that were resumed after a restart are
+ * found again by a scan of the inbox.
+ *
+ * When several instances of the service share the same inboxes, a {@link TaskCoordinator} makes sure that a deposit is scheduled by only one instance, and that
+ * the tasks for one target are processed by only one instance at a time. A sequencer acquires its target before it runs its first task, and releases it when
+ * it has no more tasks. If another instance holds the target, the sequencer is submitted again after a delay, without using a worker slot in the meantime.
+ *
+ * If a prepare executor is set, the preparation of a {@link PreparableTask} is started on that executor as soon as the task is scheduled. Only the
+ * preparation runs ahead; the tasks themselves are still run in order per target. The number of tasks that are prepared ahead and not yet finished is
+ * limited, because a prepared task keeps its deposit in memory.
+ *
+ * The tasks that are being processed can be listed with {@link #getInFlightTasks()}, for example to see what is still running while dispatching is paused.
+ * The queues of the targets can be inspected with {@link #getTargetQueueSnapshots()}. Neither takes the lock of the manager, so that inspecting a large
+ * backlog does not hold up the scheduling of tasks.
  */
 public class TargetedTaskSequenceManager {
     private static final Logger log = LoggerFactory.getLogger(TargetedTaskSequenceManager.class);
-    private final LinkedHashMap<String, TargetedTaskSequencer> sequencers = new LinkedHashMap<>();
-    private final ExecutorService executorService;
+    // Changed under the lock of the manager, but read without it for inspection
+    private final Map<String, TargetedTaskSequencer> sequencers = new ConcurrentHashMap<>();
+    private final Set<Path> scheduledDeposits = new HashSet<>();
+    private final Set<String> acquiredTargets = new HashSet<>();
+    private final Set<Path> preparedDeposits = new HashSet<>();
+    private final Map<Path, InFlightTask> inFlightTasks = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timeInQueue = new ConcurrentHashMap<>();
+    private final WeightedFairScheduler scheduler;
+    private final TaskLifecycleListener listener;
+    private final TaskCoordinator coordinator;
+    private ScheduledExecutorService retryExecutor;
+    private volatile int maxCoalescedTasks = 1;
+    private Executor prepareExecutor;
+    private int maxPreparedTasks;
+    private volatile MetricRegistry metricRegistry;
+
+    public TargetedTaskSequenceManager(WeightedFairScheduler scheduler) {
+        this(scheduler, TaskLifecycleListener.NONE);
+    }
+
+    public TargetedTaskSequenceManager(WeightedFairScheduler scheduler, TaskLifecycleListener listener) {
+        this(scheduler, listener, TaskCoordinator.LOCAL);
+    }
+
+    public TargetedTaskSequenceManager(WeightedFairScheduler scheduler, TaskLifecycleListener listener, TaskCoordinator coordinator) {
+        this.scheduler = scheduler;
+        this.listener = listener;
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * Enables coalescing of consecutive queued tasks for the same target (see {@link CoalescibleTask}).
+     *
+     * @param maxCoalescedTasks the maximum number of tasks that are processed together; 1 disables coalescing
+     */
+    public void setMaxCoalescedTasks(int maxCoalescedTasks) {
+        if (maxCoalescedTasks < 1) {
+            throw new IllegalArgumentException("maxCoalescedTasks must be at least 1");
+        }
+        this.maxCoalescedTasks = maxCoalescedTasks;
+    }
+
+    int getMaxCoalescedTasks() {
+        return maxCoalescedTasks;
+    }
+
+    /**
+     * Registers metrics for the number of targets with tasks, the age of the oldest waiting task and, per area, the time that tasks wait in the queue of their
+     * target before they are started.
+     *
+     * @param metricRegistry the registry
+     */
+    public void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+        metricRegistry.register(MetricRegistry.name(TargetedTaskSequenceManager.class, "active-targets"), (Gauge<Integer>) sequencers::size);
+        metricRegistry.register(MetricRegistry.name(TargetedTaskSequenceManager.class, "oldest-waiting-age-seconds"),
+            (Gauge<Long>) () -> getOldestWaitingSince().map(t -> Duration.between(t, Instant.now()).toSeconds()).orElse(0L));
+    }
 
-    public TargetedTaskSequenceManager(ExecutorService executorService) {
-        this.executorService = executorService;
+    /**
+     * Enables preparing tasks ahead (see {@link PreparableTask}).
+     *
+     * @param prepareExecutor  the executor to run the preparations on
+     * @param maxPreparedTasks the maximum number of tasks that are prepared ahead and not yet finished
+     */
+    public synchronized void setPrepareExecutor(Executor prepareExecutor, int maxPreparedTasks) {
+        if (maxPreparedTasks < 1) {
+            throw new IllegalArgumentException("maxPreparedTasks must be at least 1");
+        }
+        this.prepareExecutor = prepareExecutor;
+        this.maxPreparedTasks = maxPreparedTasks;
+    }
+
+    /**
+     * Sets the executor on which sequencers are submitted again after a delay, when their first task asked to be tried again later or their target is
+     * processed by another instance. If it is not set, a daemon thread is started for this when it is first needed.
+     *
+     * @param retryExecutor the executor; a single thread is enough
+     */
+    public synchronized void setRetryExecutor(ScheduledExecutorService retryExecutor) {
+        this.retryExecutor = retryExecutor;
+    }
+
+    /**
+     * Schedules a task for processing.
+     *
+     * @param area         the ingest area the task comes from
+     * @param targetedTask the task
+     * @return true if the task was scheduled, false if a task for the same deposit was already enqueued or in progress, or if another instance claimed the deposit
+     */
+    public boolean scheduleTask(String area, TargetedTask targetedTask) {
+        synchronized (this) {
+            if (!scheduledDeposits.add(targetedTask.getDepositPath())) {
+                log.warn("Deposit {} is already enqueued or in progress; not scheduling it again", targetedTask.getDepositPath());
+                return false;
+            }
+        }
+
+        if (!coordinator.claimDeposit(targetedTask)) {
+            log.info("Deposit {} is claimed by another instance; not scheduling it", targetedTask.getDepositPath());
+            synchronized (this) {
+                scheduledDeposits.remove(targetedTask.getDepositPath());
+            }
+            return false;
+        }
+
+        // Outside the lock, as the listener may be slow (e.g., write to the database). The task cannot start before it is added to a sequencer below.
+        notifyListener("onEnqueued", () -> listener.onEnqueued(area, targetedTask));
+        addToSequencer(area, targetedTask);
+        prepareAhead(targetedTask);
+        return true;
+    }
+
+    private void prepareAhead(TargetedTask targetedTask) {
+        if (!(targetedTask instanceof PreparableTask)) {
+            return;
+        }
+
+        Executor executor;
+        synchronized (this) {
+            if (prepareExecutor == null) {
+                return;
+            }
+            if (preparedDeposits.size() >= maxPreparedTasks) {
+                log.debug("Already {} tasks prepared ahead; {} will be prepared when it is run", preparedDeposits.size(), targetedTask.getDepositPath());
+                return;
+            }
+            preparedDeposits.add(targetedTask.getDepositPath());
+            executor = prepareExecutor;
+        }
+
+        try {
+            executor.execute(() -> prepare((PreparableTask) targetedTask));
+        }
+        catch (RejectedExecutionException e) {
+            log.warn("Prepare executor rejected {}; it will be prepared when it is run", targetedTask.getDepositPath());
+            synchronized (this) {
+                preparedDeposits.remove(targetedTask.getDepositPath());
+            }
+        }
+    }
+
+    private void prepare(PreparableTask task) {
+        try {
+            log.debug("Preparing task {}", task);
+            task.prepare();
+        }
+        catch (Exception e) {
+            log.error("Preparation of task {} failed", task, e);
+        }
     }
 
-    public synchronized void scheduleTask(TargetedTask targetedTask) {
-        log.trace("Scheduling targeted task {}", targetedTask);
+    private synchronized void addToSequencer(String area, TargetedTask targetedTask) {
+        log.trace("Scheduling targeted task {} for area {}", targetedTask, area);
         // TODO: Use Is-Version-Of in autoIngest service (DOI is not available there)
         var sequencer = sequencers.get(targetedTask.getTarget());
 
         if (sequencer == null) {
             log.debug("Creating NEW sequencer for target {}", targetedTask.getTarget());
-            sequencer = new TargetedTaskSequencer(this, targetedTask);
+            sequencer = new TargetedTaskSequencer(this, targetedTask.getTarget());
+            sequencer.enqueue(area, targetedTask);
             sequencers.put(targetedTask.getTarget(), sequencer);
-            executorService.execute(sequencer);
+            submit(area, sequencer);
         }
         else {
             log.debug("Using EXISTING sequencer for target {}", targetedTask.getTarget());
-            sequencer.enqueue(targetedTask);
+            sequencer.enqueue(area, targetedTask);
         }
     }
 
-    synchronized void removeSequencer(TargetedTaskSequencer sequencer) {
-        log.trace("Removing sequencer for target {}", sequencer.getTarget());
-        sequencers.remove(sequencer.getTarget());
+    /**
+     * Returns the tasks that are being processed, in the order in which they were started.
+     *
+     * @return the tasks
+     */
+    public List<InFlightTask> getInFlightTasks() {
+        return inFlightTasks.values().stream()
+            .sorted(Comparator.comparing(InFlightTask::getStarted))
+            .collect(Collectors.toList());
     }
 
+    /**
+     * Returns the state of the queue of every target that has tasks, ordered by the age of the oldest waiting task, oldest first.
+     *
+     * @return the snapshots
+     */
+    public List<TargetQueueSnapshot> getTargetQueueSnapshots() {
+        return sequencers.values().stream()
+            .map(TargetedTaskSequencer::snapshot)
+            .sorted(Comparator.comparing(TargetQueueSnapshot::getOldestWaitingSince, Comparator.nullsLast(Comparator.naturalOrder())))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the moment the longest waiting task was enqueued. Tasks that are being processed are not waiting.
+     *
+     * @return the moment, or empty if no task is waiting
+     */
+    public Optional<Instant> getOldestWaitingSince() {
+        return sequencers.values().stream()
+            .map(s -> s.snapshot().getOldestWaitingSince())
+            .filter(Objects::nonNull)
+            .min(Comparator.naturalOrder());
+    }
+
+    /**
+     * Returns the time that tasks from the area waited in the queue of their target before they were first started.
+     *
+     * @param area the area
+     * @return the timer, or null if no metric registry is set
+     */
+    public Timer getTimeInQueue(String area) {
+        var registry = metricRegistry;
+        return registry == null ? null : timeInQueue.computeIfAbsent(area,
+            a -> registry.timer(MetricRegistry.name(TargetedTaskSequenceManager.class, a, "time-in-queue")));
+    }
+
+    InFlightTask taskStarted(QueuedTask queuedTask) {
+        var started = Instant.now();
+        var inFlightTask = new InFlightTask(queuedTask.getArea(), queuedTask.getTask(), Thread.currentThread(), started);
+        inFlightTasks.put(queuedTask.getTask().getDepositPath(), inFlightTask);
+        var timer = getTimeInQueue(queuedTask.getArea());
+        if (timer != null && queuedTask.markStarted()) {
+            timer.update(Duration.between(queuedTask.getEnqueued(), started));
+        }
+        notifyListener("onStarted", () -> listener.onStarted(queuedTask.getArea(), queuedTask.getTask()));
+        return inFlightTask;
+    }
+
+    void taskFinished(QueuedTask queuedTask) {
+        notifyListener("onFinished", () -> listener.onFinished(queuedTask.getArea(), queuedTask.getTask()));
+        coordinator.releaseDeposit(queuedTask.getTask());
+        synchronized (this) {
+            scheduledDeposits.remove(queuedTask.getTask().getDepositPath());
+            preparedDeposits.remove(queuedTask.getTask().getDepositPath());
+        }
+        inFlightTasks.remove(queuedTask.getTask().getDepositPath());
+    }
+
+    private void notifyListener(String event, Runnable notification) {
+        try {
+            notification.run();
+        }
+        catch (Exception e) {
+            log.error("Task lifecycle listener failed on {}", event, e);
+        }
+    }
+
+    /**
+     * Acquires the target of a sequencer, if it was not acquired already. This is done under the lock of the manager, so that a target cannot be released by a
+     * sequencer that is being removed while a new sequencer for the same target acquires it.
+     *
+     * @param target the target
+     * @return true if the target may be processed
+     */
+    synchronized boolean acquireTarget(String target) {
+        if (acquiredTargets.contains(target)) {
+            return true;
+        }
+        if (coordinator.acquireTarget(target)) {
+            acquiredTargets.add(target);
+            return true;
+        }
+        return false;
+    }
+
+    synchronized void sequencerDeferred(TargetedTaskSequencer sequencer) {
+        var delay = coordinator.getTargetRetryDelay();
+        log.debug("Target {} is processed by another instance; trying again in {}", sequencer.getTarget(), delay);
+        resubmitLater(sequencer, delay);
+    }
+
+    /**
+     * Submits the sequencer again after a delay, because its first task asked to be tried again later. The sequencer keeps its target in the meantime, so that
+     * no other instance can process later deposits for the same target before the task is retried.
+     *
+     * @param sequencer  the sequencer
+     * @param queuedTask the task that will be tried again, which is no longer in flight until then
+     * @param delay      the delay
+     */
+    synchronized void sequencerRetryLater(TargetedTaskSequencer sequencer, QueuedTask queuedTask, Duration delay) {
+        inFlightTasks.remove(queuedTask.getTask().getDepositPath());
+        log.debug("Task for target {} asked to be tried again; resubmitting in {}", sequencer.getTarget(), delay);
+        resubmitLater(sequencer, delay);
+    }
+
+    private void resubmitLater(TargetedTaskSequencer sequencer, Duration delay) {
+        if (retryExecutor == null) {
+            retryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "sequencer-retry");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        retryExecutor.schedule(() -> resubmit(sequencer), delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void resubmit(TargetedTaskSequencer sequencer) {
+        submit(sequencer.getNextArea(), sequencer);
+    }
+
+    /*
+     * The lane of the sequencer is determined by the size of its next task, so that the tasks for one target can be processed in different lanes, one after another.
+     */
+    private void submit(String area, TargetedTaskSequencer sequencer) {
+        var nextTask = sequencer.getNextTask();
+        if (nextTask == null) {
+            scheduler.submit(area, sequencer);
+        }
+        else {
+            scheduler.submit(area, sequencer, nextTask.getPayloadSize(), nextTask.getNumberOfFiles());
+        }
+    }
+
+    synchronized void sequencerTurnFinished(TargetedTaskSequencer sequencer) {
+        var nextArea = sequencer.getNextArea();
+
+        if (nextArea == null) {
+            log.debug("No more tasks on sequencer queue. Removing sequencer for target {}", sequencer.getTarget());
+            sequencers.remove(sequencer.getTarget());
+            if (acquiredTargets.remove(sequencer.getTarget())) {
+                coordinator.releaseTarget(sequencer.getTarget());
+            }
+        }
+        else {
+            log.trace("Resubmitting sequencer for target {} for area {}", sequencer.getTarget(), nextArea);
+            submit(nextArea, sequencer);
+        }
+    }
 }
@@ -18,25 +18,40 @@ package nl.knaw.dans.ingest.core.sequencing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Queue;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.stream.Collectors;
 
+/**
+ * Holds the tasks for one target. Each time the sequencer is run it processes one task; after that the {@link TargetedTaskSequenceManager} submits it again for the area of the next task, or
+ * removes it if there are no more tasks. Since the sequencer is never submitted more than once at a time, the tasks for one target are processed one after another, in the order in which they
+ * were enqueued. In cluster mode the sequencer first acquires its target through the manager; if another instance holds it, the turn is given up and the
+ * sequencer is submitted again later. If coalescing is enabled, a {@link CoalescibleTask} is run together with the tasks directly behind it that it can be
+ * coalesced with. A {@link RetryableTask} that asks to be run again is put back at the front of the queue, and the sequencer is submitted again after the
+ * delay that the task asked for.
+ *
+ * The sequencer can be inspected with {@link #snapshot()} from any thread without taking a lock.
+ */
 class TargetedTaskSequencer implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(TargetedTaskSequencer.class);
-    private final Queue<TargetedTask> localQueue = new ConcurrentLinkedDeque<>();
+    private final Deque<QueuedTask> localQueue = new ConcurrentLinkedDeque<>();
     private final TargetedTaskSequenceManager targetedTaskSequenceManager;
     private final String target;
+    private volatile InFlightTask running;
 
-    public TargetedTaskSequencer(TargetedTaskSequenceManager targetedTaskSequenceManager, TargetedTask task) {
+    public TargetedTaskSequencer(TargetedTaskSequenceManager targetedTaskSequenceManager, String target) {
         this.targetedTaskSequenceManager = targetedTaskSequenceManager;
-        this.target = task.getTarget();
-        enqueue(task);
+        this.target = target;
     }
 
-    public synchronized void enqueue(TargetedTask task) {
+    public void enqueue(String area, TargetedTask task) {
         log.debug("Adding task {} to sequencer queue", task);
         if (task.getTarget().equals(target)) {
-            localQueue.add(task);
+            localQueue.add(new QueuedTask(area, task));
         }
         else {
             throw new IllegalArgumentException("Task target " + task.getTarget() + " is different from target " + target);
@@ -47,25 +62,100 @@ class TargetedTaskSequencer implements Runnable {
         return target;
     }
 
+    /**
+     * Returns the area of the task that will be processed next, or null if the queue is empty.
+     *
+     * @return the area or null
+     */
+    String getNextArea() {
+        var next = localQueue.peek();
+        return next == null ? null : next.getArea();
+    }
+
+    /**
+     * Returns the task that will be processed next, or null if the queue is empty.
+     *
+     * @return the task or null
+     */
+    TargetedTask getNextTask() {
+        var next = localQueue.peek();
+        return next == null ? null : next.getTask();
+    }
+
+    TargetQueueSnapshot snapshot() {
+        var next = localQueue.peek();
+        return new TargetQueueSnapshot(target, localQueue.size(), next == null ? null : next.getEnqueued(), running);
+    }
+
     @Override
     public void run() {
-        TargetedTask task = localQueue.poll();
+        if (!localQueue.isEmpty() && !targetedTaskSequenceManager.acquireTarget(target)) {
+            targetedTaskSequenceManager.sequencerDeferred(this);
+            return;
+        }
+
+        var queuedTask = localQueue.poll();
+        var coalescedTasks = pollCoalescible(queuedTask);
+
+        try {
+            if (queuedTask != null) {
+                running = targetedTaskSequenceManager.taskStarted(queuedTask);
+                coalescedTasks.forEach(targetedTaskSequenceManager::taskStarted);
 
-        while (task != null) {
-            log.debug("Processing task {}", task);
-            task.run();
-            task = getNextTask();
+                if (coalescedTasks.isEmpty()) {
+                    log.debug("Processing task {}", queuedTask.getTask());
+                    queuedTask.getTask().run();
+                }
+                else {
+                    log.debug("Processing task {} coalesced with {} later tasks", queuedTask.getTask(), coalescedTasks.size());
+                    ((CoalescibleTask) queuedTask.getTask()).runCoalesced(coalescedTasks.stream().map(QueuedTask::getTask).collect(Collectors.toList()));
+                }
+            }
+        }
+        finally {
+            running = null;
+            var retryDelay = queuedTask != null && coalescedTasks.isEmpty() ? getRetryDelay(queuedTask.getTask()) : Optional.<Duration> empty();
+            if (retryDelay.isPresent()) {
+                log.debug("Task {} will be tried again in {}", queuedTask.getTask(), retryDelay.get());
+                localQueue.addFirst(queuedTask);
+                targetedTaskSequenceManager.sequencerRetryLater(this, queuedTask, retryDelay.get());
+            }
+            else {
+                if (queuedTask != null) {
+                    targetedTaskSequenceManager.taskFinished(queuedTask);
+                    coalescedTasks.forEach(targetedTaskSequenceManager::taskFinished);
+                }
+                targetedTaskSequenceManager.sequencerTurnFinished(this);
+            }
         }
     }
 
-    private TargetedTask getNextTask() {
-        synchronized (targetedTaskSequenceManager) {
-            TargetedTask task = localQueue.poll();
-            if (task == null) {
-                log.debug("No more tasks on sequencer queue. Removing sequencer for target {}", target);
-                targetedTaskSequenceManager.removeSequencer(this);
+    private static Optional<Duration> getRetryDelay(TargetedTask task) {
+        return task instanceof RetryableTask ? ((RetryableTask) task).getRetryDelay() : Optional.empty();
+    }
+
+    /*
+     * Takes the tasks directly following the given task from the queue, as long as it can be coalesced with them. Only the sequencer itself takes tasks from
+     * the queue, so the peeked task is the one that is polled.
+     */
+    private List<QueuedTask> pollCoalescible(QueuedTask queuedTask) {
+        var coalescedTasks = new ArrayList<QueuedTask>();
+        var maxTasks = targetedTaskSequenceManager.getMaxCoalescedTasks();
+
+        if (queuedTask != null && maxTasks > 1 && queuedTask.getTask() instanceof CoalescibleTask) {
+            var first = (CoalescibleTask) queuedTask.getTask();
+            var next = localQueue.peek();
+
+            while (next != null && coalescedTasks.size() + 1 < maxTasks && first.canCoalesceWith(next.getTask())) {
+                coalescedTasks.add(localQueue.poll());
+                next = localQueue.peek();
             }
-            return task;
         }
+        return coalescedTasks;
+    }
+
+    @Override
+    public String toString() {
+        return "TargetedTaskSequencer{target='" + target + "'}";
     }
 }
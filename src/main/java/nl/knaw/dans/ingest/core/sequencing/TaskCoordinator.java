@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import java.time.Duration;
+
+/**
+ * Coordinates the processing of tasks with other instances of the service that share the same inboxes. The {@link TargetedTaskSequenceManager} claims a
+ * deposit before scheduling it, and acquires the target before the first task for that target is started. The default implementation, {@link #LOCAL}, is
+ * used when the service runs as a single instance and grants every claim.
+ */
+public interface TaskCoordinator {
+
+    TaskCoordinator LOCAL = new TaskCoordinator() {
+
+    };
+
+    /**
+     * Claims the deposit of a task, so that it is not also processed by another instance.
+     *
+     * @param task the task
+     * @return true if this instance may process the deposit, false if another instance has claimed it
+     */
+    default boolean claimDeposit(TargetedTask task) {
+        return true;
+    }
+
+    default void releaseDeposit(TargetedTask task) {
+    }
+
+    /**
+     * Acquires a target, so that no other instance processes deposits for the same target at the same time.
+     *
+     * @param target the target
+     * @return true if this instance may process deposits for the target, false if another instance is doing so
+     */
+    default boolean acquireTarget(String target) {
+        return true;
+    }
+
+    default void releaseTarget(String target) {
+    }
+
+    /**
+     * @return the time to wait before trying again to acquire a target that is held by another instance
+     */
+    default Duration getTargetRetryDelay() {
+        return Duration.ofSeconds(5);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import java.util.function.Consumer;
+
+/**
+ * Receives notifications from the {@link TargetedTaskSequenceManager} when a task is enqueued, started and finished. Implementations must not throw; the
+ * manager logs and otherwise ignores exceptions from a listener.
+ */
+public interface TaskLifecycleListener {
+
+    TaskLifecycleListener NONE = new TaskLifecycleListener() {
+
+    };
+
+    /**
+     * Combines listeners into one that notifies each of them in turn. A listener that throws does not prevent the others from being notified; the first
+     * exception is rethrown afterwards.
+     */
+    static TaskLifecycleListener all(TaskLifecycleListener... listeners) {
+        return new TaskLifecycleListener() {
+
+            @Override
+            public void onEnqueued(String area, TargetedTask task) {
+                notifyEach(listeners, listener -> listener.onEnqueued(area, task));
+            }
+
+            @Override
+            public void onStarted(String area, TargetedTask task) {
+                notifyEach(listeners, listener -> listener.onStarted(area, task));
+            }
+
+            @Override
+            public void onFinished(String area, TargetedTask task) {
+                notifyEach(listeners, listener -> listener.onFinished(area, task));
+            }
+        };
+    }
+
+    private static void notifyEach(TaskLifecycleListener[] listeners, Consumer<TaskLifecycleListener> notification) {
+        RuntimeException firstException = null;
+        for (var listener : listeners) {
+            try {
+                notification.accept(listener);
+            }
+            catch (RuntimeException e) {
+                if (firstException == null) {
+                    firstException = e;
+                }
+            }
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
+    default void onEnqueued(String area, TargetedTask task) {
+    }
+
+    default void onStarted(String area, TargetedTask task) {
+    }
+
+    default void onFinished(String area, TargetedTask task) {
+    }
+}
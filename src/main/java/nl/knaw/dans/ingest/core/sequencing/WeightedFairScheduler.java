@@ -0,0 +1,489 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distributes a fixed number of worker slots over the ingest areas. Each area has its own queue of runnables. When a slot becomes free, the next runnable is taken from the area selected by a
+ * smooth weighted round-robin over the areas that have work waiting. An area can also have reserved slots: these are never used by other areas, so that work arriving in that area (e.g.,
+ * interactive SWORD deposits in auto-ingest) is started promptly, even if a large batch is queued in another area.
+ *
+ * Independently of the areas, each submission is in either the large or the small lane, depending on its estimated size. Each lane has its own maximum number
+ * of slots, so that a few very large deposits cannot occupy all slots while small deposits are waiting behind them. A submission whose lane is full is
+ * skipped in favour of the next one in the same area that can be started. This does not change the order of the tasks for one target, as a
+ * {@link TargetedTaskSequencer} is never submitted more than once at a time.
+ *
+ * Dispatching can be paused, for example while a service that the tasks depend on is unavailable. While paused, runnables are queued but not started.
+ * Dispatching can also be paused for a single area; the other areas then get its share of the slots. A caller can wait until the work that was already
+ * running when dispatching was paused has finished (see {@link #awaitIdle(String, java.time.Duration)}).
+ */
+public class WeightedFairScheduler {
+    private static final Logger log = LoggerFactory.getLogger(WeightedFairScheduler.class);
+
+    private final Executor executor;
+    private final int workerSlots;
+    private final MetricRegistry metricRegistry;
+    // Replaced by a copy when an area is added, so that the queue depths can be read without taking the lock
+    private volatile Map<String, AreaQueue> areas = new LinkedHashMap<>();
+    private int running = 0;
+    private long largeMinPayloadSize = Long.MAX_VALUE;
+    private long largeMinNumberOfFiles = Long.MAX_VALUE;
+    private int largeSlots;
+    private int smallSlots;
+    private int runningLarge = 0;
+    private final Set<String> pauseReasons = new LinkedHashSet<>();
+
+    public WeightedFairScheduler(Executor executor, int workerSlots, MetricRegistry metricRegistry) {
+        if (workerSlots < 1) {
+            throw new IllegalArgumentException("workerSlots must be at least 1");
+        }
+        this.executor = executor;
+        this.workerSlots = workerSlots;
+        this.metricRegistry = metricRegistry;
+        this.largeSlots = workerSlots;
+        this.smallSlots = workerSlots;
+        if (metricRegistry != null) {
+            metricRegistry.register(MetricRegistry.name(WeightedFairScheduler.class, "lane", "large", "running"), (Gauge<Integer>) this::getRunningLarge);
+            metricRegistry.register(MetricRegistry.name(WeightedFairScheduler.class, "lane", "small", "running"), (Gauge<Integer>) this::getRunningSmall);
+        }
+    }
+
+    /**
+     * Configures the lanes. A submission is in the large lane if its payload size or number of files reaches the given minimum, otherwise it is in the small lane. If
+     * the lanes are not configured, all submissions are in the small lane, which can use all slots.
+     *
+     * @param largeMinPayloadSize   the payload size in bytes from which a submission is large
+     * @param largeMinNumberOfFiles the number of files from which a submission is large
+     * @param largeSlots            the maximum number of slots used by large submissions at the same time
+     * @param smallSlots            the maximum number of slots used by small submissions at the same time
+     */
+    public synchronized void configureLanes(long largeMinPayloadSize, long largeMinNumberOfFiles, int largeSlots, int smallSlots) {
+        if (largeMinPayloadSize < 1 || largeMinNumberOfFiles < 1) {
+            throw new IllegalArgumentException("Minimum payload size and number of files of large lane must be at least 1");
+        }
+        if (largeSlots < 1 || largeSlots > workerSlots) {
+            throw new IllegalArgumentException(String.format("Slots of large lane (%d) must be between 1 and the number of worker slots (%d)", largeSlots, workerSlots));
+        }
+        if (smallSlots < 1 || smallSlots > workerSlots) {
+            throw new IllegalArgumentException(String.format("Slots of small lane (%d) must be between 1 and the number of worker slots (%d)", smallSlots, workerSlots));
+        }
+        this.largeMinPayloadSize = largeMinPayloadSize;
+        this.largeMinNumberOfFiles = largeMinNumberOfFiles;
+        this.largeSlots = largeSlots;
+        this.smallSlots = smallSlots;
+        log.info("Configured lanes: large from {} bytes or {} files, largeSlots = {}, smallSlots = {}", largeMinPayloadSize, largeMinNumberOfFiles, largeSlots, smallSlots);
+    }
+
+    /**
+     * Configures the weight and number of reserved slots of an area. Areas that are not configured explicitly get weight 1 and no reserved slots.
+     *
+     * @param area          the name of the area
+     * @param weight        the relative share of the unreserved slots that the area gets when other areas have work waiting as well
+     * @param reservedSlots the number of slots that only this area can use
+     */
+    public synchronized void configureArea(String area, int weight, int reservedSlots) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Weight of area " + area + " must be at least 1");
+        }
+        if (reservedSlots < 0) {
+            throw new IllegalArgumentException("Reserved slots of area " + area + " must not be negative");
+        }
+        var totalReserved = reservedSlots + areas.values().stream()
+            .filter(a -> !a.name.equals(area))
+            .mapToInt(a -> a.reservedSlots)
+            .sum();
+        if (totalReserved >= workerSlots) {
+            throw new IllegalArgumentException(String.format(
+                "Total number of reserved slots (%d) must be less than the number of worker slots (%d)", totalReserved, workerSlots));
+        }
+        var areaQueue = getOrCreateArea(area);
+        areaQueue.weight = weight;
+        areaQueue.reservedSlots = reservedSlots;
+        log.info("Configured area {}: weight = {}, reservedSlots = {}", area, weight, reservedSlots);
+    }
+
+    public void submit(String area, Runnable runnable) {
+        submit(area, runnable, 0, 0);
+    }
+
+    /**
+     * Submits a runnable with an estimate of the size of the work it does, which determines its lane.
+     *
+     * @param area          the name of the area
+     * @param runnable      the runnable
+     * @param payloadSize   the estimated payload size in bytes, or 0 if not known
+     * @param numberOfFiles the estimated number of files, or 0 if not known
+     */
+    public void submit(String area, Runnable runnable, long payloadSize, long numberOfFiles) {
+        List<Slot> started;
+        synchronized (this) {
+            var large = isLarge(payloadSize, numberOfFiles);
+            log.trace("Submitting {} for area {} in {} lane", runnable, area, large ? "large" : "small");
+            var areaQueue = getOrCreateArea(area);
+            areaQueue.add(new Submission(runnable, System.nanoTime(), large));
+            started = dispatch();
+        }
+        execute(started);
+    }
+
+    /**
+     * Stops starting new work until {@link #resume(String)} is called with the same reason. Work that is already running is not affected. Several reasons can
+     * apply at the same time; work is only started again when none is left.
+     *
+     * @param reason the reason for pausing
+     */
+    public synchronized void pause(String reason) {
+        if (pauseReasons.add(reason)) {
+            log.info("Pausing dispatch: {}", reason);
+        }
+    }
+
+    public void resume(String reason) {
+        List<Slot> started = List.of();
+        synchronized (this) {
+            if (pauseReasons.remove(reason)) {
+                log.info("Resuming dispatch: {}; still paused for {}", reason, pauseReasons);
+                started = dispatch();
+            }
+        }
+        execute(started);
+    }
+
+    public synchronized Set<String> getPauseReasons() {
+        return new LinkedHashSet<>(pauseReasons);
+    }
+
+    /**
+     * Stops starting new work for one area until {@link #resumeArea(String)} is called. Work that is already running is not affected, and the other areas
+     * can use the slots that the area leaves free.
+     *
+     * @param area the name of the area
+     */
+    public synchronized void pauseArea(String area) {
+        var areaQueue = getOrCreateArea(area);
+        if (!areaQueue.paused) {
+            areaQueue.paused = true;
+            log.info("Pausing dispatch for area {}", area);
+        }
+    }
+
+    public void resumeArea(String area) {
+        List<Slot> started = List.of();
+        synchronized (this) {
+            var areaQueue = areas.get(area);
+            if (areaQueue != null && areaQueue.paused) {
+                areaQueue.paused = false;
+                log.info("Resuming dispatch for area {}", area);
+                started = dispatch();
+            }
+        }
+        execute(started);
+    }
+
+    public synchronized Set<String> getPausedAreas() {
+        var pausedAreas = new LinkedHashSet<String>();
+        areas.values().stream()
+            .filter(a -> a.paused)
+            .forEach(a -> pausedAreas.add(a.name));
+        return pausedAreas;
+    }
+
+    /**
+     * Waits until no work is running anymore, either in one area or in all areas. This only ends before the timeout if no new work is started in the
+     * meantime, so dispatching should be paused first.
+     *
+     * @param area    the name of the area, or null for all areas
+     * @param timeout the maximum time to wait
+     * @return true if no work is running, false if the timeout expired first
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized boolean awaitIdle(String area, Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        while (area == null ? running > 0 : getRunning(area) > 0) {
+            var remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    public boolean isLarge(long payloadSize, long numberOfFiles) {
+        return payloadSize >= largeMinPayloadSize || numberOfFiles >= largeMinNumberOfFiles;
+    }
+
+    /**
+     * Returns the names of the areas that have been configured or have had work submitted.
+     *
+     * @return the names
+     */
+    public Set<String> getAreas() {
+        return new LinkedHashSet<>(areas.keySet());
+    }
+
+    public int getQueueDepth(String area) {
+        var areaQueue = areas.get(area);
+        return areaQueue == null ? 0 : areaQueue.queueDepth;
+    }
+
+    public int getRunning(String area) {
+        var areaQueue = areas.get(area);
+        return areaQueue == null ? 0 : areaQueue.running;
+    }
+
+    public synchronized int getRunningLarge() {
+        return runningLarge;
+    }
+
+    public synchronized int getRunningSmall() {
+        return running - runningLarge;
+    }
+
+    private AreaQueue getOrCreateArea(String area) {
+        var areaQueue = areas.get(area);
+        if (areaQueue == null) {
+            areaQueue = createArea(area);
+            var copy = new LinkedHashMap<>(areas);
+            copy.put(area, areaQueue);
+            areas = copy;
+        }
+        return areaQueue;
+    }
+
+    private AreaQueue createArea(String area) {
+        var areaQueue = new AreaQueue(area);
+        if (metricRegistry != null) {
+            metricRegistry.register(MetricRegistry.name(WeightedFairScheduler.class, area, "queue-depth"), (Gauge<Integer>) () -> getQueueDepth(area));
+            metricRegistry.register(MetricRegistry.name(WeightedFairScheduler.class, area, "running"), (Gauge<Integer>) () -> getRunning(area));
+            areaQueue.waitTime = metricRegistry.timer(MetricRegistry.name(WeightedFairScheduler.class, area, "wait-time"));
+        }
+        return areaQueue;
+    }
+
+    /*
+     * Takes the submissions that can be started off their queues and counts them as running. The caller must hand the returned slots to the executor
+     * with execute(List) after releasing the lock: with a direct or caller-runs executor the runnable would otherwise run under the lock of the scheduler,
+     * and a TargetedTaskSequencer takes the lock of its manager, which in turn calls submit().
+     */
+    private List<Slot> dispatch() {
+        var started = new ArrayList<Slot>();
+        var area = selectArea();
+        while (area != null) {
+            var submission = pollStartable(area);
+            area.running++;
+            running++;
+            if (submission.large) {
+                runningLarge++;
+            }
+            if (area.waitTime != null) {
+                area.waitTime.update(System.nanoTime() - submission.submittedNanos, TimeUnit.NANOSECONDS);
+            }
+            log.debug("Starting work for area {}; running in area = {}, running total = {}, running large = {}", area.name, area.running, running, runningLarge);
+            started.add(new Slot(area, submission));
+            area = selectArea();
+        }
+        return started;
+    }
+
+    private void execute(List<Slot> started) {
+        for (var i = 0; i < started.size(); i++) {
+            try {
+                executor.execute(started.get(i));
+            }
+            catch (RejectedExecutionException e) {
+                log.error("Executor rejected work for area {}; leaving it on the queue", started.get(i).area.name, e);
+                requeue(started.subList(i, started.size()));
+                return;
+            }
+        }
+    }
+
+    private synchronized void requeue(List<Slot> notStarted) {
+        // In reverse order, so that the submissions end up at the head of their queues in the order they had
+        for (var i = notStarted.size() - 1; i >= 0; i--) {
+            var slot = notStarted.get(i);
+            slot.area.running--;
+            running--;
+            if (slot.submission.large) {
+                runningLarge--;
+            }
+            slot.area.addFirst(slot.submission);
+        }
+        notifyAll();
+    }
+
+    private void release(AreaQueue area, Submission submission) {
+        List<Slot> started;
+        synchronized (this) {
+            area.running--;
+            running--;
+            if (submission.large) {
+                runningLarge--;
+            }
+            notifyAll();
+            started = dispatch();
+        }
+        execute(started);
+    }
+
+    private boolean canStart(Submission submission) {
+        return submission.large ? runningLarge < largeSlots : running - runningLarge < smallSlots;
+    }
+
+    private boolean hasStartable(AreaQueue area) {
+        return area.queuedLarge > 0 && runningLarge < largeSlots
+            || area.queue.size() > area.queuedLarge && running - runningLarge < smallSlots;
+    }
+
+    private Submission pollStartable(AreaQueue area) {
+        Iterator<Submission> iterator = area.queue.iterator();
+        while (iterator.hasNext()) {
+            var submission = iterator.next();
+            if (canStart(submission)) {
+                iterator.remove();
+                area.removed(submission);
+                return submission;
+            }
+        }
+        throw new IllegalStateException("No submission can be started in area " + area.name);
+    }
+
+    private AreaQueue selectArea() {
+        if (running >= workerSlots || !pauseReasons.isEmpty()) {
+            return null;
+        }
+
+        // Reserved slots that are not in use by their own area are not available to the other areas, unless that area is paused
+        var unusedReserved = areas.values().stream()
+            .filter(a -> !a.paused)
+            .mapToInt(a -> Math.max(0, a.reservedSlots - a.running))
+            .sum();
+        var freeUnreserved = workerSlots - running - unusedReserved;
+
+        AreaQueue selected = null;
+        var totalWeight = 0;
+        for (var area : areas.values()) {
+            if (area.paused || area.queue.isEmpty() || (area.running >= area.reservedSlots && freeUnreserved <= 0) || !hasStartable(area)) {
+                continue;
+            }
+            area.currentWeight += area.weight;
+            totalWeight += area.weight;
+            if (selected == null || area.currentWeight > selected.currentWeight) {
+                selected = area;
+            }
+        }
+
+        if (selected != null) {
+            selected.currentWeight -= totalWeight;
+        }
+        return selected;
+    }
+
+    private static class Submission {
+        private final Runnable runnable;
+        private final long submittedNanos;
+        private final boolean large;
+
+        private Submission(Runnable runnable, long submittedNanos, boolean large) {
+            this.runnable = runnable;
+            this.submittedNanos = submittedNanos;
+            this.large = large;
+        }
+    }
+
+    private static class AreaQueue {
+        private final String name;
+        private final Deque<Submission> queue = new ArrayDeque<>();
+        // Number of submissions on the queue that are in the large lane, so that the lanes do not have to be looked up by scanning the queue
+        private int queuedLarge = 0;
+        private int weight = 1;
+        private int reservedSlots = 0;
+        // Changed under the lock of the scheduler, but read without it
+        private volatile int queueDepth = 0;
+        private volatile int running = 0;
+        private int currentWeight = 0;
+        private boolean paused = false;
+        private Timer waitTime;
+
+        private AreaQueue(String name) {
+            this.name = name;
+        }
+
+        private void add(Submission submission) {
+            queue.add(submission);
+            added(submission);
+        }
+
+        private void addFirst(Submission submission) {
+            queue.addFirst(submission);
+            added(submission);
+        }
+
+        private void added(Submission submission) {
+            if (submission.large) {
+                queuedLarge++;
+            }
+            queueDepth = queue.size();
+        }
+
+        private void removed(Submission submission) {
+            if (submission.large) {
+                queuedLarge--;
+            }
+            queueDepth = queue.size();
+        }
+    }
+
+    private class Slot implements Runnable {
+        private final AreaQueue area;
+        private final Submission submission;
+
+        private Slot(AreaQueue area, Submission submission) {
+            this.area = area;
+            this.submission = submission;
+        }
+
+        @Override
+        public void run() {
+            try {
+                submission.runnable.run();
+            }
+            finally {
+                release(area, submission);
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package nl.knaw.dans.ingest.core.service;
 
+import nl.knaw.dans.ingest.core.domain.DepositLocation;
 import nl.knaw.dans.ingest.core.exception.InvalidDepositException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +23,8 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -58,15 +61,36 @@ public abstract class AbstractDepositsImportTaskIterator implements Iterator<Dep
 
     protected List<DepositIngestTask> createDepositIngestTasks(List<Path> depositPaths) {
         var tasks = new LinkedList<DepositIngestTask>();
+        for (var location : readDepositLocations(depositPaths)) {
+            try {
+                tasks.add(createDepositIngestTask(location));
+            }
+            catch (InvalidDepositException | IOException e) {
+                throw new IllegalArgumentException("Could not create task for deposit", e);
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Reads the locations of the deposits, in the order in which they must be processed.
+     */
+    protected List<DepositLocation> readDepositLocations(List<Path> depositPaths) {
+        var locations = new ArrayList<DepositLocation>(depositPaths.size());
         for (var p : depositPaths) {
             try {
-                tasks.add(taskFactory.createIngestTask(p, outBox, eventWriter));
+                locations.add(taskFactory.readDepositLocation(p, outBox));
             }
             catch (InvalidDepositException | IOException e) {
                 throw new IllegalArgumentException("Could not create task for deposit", e);
             }
         }
-        return tasks.stream().sorted().collect(Collectors.toList());
+        locations.sort(Comparator.comparing(DepositLocation::getCreated));
+        return locations;
+    }
+
+    protected DepositIngestTask createDepositIngestTask(DepositLocation location) throws InvalidDepositException, IOException {
+        return taskFactory.createIngestTask(location, outBox, eventWriter);
     }
 
     protected void addTaskForDeposit(Path dir) {
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.exception.RejectedDepositException;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Checks the deposits of a batch before they are enqueued. The deposits are taken from the source in chunks; the deposits of a chunk are read and validated
+ * and their metadata is mapped in parallel, with at most as many deposits at a time as the executor has threads, before any of them is enqueued. A deposit
+ * that fails these checks is processed right away, which moves it to the rejected or failed outbox without changing anything in Dataverse. The outcome for
+ * every deposit is written to a report in CSV format. The other deposits are enqueued as usual and checked again when it is their turn. Only one chunk is
+ * kept in memory at a time, so that a batch of any size can be checked.
+ *
+ * <p>A failing deposit that comes after an enqueued deposit for the same target is not moved right away, but enqueued. Otherwise it would block the
+ * target before the earlier deposit was processed. A deposit that failed because a service could not be reached is enqueued as well, as it may pass when
+ * it is its turn.</p>
+ */
+public class BatchPreflightTaskSource implements TargetedTaskSource<DepositIngestTask> {
+    public static final String REPORT_FILE = "preflight-report.csv";
+
+    private static final Logger log = LoggerFactory.getLogger(BatchPreflightTaskSource.class);
+    private static final String[] REPORT_HEADER = { "depositId", "target", "result", "action", "message" };
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final TargetedTaskSource<DepositIngestTask> source;
+    private final Executor executor;
+    private final Path reportFile;
+    private final int chunkSize;
+
+    public BatchPreflightTaskSource(TargetedTaskSource<DepositIngestTask> source, Executor executor, Path reportFile) {
+        this(source, executor, reportFile, DEFAULT_CHUNK_SIZE);
+    }
+
+    public BatchPreflightTaskSource(TargetedTaskSource<DepositIngestTask> source, Executor executor, Path reportFile, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.source = source;
+        this.executor = executor;
+        this.reportFile = reportFile;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public Iterator<DepositIngestTask> iterator() {
+        return new PreflightIterator(source.iterator());
+    }
+
+    private class PreflightIterator implements Iterator<DepositIngestTask> {
+        private final Iterator<DepositIngestTask> tasks;
+        private final Deque<DepositIngestTask> enqueued = new ArrayDeque<>();
+        // Only the targets are kept for the whole batch, to decide whether a failing deposit may be moved to the outbox
+        private final Set<String> enqueuedTargets = new HashSet<>();
+        private final CSVPrinter report;
+        private int numberEnqueued;
+        private int numberMoved;
+        private boolean done;
+
+        private PreflightIterator(Iterator<DepositIngestTask> tasks) {
+            this.tasks = tasks;
+            this.report = openReport();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (enqueued.isEmpty() && !done) {
+                if (tasks.hasNext()) {
+                    checkChunk();
+                }
+                else {
+                    finish();
+                }
+            }
+            return !enqueued.isEmpty();
+        }
+
+        @Override
+        public DepositIngestTask next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return enqueued.removeFirst();
+        }
+
+        private void checkChunk() {
+            var chunk = new ArrayList<DepositIngestTask>(chunkSize);
+            while (chunk.size() < chunkSize && tasks.hasNext()) {
+                chunk.add(tasks.next());
+            }
+            log.info("Pre-flight check of {} deposits", chunk.size());
+            var errors = checkAll(chunk);
+
+            for (var task : chunk) {
+                var error = errors.get(task);
+                var location = task.getDepositLocation();
+
+                if (error == null) {
+                    enqueue(task);
+                    writeRecord(location.getDepositId(), task.getTarget(), "OK", "ENQUEUED", "");
+                }
+                else if (enqueuedTargets.contains(task.getTarget()) || FailureClassifier.isTransient(error)) {
+                    task.discardPreparation();
+                    enqueue(task);
+                    writeRecord(location.getDepositId(), task.getTarget(), getResult(error), "ENQUEUED", String.valueOf(error.getMessage()));
+                }
+                else {
+                    moveToOutbox(task);
+                    numberMoved++;
+                    writeRecord(location.getDepositId(), task.getTarget(), getResult(error), "MOVED_TO_OUTBOX", String.valueOf(error.getMessage()));
+                }
+            }
+            flushReport();
+        }
+
+        private void enqueue(DepositIngestTask task) {
+            enqueuedTargets.add(task.getTarget());
+            enqueued.addLast(task);
+            numberEnqueued++;
+        }
+
+        private void finish() {
+            done = true;
+            closeReport();
+            log.info("Pre-flight check done: {} deposits enqueued, {} moved to outbox", numberEnqueued, numberMoved);
+        }
+
+        private CSVPrinter openReport() {
+            try {
+                return new CSVPrinter(Files.newBufferedWriter(reportFile), CSVFormat.RFC4180.builder().setHeader(REPORT_HEADER).build());
+            }
+            catch (IOException e) {
+                log.error("Unable to write pre-flight report {}", reportFile, e);
+                return null;
+            }
+        }
+
+        private void writeRecord(String... values) {
+            if (report == null) {
+                return;
+            }
+            try {
+                report.printRecord((Object[]) values);
+            }
+            catch (IOException e) {
+                log.error("Unable to write pre-flight report {}", reportFile, e);
+            }
+        }
+
+        private void flushReport() {
+            if (report == null) {
+                return;
+            }
+            try {
+                report.flush();
+            }
+            catch (IOException e) {
+                log.error("Unable to write pre-flight report {}", reportFile, e);
+            }
+        }
+
+        private void closeReport() {
+            if (report == null) {
+                return;
+            }
+            try {
+                report.close();
+            }
+            catch (IOException e) {
+                log.error("Unable to write pre-flight report {}", reportFile, e);
+            }
+        }
+    }
+
+    private Map<DepositIngestTask, Throwable> checkAll(List<DepositIngestTask> tasks) {
+        var errors = new ConcurrentHashMap<DepositIngestTask, Throwable>();
+        var checks = tasks.stream()
+            .map(task -> CompletableFuture.runAsync(() -> check(task, errors), executor))
+            .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(checks).join();
+        return errors;
+    }
+
+    private void check(DepositIngestTask task, Map<DepositIngestTask, Throwable> errors) {
+        try {
+            task.prepare();
+        }
+        catch (RuntimeException e) {
+            log.error("Pre-flight check of {} failed", task.getDepositPath(), e);
+        }
+        var error = task.getPreparationError();
+        if (error.isPresent()) {
+            log.debug("Deposit {} did not pass the pre-flight check: {}", task.getDepositPath(), error.get().getMessage());
+            errors.put(task, error.get());
+        }
+        else {
+            // Keeping all prepared deposits of a large batch in memory until their turn is too expensive
+            task.discardPreparation();
+        }
+    }
+
+    private void moveToOutbox(DepositIngestTask task) {
+        try {
+            // Stops at the prepared error, before anything is changed in Dataverse
+            task.runWithoutRetry();
+        }
+        catch (RuntimeException e) {
+            log.error("Unable to move deposit {} to the outbox", task.getDepositPath(), e);
+        }
+    }
+
+    private static String getResult(Throwable error) {
+        if (error instanceof RejectedDepositException) {
+            return "REJECTED";
+        }
+        return "FAILED";
+    }
+}
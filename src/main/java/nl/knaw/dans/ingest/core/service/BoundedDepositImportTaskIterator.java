@@ -15,13 +15,58 @@
  */
 package nl.knaw.dans.ingest.core.service;
 
+import nl.knaw.dans.ingest.core.domain.DepositLocation;
+import nl.knaw.dans.ingest.core.exception.InvalidDepositException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.NoSuchElementException;
 
+/**
+ * Iterates over the deposits in a batch, ordered by creation time. Only the locations of the deposits (path, target and creation time) are read up
+ * front. A task is created when it is requested, so that a batch of any size can be processed without keeping a task for every deposit in memory.
+ */
 public class BoundedDepositImportTaskIterator extends AbstractDepositsImportTaskIterator {
+    private static final Logger log = LoggerFactory.getLogger(BoundedDepositImportTaskIterator.class);
+
+    private final List<DepositLocation> locations;
+    private int nextIndex = 0;
+    private DepositIngestTask nextTask;
+
     public BoundedDepositImportTaskIterator(Path inboxDir, Path outBox, DepositIngestTaskFactory taskFactory,
         EventWriter eventWriter) {
         super(inboxDir, outBox, taskFactory, eventWriter);
-        createDepositIngestTasks(getAllDepositPathsFromInbox()).forEach(this::addTask);
+        locations = readDepositLocations(getAllDepositPathsFromInbox());
     }
 
+    @Override
+    public boolean hasNext() {
+        while (nextTask == null && nextIndex < locations.size()) {
+            var location = locations.get(nextIndex);
+            // Release the location, as the task keeps its own reference while it is queued
+            locations.set(nextIndex++, null);
+
+            try {
+                nextTask = createDepositIngestTask(location);
+            }
+            catch (InvalidDepositException | IOException e) {
+                // The deposit has been moved to the failed outbox
+                log.error("Error while creating task for deposit {}", location.getDir(), e);
+            }
+        }
+        return nextTask != null;
+    }
+
+    @Override
+    public DepositIngestTask next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        var task = nextTask;
+        nextTask = null;
+        return task;
+    }
 }
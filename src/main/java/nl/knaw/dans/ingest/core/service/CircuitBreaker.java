@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import com.codahale.metrics.health.HealthCheck;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of whether a service that the processing depends on, such as Dataverse or the DANS bag validator, is available. After a number of consecutive
+ * failures that indicate that the service cannot be reached, the breaker opens: the listeners are notified, so that no new tasks are started, and running
+ * tasks are held at their next call to the service. While the breaker is open, the health check of the service is run periodically. As soon as it reports
+ * the service healthy, the breaker closes again and the held tasks continue.
+ */
+@Slf4j
+public class CircuitBreaker {
+    private final String name;
+    private final HealthCheck healthCheck;
+    private final int failureThreshold;
+    private final Duration probeInterval;
+    private final Duration maxHoldTime;
+    private final ScheduledExecutorService probeExecutor;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private int consecutiveFailures = 0;
+    private boolean open = false;
+
+    public interface Listener {
+        void opened(String name);
+
+        void closed(String name);
+    }
+
+    /**
+     * @param name             the name of the service, used in logging and passed to the listeners
+     * @param healthCheck      the health check that tells whether the service is available again
+     * @param failureThreshold the number of consecutive connection failures after which the breaker opens
+     * @param probeInterval    the time between two runs of the health check while the breaker is open
+     * @param maxHoldTime      the maximum time a task is held at a call to the service; after that it makes the call anyway
+     * @param probeExecutor    the executor to run the health check on
+     */
+    public CircuitBreaker(String name, HealthCheck healthCheck, int failureThreshold, Duration probeInterval, Duration maxHoldTime,
+        ScheduledExecutorService probeExecutor) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1");
+        }
+        this.name = name;
+        this.healthCheck = healthCheck;
+        this.failureThreshold = failureThreshold;
+        this.probeInterval = probeInterval;
+        this.maxHoldTime = maxHoldTime;
+        this.probeExecutor = probeExecutor;
+    }
+
+    /**
+     * Tells whether the exception, or one of its causes, shows that the service could not be reached at all, as opposed to an error reported by the service.
+     *
+     * @param e the exception
+     * @return true if the exception indicates a connection failure
+     */
+    public static boolean isConnectionFailure(Throwable e) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketException || cause instanceof SocketTimeoutException || cause instanceof UnknownHostException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Records a failure to reach the service. The breaker opens if this is the failure that reaches the threshold.
+     *
+     * @param e the failure
+     */
+    public void recordFailure(Throwable e) {
+        synchronized (this) {
+            consecutiveFailures++;
+            if (open || consecutiveFailures < failureThreshold) {
+                log.debug("{} failure {} of {}: {}", name, consecutiveFailures, failureThreshold, e.getMessage());
+                return;
+            }
+            open = true;
+        }
+        log.warn("{} is not available after {} consecutive failures; pausing until it is healthy again", name, failureThreshold, e);
+        listeners.forEach(l -> notify(l, true));
+        scheduleProbe();
+    }
+
+    /**
+     * Waits until the breaker is closed, or the maximum hold time has passed. A task calls this before each call to the service, so that it does not fail
+     * on a service that is known to be unavailable.
+     */
+    public void awaitClosed() {
+        var deadline = System.nanoTime() + maxHoldTime.toNanos();
+        synchronized (this) {
+            if (open) {
+                log.info("Holding task in thread {} until {} is available", Thread.currentThread().getName(), name);
+            }
+            while (open) {
+                var remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    log.warn("{} is still not available after {}; continuing", name, maxHoldTime);
+                    return;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void scheduleProbe() {
+        probeExecutor.schedule(this::probe, probeInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    void probe() {
+        var result = healthCheck.execute();
+        if (!result.isHealthy()) {
+            log.debug("{} is still not available: {}", name, result.getMessage());
+            scheduleProbe();
+            return;
+        }
+
+        synchronized (this) {
+            open = false;
+            consecutiveFailures = 0;
+            notifyAll();
+        }
+        log.info("{} is available again; resuming", name);
+        listeners.forEach(l -> notify(l, false));
+    }
+
+    private void notify(Listener listener, boolean opened) {
+        try {
+            if (opened) {
+                listener.opened(name);
+            }
+            else {
+                listener.closed(name);
+            }
+        }
+        catch (RuntimeException e) {
+            log.error("Circuit breaker listener failed", e);
+        }
+    }
+}
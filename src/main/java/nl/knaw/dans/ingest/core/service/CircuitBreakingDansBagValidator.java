@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.validatedansbag.client.api.ValidateCommandDto;
+import nl.knaw.dans.validatedansbag.client.api.ValidateOkDto;
+
+import java.nio.file.Path;
+
+/**
+ * Holds validations while the validator is known to be unavailable, and reports connection failures to the circuit breaker.
+ */
+public class CircuitBreakingDansBagValidator implements DansBagValidator {
+    private final DansBagValidator delegate;
+    private final CircuitBreaker circuitBreaker;
+
+    public CircuitBreakingDansBagValidator(DansBagValidator delegate, CircuitBreaker circuitBreaker) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public void checkConnection() {
+        delegate.checkConnection();
+    }
+
+    @Override
+    public ValidateOkDto validateBag(Path bagDir, ValidateCommandDto.PackageTypeEnum packageType) {
+        circuitBreaker.awaitClosed();
+        try {
+            var result = delegate.validateBag(bagDir, packageType);
+            circuitBreaker.recordSuccess();
+            return result;
+        }
+        catch (RuntimeException e) {
+            if (CircuitBreaker.isConnectionFailure(e)) {
+                circuitBreaker.recordFailure(e);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import io.dropwizard.lifecycle.Managed;
+import nl.knaw.dans.ingest.core.AbstractIngestArea;
+import nl.knaw.dans.ingest.core.QueuedDeposit;
+import nl.knaw.dans.ingest.core.sequencing.TargetedTask;
+import nl.knaw.dans.ingest.core.sequencing.TaskCoordinator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates the instances of the service that share the same inboxes and task database. Deposits and targets are claimed through leases in the database. The
+ * leases held by this instance are renewed by a heartbeat. On each heartbeat the coordinator also looks for deposit leases that have expired because the
+ * instance holding them stopped; those deposits are taken over and resumed from the durable deposit queue.
+ */
+public class ClusterCoordinator implements TaskCoordinator, Managed {
+    private static final Logger log = LoggerFactory.getLogger(ClusterCoordinator.class);
+    static final String DEPOSIT_PREFIX = "deposit:";
+    static final String TARGET_PREFIX = "target:";
+
+    private final String nodeId;
+    private final LeaseService leaseService;
+    private final DepositQueueService depositQueueService;
+    private final Duration leaseDuration;
+    private final Duration heartbeatInterval;
+    private final Duration targetRetryDelay;
+    private final Map<String, AbstractIngestArea> areas = new ConcurrentHashMap<>();
+    private final Set<String> heldLeases = ConcurrentHashMap.newKeySet();
+    private final Set<String> takenOverDeposits = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService heartbeatExecutor;
+
+    public ClusterCoordinator(String nodeId, LeaseService leaseService, DepositQueueService depositQueueService, Duration leaseDuration, Duration heartbeatInterval,
+        Duration targetRetryDelay) {
+        if (heartbeatInterval.compareTo(leaseDuration) >= 0) {
+            throw new IllegalArgumentException("Heartbeat interval must be shorter than the lease duration");
+        }
+        this.nodeId = nodeId;
+        this.leaseService = leaseService;
+        this.depositQueueService = depositQueueService;
+        this.leaseDuration = leaseDuration;
+        this.heartbeatInterval = heartbeatInterval;
+        this.targetRetryDelay = targetRetryDelay;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Registers an ingest area, so that deposits of that area can be taken over from other instances.
+     *
+     * @param area the area
+     */
+    public void registerArea(AbstractIngestArea area) {
+        areas.put(area.getName(), area);
+    }
+
+    /*
+     * Another node may have listed the same deposit, and processed it and released it while this node was still on its way to claim it. So a claimed deposit
+     * is only scheduled if it is still in the inbox; a deposit that has been processed was moved out before its lease was released.
+     */
+    @Override
+    public boolean claimDeposit(TargetedTask task) {
+        var resource = DEPOSIT_PREFIX + getDepositId(task);
+        if (!acquire(resource)) {
+            return false;
+        }
+        if (!Files.isDirectory(task.getDepositPath())) {
+            log.info("Deposit {} is no longer in the inbox; it was processed by another node", task.getDepositPath());
+            release(resource);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void releaseDeposit(TargetedTask task) {
+        var depositId = getDepositId(task);
+        takenOverDeposits.remove(depositId);
+        release(DEPOSIT_PREFIX + depositId);
+    }
+
+    /*
+     * The target lease only keeps two nodes from processing the same target at the same time. To keep the deposits for the target in order, the target is
+     * not acquired while the oldest queued deposit for it is held by another node (or by no node, e.g., while it is being taken over); that node must
+     * process it first.
+     */
+    @Override
+    public boolean acquireTarget(String target) {
+        var first = depositQueueService.getByTarget(target).stream()
+            .min(Comparator.comparing(QueuedDeposit::getCreated, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(QueuedDeposit::getEnqueuedTimestamp)
+                .thenComparing(QueuedDeposit::getDepositId));
+        if (first.isPresent() && !heldLeases.contains(DEPOSIT_PREFIX + first.get().getDepositId())) {
+            log.debug("Not acquiring target {}; its oldest deposit {} is not held by node {}", target, first.get().getDepositId(), nodeId);
+            return false;
+        }
+        return acquire(TARGET_PREFIX + target);
+    }
+
+    @Override
+    public void releaseTarget(String target) {
+        release(TARGET_PREFIX + target);
+    }
+
+    @Override
+    public Duration getTargetRetryDelay() {
+        return targetRetryDelay;
+    }
+
+    /**
+     * Starts the heartbeat. Leases that this node still holds from before a restart are released first: the deposits they were for are resumed by the ingest
+     * areas when they start, which claims them again.
+     */
+    @Override
+    public void start() {
+        log.info("Starting cluster coordination as node {}; lease duration = {}, heartbeat interval = {}", nodeId, leaseDuration, heartbeatInterval);
+        var stale = leaseService.releaseAll(nodeId);
+        if (stale > 0) {
+            log.info("Released {} leases held by node {} before it was restarted", stale, nodeId);
+        }
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "cluster-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeatExecutor.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the heartbeat. The leases are not released, as tasks may still be running; they expire after the lease duration, or are reacquired when this node is
+     * started again with the same node ID.
+     */
+    @Override
+    public void stop() {
+        if (heartbeatExecutor != null) {
+            heartbeatExecutor.shutdownNow();
+        }
+    }
+
+    void heartbeat() {
+        try {
+            renewLeases();
+            releaseFinishedTakeOvers();
+            takeOverExpiredDeposits();
+        }
+        catch (Exception e) {
+            // Must not throw, otherwise the heartbeat is not scheduled again
+            log.error("Cluster heartbeat of node {} failed", nodeId, e);
+        }
+    }
+
+    private void renewLeases() {
+        var held = heldLeases.size();
+        var renewed = leaseService.renewAll(nodeId, leaseDuration);
+        if (renewed < held) {
+            log.error("Renewed only {} of {} leases held by node {}; leases were taken over by another node. Check that the heartbeat interval is well below the lease duration",
+                renewed, held, nodeId);
+        }
+        else {
+            log.trace("Renewed {} leases of node {}", renewed, nodeId);
+        }
+    }
+
+    /*
+     * A deposit that was taken over is normally released when its task finishes. If it could not be resumed (e.g., it is no longer in the inbox) it never reaches
+     * the sequence manager, so the lease is released here.
+     */
+    private void releaseFinishedTakeOvers() {
+        for (var depositId : takenOverDeposits) {
+            // A deposit is removed from the queue when it has finished
+            if (depositQueueService.getQueuedDeposit(depositId).isEmpty()) {
+                takenOverDeposits.remove(depositId);
+                release(DEPOSIT_PREFIX + depositId);
+            }
+        }
+    }
+
+    private void takeOverExpiredDeposits() {
+        var toResume = new LinkedHashMap<String, List<QueuedDeposit>>();
+
+        for (var lease : leaseService.getExpired(DEPOSIT_PREFIX)) {
+            var depositId = lease.getResource().substring(DEPOSIT_PREFIX.length());
+            var queuedDeposit = depositQueueService.getQueuedDeposit(depositId);
+
+            if (queuedDeposit.isEmpty()) {
+                log.debug("Removing expired lease {} of node {}; the deposit is not in the queue or has finished", lease.getResource(), lease.getOwner());
+                leaseService.deleteIfExpired(lease.getResource());
+            }
+            else if (!areas.containsKey(queuedDeposit.get().getArea())) {
+                log.debug("Not taking over deposit {}; area {} is not handled by this node", depositId, queuedDeposit.get().getArea());
+            }
+            else if (acquire(lease.getResource())) {
+                log.warn("Taking over deposit {} from node {}, whose lease expired at {}", depositId, lease.getOwner(), lease.getExpires());
+                takenOverDeposits.add(depositId);
+                toResume.computeIfAbsent(queuedDeposit.get().getArea(), a -> new ArrayList<>()).add(queuedDeposit.get());
+            }
+        }
+
+        toResume.forEach((area, deposits) -> {
+            deposits.sort(Comparator.comparing(QueuedDeposit::getCreated, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(QueuedDeposit::getEnqueuedTimestamp));
+            areas.get(area).resumeDeposits(deposits);
+        });
+    }
+
+    private boolean acquire(String resource) {
+        try {
+            if (leaseService.tryAcquire(resource, nodeId, leaseDuration)) {
+                heldLeases.add(resource);
+                return true;
+            }
+            log.debug("Lease {} is held by another node", resource);
+            return false;
+        }
+        catch (RuntimeException e) {
+            // Most likely another node created the same lease at the same moment
+            log.debug("Could not acquire lease {}", resource, e);
+            return false;
+        }
+    }
+
+    private void release(String resource) {
+        heldLeases.remove(resource);
+        try {
+            if (!leaseService.release(resource, nodeId)) {
+                log.warn("Lease {} was no longer held by node {} when it was released", resource, nodeId);
+            }
+        }
+        catch (RuntimeException e) {
+            log.error("Could not release lease {}; it will expire", resource, e);
+        }
+    }
+
+    private static String getDepositId(TargetedTask task) {
+        return task.getDepositPath().getFileName().toString();
+    }
+}
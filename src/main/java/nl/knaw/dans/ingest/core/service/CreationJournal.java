@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Records the progress of creating a dataset for a deposit, so that a deposit that failed halfway can continue where it stopped when it is offered again,
+ * instead of creating a new dataset and uploading all files again. The journal is a file in the deposit directory with one JSON object per line, to which
+ * each confirmed step is appended. A journal that is not persistent only keeps the progress in memory.
+ */
+public class CreationJournal {
+    private static final Logger log = LoggerFactory.getLogger(CreationJournal.class);
+    public static final String FILENAME = "creation-journal.jsonl";
+
+    public enum Step {
+        DATASET_CREATED,
+        METADATA_UPDATED,
+        LICENSE_SET,
+        FILE_ADDED,
+        FILE_METADATA_UPDATED,
+        ROLE_ASSIGNED,
+        EMBARGO_SET
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Entry {
+        private Step step;
+        private String persistentId;
+        private String path;
+        private Integer fileId;
+        private String checksum;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class AddedFile {
+        private int fileId;
+        private String checksum;
+    }
+
+    private final Path file;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String persistentId;
+    private final Set<Step> completedSteps = EnumSet.noneOf(Step.class);
+    private final Map<String, AddedFile> addedFiles = new LinkedHashMap<>();
+
+    private CreationJournal(Path file) {
+        this.file = file;
+    }
+
+    public static CreationJournal inMemory() {
+        return new CreationJournal(null);
+    }
+
+    /**
+     * Opens the journal in a deposit directory, reading the progress recorded by earlier attempts, if any.
+     *
+     * @param depositDir the deposit directory
+     * @return the journal
+     * @throws IOException if an existing journal cannot be read
+     */
+    public static CreationJournal open(Path depositDir) throws IOException {
+        var journal = new CreationJournal(depositDir.resolve(FILENAME));
+        if (Files.exists(journal.file)) {
+            for (var line : Files.readAllLines(journal.file, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    journal.replay(line);
+                }
+            }
+        }
+        return journal;
+    }
+
+    private void replay(String line) {
+        try {
+            apply(objectMapper.readValue(line, Entry.class));
+        }
+        catch (JsonProcessingException e) {
+            // Most likely the last line, which was being written when the service stopped; the step it records is done again
+            log.warn("Ignoring unreadable line in {}: {}", file, line);
+        }
+    }
+
+    private void apply(Entry entry) {
+        switch (entry.getStep()) {
+            case DATASET_CREATED:
+                persistentId = entry.getPersistentId();
+                completedSteps.clear();
+                addedFiles.clear();
+                break;
+            case FILE_ADDED:
+                addedFiles.put(entry.getPath(), new AddedFile(entry.getFileId(), entry.getChecksum()));
+                return;
+            default:
+                break;
+        }
+        completedSteps.add(entry.getStep());
+    }
+
+    private void append(Entry entry) throws IOException {
+        apply(entry);
+        if (file != null) {
+            Files.writeString(file, objectMapper.writeValueAsString(entry) + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+        }
+    }
+
+    public boolean isPersistent() {
+        return file != null;
+    }
+
+    public Optional<String> getPersistentId() {
+        return Optional.ofNullable(persistentId);
+    }
+
+    public boolean isCompleted(Step step) {
+        return completedSteps.contains(step);
+    }
+
+    /**
+     * @return the files that were added to the dataset, by their path in the dataset (directoryLabel and label)
+     */
+    public Map<String, AddedFile> getAddedFiles() {
+        return Collections.unmodifiableMap(addedFiles);
+    }
+
+    /**
+     * Records the creation of the dataset. Any progress recorded for an earlier dataset is discarded.
+     *
+     * @param persistentId the persistent identifier of the new dataset
+     * @throws IOException if the journal cannot be written
+     */
+    public void datasetCreated(String persistentId) throws IOException {
+        append(new Entry(Step.DATASET_CREATED, persistentId, null, null, null));
+    }
+
+    public void stepCompleted(Step step) throws IOException {
+        append(new Entry(step, null, null, null, null));
+    }
+
+    public void fileAdded(String path, int fileId, String checksum) throws IOException {
+        append(new Entry(Step.FILE_ADDED, null, path, fileId, checksum));
+    }
+}
@@ -17,23 +17,33 @@ package nl.knaw.dans.ingest.core.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.ingest.core.dataverse.DatasetFile;
 import nl.knaw.dans.ingest.core.dataverse.DatasetService;
+import nl.knaw.dans.ingest.core.dataverse.FileListReader;
 import nl.knaw.dans.ingest.core.domain.Deposit;
 import nl.knaw.dans.ingest.core.domain.FileInfo;
 import nl.knaw.dans.ingest.core.exception.FailedDepositException;
+import nl.knaw.dans.ingest.core.service.CreationJournal.AddedFile;
+import nl.knaw.dans.ingest.core.service.CreationJournal.Step;
+import nl.knaw.dans.lib.dataverse.DatasetApi;
 import nl.knaw.dans.lib.dataverse.DataverseApi;
 import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.Version;
 import nl.knaw.dans.lib.dataverse.model.RoleAssignment;
 import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.regex.Pattern;
 
 import static java.util.Collections.singletonMap;
@@ -42,6 +52,7 @@ import static java.util.Collections.singletonMap;
 public class DatasetCreator extends DatasetEditor {
 
     private final String depositorRole;
+    private final CreationJournal journal;
 
     public DatasetCreator(
         boolean isMigration,
@@ -54,7 +65,8 @@ public class DatasetCreator extends DatasetEditor {
         String depositorRole,
         DatasetService datasetService,
         String vaultMetadataKey,
-        boolean deleteDraftOnFailure) {
+        boolean deleteDraftOnFailure,
+        CreationJournal journal) {
         super(
             isMigration,
             dataset,
@@ -66,52 +78,93 @@ public class DatasetCreator extends DatasetEditor {
             deleteDraftOnFailure);
 
         this.depositorRole = depositorRole;
+        this.journal = journal;
     }
 
     @Override
     public String performEdit() {
         var api = dataverseClient.dataverse("root");
-
-        log.debug("Creating new dataset");
         String persistentId = null;
 
         try {
-            persistentId = importDataset(api);
-            log.debug("New persistent ID: {}", persistentId);
-            modifyDataset(persistentId);
+            persistentId = getResumableDataset().orElse(null);
+            var resumed = persistentId != null;
+            if (!resumed) {
+                log.debug("Creating new dataset");
+                persistentId = importDataset(api);
+                log.debug("New persistent ID: {}", persistentId);
+                journal.datasetCreated(persistentId);
+            }
+            else {
+                log.info("Resuming creation of dataset {} for deposit {}", persistentId, deposit.getDepositId());
+            }
+            modifyDataset(persistentId, resumed);
             return persistentId;
         }
         catch (Exception e) {
+            // A draft that can be resumed from the journal is kept, so that the next attempt does not have to start over
+            var deleteDraft = deleteDraftOnFailure && !journal.isPersistent();
             try {
-                if (persistentId != null) {
+                if (persistentId != null && deleteDraft) {
                     deleteDraftIfExists(persistentId);
                 }
             }
             catch (IOException | DataverseException ex) {
                 log.error("Error deleting draft dataset", ex);
             }
-            throw new FailedDepositException(deposit, "Error creating dataset" + (this.deleteDraftOnFailure ? ". Deleting draft" : "."), e);
+            throw new FailedDepositException(deposit, "Error creating dataset" + (deleteDraft ? ". Deleting draft" : "."), e);
         }
     }
 
-    private void modifyDataset(String persistentId) throws IOException, DataverseException {
+    Optional<String> getResumableDataset() throws IOException, DataverseException {
+        var persistentId = journal.getPersistentId();
+
+        if (persistentId.isEmpty()) {
+            return Optional.empty();
+        }
+
+        try {
+            var state = dataverseClient.dataset(persistentId.get()).getLatestVersion().getData().getLatestVersion().getVersionState();
+
+            if (state.contains("DRAFT")) {
+                return persistentId;
+            }
+
+            throw new IllegalStateException(String.format("Dataset %s created by an earlier attempt is no longer a draft (state = %s)", persistentId.get(), state));
+        }
+        catch (DataverseException e) {
+            if (e.getStatus() == 404) {
+                log.warn("Dataset {} created by an earlier attempt no longer exists; creating a new dataset", persistentId.get());
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    private void modifyDataset(String persistentId, boolean resumed) throws IOException, DataverseException {
         var api = dataverseClient.dataset(persistentId);
 
-        // This will set fileAccessRequest and termsOfAccess
-        var version = dataset.getDatasetVersion();
-        version.setFileAccessRequest(deposit.allowAccessRequests());
-        if (!deposit.allowAccessRequests() && StringUtils.isBlank(version.getTermsOfAccess())) {
-            version.setTermsOfAccess("N/a");
+        if (!journal.isCompleted(Step.METADATA_UPDATED)) {
+            // This will set fileAccessRequest and termsOfAccess
+            var version = dataset.getDatasetVersion();
+            version.setFileAccessRequest(deposit.allowAccessRequests());
+            if (!deposit.allowAccessRequests() && StringUtils.isBlank(version.getTermsOfAccess())) {
+                version.setTermsOfAccess("N/a");
+            }
+            var keyMap = new HashMap<String, String>(singletonMap("dansDataVaultMetadata", vaultMetadataKey));
+            api.updateMetadata(version, keyMap);
+            datasetService.awaitUnlock(persistentId);
+            journal.stepCompleted(Step.METADATA_UPDATED);
         }
-        var keyMap = new HashMap<String, String>(singletonMap("dansDataVaultMetadata", vaultMetadataKey));
-        api.updateMetadata(version, keyMap);
-        api.awaitUnlock();
 
-        // license stuff
-        var license = toJson(Map.of("http://schema.org/license", getLicense(deposit.getDdm())));
-        log.debug("Setting license to {}", license);
-        api.updateMetadataFromJsonLd(license, true);
-        api.awaitUnlock();
+        if (!journal.isCompleted(Step.LICENSE_SET)) {
+            // license stuff
+            var license = toJson(Map.of("http://schema.org/license", getLicense(deposit.getDdm())));
+            log.debug("Setting license to {}", license);
+            api.updateMetadataFromJsonLd(license, true);
+            datasetService.awaitUnlock(persistentId);
+            journal.stepCompleted(Step.LICENSE_SET);
+        }
 
         // add files to dataset
         var pathToFileInfo = getFileInfo();
@@ -122,23 +175,89 @@ public class DatasetCreator extends DatasetEditor {
             pathToFileInfo.put(Paths.get(ORIGINAL_METADATA_ZIP), originalMetadata);
         }
 
-        log.debug("File info: {}", pathToFileInfo);
-        var databaseIdToFileInfo = addFiles(persistentId, pathToFileInfo.values());
+        var databaseIdToFileInfo = new HashMap<Integer, FileInfo>();
+        if (resumed) {
+            databaseIdToFileInfo.putAll(getFilesAddedEarlier(api, pathToFileInfo));
+            log.debug("Files added by an earlier attempt: {}", databaseIdToFileInfo.size());
+        }
+        var filesToAdd = new ArrayList<>(pathToFileInfo.values());
+        filesToAdd.removeAll(databaseIdToFileInfo.values());
+
+        log.debug("File info: {}", filesToAdd);
+        databaseIdToFileInfo.putAll(addFiles(persistentId, filesToAdd));
 
         if (originalMetadata != null) {
             FileUtils.deleteQuietly(originalMetadata.getPath().toFile());
         }
 
         log.debug("Database ID -> FileInfo: {}", databaseIdToFileInfo);
-        // update individual files metadata
-        updateFileMetadata(databaseIdToFileInfo);
-        api.awaitUnlock();
+        if (!journal.isCompleted(Step.FILE_METADATA_UPDATED)) {
+            // update individual files metadata
+            updateFileMetadata(databaseIdToFileInfo);
+            datasetService.awaitUnlock(persistentId);
+            journal.stepCompleted(Step.FILE_METADATA_UPDATED);
+        }
 
-        api.assignRole(getRoleAssignment());
-        api.awaitUnlock();
+        if (!journal.isCompleted(Step.ROLE_ASSIGNED)) {
+            api.assignRole(getRoleAssignment());
+            datasetService.awaitUnlock(persistentId);
+            journal.stepCompleted(Step.ROLE_ASSIGNED);
+        }
+
+        if (!journal.isCompleted(Step.EMBARGO_SET)) {
+            var dateAvailable = getDateAvailable(deposit); //deposit.getDateAvailable().get();
+            embargoFiles(persistentId, dateAvailable);
+            journal.stepCompleted(Step.EMBARGO_SET);
+        }
+    }
+
+    /**
+     * Finds the files of the deposit that are already in the draft, because an earlier attempt added them. A file counts as added if the draft contains a file at the same path that has the id
+     * recorded in the journal, or that has the same checksum (the addition may have succeeded without being recorded).
+     */
+    private Map<Integer, FileInfo> getFilesAddedEarlier(DatasetApi api, Map<Path, FileInfo> pathToFileInfo) throws IOException, DataverseException {
+        return findFilesAddedEarlier(FileListReader.getFiles(api, Version.DRAFT.toString()), journal.getAddedFiles(), pathToFileInfo);
+    }
 
-        var dateAvailable = getDateAvailable(deposit); //deposit.getDateAvailable().get();
-        embargoFiles(persistentId, dateAvailable);
+    static Map<Integer, FileInfo> findFilesAddedEarlier(List<DatasetFile> draftFiles, Map<String, AddedFile> journaled, Map<Path, FileInfo> pathToFileInfo) {
+        var result = new HashMap<Integer, FileInfo>();
+
+        for (var file : draftFiles) {
+            // A file without a label cannot be matched to a file of the deposit; it is left alone
+            if (file.getLabel() == null || file.getId() == null) {
+                log.warn("Skipping file {} in draft while resuming creation; it has no label or id", file);
+                continue;
+            }
+            var path = file.getPath();
+            var fileInfo = pathToFileInfo.get(path);
+
+            if (fileInfo != null) {
+                var added = journaled.get(path.toString());
+                var sameId = added != null && added.getFileId() == file.getId();
+                var sameChecksum = fileInfo.getChecksum().equals(file.getChecksumValue());
+
+                if (sameId || sameChecksum) {
+                    result.put(file.getId(), fileInfo);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Optional<Path> getPath(FileMeta fileMeta) {
+        return Optional.ofNullable(fileMeta.getLabel())
+            .map(label -> Path.of(Optional.ofNullable(fileMeta.getDirectoryLabel()).orElse(""), label));
+    }
+
+    @Override
+    protected void fileAdded(int id, FileInfo fileInfo) throws IOException {
+        var path = getPath(fileInfo.getMetadata());
+        if (path.isPresent()) {
+            journal.fileAdded(path.get().toString(), id, fileInfo.getChecksum());
+        }
+        else {
+            log.warn("File {} was added without a label; not recording it in the creation journal", id);
+        }
     }
 
     private RoleAssignment getRoleAssignment() {
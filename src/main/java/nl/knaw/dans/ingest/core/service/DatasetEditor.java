@@ -18,7 +18,9 @@ package nl.knaw.dans.ingest.core.service;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.ingest.core.dataverse.DatasetFile;
 import nl.knaw.dans.ingest.core.dataverse.DatasetService;
+import nl.knaw.dans.ingest.core.dataverse.FileListReader;
 import nl.knaw.dans.ingest.core.domain.Deposit;
 import nl.knaw.dans.ingest.core.domain.FileInfo;
 import nl.knaw.dans.ingest.core.exception.RejectedDepositException;
@@ -28,7 +30,6 @@ import nl.knaw.dans.lib.dataverse.DataverseClient;
 import nl.knaw.dans.lib.dataverse.DataverseException;
 import nl.knaw.dans.lib.dataverse.Version;
 import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
-import nl.knaw.dans.lib.dataverse.model.file.DataFile;
 import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.w3c.dom.Node;
@@ -128,11 +129,22 @@ public abstract class DatasetEditor {
 
             var id = addFile(persistentId, fileInfo);
             result.put(id, fileInfo);
+            fileAdded(id, fileInfo);
         }
 
         return result;
     }
 
+    /**
+     * Called after a file has been added to the dataset. The default implementation does nothing.
+     *
+     * @param id       the database id of the new file
+     * @param fileInfo the file that was added
+     * @throws IOException if the addition cannot be recorded
+     */
+    protected void fileAdded(int id, FileInfo fileInfo) throws IOException {
+    }
+
     protected FileInfo createOriginalMetadataFileInfo() throws IOException {
         var path = zipFileHandler.zipOriginalMetadata(deposit.getDdmPath(), deposit.getFilesXmlPath());
         var checksum = DigestUtils.sha1Hex(new FileInputStream(path.toFile()));
@@ -209,12 +221,11 @@ public abstract class DatasetEditor {
         }
         else {
             var api = dataverseClient.dataset(persistentId);
-            var files = api.getFiles(Version.LATEST.toString()).getData();
+            var files = FileListReader.getFiles(api, Version.LATEST.toString());
 
             var items = files.stream()
                 .filter(f -> !embargoExclusions.contains(f.getLabel()))
-                .map(FileMeta::getDataFile)
-                .map(DataFile::getId)
+                .map(DatasetFile::getId)
                 .collect(Collectors.toList());
 
             embargoFiles(persistentId, dateAvailable, items);
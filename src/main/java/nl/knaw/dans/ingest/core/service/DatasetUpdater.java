@@ -17,7 +17,9 @@ package nl.knaw.dans.ingest.core.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.ingest.core.dataverse.DatasetFile;
 import nl.knaw.dans.ingest.core.dataverse.DatasetService;
+import nl.knaw.dans.ingest.core.dataverse.FileListReader;
 import nl.knaw.dans.ingest.core.domain.Deposit;
 import nl.knaw.dans.ingest.core.domain.FileInfo;
 import nl.knaw.dans.ingest.core.exception.CannotUpdateDraftDatasetException;
@@ -39,9 +41,9 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -50,14 +52,22 @@ import static java.util.Collections.singletonMap;
 
 @Slf4j
 public class DatasetUpdater extends DatasetEditor {
+    // Number of times a file replacement or deletion is tried again when it fails because the dataset is locked
+    private static final int MAX_LOCK_CONFLICT_RETRIES = 5;
+
+    private final FileOperationRunner fileOperationRunner;
+    private final DatasetVersionDiff datasetVersionDiff;
 
     protected DatasetUpdater(boolean isMigration, Dataset dataset,
         Deposit deposit, List<URI> supportedLicenses,
         Pattern fileExclusionPattern, ZipFileHandler zipFileHandler,
-        ObjectMapper objectMapper, DatasetService datasetService, String vaultMetadataKey, boolean deleteDraftOnFailure) {
+        ObjectMapper objectMapper, DatasetService datasetService, String vaultMetadataKey, boolean deleteDraftOnFailure, int fileOperationConcurrency,
+        Executor fileOperationExecutor) {
         super(isMigration, dataset, deposit, supportedLicenses,
             fileExclusionPattern,
             zipFileHandler, objectMapper, datasetService, vaultMetadataKey, deleteDraftOnFailure);
+        this.fileOperationRunner = new FileOperationRunner(fileOperationExecutor, fileOperationConcurrency, MAX_LOCK_CONFLICT_RETRIES);
+        this.datasetVersionDiff = new DatasetVersionDiff(objectMapper);
     }
 
     @Override
@@ -72,9 +82,9 @@ public class DatasetUpdater extends DatasetEditor {
                 Thread.sleep(4000);
                 var api = dataverseClient.dataset(doi);
 
-                api.awaitUnlock();
+                datasetService.awaitUnlock(doi);
                 Thread.sleep(8000);
-                api.awaitUnlock();
+                datasetService.awaitUnlock(doi);
 
                 var state = api.getLatestVersion().getData().getLatestVersion().getVersionState();
 
@@ -106,13 +116,36 @@ public class DatasetUpdater extends DatasetEditor {
                         .ifPresent(field -> datasetVersion.getMetadataBlocks().get("citation").getFields().add(field));
                 }
 
+                /*
+                 * Only send the metadata if it changed. The data vault fields that identify the bag (such as dansBagId) must be right for every version, so
+                 * a deposit with a new bag always needs the update, even if the content of the dataset did not change; only the same bag deposited again
+                 * (e.g., a retry) can skip it. If nothing at all changes, the metadata is sent anyway at the end, so that there is a new version to publish.
+                 */
                 var keyMap = new HashMap<String, String>(singletonMap("dansDataVaultMetadata", vaultMetadataKey));
-                api.updateMetadata(datasetVersion, keyMap);
-                api.awaitUnlock();
+                var changedFields = datasetVersionDiff.getChangedFields(latestVersion, datasetVersion);
+                var changedVersionFields = datasetVersionDiff.getChangedVersionFields(latestVersion, datasetVersion);
+                var metadataUpdated = !changedFields.isEmpty() || !changedVersionFields.isEmpty();
+                if (metadataUpdated) {
+                    log.debug("Changed metadata fields: {}; changed version fields: {}", changedFields, changedVersionFields);
+                    api.updateMetadata(datasetVersion, keyMap);
+                    datasetService.awaitUnlock(doi);
+                }
+                else {
+                    log.debug("Metadata unchanged; not updating it");
+                }
 
-                var license = toJson(Map.of("http://schema.org/license", getLicense(deposit.getDdm())));
-                api.updateMetadataFromJsonLd(license, true);
-                api.awaitUnlock();
+                /*
+                 * The version that updateMetadata sends has no license, and Dataverse gives a version without a license its default license. So after a
+                 * metadata update the license must always be set again; otherwise only if it changed.
+                 */
+                var licenseUri = getLicense(deposit.getDdm());
+                var licenseChanged = !Optional.ofNullable(licenseUri).equals(datasetVersionDiff.getLicenseUri(latestVersion));
+                var licenseUpdated = metadataUpdated || licenseChanged;
+                if (licenseUpdated) {
+                    var license = toJson(Map.of("http://schema.org/license", licenseUri));
+                    api.updateMetadataFromJsonLd(license, true);
+                    datasetService.awaitUnlock(doi);
+                }
 
                 var pathToFileInfo = getFileInfo();
 
@@ -130,92 +163,43 @@ public class DatasetUpdater extends DatasetEditor {
                 var publishedVersions = versions.stream().filter(v -> v.getVersionState().equals("RELEASED")).count();
                 log.debug("Number of published versions so far: {}", publishedVersions);
 
-                // move old paths to new paths
-                var oldToNewPathMovedFiles = getOldToNewPathOfFilesToMove(pathToFileMetaInLatestVersion, pathToFileInfo);
-                var fileMovements = oldToNewPathMovedFiles.keySet().stream()
-                    .map(path -> Map.entry(pathToFileMetaInLatestVersion.get(path).getDataFile().getId(), pathToFileInfo.get(oldToNewPathMovedFiles.get(path)).getMetadata()))
-                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+                var plan = FileChangePlan.compute(pathToFileMetaInLatestVersion, pathToFileInfo);
+                var fileMovements = plan.getFileMovements();
                 log.debug("fileMovements = {}", fileMovements);
 
-                /*
-                 * File replacement can only happen on files with paths that are not also involved in a rename/move action. Otherwise, we end up with:
-                 *
-                 * - trying to update the file metadata by a database ID that is not the "HEAD" of a file version history (which Dataverse doesn't allow anyway, it
-                 * fails with "You cannot edit metadata on a dataFile that has been replaced"). This happens when a file A is renamed to B, but a different file A
-                 * is also added in the same update. Schematically, (1) means unique file 1, A is a file name:
-                 * V1    -> V2
-                 *
-                 * (1)A -> (1)B (move)
-                 * ..   -> (2)A  (add)
-                 *
-                 * - trying to add a file with a name that already exists. This happens when a file A is renamed to B, while B is also part of the latest version (V1)
-                 *
-                 * V1 -> V2
-                 * (1)A -> (1)B (move)
-                 * (2)B -> .. (delete)
-                 *
-                 */
-                var fileReplacementCandidates = pathToFileMetaInLatestVersion.entrySet().stream()
-                    .filter(pathToFileInfoEntry -> !oldToNewPathMovedFiles.containsKey(pathToFileInfoEntry.getKey()))
-                    .filter(pathToFileInfoEntry -> !oldToNewPathMovedFiles.containsValue(pathToFileInfoEntry.getKey())) // TODO in the OG version, this was a Set; check what performance is like
-                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-
-                var filesToReplace = getFilesToReplace(pathToFileInfo, fileReplacementCandidates);
+                var filesToReplace = plan.getFilesToReplace();
                 log.debug("filesToReplace = {}", filesToReplace);
                 var fileReplacements = replaceFiles(api, filesToReplace);
                 log.debug("fileReplacements = {}", fileReplacements);
 
-                /*
-                 * To find the files to delete we start from the paths in the deposit payload. In principle, these paths are remaining, so should NOT be deleted.
-                 * However, if a file is moved/renamed to a path that was also present in the latest version, then the old file at that path must first be deleted
-                 * (and must therefore NOT be included in candidateRemainingFiles). Otherwise, we'll end up trying to use an existing (directoryLabel, label) pair.
-                 */
-                var newPathsOfMovedFiles = new HashSet<>(oldToNewPathMovedFiles.values());
-                var candidateRemainingFiles = diff(pathToFileInfo.keySet(), newPathsOfMovedFiles);
-
-                /*
-                 * The paths to delete, now, are the paths in the latest version minus the remaining files. We further subtract the old paths of the moved files.
-                 * This may be a bit confusing, but the goal is to make sure that the underlying FILE remains present (after all, it is to be renamed/moved). The
-                 * path itself WILL be "removed" from the latest version by the move. (It MAY be filled again by a file addition in the same update, though.)
-                 */
-                var oldPathsOfMovedFiles = new HashSet<>(oldToNewPathMovedFiles.keySet());
-                var pathsToDelete = diff(diff(pathToFileMetaInLatestVersion.keySet(), candidateRemainingFiles), oldPathsOfMovedFiles);
-                log.debug("pathsToDelete = {}", pathsToDelete);
-
-                var fileDeletions = getFileDeletions(pathsToDelete, pathToFileMetaInLatestVersion);
+                log.debug("pathsToDelete = {}", plan.getPathsToDelete());
+                var fileDeletions = plan.getFileDeletions();
                 log.debug("fileDeletions = {}", fileDeletions);
 
                 deleteFiles(api, fileDeletions);
 
-                /*
-                 * After the movements have been performed, which paths are occupied? We start from the paths of the latest version (pathToFileMetaInLatestVersion.keySet)
-                 *
-                 * The old paths of the moved files (oldToNewPathMovedFiles.keySet) are no longer occupied, so they must be subtracted. This is important in the case where
-                 * a deposit renames/moves a file (leaving the checksum unchanges) but provides a new file for the vacated path.
-                 *
-                 * The paths of the deleted files (pathsToDelete) are no longer occupied, so must be subtracted. (It is not strictly necessary for the calculation
-                 * of pathsToAdd, but done anyway to keep the logic consistent.)
-                 *
-                 * The new paths of the moved files (oldToNewPathMovedFiles.values.toSet) *are* now occupied, so the must be added. This is important to
-                 * avoid those files from being marked as "new" files, i.e. files to be added.
-                 *
-                 * All paths in the deposit that are not occupied, are new files to be added.
-                 */
-
-                var diffed = diff(diff(pathToFileMetaInLatestVersion.keySet(), newPathsOfMovedFiles), pathsToDelete);
-                var occupiedPaths = union(diffed, oldToNewPathMovedFiles.values());
-
-                log.debug("occupiedPaths = {}", occupiedPaths);
-                var pathsToAdd = diff(pathToFileInfo.keySet(), occupiedPaths);
-                var filesToAdd = pathsToAdd.stream().map(pathToFileInfo::get).collect(Collectors.toList());
+                log.debug("pathsToAdd = {}", plan.getPathsToAdd());
+                var filesToAdd = plan.getFilesToAdd();
                 var fileAdditions = addFiles(doi, filesToAdd).entrySet().stream()
                     .map(e -> Map.entry(e.getKey(), e.getValue().getMetadata()))
                     .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-                api.awaitUnlock();
+                datasetService.awaitUnlock(doi);
 
                 // TODO: check that only updating the file metadata works (from scala code)
-                updateFileMetadata(fileReplacements, fileMovements, fileAdditions);
-                api.awaitUnlock();
+                // Added files always get their metadata, as not all of it is set when the file is uploaded
+                var fileMetadataUpdates = getChangedFileMetadata(api, fileReplacements, fileMovements);
+                fileAdditions.forEach(fileMetadataUpdates::putIfAbsent);
+                log.debug("fileMetadataUpdates = {}", fileMetadataUpdates.keySet());
+                if (!fileMetadataUpdates.isEmpty()) {
+                    updateFileMetadata(fileMetadataUpdates);
+                    datasetService.awaitUnlock(doi);
+                }
+
+                if (!metadataUpdated && !licenseUpdated && fileReplacements.isEmpty() && fileDeletions.isEmpty() && fileAdditions.isEmpty() && fileMetadataUpdates.isEmpty()) {
+                    log.debug("Nothing changed; updating metadata to create a new version");
+                    api.updateMetadata(datasetVersion, keyMap);
+                    datasetService.awaitUnlock(doi);
+                }
 
                 // embargo
                 var dateAvailable = getDateAvailable(deposit);
@@ -270,26 +254,41 @@ public class DatasetUpdater extends DatasetEditor {
         }
     }
 
-    private void deleteFiles(DatasetApi api, Set<Integer> fileDeletions) throws IOException, DataverseException {
-        for (var id : fileDeletions) {
-            log.debug("Deleting file, databaseId = {}", id);
-            dataverseClient.sword().deleteFile(id);
-            api.awaitUnlock();
+    /*
+     * Selects the files whose metadata in the draft differs from the metadata in the deposit. The metadata of all files in the draft is retrieved with one call,
+     * so that files whose metadata is already right do not need a call each.
+     */
+    @SafeVarargs
+    private Map<Integer, FileMeta> getChangedFileMetadata(DatasetApi api, Map<Integer, FileMeta>... fileMaps) throws IOException, DataverseException {
+        var wanted = new HashMap<Integer, FileMeta>();
+        for (var fileMap : fileMaps) {
+            fileMap.forEach(wanted::putIfAbsent);
+        }
+        if (wanted.isEmpty()) {
+            return wanted;
         }
-    }
 
-    private Set<Integer> getFileDeletions(Set<Path> pathsToDelete, Map<Path, FileMeta> pathToFileInfoInLatestVersion) {
-        return pathsToDelete.stream()
-            .map(p -> pathToFileInfoInLatestVersion.get(p).getDataFile().getId())
-            .collect(Collectors.toSet());
-    }
+        var current = api.getFiles(Version.DRAFT.toString()).getData().stream()
+            .filter(fileMeta -> fileMeta.getDataFile() != null)
+            .collect(Collectors.toMap(fileMeta -> fileMeta.getDataFile().getId(), fileMeta -> fileMeta, (a, b) -> a));
 
-    <T> Set<T> diff(Collection<T> a, Collection<T> b) {
-        return a.stream().filter(k -> !b.contains(k)).collect(Collectors.toSet());
+        var changed = new HashMap<Integer, FileMeta>();
+        wanted.forEach((id, fileMeta) -> {
+            var currentFileMeta = current.get(id);
+            if (currentFileMeta == null || datasetVersionDiff.isFileMetadataChanged(currentFileMeta, fileMeta)) {
+                changed.put(id, fileMeta);
+            }
+        });
+        return changed;
     }
 
-    <T> Set<T> intersection(Collection<T> a, Collection<T> b) {
-        return a.stream().filter(b::contains).collect(Collectors.toSet());
+    private void deleteFiles(DatasetApi api, Set<Integer> fileDeletions) throws IOException, DataverseException, InterruptedException {
+        var ids = fileDeletions.stream().sorted().collect(Collectors.toList());
+        fileOperationRunner.run(ids, id -> {
+            log.debug("Deleting file, databaseId = {}", id);
+            dataverseClient.sword().deleteFile(id);
+            return id;
+        }, () -> datasetService.awaitUnlock(deposit.getDataverseDoi()));
     }
 
     <T> Set<T> union(Collection<T> a, Collection<T> b) {
@@ -297,143 +296,87 @@ public class DatasetUpdater extends DatasetEditor {
         // a.stream().filter(b::contains).collect(Collectors.toSet());
     }
 
-    private Map<Integer, FileMeta> replaceFiles(DatasetApi api, Map<Integer, FileInfo> filesToReplace) throws IOException, DataverseException {
+    private Map<Integer, FileMeta> replaceFiles(DatasetApi api, Map<Integer, FileInfo> filesToReplace) throws IOException, DataverseException, InterruptedException {
+        var entries = filesToReplace.entrySet().stream()
+            .sorted(Map.Entry.comparingByKey())
+            .collect(Collectors.toList());
+        var replacements = fileOperationRunner.run(entries, this::replaceFile, () -> datasetService.awaitUnlock(deposit.getDataverseDoi()));
+
         var results = new HashMap<Integer, FileMeta>();
+        for (var replacement : replacements) {
+            results.put(replacement.getKey(), replacement.getValue());
+        }
+        return results;
+    }
 
-        for (var entry : filesToReplace.entrySet()) {
-            log.debug("Replacing file with ID = {}", entry.getKey());
-            var fileApi = dataverseClient.file(entry.getKey());
-            var filePath = entry.getValue().getPhysicalPath();
+    private Map.Entry<Integer, FileMeta> replaceFile(Map.Entry<Integer, FileInfo> entry) throws IOException, DataverseException {
+        log.debug("Replacing file with ID = {}", entry.getKey());
+        var fileApi = dataverseClient.file(entry.getKey());
+        var filePath = entry.getValue().getPhysicalPath();
 
-            var wrappedZip = zipFileHandler.wrapIfZipFile(filePath);
-            var file = wrappedZip.orElse(filePath);
+        var wrappedZip = zipFileHandler.wrapIfZipFile(filePath);
+        var file = wrappedZip.orElse(filePath);
 
-            var meta = new FileMeta();
-            meta.setForceReplace(true);
-            meta.setLabel(file.getFileName().toString());
-            var result = fileApi.replaceFile(file, meta);
-
-            if (wrappedZip.isPresent()) {
-                try {
-                    Files.deleteIfExists(wrappedZip.get());
-                }
-                catch (IOException e) {
-                    log.error("Unable to delete zipfile {}", wrappedZip.get(), e);
-                }
-            }
-
-            var id = -1;
+        var meta = new FileMeta();
+        meta.setForceReplace(true);
+        meta.setLabel(file.getFileName().toString());
+        var result = fileApi.replaceFile(file, meta);
 
+        if (wrappedZip.isPresent()) {
             try {
-                id = result.getData().getFiles().get(0).getDataFile().getId();
+                Files.deleteIfExists(wrappedZip.get());
             }
-            // TODO figure out what kind of exceptions can be thrown here, besides DataverseException and NPE
-            catch (Throwable e) {
-                log.error("Unable to get ID from result", e);
-                throw new IllegalStateException("Could not get ID of replacement file after replace action", e);
+            catch (IOException e) {
+                log.error("Unable to delete zipfile {}", wrappedZip.get(), e);
             }
-
-            results.put(id, entry.getValue().getMetadata());
-            api.awaitUnlock();
         }
 
-        return results;
-    }
-
-    private Map<Integer, FileInfo> getFilesToReplace(Map<Path, FileInfo> pathToFileInfo, Map<Path, FileMeta> fileReplacementCandidates) {
-
-        var intersection = intersection(pathToFileInfo.keySet(), fileReplacementCandidates.keySet());
+        var id = -1;
 
-        log.debug("Intersection paths for replacing = {}", intersection);
-
-        return intersection.stream()
-            .filter(p -> !pathToFileInfo.get(p).getChecksum().equals(fileReplacementCandidates.get(p).getDataFile().getChecksum().getValue()))
-            .map(p -> Map.entry(fileReplacementCandidates.get(p).getDataFile().getId(), pathToFileInfo.get(p)))
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-    }
-
-    /**
-     * Creatings a mapping for moving files to a new location. To determine this, the file needs to be unique in the old and the new version, because its checksum is used to locate it. Files that
-     * occur multiple times in either the old or the new version cannot be moved in this way. They will appear to have been deleted in the old version and added in the new. This has the same net
-     * result, except that the "Changes" overview in Dataverse does not record that the file was effectively moved.
-     *
-     * @param pathToFileMetaInLatestVersion map from path to file metadata in the old version
-     * @param pathToFileInfo                map from path to file info in the new version (i.e. the deposit).
-     * @return
-     */
-    Map<Path, Path> getOldToNewPathOfFilesToMove(Map<Path, FileMeta> pathToFileMetaInLatestVersion, Map<Path, FileInfo> pathToFileInfo) {
-
-        var depositChecksums = pathToFileInfo.entrySet().stream()
-            .map(e -> Map.entry(e.getKey(), e.getValue().getChecksum()))
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-
-        var latestFileChecksums = pathToFileMetaInLatestVersion.entrySet().stream()
-            .map(e -> Map.entry(e.getKey(), e.getValue().getDataFile().getChecksum().getValue()))
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-
-        var checksumsToPathNonDuplicatedFilesInDeposit = getChecksumsToPathOfNonDuplicateFiles(depositChecksums);
-        var checksumsToPathNonDuplicatedFilesInLatestVersion = getChecksumsToPathOfNonDuplicateFiles(latestFileChecksums);
-
-        var intersects = checksumsToPathNonDuplicatedFilesInDeposit.keySet().stream()
-            .filter(checksumsToPathNonDuplicatedFilesInLatestVersion::containsKey)
-            .collect(Collectors.toSet());
-
-        return intersects.stream()
-            .map(c -> Map.entry(checksumsToPathNonDuplicatedFilesInLatestVersion.get(c), checksumsToPathNonDuplicatedFilesInDeposit.get(c)))
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-
-    }
-
-    private Map<String, Path> getChecksumsToPathOfNonDuplicateFiles(Map<Path, String> pathToChecksum) {
-        // inverse map first
-        var inversed = pathToChecksum.entrySet().stream()
-            .collect(Collectors.groupingBy(Map.Entry::getValue, Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+        try {
+            id = result.getData().getFiles().get(0).getDataFile().getId();
+        }
+        // TODO figure out what kind of exceptions can be thrown here, besides DataverseException and NPE
+        catch (Throwable e) {
+            log.error("Unable to get ID from result", e);
+            throw new IllegalStateException("Could not get ID of replacement file after replace action", e);
+        }
 
-        // filter out items with 0 or more than 1 items
-        return inversed.entrySet().stream()
-            .filter(item -> item.getValue().size() == 1)
-            .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get(0)));
+        return Map.entry(id, entry.getValue().getMetadata());
     }
 
-    private void validateFileMetas(Map<Path, FileMeta> pathToFileInfoInLatestVersion) {
+    private void validateFileMetas(Map<Path, DatasetFile> pathToFileInfoInLatestVersion) {
         // check for nulls
-        for (var fileMeta : pathToFileInfoInLatestVersion.values()) {
-            if (fileMeta.getDataFile() == null) {
+        for (var file : pathToFileInfoInLatestVersion.values()) {
+            if (file.getId() == null) {
                 throw new IllegalArgumentException("Found file metadata without dataFile element");
             }
         }
 
-        // check if any of them have a checksum that is not SHA-1restrictedFilesPresent
-        for (var fileMeta : pathToFileInfoInLatestVersion.values()) {
-            var checksumType = fileMeta.getDataFile().getChecksum().getType();
-            log.trace("Filemeta checksum type for file {}: {}", fileMeta.getLabel(), checksumType);
-            if (!checksumType.equals("SHA-1")) {
+        // check if any of them have a checksum that is not SHA-1
+        for (var file : pathToFileInfoInLatestVersion.values()) {
+            var checksumType = file.getChecksumType();
+            log.trace("Filemeta checksum type for file {}: {}", file.getLabel(), checksumType);
+            if (!"SHA-1".equals(checksumType)) {
                 throw new IllegalArgumentException("Not all file checksums are of type SHA-1");
             }
         }
     }
 
-    private Map<Path, FileMeta> getFilesInfoInLatestVersion(DatasetApi datasetApi) throws IOException, DataverseException {
+    private Map<Path, DatasetFile> getFilesInfoInLatestVersion(DatasetApi datasetApi) throws IOException, DataverseException {
         // N.B. If LATEST_PUBLISHED is not specified, it almost works, but the directoryLabel is not picked up somehow.
         // N.B.2 it still returns an empty (null) directoryLabel if there is no directoryLabel (file is in root of file structure)
-        var response = datasetApi.getFiles(Version.LATEST_PUBLISHED.toString());
-
-        return response.getData().stream()
-            .map(item -> {
-                try {
-                    log.trace("File item = {}", objectMapper.writeValueAsString(item));
-                    var path = Path.of(
-                        Optional.ofNullable(item.getDirectoryLabel()).orElse(""),
-                        item.getLabel()
-                    );
-                    return Map.entry(path, item);
-                }
-                catch (Exception e) {
-                    log.error("Error converting json", e);
-                    return null;
+        var files = FileListReader.getFiles(datasetApi, Version.LATEST_PUBLISHED.toString());
+
+        return files.stream()
+            .filter(item -> {
+                log.trace("File item = {}", item);
+                if (item.getLabel() == null) {
+                    log.error("File item without label: {}", item);
+                    return false;
                 }
+                return true;
             })
-            .filter(Objects::nonNull)
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            .collect(Collectors.toMap(DatasetFile::getPath, item -> item));
     }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Compares the latest version of a dataset with the version that an update-deposit would make of it, so that metadata that did not change is not sent to
+ * Dataverse again. Metadata fields are compared by their JSON representation, so a difference in representation only leads to an update that was not
+ * strictly needed, never to a change that is missed.
+ *
+ * The fields of the data vault metadata that identify the deposit or the version, such as the bag id, are different for (nearly) every deposit. They are
+ * compared separately from the content of the dataset (see {@link #getChangedVersionFields(DatasetVersion, DatasetVersion)}).
+ */
+class DatasetVersionDiff {
+    private static final Set<String> VERSION_FIELDS = Set.of(
+        DepositDatasetFieldNames.BAG_ID,
+        DepositDatasetFieldNames.NBN,
+        DepositDatasetFieldNames.SWORD_TOKEN,
+        DepositDatasetFieldNames.DANS_OTHER_ID_VERSION,
+        DepositDatasetFieldNames.DATAVERSE_PID,
+        DepositDatasetFieldNames.DATAVERSE_PID_VERSION);
+
+    private final ObjectMapper objectMapper;
+
+    DatasetVersionDiff(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Returns the names of the metadata fields that are different in the new version, including fields that were added or removed. The terms of access and
+     * the file access request setting are included as if they were fields. The data vault fields that identify the deposit or the version are left out.
+     *
+     * @param latestVersion the latest version of the dataset
+     * @param newVersion    the version mapped from the deposit
+     * @return the names of the changed fields, in alphabetical order after the terms
+     */
+    List<String> getChangedFields(DatasetVersion latestVersion, DatasetVersion newVersion) {
+        var changed = new ArrayList<String>();
+
+        if (!StringUtils.defaultString(latestVersion.getTermsOfAccess()).equals(StringUtils.defaultString(newVersion.getTermsOfAccess()))) {
+            changed.add("termsOfAccess");
+        }
+        if (Boolean.TRUE.equals(latestVersion.getFileAccessRequest()) != Boolean.TRUE.equals(newVersion.getFileAccessRequest())) {
+            changed.add("fileAccessRequest");
+        }
+
+        changed.addAll(getChangedFields(latestVersion, newVersion, false));
+        return changed;
+    }
+
+    /**
+     * Returns the names of the data vault fields that identify the deposit or the version (bag id, NBN, SWORD token, other id version and Dataverse PID
+     * and its version) that are different in the new version.
+     *
+     * @param latestVersion the latest version of the dataset
+     * @param newVersion    the version mapped from the deposit
+     * @return the names of the changed fields, in alphabetical order
+     */
+    List<String> getChangedVersionFields(DatasetVersion latestVersion, DatasetVersion newVersion) {
+        return getChangedFields(latestVersion, newVersion, true);
+    }
+
+    private List<String> getChangedFields(DatasetVersion latestVersion, DatasetVersion newVersion, boolean versionFields) {
+        var latestFields = getFields(latestVersion, versionFields);
+        var newFields = getFields(newVersion, versionFields);
+        var names = new TreeSet<>(latestFields.keySet());
+        names.addAll(newFields.keySet());
+
+        var changed = new ArrayList<String>();
+        for (var name : names) {
+            if (!Objects.equals(latestFields.get(name), newFields.get(name))) {
+                changed.add(name);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the URI of the license of a dataset version. Depending on the Dataverse version the license is either a URI or an object with a URI.
+     *
+     * @param version the dataset version
+     * @return the license URI, if any
+     */
+    Optional<String> getLicenseUri(DatasetVersion version) {
+        var license = objectMapper.valueToTree(version).path("license");
+        var uri = license.isTextual() ? license : license.path("uri");
+        return uri.isTextual() ? Optional.of(uri.asText()) : Optional.empty();
+    }
+
+    /**
+     * Checks whether the file metadata that Dataverse can update differs between the current metadata of a file and the metadata it should have.
+     *
+     * @param current the current metadata in Dataverse
+     * @param wanted  the metadata from the deposit
+     * @return true if the metadata must be updated
+     */
+    boolean isFileMetadataChanged(FileMeta current, FileMeta wanted) {
+        return !StringUtils.defaultString(current.getLabel()).equals(StringUtils.defaultString(wanted.getLabel()))
+            || !StringUtils.defaultString(current.getDirectoryLabel()).equals(StringUtils.defaultString(wanted.getDirectoryLabel()))
+            || !StringUtils.defaultString(current.getDescription()).equals(StringUtils.defaultString(wanted.getDescription()))
+            || Boolean.TRUE.equals(current.getRestricted()) != Boolean.TRUE.equals(wanted.getRestricted())
+            || !Objects.equals(Optional.ofNullable(current.getCategories()).orElse(List.of()), Optional.ofNullable(wanted.getCategories()).orElse(List.of()));
+    }
+
+    private Map<String, JsonNode> getFields(DatasetVersion version, boolean versionFields) {
+        var fields = new HashMap<String, JsonNode>();
+        if (version.getMetadataBlocks() == null) {
+            return fields;
+        }
+        for (var block : version.getMetadataBlocks().values()) {
+            if (block.getFields() != null) {
+                for (var field : block.getFields()) {
+                    if (VERSION_FIELDS.contains(field.getTypeName()) == versionFields) {
+                        fields.put(field.getTypeName(), objectMapper.valueToTree(field));
+                    }
+                }
+            }
+        }
+        return fields;
+    }
+}
@@ -30,9 +30,14 @@ import nl.knaw.dans.ingest.core.exception.InvalidDatasetStateException;
 import nl.knaw.dans.ingest.core.exception.InvalidDepositException;
 import nl.knaw.dans.ingest.core.exception.RejectedDepositException;
 import nl.knaw.dans.ingest.core.exception.TargetBlockedException;
+import nl.knaw.dans.ingest.core.sequencing.CoalescibleTask;
+import nl.knaw.dans.ingest.core.sequencing.PreparableTask;
+import nl.knaw.dans.ingest.core.sequencing.RetryableTask;
 import nl.knaw.dans.ingest.core.sequencing.TargetedTask;
 import nl.knaw.dans.ingest.core.service.mapper.DepositToDvDatasetMetadataMapper;
 import nl.knaw.dans.ingest.core.service.mapper.DepositToDvDatasetMetadataMapperFactory;
+import nl.knaw.dans.ingest.core.simulation.Simulation.Stage;
+import nl.knaw.dans.ingest.core.simulation.Simulation.TimedCall;
 import nl.knaw.dans.ingest.core.validation.DepositorAuthorizationValidator;
 import nl.knaw.dans.lib.dataverse.DataverseException;
 import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
@@ -48,14 +53,34 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class DepositIngestTask implements CoalescibleTask, PreparableTask, RetryableTask, Comparable<DepositIngestTask> {
+    /**
+     * The stages of processing a deposit, as reported for the deposits that are in flight.
+     */
+    public enum ProcessingStage {
+        READING,
+        CHECKING,
+        EDITING_DATASET,
+        PUBLISHING,
+        SUBMITTING_FOR_REVIEW,
+        FINISHING
+    }
 
-public class DepositIngestTask implements TargetedTask, Comparable<DepositIngestTask> {
     private static final DateTimeFormatter yyyymmddPattern = DateTimeFormat.forPattern("YYYY-MM-dd");
     private static final Logger log = LoggerFactory.getLogger(DepositIngestTask.class);
     protected final String depositorRole;
@@ -79,6 +104,26 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
 
     protected boolean deleteDraftOnFailure;
 
+    protected boolean resumeFailedCreation;
+    protected final int fileOperationConcurrency;
+
+    private final Executor checkExecutor;
+    private Executor preCheckExecutor = Runnable::run;
+    private Executor fileOperationExecutor = Runnable::run;
+    private SimulatedTaskHooks simulatedTaskHooks;
+
+    // Guarded by this; set by prepare() if it ran before the processing started
+    private Preparation preparation;
+    private boolean processingStarted;
+
+    private volatile ProcessingStage stage;
+    private volatile Instant stageStarted;
+
+    private RetryPolicy retryPolicy = RetryPolicy.NONE;
+    private int failedAttempts;
+    private Duration retryDelay;
+    private boolean datasetEditStarted;
+
     public DepositIngestTask(
         DepositToDvDatasetMetadataMapperFactory datasetMetadataMapperFactory,
         DepositLocation depositLocation,
@@ -94,7 +139,10 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
         BlockedTargetService blockedTargetService,
         DepositorAuthorizationValidator depositorAuthorizationValidator,
         String vaultMetadataKey,
-        boolean deleteDraftOnFailure
+        boolean deleteDraftOnFailure,
+        boolean resumeFailedCreation,
+        int fileOperationConcurrency,
+        Executor checkExecutor
     ) {
         this.datasetMetadataMapperFactory = datasetMetadataMapperFactory;
         this.depositorRole = depositorRole;
@@ -111,21 +159,300 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
         this.depositorAuthorizationValidator = depositorAuthorizationValidator;
         this.vaultMetadataKey = vaultMetadataKey;
         this.deleteDraftOnFailure = deleteDraftOnFailure;
+        this.resumeFailedCreation = resumeFailedCreation;
+        this.fileOperationConcurrency = fileOperationConcurrency;
+        this.checkExecutor = checkExecutor;
     }
 
     public Deposit getDeposit() {
         return this.deposit;
     }
 
+    public DepositLocation getDepositLocation() {
+        return depositLocation;
+    }
+
+    public Path getOutboxDir() {
+        return outboxDir;
+    }
+
+    public EventWriter getEventWriter() {
+        return eventWriter;
+    }
+
+    /**
+     * Enables retrying the deposit when it fails with a transient error (see {@link FailureClassifier}). Only failures that happen before the dataset is
+     * changed are retried, except for the creation of a new dataset if failed creations are resumed.
+     *
+     * @param retryPolicy the number of attempts and the delays between them
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets the executor on which the checks of an update deposit against Dataverse and the database are done at the same time. By default they are done
+     * one after another by the thread that processes the deposit.
+     *
+     * @param preCheckExecutor the executor for the checks
+     */
+    public void setPreCheckExecutor(Executor preCheckExecutor) {
+        this.preCheckExecutor = preCheckExecutor;
+    }
+
+    /**
+     * Sets the executor on which the files of an update are replaced and deleted, if more than one operation may run at the same time (see
+     * fileOperationConcurrency). By default they are done by the thread that processes the deposit.
+     *
+     * @param fileOperationExecutor the executor for the file operations
+     */
+    public void setFileOperationExecutor(Executor fileOperationExecutor) {
+        this.fileOperationExecutor = fileOperationExecutor;
+    }
+
+    /**
+     * Makes this a task for a dry run: the deposits are counted and the stages are timed, and the dataset is edited in the simulated Dataverse. See
+     * {@link nl.knaw.dans.ingest.core.simulation.Simulation}.
+     *
+     * @param simulatedTaskHooks the hooks of the simulation
+     */
+    void setSimulatedTaskHooks(SimulatedTaskHooks simulatedTaskHooks) {
+        this.simulatedTaskHooks = simulatedTaskHooks;
+    }
+
+    private <T, E extends Throwable> T time(Stage stage, TimedCall<T, E> call) throws E {
+        return simulatedTaskHooks == null ? call.call() : simulatedTaskHooks.time(stage, call);
+    }
+
+    private void countDeposits(int numberOfDeposits, Runnable run) {
+        if (simulatedTaskHooks == null) {
+            run.run();
+        }
+        else {
+            simulatedTaskHooks.run(numberOfDeposits, run);
+        }
+    }
+
+    @Override
+    public String getStage() {
+        var current = stage;
+        return current == null ? null : current.name();
+    }
+
+    @Override
+    public Instant getStageStarted() {
+        return stageStarted;
+    }
+
+    void setStage(ProcessingStage stage) {
+        this.stageStarted = Instant.now();
+        this.stage = stage;
+    }
+
+    @Override
+    public Optional<Duration> getRetryDelay() {
+        return Optional.ofNullable(retryDelay);
+    }
+
     @Override
     public void run() {
+        countDeposits(1, () -> {
+            retryDelay = null;
+            datasetEditStarted = false;
+            startProcessing();
+            if (readDeposit()) {
+                process(true);
+            }
+        });
+    }
+
+    /**
+     * Runs the task like {@link #run()}, but fails the deposit on a transient error instead of leaving it in the inbox to be retried. For callers that do
+     * not resubmit the task, such as the pre-flight check of a batch, a retry would leave the deposit behind without it ever being processed again.
+     */
+    void runWithoutRetry() {
+        countDeposits(1, () -> {
+            retryDelay = null;
+            datasetEditStarted = false;
+            startProcessing();
+            if (readDeposit()) {
+                process(false);
+            }
+        });
+    }
+
+    boolean shouldRetry(Throwable e) {
+        return failedAttempts + 1 < retryPolicy.getMaxAttempts()
+            && FailureClassifier.isTransient(e)
+            && (!datasetEditStarted || (!deposit.isUpdate() && resumeFailedCreation));
+    }
+
+    /*
+     * The deposit is left in the inbox as it is, and read and checked again when the task is retried.
+     */
+    private void retryLater(Throwable e) {
+        failedAttempts++;
+        retryDelay = retryPolicy.getDelay(failedAttempts);
+        var message = String.format("Attempt %d of %d failed with a transient error; trying again in %d seconds: %s",
+            failedAttempts, retryPolicy.getMaxAttempts(), retryDelay.toSeconds(), e.getMessage());
+        log.warn("END processing (RETRY) deposit {}: {}", deposit.getDepositId(), message, e);
+        writeEvent(TaskEvent.EventType.END_PROCESSING, Result.RETRY, message);
+        synchronized (this) {
+            processingStarted = false;
+            preparation = null;
+            deposit = null;
+        }
+    }
+
+    void startProcessing() {
+        setStage(ProcessingStage.READING);
         log.info("START processing deposit {}", depositLocation.getDepositId());
         writeEvent(TaskEvent.EventType.START_PROCESSING, TaskEvent.Result.OK, null);
+    }
+
+    /**
+     * Reads and validates the deposit and maps its metadata, ahead of the processing. None of this depends on the outcome of earlier deposits for the same
+     * target. Errors are not handled here, but kept and thrown at the point in the processing where the work would have been done otherwise, so that the
+     * order of the checks is the same whether the deposit was prepared or not. The calling thread waits until the validation and the mapping are done.
+     */
+    @Override
+    public synchronized void prepare() {
+        if (processingStarted || preparation != null) {
+            return;
+        }
+
+        var result = new Preparation();
+        try {
+            this.deposit = loadDeposit();
+        }
+        catch (InvalidDepositException e) {
+            result.readError = e;
+            preparation = result;
+            return;
+        }
+
+        startChecks(result);
+        CompletableFuture.allOf(result.validation, result.metadata)
+            .exceptionally(e -> null)
+            .join();
+        preparation = result;
+    }
+
+    /*
+     * Starts the validation of the bag and the mapping of the metadata on the check executor. The validator can take a long time for a large bag, so the
+     * mapping, which also looks up the depositor in Dataverse, is done at the same time. The results are only used after the other checks have passed.
+     */
+    private void startChecks(Preparation preparation) {
+        preparation.validation = supplyAsync(() -> {
+            validateDeposit();
+            return null;
+        }, checkExecutor);
+        preparation.metadata = supplyAsync(this::getMetadata, checkExecutor);
+    }
+
+    private synchronized Preparation getOrStartChecks() {
+        if (preparation == null) {
+            preparation = new Preparation();
+            startChecks(preparation);
+        }
+        return preparation;
+    }
+
+    private synchronized Preparation getPreparation() {
+        return preparation;
+    }
+
+    /**
+     * Returns the error the preparation ran into: the deposit could not be read, the bag is not valid or the metadata could not be mapped. If both the
+     * validation and the mapping failed, the validation error is returned, because that is the one the processing would report.
+     *
+     * @return the error, or empty if the deposit was not prepared or the preparation succeeded
+     */
+    synchronized Optional<Throwable> getPreparationError() {
+        if (preparation == null) {
+            return Optional.empty();
+        }
+        if (preparation.readError != null) {
+            return Optional.of(preparation.readError);
+        }
+        return Stream.of(preparation.validation, preparation.metadata)
+            .filter(f -> f != null && f.isCompletedExceptionally())
+            .map(f -> f.handle((result, e) -> unwrap(e)).join())
+            .findFirst();
+    }
+
+    /**
+     * Forgets the result of the preparation, so that the deposit does not stay in memory until its turn. It is read and checked again at that point.
+     */
+    synchronized void discardPreparation() {
+        if (!processingStarted) {
+            preparation = null;
+            deposit = null;
+        }
+    }
+
+    /*
+     * The checks of a deposit run on other threads through supplyAsync and are waited for with await, which rethrows the exception of the check itself, so
+     * that it is handled as if the check had run on the thread that processes the deposit.
+     */
+    private static <T> CompletableFuture<T> supplyAsync(Callable<T> check, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return check.call();
+            }
+            catch (RuntimeException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.join();
+        }
+        catch (CompletionException e) {
+            var cause = unwrap(e);
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    Deposit loadDeposit() throws InvalidDepositException {
+        return time(Stage.READ_DEPOSIT, () -> depositManager.readDeposit(depositLocation));
+    }
+
+    /**
+     * Reads the deposit. If it cannot be read, it is moved to the failed outbox.
+     *
+     * @return true if the deposit was read
+     */
+    boolean readDeposit() {
+        Preparation prepared;
+        synchronized (this) {
+            // Waits for a preparation in progress; a preparation that has not started yet will not be done
+            processingStarted = true;
+            prepared = preparation;
+        }
 
         // TODO this is really ugly, fix it at some point
         try {
-            this.deposit = depositManager.readDeposit(depositLocation);
+            if (prepared == null) {
+                this.deposit = loadDeposit();
+            }
+            else if (prepared.readError != null) {
+                throw prepared.readError;
+            }
             log.info("Deposit {} is update: {}", deposit.getDepositId(), deposit.isUpdate());
+            return true;
         }
         catch (InvalidDepositException e) {
             try {
@@ -137,33 +464,76 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
             }
 
             writeEvent(TaskEvent.EventType.END_PROCESSING, Result.FAILED, e.getMessage());
-            return;
+            return false;
         }
+    }
+
+    void process() {
+        process(false);
+    }
 
+    /**
+     * @param retryable whether a transient failure may be retried later instead of failing the deposit; not when the deposit is processed as part of a
+     *                  coalesced run, because then the other deposits depend on its outcome
+     */
+    private void process(boolean retryable) {
         try {
-            boolean published = doRun();
-            if (published) {
-                updateDepositFromResult(DepositState.PUBLISHED, "The deposit was successfully ingested in the Data Station and will be automatically archived.");
+            finishSuccessfully(doRun());
+        }
+        catch (Throwable e) {
+            if (retryable && shouldRetry(e)) {
+                retryLater(e);
             }
             else {
-                updateDepositFromResult(DepositState.ACCEPTED,
-                    "The deposit was successfully submitted for review in the Data Station and will be reviewed by a data manager before it is published and archived.");
+                finishWithError(e);
             }
-            log.info("END processing (SUCCESS) deposit {}", deposit.getDepositId());
-            writeEvent(TaskEvent.EventType.END_PROCESSING, TaskEvent.Result.OK, null);
         }
-        catch (RejectedDepositException e) {
+    }
+
+    void finishSuccessfully(boolean published) {
+        setStage(ProcessingStage.FINISHING);
+        if (published) {
+            updateDepositFromResult(DepositState.PUBLISHED, "The deposit was successfully ingested in the Data Station and will be automatically archived.");
+        }
+        else {
+            updateDepositFromResult(DepositState.ACCEPTED,
+                "The deposit was successfully submitted for review in the Data Station and will be reviewed by a data manager before it is published and archived.");
+        }
+        log.info("END processing (SUCCESS) deposit {}", deposit.getDepositId());
+        writeEvent(TaskEvent.EventType.END_PROCESSING, TaskEvent.Result.OK, null);
+    }
+
+    /**
+     * Finishes a deposit whose content was not applied itself, because a later update deposit for the same dataset was applied in its place.
+     *
+     * @param supersedingTask the task of the deposit that was applied
+     * @param published       whether the resulting dataset version was published
+     */
+    void finishSuperseded(DepositIngestTask supersedingTask, boolean published) {
+        setStage(ProcessingStage.FINISHING);
+        var superseding = supersedingTask.getDeposit();
+        deposit.setDoi(superseding.getDoi());
+        deposit.setUrn(superseding.getUrn());
+        var message = String.format("The deposit was combined with later deposit %s for the same dataset into one new dataset version", superseding.getDepositId());
+        updateDepositFromResult(published ? DepositState.PUBLISHED : DepositState.ACCEPTED, message + ".");
+        log.info("END processing (SUPERSEDED) deposit {} by deposit {}", deposit.getDepositId(), superseding.getDepositId());
+        writeEvent(TaskEvent.EventType.END_PROCESSING, TaskEvent.Result.OK, message);
+    }
+
+    void finishWithError(Throwable e) {
+        setStage(ProcessingStage.FINISHING);
+        if (e instanceof RejectedDepositException) {
             log.error("END processing (REJECTED) deposit {}", deposit.getDepositId(), e);
             updateDepositFromResult(DepositState.REJECTED, e.getMessage());
             blockTarget(e.getMessage(), DepositState.REJECTED);
             writeEvent(TaskEvent.EventType.END_PROCESSING, TaskEvent.Result.REJECTED, e.getMessage());
         }
-        catch (TargetBlockedException e) {
+        else if (e instanceof TargetBlockedException) {
             log.error("END processing (REJECTED - TARGET BLOCKED) deposit {}", deposit.getDepositId(), e);
             updateDepositFromResult(DepositState.FAILED, e.getMessage());
             writeEvent(TaskEvent.EventType.END_PROCESSING, TaskEvent.Result.FAILED, e.getMessage());
         }
-        catch (Throwable e) {
+        else {
             log.error("END processing (FAILED) deposit {}", deposit.getDepositId(), e);
             updateDepositFromResult(DepositState.FAILED, e.getMessage());
             blockTarget(e.getMessage(), DepositState.FAILED);
@@ -171,6 +541,38 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
         }
     }
 
+    /**
+     * Only update deposits for the same dataset can be coalesced, and only if both tasks allow it (see {@link #isCoalescible()}).
+     */
+    @Override
+    public boolean canCoalesceWith(TargetedTask other) {
+        if (!(other instanceof DepositIngestTask)) {
+            return false;
+        }
+        var otherTask = (DepositIngestTask) other;
+        return isCoalescible() && otherTask.isCoalescible()
+            && depositLocation.isUpdate() && otherTask.getDepositLocation().isUpdate()
+            && getTarget().equals(otherTask.getTarget());
+    }
+
+    /**
+     * Returns whether this task may be coalesced with other tasks for the same target. Subclasses for which every deposit must result in its own version
+     * return false.
+     *
+     * @return true if the task may be coalesced
+     */
+    protected boolean isCoalescible() {
+        return true;
+    }
+
+    @Override
+    public void runCoalesced(List<TargetedTask> laterTasks) {
+        var tasks = new ArrayList<DepositIngestTask>();
+        tasks.add(this);
+        laterTasks.forEach(t -> tasks.add((DepositIngestTask) t));
+        countDeposits(tasks.size(), new UpdateDepositCoalescer(tasks)::run);
+    }
+
     void moveDepositToOutbox(Path path, OutboxSubDir subDir) throws IOException {
         var target = this.outboxDir.resolve(subDir.getValue());
         depositManager.moveDeposit(path, target);
@@ -219,6 +621,16 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
         return depositLocation.getDir();
     }
 
+    @Override
+    public long getPayloadSize() {
+        return depositLocation.getPayloadSize();
+    }
+
+    @Override
+    public long getNumberOfFiles() {
+        return depositLocation.getNumberOfFiles();
+    }
+
     @Override
     public void writeEvent(TaskEvent.EventType eventType, TaskEvent.Result result, String message) {
         eventWriter.write(getDepositId(), eventType, result, message);
@@ -229,6 +641,25 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
     }
 
     boolean doRun() throws Exception {
+        checkDeposit();
+        return createOrUpdateDataset(getDeposit().isUpdate());
+    }
+
+    /**
+     * Performs all checks on the deposit that come before the dataset is created or updated.
+     *
+     * @throws Exception if the deposit must be rejected or fails
+     */
+    void checkDeposit() throws Exception {
+        time(Stage.CHECK, () -> {
+            doCheckDeposit();
+            return null;
+        });
+    }
+
+    private void doCheckDeposit() throws Exception {
+        setStage(ProcessingStage.CHECKING);
+        var checks = getOrStartChecks();
         var deposit = getDeposit();
         var isUpdate = deposit.isUpdate();
         log.debug("Is update: {}", isUpdate);
@@ -237,40 +668,54 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
             var dataverseDoi = resolveDoi(deposit);
             log.debug("Found target DOI for deposit {}: {}", deposit.getDepositId(), dataverseDoi);
             deposit.setDataverseDoi(dataverseDoi);
-            log.debug("Checking if dataset {} is allowed to be updated by user {} ...", dataverseDoi, deposit.getDepositorUserId());
-            if (!isDatasetUpdateAllowed()) {
+            log.debug("Checking if dataset {} may be updated by user {}, is not in review and is not blocked ...", dataverseDoi, deposit.getDepositorUserId());
+            // The checks are independent of each other, but their results are handled in this order, so that the same error is reported as before
+            var updateAllowed = supplyAsync(this::isDatasetUpdateAllowed, preCheckExecutor);
+            var inReview = supplyAsync(this::isDatasetInReview, preCheckExecutor);
+            var notBlocked = supplyAsync(() -> {
+                checkBlockedTarget();
+                return true;
+            }, preCheckExecutor);
+            if (!await(updateAllowed)) {
                 throw new RejectedDepositException(deposit, String.format(
                     "Dataset %s is not allowed to be updated by user %s", deposit.getDataverseDoi(), deposit.getDepositorUserId()
                 ));
             }
-            log.debug("Checking if dataset {} is in review ...", dataverseDoi);
-            if (isDatasetInReview()) {
+            if (await(inReview)) {
                 throw new RejectedDepositException(deposit, String.format(
                     "Dataset %s is in review and cannot be updated", deposit.getDataverseDoi()
                 ));
             }
-            log.debug("Checking if dataset {} is blocked ...", dataverseDoi);
-            checkBlockedTarget();
+            await(notBlocked);
         }
 
         checkDoiRequirements();
-        validateDeposit();
-        return createOrUpdateDataset(isUpdate);
+        // If validation rejects the deposit, the mapped metadata is discarded
+        await(checks.validation);
+    }
+
+    private Dataset getCheckedMetadata() throws Exception {
+        var checks = getPreparation();
+        return checks == null || checks.metadata == null ? getMetadata() : await(checks.metadata);
     }
 
     boolean createOrUpdateDataset(boolean isUpdate) throws Exception {
-        var dataverseDataset = getMetadata();
+        var dataverseDataset = getCheckedMetadata();
+        datasetEditStarted = true;
+        setStage(ProcessingStage.EDITING_DATASET);
         var persistentId = isUpdate
             ? newDatasetUpdater(dataverseDataset).performEdit()
             : newDatasetCreator(dataverseDataset, depositorRole).performEdit();
 
         if (isDatasetPublicationAllowed()) {
+            setStage(ProcessingStage.PUBLISHING);
             publishDataset(persistentId);
             log.debug("Dataset {} published", persistentId);
             postPublication(persistentId);
             return true;
         }
         else {
+            setStage(ProcessingStage.SUBMITTING_FOR_REVIEW);
             submitForReview(persistentId);
             log.debug("Dataset {} submitted for review", persistentId);
             postSubmitForReview(persistentId);
@@ -278,7 +723,7 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
         }
     }
 
-    private boolean isDatasetPublicationAllowed() {
+    boolean isDatasetPublicationAllowed() {
         try {
             return depositorAuthorizationValidator.isDatasetPublicationAllowed(deposit);
         }
@@ -345,6 +790,13 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
     }
 
     void validateDeposit() {
+        time(Stage.VALIDATE, () -> {
+            doValidateDeposit();
+            return null;
+        });
+    }
+
+    private void doValidateDeposit() {
         var result = dansBagValidator.validateBag(
             deposit.getBagDir(), ValidateCommandDto.PackageTypeEnum.DEPOSIT);
 
@@ -408,6 +860,9 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
     }
 
     DatasetEditor newDatasetUpdater(Dataset dataset, boolean isMigration, boolean deleteDraftOnFailure) {
+        if (simulatedTaskHooks != null) {
+            return simulatedTaskHooks.newDatasetEditor(this, dataset, isMigration, false);
+        }
         return new DatasetUpdater(
             isMigration,
             dataset,
@@ -418,7 +873,9 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
             new ObjectMapper(),
             datasetService,
             vaultMetadataKey,
-            deleteDraftOnFailure
+            deleteDraftOnFailure,
+            fileOperationConcurrency,
+            fileOperationExecutor
         );
     }
 
@@ -426,7 +883,10 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
         return newDatasetUpdater(dataset, false, false);
     }
 
-    DatasetEditor newDatasetCreator(Dataset dataset, String depositorRole, boolean isMigration) {
+    DatasetEditor newDatasetCreator(Dataset dataset, String depositorRole, boolean isMigration) throws IOException {
+        if (simulatedTaskHooks != null) {
+            return simulatedTaskHooks.newDatasetEditor(this, dataset, isMigration, true);
+        }
         return new DatasetCreator(
             isMigration,
             dataset,
@@ -438,7 +898,8 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
             depositorRole,
             datasetService,
             vaultMetadataKey,
-            deleteDraftOnFailure
+            deleteDraftOnFailure,
+            resumeFailedCreation ? CreationJournal.open(deposit.getDir()) : CreationJournal.inMemory()
         );
     }
 
@@ -446,11 +907,15 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
         return datasetMetadataMapperFactory.createMapper(false, false);
     }
 
-    DatasetEditor newDatasetCreator(Dataset dataset, String depositorRole) {
+    DatasetEditor newDatasetCreator(Dataset dataset, String depositorRole) throws IOException {
         return newDatasetCreator(dataset, depositorRole, false);
     }
 
     Dataset getMetadata() {
+        return time(Stage.MAP_METADATA, this::doGetMetadata);
+    }
+
+    private Dataset doGetMetadata() {
         var date = getDateOfDeposit();
         var contact = getDatasetContact();
         var mapper = newMapper();
@@ -509,4 +974,10 @@ public class DepositIngestTask implements TargetedTask, Comparable<DepositIngest
         log.debug("Deposit is update of dataset {}", doi);
         return doi;
     }
+
+    private static class Preparation {
+        private InvalidDepositException readError;
+        private CompletableFuture<Void> validation;
+        private CompletableFuture<Dataset> metadata;
+    }
 }
@@ -27,27 +27,36 @@ import nl.knaw.dans.ingest.core.validation.DepositorAuthorizationValidator;
 import nl.knaw.dans.lib.dataverse.DataverseException;
 
 import java.io.IOException;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 @Slf4j
 public class DepositIngestTaskFactory {
 
-    private final String depositorRole;
-    private final DansBagValidator dansBagValidator;
-    private final IngestFlowConfig ingestFlowConfig;
-    private final DepositManager depositManager;
-    private final boolean isMigration;
-    private final DepositToDvDatasetMetadataMapperFactory depositToDvDatasetMetadataMapperFactory;
-    private final ZipFileHandler zipFileHandler;
-    private final DatasetService datasetService;
-    private final BlockedTargetService blockedTargetService;
-    private final DepositorAuthorizationValidator depositorAuthorizationValidator;
-    private final String vaultMetadataKey;
+    protected final String depositorRole;
+    protected final DansBagValidator dansBagValidator;
+    protected final IngestFlowConfig ingestFlowConfig;
+    protected final DepositManager depositManager;
+    protected final boolean isMigration;
+    protected final DepositToDvDatasetMetadataMapperFactory depositToDvDatasetMetadataMapperFactory;
+    protected final ZipFileHandler zipFileHandler;
+    protected final DatasetService datasetService;
+    protected final BlockedTargetService blockedTargetService;
+    protected final DepositorAuthorizationValidator depositorAuthorizationValidator;
+    protected final String vaultMetadataKey;
 
-    private final boolean deleteDraftOnFailure;
+    protected final boolean deleteDraftOnFailure;
+    protected final boolean resumeFailedCreation;
+    protected final int fileOperationConcurrency;
+    protected final Executor checkExecutor;
+    protected final RetryPolicy taskRetryPolicy;
+    private Executor preCheckExecutor = Runnable::run;
+    private Executor fileOperationExecutor = Runnable::run;
 
     public DepositIngestTaskFactory(
         boolean isMigration,
@@ -60,7 +69,8 @@ public class DepositIngestTaskFactory {
         DatasetService datasetService,
         BlockedTargetService blockedTargetService,
         DepositorAuthorizationValidator depositorAuthorizationValidator,
-        String vaultMetadataKey) throws IOException, URISyntaxException {
+        String vaultMetadataKey,
+        Executor checkExecutor) throws IOException, URISyntaxException {
         this.isMigration = isMigration;
         this.depositorRole = depositorRole;
         this.dansBagValidator = dansBagValidator;
@@ -73,11 +83,59 @@ public class DepositIngestTaskFactory {
         this.depositorAuthorizationValidator = depositorAuthorizationValidator;
         this.vaultMetadataKey = vaultMetadataKey;
         this.deleteDraftOnFailure = ingestFlowConfig.isDeleteDraftOnFailure();
+        this.resumeFailedCreation = ingestFlowConfig.isResumeFailedCreation();
+        this.fileOperationConcurrency = ingestFlowConfig.getFileOperationConcurrency();
+        this.checkExecutor = checkExecutor;
+        this.taskRetryPolicy = RetryPolicy.of(ingestFlowConfig.getRetry().getTask());
+    }
+
+    /**
+     * Sets the executor on which the tasks created by this factory do the checks of an update deposit at the same time.
+     *
+     * @param preCheckExecutor the executor for the checks
+     */
+    public void setPreCheckExecutor(Executor preCheckExecutor) {
+        this.preCheckExecutor = preCheckExecutor;
+    }
+
+    /**
+     * Sets the executor on which the tasks created by this factory replace and delete the files of an update.
+     *
+     * @param fileOperationExecutor the executor for the file operations
+     */
+    public void setFileOperationExecutor(Executor fileOperationExecutor) {
+        this.fileOperationExecutor = fileOperationExecutor;
     }
 
     public DepositIngestTask createIngestTask(Path depositDir, Path outboxDir, EventWriter eventWriter) throws InvalidDepositException, IOException {
+        return createIngestTask(readDepositLocation(depositDir, outboxDir), outboxDir, eventWriter);
+    }
+
+    /**
+     * Reads the location (target and creation time) of a deposit. If it cannot be read, the deposit is moved to the failed outbox.
+     */
+    public DepositLocation readDepositLocation(Path depositDir, Path outboxDir) throws InvalidDepositException, IOException {
+        try {
+            return depositManager.readDepositLocation(depositDir);
+        }
+        catch (InvalidDepositException | IOException e) {
+            // the reading of the deposit failed, so we cannot update its internal state. All we can do is move it
+            // to the "failed" directory
+            log.error("Unable to load deposit properties, considering deposit at path {} to be broken", depositDir);
+            moveDepositToFailed(depositDir, outboxDir);
+            throw e;
+        }
+        catch (Throwable e) {
+            // if something bad happens while loading the deposit, we want to wrap it into an InvalidDepositException as well
+            log.error("Unexpected error occurred while loading deposit at path {}, moving deposit", depositDir);
+            moveDepositToFailed(depositDir, outboxDir);
+            throw new InvalidDepositException("Unexpected error occurred: " + e.getMessage(), e);
+        }
+    }
+
+    public DepositIngestTask createIngestTask(DepositLocation depositLocation, Path outboxDir, EventWriter eventWriter) throws InvalidDepositException, IOException {
+        var depositDir = depositLocation.getDir();
         try {
-            var depositLocation = depositManager.readDepositLocation(depositDir);
             return createDepositIngestTask(depositLocation, outboxDir, eventWriter);
         }
         catch (DataverseException e) {
@@ -85,15 +143,12 @@ public class DepositIngestTaskFactory {
             moveDepositToFailed(depositDir, outboxDir);
             throw new InvalidDepositException(e.getMessage(), e);
         }
-        catch (InvalidDepositException | IOException e) {
-            // the reading of the deposit failed, so we cannot update its internal state. All we can do is move it
-            // to the "failed" directory
-            log.error("Unable to load deposit properties, considering deposit at path {} to be broken", depositDir);
+        catch (IOException e) {
+            log.error("Unable to create task for deposit at path {}, moving deposit", depositDir);
             moveDepositToFailed(depositDir, outboxDir);
             throw e;
         }
         catch (Throwable e) {
-            // if something bad happens while loading the deposit, we want to wrap it into an InvalidDepositException as well
             log.error("Unexpected error occurred while loading deposit at path {}, moving deposit", depositDir);
             moveDepositToFailed(depositDir, outboxDir);
             throw new InvalidDepositException("Unexpected error occurred: " + e.getMessage(), e);
@@ -117,44 +172,58 @@ public class DepositIngestTaskFactory {
         log.debug("Licenses retrieved: {}", licenses);
 
         log.debug("Creating deposit ingest task, isMigration={}, role={}, outboxDir={}", isMigration, depositorRole, outboxDir);
-        if (isMigration) {
-            return new DepositMigrationTask(
-                depositToDvDatasetMetadataMapperFactory,
-                depositLocation,
-                depositorRole,
-                fileExclusionPattern,
-                zipFileHandler,
-                licenses,
-                dansBagValidator,
-                outboxDir,
-                eventWriter,
-                depositManager,
-                datasetService,
-                blockedTargetService,
-                depositorAuthorizationValidator,
-                vaultMetadataKey,
-                deleteDraftOnFailure
-            );
-        }
-        else {
-            return new DepositIngestTask(
-                depositToDvDatasetMetadataMapperFactory,
-                depositLocation,
-                depositorRole,
-                fileExclusionPattern,
-                zipFileHandler,
-                licenses,
-                dansBagValidator,
-                outboxDir,
-                eventWriter,
-                depositManager,
-                datasetService,
-                blockedTargetService,
-                depositorAuthorizationValidator,
-                vaultMetadataKey,
-                deleteDraftOnFailure
-            );
-        }
+        var task = isMigration
+            ? newMigrationTask(depositLocation, outboxDir, eventWriter, fileExclusionPattern, licenses)
+            : newIngestTask(depositLocation, outboxDir, eventWriter, fileExclusionPattern, licenses);
+        task.setRetryPolicy(taskRetryPolicy);
+        task.setPreCheckExecutor(preCheckExecutor);
+        task.setFileOperationExecutor(fileOperationExecutor);
+        return task;
+    }
+
+    protected DepositIngestTask newMigrationTask(DepositLocation depositLocation, Path outboxDir, EventWriter eventWriter, Pattern fileExclusionPattern, List<URI> licenses) {
+        return new DepositMigrationTask(
+            depositToDvDatasetMetadataMapperFactory,
+            depositLocation,
+            depositorRole,
+            fileExclusionPattern,
+            zipFileHandler,
+            licenses,
+            dansBagValidator,
+            outboxDir,
+            eventWriter,
+            depositManager,
+            datasetService,
+            blockedTargetService,
+            depositorAuthorizationValidator,
+            vaultMetadataKey,
+            deleteDraftOnFailure,
+            resumeFailedCreation,
+            fileOperationConcurrency,
+            checkExecutor
+        );
+    }
 
+    protected DepositIngestTask newIngestTask(DepositLocation depositLocation, Path outboxDir, EventWriter eventWriter, Pattern fileExclusionPattern, List<URI> licenses) {
+        return new DepositIngestTask(
+            depositToDvDatasetMetadataMapperFactory,
+            depositLocation,
+            depositorRole,
+            fileExclusionPattern,
+            zipFileHandler,
+            licenses,
+            dansBagValidator,
+            outboxDir,
+            eventWriter,
+            depositManager,
+            datasetService,
+            blockedTargetService,
+            depositorAuthorizationValidator,
+            vaultMetadataKey,
+            deleteDraftOnFailure,
+            resumeFailedCreation,
+            fileOperationConcurrency,
+            checkExecutor
+        );
     }
 }
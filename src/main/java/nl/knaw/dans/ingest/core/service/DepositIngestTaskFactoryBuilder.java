@@ -19,7 +19,14 @@ import gov.loc.repository.bagit.reader.BagReader;
 import io.dropwizard.core.setup.Environment;
 import nl.knaw.dans.ingest.config.DdIngestFlowConfiguration;
 import nl.knaw.dans.ingest.config.IngestAreaConfig;
+import nl.knaw.dans.ingest.core.dataverse.CallRecordingDatasetService;
+import nl.knaw.dans.ingest.core.dataverse.CircuitBreakingDatasetService;
+import nl.knaw.dans.ingest.core.dataverse.DatasetService;
+import nl.knaw.dans.ingest.core.dataverse.DataverseCallRecorder;
 import nl.knaw.dans.ingest.core.dataverse.DataverseServiceImpl;
+import nl.knaw.dans.ingest.core.dataverse.RetryingDatasetService;
+import nl.knaw.dans.ingest.core.dataverse.LockWatcher;
+import nl.knaw.dans.ingest.core.dataverse.SimulatedDatasetService;
 import nl.knaw.dans.ingest.core.deposit.BagDirResolverImpl;
 import nl.knaw.dans.ingest.core.deposit.DepositFileListerImpl;
 import nl.knaw.dans.ingest.core.deposit.DepositLocationReaderImpl;
@@ -30,10 +37,17 @@ import nl.knaw.dans.ingest.core.deposit.DepositWriterImpl;
 import nl.knaw.dans.ingest.core.io.BagDataManagerImpl;
 import nl.knaw.dans.ingest.core.io.FileServiceImpl;
 import nl.knaw.dans.ingest.core.service.mapper.DepositToDvDatasetMetadataMapperFactory;
+import nl.knaw.dans.ingest.core.service.mapper.SimulatedDepositToDvDatasetMetadataMapperFactory;
+import nl.knaw.dans.ingest.core.simulation.Simulation;
 import nl.knaw.dans.ingest.core.validation.DepositorAuthorizationValidatorImpl;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 
 public class DepositIngestTaskFactoryBuilder {
 
@@ -42,8 +56,19 @@ public class DepositIngestTaskFactoryBuilder {
     private final DepositManager depositManager;
     private final ZipFileHandler zipFileHandler;
     private final BlockedTargetService blockedTargetService;
+    private final Simulation simulation;
+    private Executor checkExecutor;
+    private Executor preCheckExecutor;
+    private LockWatcher lockWatcher;
+    private CircuitBreaker dataverseCircuitBreaker;
+    private DataverseCallRecorder dataverseCallRecorder;
+    private Executor fileOperationExecutor = Runnable::run;
 
-    public DepositIngestTaskFactoryBuilder(DdIngestFlowConfiguration configuration, DansBagValidator dansBagValidator, BlockedTargetService blockedTargetService) {
+    /**
+     * @param simulation the simulation for a dry run, or null to process the deposits against the configured Dataverse
+     */
+    public DepositIngestTaskFactoryBuilder(DdIngestFlowConfiguration configuration, DansBagValidator dansBagValidator, BlockedTargetService blockedTargetService,
+        Simulation simulation) {
 
         final var xmlReader = new XmlReaderImpl();
         final var fileService = new FileServiceImpl();
@@ -62,9 +87,34 @@ public class DepositIngestTaskFactoryBuilder {
         this.depositManager =  new DepositManagerImpl(depositReader, depositLocationReader, depositWriter);
         this.zipFileHandler = new ZipFileHandler(configuration.getIngestFlow().getZipWrappingTempDir());
         this.blockedTargetService = blockedTargetService;
+        this.simulation = simulation;
+    }
+
+    /**
+     * @param dataverseCircuitBreaker the circuit breaker that guards the calls to Dataverse of all areas, or null to not guard them
+     */
+    public void setDataverseCircuitBreaker(CircuitBreaker dataverseCircuitBreaker) {
+        this.dataverseCircuitBreaker = dataverseCircuitBreaker;
+    }
+
+    /**
+     * @param dataverseCallRecorder the recorder for the calls to Dataverse of all areas, or null to not record them
+     */
+    public void setDataverseCallRecorder(DataverseCallRecorder dataverseCallRecorder) {
+        this.dataverseCallRecorder = dataverseCallRecorder;
+    }
+
+    /**
+     * @param fileOperationExecutor the executor shared by all areas on which the files of an update are replaced and deleted
+     */
+    public void setFileOperationExecutor(Executor fileOperationExecutor) {
+        this.fileOperationExecutor = fileOperationExecutor;
     }
 
     public DepositIngestTaskFactory createTaskFactory(Environment environment, String name, IngestAreaConfig ingestAreaConfig, boolean isMigration) throws IOException, URISyntaxException {
+        if (simulation != null) {
+            return createSimulatedTaskFactory(environment, ingestAreaConfig, isMigration);
+        }
         final var dataverseClientFactory = configuration.getDataverse();
         if (ingestAreaConfig.getApiKey() != null) {
             dataverseClientFactory.setApiKey(ingestAreaConfig.getApiKey());
@@ -83,15 +133,27 @@ public class DepositIngestTaskFactoryBuilder {
             ingestFlowConfig.getDataSuppliers(),
             configuration.getIngestFlow().getSkipFields(), dataverseClient
         );
-        final var datasetService = new DataverseServiceImpl(
+        final DatasetService dataverseService = new DataverseServiceImpl(
             dataverseClient,
             configuration.getDataverseExtra().getPublishAwaitUnlockWaitTimeMs(),
-            configuration.getDataverseExtra().getPublishAwaitUnlockMaxRetries()
+            configuration.getDataverseExtra().getPublishAwaitUnlockMaxRetries(),
+            getLockWatcher(environment),
+            Duration.ofMillis((long) dataverseClientFactory.getAwaitLockStateMaxNumberOfRetries() * dataverseClientFactory.getAwaitLockStateMillisecondsBetweenRetries())
         );
+        final var guardedDataverseService = dataverseCircuitBreaker == null
+            ? dataverseService
+            : new CircuitBreakingDatasetService(dataverseService, dataverseCircuitBreaker);
+        final var retryConfig = ingestFlowConfig.getRetry();
+        final var retryingDataverseService = new RetryingDatasetService(guardedDataverseService,
+            RetryPolicy.of(retryConfig.getDefaultOperation()),
+            retryConfig.getOperations().entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> RetryPolicy.of(e.getValue()))));
+        final DatasetService datasetService = dataverseCallRecorder == null
+            ? retryingDataverseService
+            : new CallRecordingDatasetService(retryingDataverseService, dataverseCallRecorder);
         final var authorization = ingestAreaConfig.getAuthorization();
         final var datasetPublisher = authorization.getDatasetPublisher();
         final var datasetUpdater = authorization.getDatasetUpdater();
-        return new DepositIngestTaskFactory(
+        final var taskFactory = new DepositIngestTaskFactory(
             isMigration,
             ingestAreaConfig.getDepositorRole(),
             dansBagValidator,
@@ -102,7 +164,93 @@ public class DepositIngestTaskFactoryBuilder {
             datasetService,
             blockedTargetService,
             new DepositorAuthorizationValidatorImpl(datasetService, datasetPublisher, datasetUpdater),
-            configuration.getIngestFlow().getVaultMetadataKey()
+            configuration.getIngestFlow().getVaultMetadataKey(),
+            recordingCallsFor(getCheckExecutor(environment))
         );
+        taskFactory.setPreCheckExecutor(recordingCallsFor(getPreCheckExecutor(environment)));
+        taskFactory.setFileOperationExecutor(recordingCallsFor(fileOperationExecutor));
+        return taskFactory;
+    }
+
+    private DepositIngestTaskFactory createSimulatedTaskFactory(Environment environment, IngestAreaConfig ingestAreaConfig, boolean isMigration) throws IOException, URISyntaxException {
+        final var ingestFlowConfig = configuration.getIngestFlow();
+        final var mapperFactory = new SimulatedDepositToDvDatasetMetadataMapperFactory(
+            ingestFlowConfig.getIso1ToDataverseLanguage(),
+            ingestFlowConfig.getIso2ToDataverseLanguage(),
+            ingestFlowConfig.getAbrReportCodeToTerm(),
+            ingestFlowConfig.getAbrAcquisitionMethodCodeToTerm(),
+            ingestFlowConfig.getAbrComplexTypeCodeToTerm(),
+            ingestFlowConfig.getAbrArtifactCodeToTerm(),
+            ingestFlowConfig.getAbrPeriodCodeToTerm(),
+            ingestFlowConfig.getSpatialCoverageCountryTerms(),
+            ingestFlowConfig.getDataSuppliers(),
+            ingestFlowConfig.getSkipFields(),
+            simulation,
+            configuration.getSimulation().getMetadataBlocks()
+        );
+        final var authorization = ingestAreaConfig.getAuthorization();
+        final var datasetPublisher = authorization.getDatasetPublisher();
+        final var datasetUpdater = authorization.getDatasetUpdater();
+        final var datasetService = new SimulatedDatasetService(simulation, List.of(datasetPublisher, datasetUpdater));
+        final var taskFactory = new SimulatedDepositIngestTaskFactory(
+            isMigration,
+            ingestAreaConfig.getDepositorRole(),
+            dansBagValidator,
+            ingestFlowConfig,
+            depositManager,
+            mapperFactory,
+            zipFileHandler,
+            datasetService,
+            blockedTargetService,
+            new DepositorAuthorizationValidatorImpl(datasetService, datasetPublisher, datasetUpdater),
+            ingestFlowConfig.getVaultMetadataKey(),
+            getCheckExecutor(environment)
+        );
+        taskFactory.setPreCheckExecutor(getPreCheckExecutor(environment));
+        taskFactory.setFileOperationExecutor(fileOperationExecutor);
+        return taskFactory;
+    }
+
+    // The calls made on the pools are recorded for the worker thread of the deposit, so that the watchdog can report them
+    private Executor recordingCallsFor(Executor executor) {
+        return dataverseCallRecorder == null ? executor : dataverseCallRecorder.propagating(executor);
+    }
+
+    // Shared by the task factories of all areas
+    private Executor getCheckExecutor(Environment environment) {
+        if (checkExecutor == null) {
+            var checkThreads = configuration.getIngestFlow().getScheduler().getCheckThreads();
+            checkExecutor = checkThreads == 0
+                ? Runnable::run
+                : environment.lifecycle().executorService("deposit-check-%d")
+                .minThreads(checkThreads)
+                .maxThreads(checkThreads)
+                .build();
+        }
+        return checkExecutor;
+    }
+
+    // Shared by the task factories of all areas
+    private Executor getPreCheckExecutor(Environment environment) {
+        if (preCheckExecutor == null) {
+            var preCheckThreads = configuration.getIngestFlow().getScheduler().getPreCheckThreads();
+            preCheckExecutor = preCheckThreads == 0
+                ? Runnable::run
+                : environment.lifecycle().executorService("deposit-precheck-%d")
+                .minThreads(preCheckThreads)
+                .maxThreads(preCheckThreads)
+                .build();
+        }
+        return preCheckExecutor;
+    }
+
+    // Shared by the task factories of all areas, so that each dataset is polled only once per interval
+    private LockWatcher getLockWatcher(Environment environment) {
+        if (lockWatcher == null) {
+            var lockWatcherConfig = configuration.getDataverseExtra().getLockWatcher();
+            var scheduler = environment.lifecycle().scheduledExecutorService("lock-watcher-%d").threads(1).build();
+            lockWatcher = new LockWatcher(scheduler, Duration.ofMillis(lockWatcherConfig.getPollInterval().toMilliseconds()), lockWatcherConfig.getJitter());
+        }
+        return lockWatcher;
     }
 }
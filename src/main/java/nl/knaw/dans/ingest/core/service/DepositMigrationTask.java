@@ -39,6 +39,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -59,11 +60,23 @@ public class DepositMigrationTask extends DepositIngestTask {
         BlockedTargetService blockedTargetService,
         DepositorAuthorizationValidator depositorAuthorizationValidator,
         String vaultMetadataKey,
-        boolean deleteDraftOnFailure
+        boolean deleteDraftOnFailure,
+        boolean resumeFailedCreation,
+        int fileOperationConcurrency,
+        Executor checkExecutor
     ) {
         super(
             datasetMetadataMapperFactory, depositLocation, depositorRole, fileExclusionPattern, zipFileHandler, supportedLicenses, dansBagValidator,
-            outboxDir, eventWriter, depositManager, datasetService, blockedTargetService, depositorAuthorizationValidator, vaultMetadataKey, deleteDraftOnFailure);
+            outboxDir, eventWriter, depositManager, datasetService, blockedTargetService, depositorAuthorizationValidator, vaultMetadataKey, deleteDraftOnFailure,
+            resumeFailedCreation, fileOperationConcurrency, checkExecutor);
+    }
+
+    /**
+     * The versions of a migrated dataset must all be preserved, so migration deposits are never coalesced.
+     */
+    @Override
+    protected boolean isCoalescible() {
+        return false;
     }
 
     @Override
@@ -99,7 +112,7 @@ public class DepositMigrationTask extends DepositIngestTask {
     }
 
     @Override
-    DatasetEditor newDatasetCreator(Dataset dataset, String depositorRole) {
+    DatasetEditor newDatasetCreator(Dataset dataset, String depositorRole) throws IOException {
         return newDatasetCreator(dataset, depositorRole, true);
     }
 
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.sequencing.TargetedTask;
+import nl.knaw.dans.ingest.core.sequencing.TaskLifecycleListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the durable deposit queue up-to-date with the tasks that pass through the {@link nl.knaw.dans.ingest.core.sequencing.TargetedTaskSequenceManager}.
+ */
+public class DepositQueueRecorder implements TaskLifecycleListener {
+    private static final Logger log = LoggerFactory.getLogger(DepositQueueRecorder.class);
+
+    private final DepositQueueService depositQueueService;
+
+    public DepositQueueRecorder(DepositQueueService depositQueueService) {
+        this.depositQueueService = depositQueueService;
+    }
+
+    @Override
+    public void onEnqueued(String area, TargetedTask task) {
+        if (task instanceof DepositIngestTask) {
+            var depositTask = (DepositIngestTask) task;
+            var location = depositTask.getDepositLocation();
+            depositQueueService.recordEnqueued(area, depositTask.getEventWriter().getName(), location.getDepositId(), location.getTarget(), location.getDir(),
+                depositTask.getOutboxDir(), location.getCreated());
+        }
+        else {
+            log.debug("Not recording task {}; it is not a deposit ingest task", task);
+        }
+    }
+
+    @Override
+    public void onStarted(String area, TargetedTask task) {
+        if (task instanceof DepositIngestTask) {
+            depositQueueService.recordStarted(((DepositIngestTask) task).getDepositLocation().getDepositId());
+        }
+    }
+
+    @Override
+    public void onFinished(String area, TargetedTask task) {
+        if (task instanceof DepositIngestTask) {
+            depositQueueService.recordFinished(((DepositIngestTask) task).getDepositLocation().getDepositId());
+        }
+    }
+}
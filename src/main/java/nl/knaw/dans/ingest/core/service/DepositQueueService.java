@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.QueuedDeposit;
+
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Durable record of the deposits that are enqueued for processing, so that processing can be resumed after a restart.
+ */
+public interface DepositQueueService {
+
+    void recordEnqueued(String area, String source, String depositId, String target, Path depositPath, Path outboxDir, OffsetDateTime created);
+
+    void recordStarted(String depositId);
+
+    /**
+     * Removes a deposit from the queue, as it does not have to be resumed anymore.
+     *
+     * @param depositId the id of the deposit
+     */
+    void recordFinished(String depositId);
+
+    Optional<QueuedDeposit> getQueuedDeposit(String depositId);
+
+    /**
+     * Returns the deposits of an area that were enqueued or in progress, in the order in which they must be processed.
+     *
+     * @param area the name of the ingest area
+     * @return the unfinished deposits
+     */
+    List<QueuedDeposit> getUnfinished(String area);
+
+    /**
+     * Returns the deposits for a target that were enqueued or in progress, of all areas and instances.
+     *
+     * @param target the target
+     * @return the deposits
+     */
+    List<QueuedDeposit> getByTarget(String target);
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import nl.knaw.dans.ingest.core.QueuedDeposit;
+import nl.knaw.dans.ingest.db.QueuedDepositDAO;
+
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public class DepositQueueServiceImpl implements DepositQueueService {
+    private final QueuedDepositDAO queuedDepositDAO;
+
+    public DepositQueueServiceImpl(QueuedDepositDAO queuedDepositDAO) {
+        this.queuedDepositDAO = queuedDepositDAO;
+    }
+
+    @Override
+    @UnitOfWork
+    public void recordEnqueued(String area, String source, String depositId, String target, Path depositPath, Path outboxDir, OffsetDateTime created) {
+        var existing = queuedDepositDAO.getQueuedDeposit(depositId);
+
+        if (existing.isPresent()) {
+            // Resumed after a restart. Keep the original enqueued timestamp, so that the order is not changed.
+            var queuedDeposit = existing.get();
+            queuedDeposit.setArea(area);
+            queuedDeposit.setSource(source);
+            queuedDeposit.setTarget(target);
+            queuedDeposit.setDepositPath(depositPath.toString());
+            queuedDeposit.setOutboxPath(outboxDir.toString());
+            queuedDeposit.setState(QueuedDeposit.State.ENQUEUED);
+        }
+        else {
+            queuedDepositDAO.save(new QueuedDeposit(depositId, area, source, target, depositPath.toString(), outboxDir.toString(), created, OffsetDateTime.now()));
+        }
+    }
+
+    @Override
+    @UnitOfWork
+    public void recordStarted(String depositId) {
+        queuedDepositDAO.getQueuedDeposit(depositId)
+            .ifPresent(d -> d.setState(QueuedDeposit.State.IN_PROGRESS));
+    }
+
+    @Override
+    @UnitOfWork
+    public void recordFinished(String depositId) {
+        // Finished deposits are not needed anymore; keeping them would make the queue grow with every deposit ever processed
+        queuedDepositDAO.delete(depositId);
+    }
+
+    @Override
+    @UnitOfWork
+    public Optional<QueuedDeposit> getQueuedDeposit(String depositId) {
+        return queuedDepositDAO.getQueuedDeposit(depositId);
+    }
+
+    @Override
+    @UnitOfWork
+    public List<QueuedDeposit> getUnfinished(String area) {
+        return queuedDepositDAO.getUnfinished(area);
+    }
+
+    @Override
+    @UnitOfWork
+    public List<QueuedDeposit> getByTarget(String target) {
+        return queuedDepositDAO.getByTarget(target);
+    }
+}
@@ -24,5 +24,12 @@ import nl.knaw.dans.ingest.core.sequencing.TargetedTask;
  */
 public interface EnqueuingService {
 
-    <T extends TargetedTask> void executeEnqueue(TargetedTaskSource<T> source);
+    /**
+     * Enqueues the tasks from the source on behalf of the given ingest area.
+     *
+     * @param area   the name of the ingest area the tasks belong to; used to share the worker slots fairly between the areas
+     * @param source the source of the tasks
+     * @param <T>    the type of task
+     */
+    <T extends TargetedTask> void executeEnqueue(String area, TargetedTaskSource<T> source);
 }
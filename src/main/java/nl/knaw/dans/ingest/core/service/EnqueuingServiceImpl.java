@@ -16,6 +16,7 @@
 package nl.knaw.dans.ingest.core.service;
 
 import nl.knaw.dans.ingest.core.TaskEvent;
+import nl.knaw.dans.ingest.core.sequencing.AdmissionController;
 import nl.knaw.dans.ingest.core.sequencing.TargetedTask;
 import nl.knaw.dans.ingest.core.sequencing.TargetedTaskSequenceManager;
 import org.slf4j.Logger;
@@ -24,42 +25,74 @@ import org.slf4j.LoggerFactory;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+/**
+ * Enqueues the tasks of each source on a thread of its own. If an {@link AdmissionController} is set, the enqueuing of an area is paused while that area
+ * has too many tasks in flight, so that the tasks are taken from the source only as fast as the workers can process them.
+ */
 public class EnqueuingServiceImpl implements EnqueuingService {
     private static final Logger log = LoggerFactory.getLogger(EnqueuingServiceImpl.class);
 
     private final ExecutorService enqueuingExecutor;
     private final TargetedTaskSequenceManager targetedTaskSequenceManager;
+    private final AdmissionController admissionController;
 
     public EnqueuingServiceImpl(TargetedTaskSequenceManager targetedTaskSequenceManager, int numberOfClients) {
+        this(targetedTaskSequenceManager, null, numberOfClients);
+    }
+
+    /**
+     * @param targetedTaskSequenceManager the manager to schedule the tasks on
+     * @param admissionController         the admission controller, which must also be a listener of the manager; null for no admission control
+     * @param numberOfClients             the number of sources that can be enqueued at the same time
+     */
+    public EnqueuingServiceImpl(TargetedTaskSequenceManager targetedTaskSequenceManager, AdmissionController admissionController, int numberOfClients) {
         this.targetedTaskSequenceManager = targetedTaskSequenceManager;
+        this.admissionController = admissionController;
         enqueuingExecutor = Executors.newFixedThreadPool(numberOfClients);
     }
 
     @Override
-    public <T extends TargetedTask> void executeEnqueue(TargetedTaskSource<T> source) {
-        log.trace("executeEnqueue({})", source);
+    public <T extends TargetedTask> void executeEnqueue(String area, TargetedTaskSource<T> source) {
+        log.trace("executeEnqueue({}, {})", area, source);
         enqueuingExecutor.execute(() -> {
-            log.debug("Start enqueuing tasks");
+            log.debug("Start enqueuing tasks for area {}", area);
             try {
                 for (T t : source) {
-                    enqueue(t);
+                    enqueue(area, t);
                 }
             }
+            catch (InterruptedException e) {
+                log.warn("Enqueuing for area {} was interrupted", area);
+                Thread.currentThread().interrupt();
+            }
             catch (Exception e) {
                 log.error("Enqueuing could not start because of an error", e);
             }
         });
     }
 
-    private <T extends TargetedTask> void enqueue(T t) {
+    private <T extends TargetedTask> void enqueue(String area, T t) throws InterruptedException {
         log.trace("Enqueuing {}", t);
+        if (admissionController != null) {
+            admissionController.admit(area);
+        }
+
+        var scheduled = false;
         try {
-            targetedTaskSequenceManager.scheduleTask(t);
-            t.writeEvent(TaskEvent.EventType.ENQUEUE, TaskEvent.Result.OK, null);
+            scheduled = targetedTaskSequenceManager.scheduleTask(area, t);
+            if (scheduled) {
+                t.writeEvent(TaskEvent.EventType.ENQUEUE, TaskEvent.Result.OK, null);
+            }
         }
         catch (Exception e) {
             log.error("Enqueuing of {} failed", t, e);
             t.writeEvent(TaskEvent.EventType.ENQUEUE, TaskEvent.Result.FAILED, e.getMessage());
         }
+        finally {
+            // A task that is scheduled is released by the admission controller when it finishes
+            if (!scheduled && admissionController != null) {
+                admissionController.release(area);
+            }
+        }
     }
 }
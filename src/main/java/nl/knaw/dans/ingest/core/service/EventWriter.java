@@ -28,6 +28,10 @@ public class EventWriter {
         this.name = name;
     }
 
+    public String getName() {
+        return name;
+    }
+
     public void write(UUID depositId, TaskEvent.EventType eventType, TaskEvent.Result result, String message) {
         taskEventService.writeEvent(name, depositId, eventType, result, message);
     }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.lib.dataverse.DataverseException;
+
+/**
+ * Decides whether a failure is transient, i.e., likely to go away if the same thing is tried again a little later, or permanent. Only failures to reach a
+ * service and the HTTP statuses that Dataverse or a proxy in front of it returns when it is busy or restarting are transient. Everything else, including
+ * all errors in the deposit itself, is permanent.
+ */
+public class FailureClassifier {
+
+    public enum FailureClass {
+        TRANSIENT,
+        PERMANENT
+    }
+
+    public static FailureClass classify(Throwable e) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DataverseException && isTransientStatus(((DataverseException) cause).getStatus())) {
+                return FailureClass.TRANSIENT;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return CircuitBreaker.isConnectionFailure(e) ? FailureClass.TRANSIENT : FailureClass.PERMANENT;
+    }
+
+    public static boolean isTransient(Throwable e) {
+        return classify(e) == FailureClass.TRANSIENT;
+    }
+
+    private static boolean isTransientStatus(int status) {
+        return status == 408 || status == 429 || status == 502 || status == 503 || status == 504;
+    }
+}
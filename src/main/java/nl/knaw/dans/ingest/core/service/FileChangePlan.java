@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.dataverse.DatasetFile;
+import nl.knaw.dans.ingest.core.domain.FileInfo;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The changes to the files of a dataset that turn the latest version into the version in an update-deposit: files that are moved (renamed), replaced,
+ * deleted and added. The plan is computed with a fixed number of passes over the files, using indexes by path and by checksum, so that it takes linear
+ * time in the number of files.
+ *
+ * <ul>
+ *     <li>A file is moved if its checksum occurs exactly once in the latest version and exactly once in the deposit. This includes files that stay at the same
+ *     path; their metadata is updated like that of a moved file.</li>
+ *     <li>A file is replaced if its path is in both versions with a different checksum, and the path is not involved in a move. Otherwise, a file could be
+ *     replaced that has just been moved away, or a file could be added at a path that is still taken.</li>
+ *     <li>A file is deleted if its path is not in the deposit, or is the new path of a moved file, unless the file itself is moved.</li>
+ *     <li>A file is added if its path is not occupied after the moves and deletions.</li>
+ * </ul>
+ */
+class FileChangePlan {
+    // Old path to new path
+    private final Map<Path, Path> movedFiles = new HashMap<>();
+    // Database id to new metadata
+    private final Map<Integer, FileMeta> fileMovements = new HashMap<>();
+    private final Map<Integer, FileInfo> filesToReplace = new HashMap<>();
+    private final Set<Path> pathsToDelete = new HashSet<>();
+    private final Set<Integer> fileDeletions = new HashSet<>();
+    private final Set<Path> pathsToAdd = new HashSet<>();
+    private final List<FileInfo> filesToAdd = new ArrayList<>();
+
+    private FileChangePlan() {
+    }
+
+    /**
+     * Computes the plan.
+     *
+     * @param pathToFileInLatestVersion the files in the latest version, by path
+     * @param pathToFileInfo                the files in the deposit, by path
+     * @return the plan
+     */
+    static FileChangePlan compute(Map<Path, DatasetFile> pathToFileInLatestVersion, Map<Path, FileInfo> pathToFileInfo) {
+        var plan = new FileChangePlan();
+
+        var latestPathByChecksum = indexNonDuplicateChecksums(pathToFileInLatestVersion, DatasetFile::getChecksumValue);
+        var depositPathByChecksum = indexNonDuplicateChecksums(pathToFileInfo, FileInfo::getChecksum);
+
+        for (var entry : latestPathByChecksum.entrySet()) {
+            var newPath = depositPathByChecksum.get(entry.getKey());
+            if (newPath != null) {
+                var oldPath = entry.getValue();
+                plan.movedFiles.put(oldPath, newPath);
+                plan.fileMovements.put(pathToFileInLatestVersion.get(oldPath).getId(), pathToFileInfo.get(newPath).getMetadata());
+            }
+        }
+        var newPathsOfMovedFiles = new HashSet<>(plan.movedFiles.values());
+
+        for (var entry : pathToFileInLatestVersion.entrySet()) {
+            var path = entry.getKey();
+            var moved = plan.movedFiles.containsKey(path);
+            var fileInfo = pathToFileInfo.get(path);
+
+            /*
+             * File replacement can only happen on files with paths that are not also involved in a rename/move action. Otherwise, we end up with:
+             *
+             * - trying to update the file metadata by a database ID that is not the "HEAD" of a file version history. This happens when a file A is renamed
+             * to B, but a different file A is also added in the same update: (1)A -> (1)B (move), .. -> (2)A (add)
+             *
+             * - trying to add a file with a name that already exists. This happens when a file A is renamed to B, while B is also part of the latest version:
+             * (1)A -> (1)B (move), (2)B -> .. (delete)
+             */
+            if (!moved && !newPathsOfMovedFiles.contains(path) && fileInfo != null
+                && !fileInfo.getChecksum().equals(entry.getValue().getChecksumValue())) {
+                plan.filesToReplace.put(entry.getValue().getId(), fileInfo);
+            }
+
+            /*
+             * A path that is in the deposit remains, unless a file is moved to it; then the file at that path must be deleted first. The old path of a moved
+             * file is not deleted, because the underlying file must remain present.
+             */
+            var remains = fileInfo != null && !newPathsOfMovedFiles.contains(path);
+            if (!remains && !moved) {
+                plan.pathsToDelete.add(path);
+                plan.fileDeletions.add(entry.getValue().getId());
+            }
+        }
+
+        for (var entry : pathToFileInfo.entrySet()) {
+            var path = entry.getKey();
+            // After the moves and deletions, the new paths of the moved files are occupied, and the paths of the latest version that were not deleted
+            var occupied = newPathsOfMovedFiles.contains(path) || (pathToFileInLatestVersion.containsKey(path) && !plan.pathsToDelete.contains(path));
+            if (!occupied) {
+                plan.pathsToAdd.add(path);
+                plan.filesToAdd.add(entry.getValue());
+            }
+        }
+        return plan;
+    }
+
+    private static <T> Map<String, Path> indexNonDuplicateChecksums(Map<Path, T> files, Function<T, String> checksum) {
+        var pathByChecksum = new HashMap<String, Path>(files.size() * 2);
+        var duplicates = new HashSet<String>();
+        for (var entry : files.entrySet()) {
+            var value = checksum.apply(entry.getValue());
+            if (pathByChecksum.putIfAbsent(value, entry.getKey()) != null) {
+                duplicates.add(value);
+            }
+        }
+        pathByChecksum.keySet().removeAll(duplicates);
+        return pathByChecksum;
+    }
+
+    Map<Path, Path> getMovedFiles() {
+        return movedFiles;
+    }
+
+    Map<Integer, FileMeta> getFileMovements() {
+        return fileMovements;
+    }
+
+    Map<Integer, FileInfo> getFilesToReplace() {
+        return filesToReplace;
+    }
+
+    Set<Path> getPathsToDelete() {
+        return pathsToDelete;
+    }
+
+    Set<Integer> getFileDeletions() {
+        return fileDeletions;
+    }
+
+    Set<Path> getPathsToAdd() {
+        return pathsToAdd;
+    }
+
+    List<FileInfo> getFilesToAdd() {
+        return filesToAdd;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs an operation on each file of a dataset in waves of at most {@code concurrency} operations at the same time. After each wave it waits once for the
+ * dataset to be unlocked, instead of after each file. An operation that fails because the dataset is locked is tried again in a later wave, at most
+ * {@code maxLockConflictRetries} times. With a concurrency of 1 this comes down to running the operations one after another, waiting for the lock after
+ * each one.
+ *
+ * The operations run on a shared executor, so that the number of threads does not grow with the number of deposits processed at the same time. The waves
+ * limit the number of operations of one run that are on the executor at the same time to {@code concurrency}.
+ *
+ * The results are returned in the order of the items, and if operations fail, the exception of the first failed item is thrown, so that the outcome does not
+ * depend on the order in which the operations happen to finish.
+ */
+@Slf4j
+class FileOperationRunner {
+
+    @FunctionalInterface
+    interface FileOperation<T, R> {
+        R apply(T item) throws IOException, DataverseException;
+    }
+
+    @FunctionalInterface
+    interface UnlockWaiter {
+        void awaitUnlock() throws IOException, DataverseException;
+    }
+
+    private final Executor executor;
+    private final int concurrency;
+    private final int maxLockConflictRetries;
+
+    FileOperationRunner(Executor executor, int concurrency, int maxLockConflictRetries) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        if (maxLockConflictRetries < 0) {
+            throw new IllegalArgumentException("maxLockConflictRetries must not be negative");
+        }
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.maxLockConflictRetries = maxLockConflictRetries;
+    }
+
+    <T, R> List<R> run(List<T> items, FileOperation<T, R> operation, UnlockWaiter unlockWaiter) throws IOException, DataverseException, InterruptedException {
+        var results = new ArrayList<R>(items.size());
+        var attempts = new int[items.size()];
+        var pending = new ArrayList<Integer>(items.size());
+        for (var i = 0; i < items.size(); i++) {
+            results.add(null);
+            pending.add(i);
+        }
+
+        while (!pending.isEmpty()) {
+            var retries = new ArrayList<Integer>();
+            for (var start = 0; start < pending.size(); start += concurrency) {
+                var wave = pending.subList(start, Math.min(start + concurrency, pending.size()));
+                var outcomes = runWave(wave, items, operation);
+                Exception firstFailure = null;
+
+                for (var i = 0; i < wave.size(); i++) {
+                    var index = wave.get(i);
+                    var outcome = outcomes[i];
+                    if (outcome.failure == null) {
+                        results.set(index, outcome.result);
+                    }
+                    else if (isLockConflict(outcome.failure) && attempts[index] < maxLockConflictRetries) {
+                        attempts[index]++;
+                        log.debug("Dataset was locked when processing {}; trying again (attempt {})", items.get(index), attempts[index] + 1);
+                        retries.add(index);
+                    }
+                    else if (firstFailure == null) {
+                        firstFailure = outcome.failure;
+                    }
+                }
+
+                if (firstFailure != null) {
+                    rethrow(firstFailure);
+                }
+                unlockWaiter.awaitUnlock();
+            }
+            pending = retries;
+        }
+        return results;
+    }
+
+    private <T, R> Outcome<R>[] runWave(List<Integer> wave, List<T> items, FileOperation<T, R> operation) throws InterruptedException {
+        @SuppressWarnings("unchecked")
+        Outcome<R>[] outcomes = new Outcome[wave.size()];
+
+        if (concurrency == 1) {
+            for (var i = 0; i < wave.size(); i++) {
+                outcomes[i] = apply(operation, items.get(wave.get(i)));
+            }
+            return outcomes;
+        }
+
+        var futures = new ArrayList<CompletableFuture<Outcome<R>>>(wave.size());
+        for (var index : wave) {
+            futures.add(CompletableFuture.supplyAsync(() -> apply(operation, items.get(index)), executor));
+        }
+        for (var i = 0; i < futures.size(); i++) {
+            try {
+                outcomes[i] = futures.get(i).get();
+            }
+            catch (ExecutionException e) {
+                // apply() catches all exceptions, so this only happens on an Error
+                outcomes[i] = new Outcome<>(null, new IllegalStateException("File operation failed", e.getCause()));
+            }
+        }
+        return outcomes;
+    }
+
+    private static <T, R> Outcome<R> apply(FileOperation<T, R> operation, T item) {
+        try {
+            return new Outcome<>(operation.apply(item), null);
+        }
+        catch (Exception e) {
+            return new Outcome<>(null, e);
+        }
+    }
+
+    static boolean isLockConflict(Exception e) {
+        if (e instanceof DataverseException) {
+            var dataverseException = (DataverseException) e;
+            return dataverseException.getStatus() == 409
+                || (dataverseException.getMessage() != null && dataverseException.getMessage().toLowerCase().contains("lock"));
+        }
+        return false;
+    }
+
+    private static void rethrow(Exception e) throws IOException, DataverseException {
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if (e instanceof DataverseException) {
+            throw (DataverseException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        throw new IllegalStateException(e);
+    }
+
+    private static class Outcome<R> {
+        private final R result;
+        private final Exception failure;
+
+        private Outcome(R result, Exception failure) {
+            this.result = result;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.Lease;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Leases on shared resources, stored in the database that is shared by the instances of the service in cluster mode.
+ */
+public interface LeaseService {
+
+    /**
+     * Acquires or extends the lease on a resource. A lease held by another owner is taken over if it has expired.
+     *
+     * @param resource the resource to lease
+     * @param owner    the node that wants the lease
+     * @param duration the time after which the lease expires if it is not renewed
+     * @return true if the owner holds the lease
+     */
+    boolean tryAcquire(String resource, String owner, Duration duration);
+
+    int renewAll(String owner, Duration duration);
+
+    boolean release(String resource, String owner);
+
+    int releaseAll(String owner);
+
+    List<Lease> getExpired(String resourcePrefix);
+
+    boolean deleteIfExpired(String resource);
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import nl.knaw.dans.ingest.core.Lease;
+import nl.knaw.dans.ingest.db.LeaseDAO;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+public class LeaseServiceImpl implements LeaseService {
+    private final LeaseDAO leaseDAO;
+
+    public LeaseServiceImpl(LeaseDAO leaseDAO) {
+        this.leaseDAO = leaseDAO;
+    }
+
+    @Override
+    @UnitOfWork
+    public boolean tryAcquire(String resource, String owner, Duration duration) {
+        var now = OffsetDateTime.now();
+        return leaseDAO.tryAcquire(resource, owner, now, now.plus(duration));
+    }
+
+    @Override
+    @UnitOfWork
+    public int renewAll(String owner, Duration duration) {
+        return leaseDAO.renewAll(owner, OffsetDateTime.now().plus(duration));
+    }
+
+    @Override
+    @UnitOfWork
+    public boolean release(String resource, String owner) {
+        return leaseDAO.release(resource, owner);
+    }
+
+    @Override
+    @UnitOfWork
+    public int releaseAll(String owner) {
+        return leaseDAO.releaseAll(owner);
+    }
+
+    @Override
+    @UnitOfWork
+    public List<Lease> getExpired(String resourcePrefix) {
+        return leaseDAO.getExpired(resourcePrefix, OffsetDateTime.now());
+    }
+
+    @Override
+    @UnitOfWork
+    public boolean deleteIfExpired(String resource) {
+        return leaseDAO.deleteIfExpired(resource, OffsetDateTime.now());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.QueuedDeposit;
+import nl.knaw.dans.ingest.core.exception.InvalidDepositException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+/**
+ * Creates tasks for the deposits of an area that were enqueued or in progress according to the durable deposit queue, in the order in which they were
+ * originally enqueued. Deposits that are no longer in the inbox are marked as finished. Alternatively, an explicit list of deposits can be resumed, e.g.,
+ * deposits taken over from another instance in cluster mode.
+ */
+public class ResumedDepositsTaskSource implements TargetedTaskSource<DepositIngestTask> {
+    private static final Logger log = LoggerFactory.getLogger(ResumedDepositsTaskSource.class);
+
+    private final String area;
+    private final Supplier<List<QueuedDeposit>> queuedDeposits;
+    private final DepositQueueService depositQueueService;
+    private final TaskEventService taskEventService;
+    private final DepositIngestTaskFactory taskFactory;
+
+    public ResumedDepositsTaskSource(String area, DepositQueueService depositQueueService, TaskEventService taskEventService, DepositIngestTaskFactory taskFactory) {
+        this(area, () -> depositQueueService.getUnfinished(area), depositQueueService, taskEventService, taskFactory);
+    }
+
+    public ResumedDepositsTaskSource(String area, Supplier<List<QueuedDeposit>> queuedDeposits, DepositQueueService depositQueueService, TaskEventService taskEventService,
+        DepositIngestTaskFactory taskFactory) {
+        this.area = area;
+        this.queuedDeposits = queuedDeposits;
+        this.depositQueueService = depositQueueService;
+        this.taskEventService = taskEventService;
+        this.taskFactory = taskFactory;
+    }
+
+    /*
+     * Only the queue records are read up front; a task is created when it is requested, so that resuming a large queue does not keep a task for every
+     * deposit in memory.
+     */
+    @Override
+    public Iterator<DepositIngestTask> iterator() {
+        var deposits = queuedDeposits.get();
+        log.info("Resuming {} deposits for area {}", deposits.size(), area);
+        var remaining = deposits.iterator();
+
+        return new Iterator<>() {
+            private DepositIngestTask nextTask;
+
+            @Override
+            public boolean hasNext() {
+                while (nextTask == null && remaining.hasNext()) {
+                    nextTask = createTask(remaining.next());
+                }
+                return nextTask != null;
+            }
+
+            @Override
+            public DepositIngestTask next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                var task = nextTask;
+                nextTask = null;
+                return task;
+            }
+        };
+    }
+
+    private DepositIngestTask createTask(QueuedDeposit queuedDeposit) {
+        var depositPath = Path.of(queuedDeposit.getDepositPath());
+
+        if (!Files.isDirectory(depositPath)) {
+            log.warn("Deposit {} was {} but is no longer found at {}; removing it from the queue", queuedDeposit.getDepositId(), queuedDeposit.getState(), depositPath);
+            depositQueueService.recordFinished(queuedDeposit.getDepositId());
+            return null;
+        }
+
+        if (queuedDeposit.getState() == QueuedDeposit.State.IN_PROGRESS) {
+            log.warn("Deposit {} was in progress when the service stopped; processing it again", queuedDeposit.getDepositId());
+        }
+
+        try {
+            var eventWriter = new EventWriter(taskEventService, queuedDeposit.getSource());
+            return taskFactory.createIngestTask(depositPath, Path.of(queuedDeposit.getOutboxPath()), eventWriter);
+        }
+        catch (InvalidDepositException | IOException e) {
+            // The task factory has moved the deposit to the failed outbox
+            log.error("Could not resume deposit {}", queuedDeposit.getDepositId(), e);
+            depositQueueService.recordFinished(queuedDeposit.getDepositId());
+            return null;
+        }
+    }
+}
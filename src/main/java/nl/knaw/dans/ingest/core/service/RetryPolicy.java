@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.ingest.config.RetryPolicyConfig;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The number of attempts and the delays between them for an operation that may fail transiently. The delay doubles after each attempt, up to a maximum, and a
+ * random part of it is left out, so that the retries of operations that failed at the same time do not all happen at the same time.
+ */
+@Slf4j
+public class RetryPolicy {
+    public static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, Duration.ZERO, 0);
+
+    private final int maxAttempts;
+    private final Duration initialDelay;
+    private final Duration maxDelay;
+    private final double jitter;
+
+    @FunctionalInterface
+    public interface Attempt<T> {
+        T run() throws IOException, DataverseException;
+    }
+
+    public RetryPolicy(int maxAttempts, Duration initialDelay, Duration maxDelay, double jitter) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.jitter = jitter;
+    }
+
+    public static RetryPolicy of(RetryPolicyConfig config) {
+        return new RetryPolicy(config.getMaxAttempts(),
+            Duration.ofMillis(config.getInitialDelay().toMilliseconds()),
+            Duration.ofMillis(config.getMaxDelay().toMilliseconds()),
+            config.getJitter());
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Returns the delay before the next attempt.
+     *
+     * @param failedAttempts the number of attempts that failed so far, at least 1
+     * @return the delay
+     */
+    public Duration getDelay(int failedAttempts) {
+        var delay = initialDelay;
+        for (var i = 1; i < failedAttempts && delay.compareTo(maxDelay) < 0; i++) {
+            delay = delay.multipliedBy(2);
+        }
+        if (delay.compareTo(maxDelay) > 0) {
+            delay = maxDelay;
+        }
+        var leftOut = jitter == 0 ? 0 : ThreadLocalRandom.current().nextDouble(jitter);
+        return Duration.ofMillis((long) (delay.toMillis() * (1 - leftOut)));
+    }
+
+    /**
+     * Runs the attempt until it succeeds, fails permanently or the attempts are used up.
+     *
+     * @param operation the name of the operation, for logging
+     * @param attempt   the attempt
+     * @param <T>       the type of the result
+     * @return the result of the successful attempt
+     * @throws IOException        the failure of the last attempt, or if the thread is interrupted while waiting for the next attempt
+     * @throws DataverseException the failure of the last attempt
+     */
+    public <T> T call(String operation, Attempt<T> attempt) throws IOException, DataverseException {
+        for (var failedAttempts = 0; ; ) {
+            try {
+                return attempt.run();
+            }
+            catch (IOException | DataverseException | RuntimeException e) {
+                failedAttempts++;
+                if (failedAttempts >= maxAttempts || !FailureClassifier.isTransient(e)) {
+                    throw e;
+                }
+                var delay = getDelay(failedAttempts);
+                log.warn("{} failed (attempt {} of {}); trying again in {} ms: {}", operation, failedAttempts, maxAttempts, delay.toMillis(), e.getMessage());
+                sleep(operation, delay);
+            }
+        }
+    }
+
+    private static void sleep(String operation, Duration delay) throws InterruptedIOException {
+        try {
+            Thread.sleep(delay.toMillis());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry " + operation);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.simulation.Simulation;
+import nl.knaw.dans.ingest.core.simulation.Simulation.Operation;
+import nl.knaw.dans.validatedansbag.client.api.ValidateCommandDto;
+import nl.knaw.dans.validatedansbag.client.api.ValidateOkDto;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Stands in for the DANS bag validator in a dry run. Every bag is compliant after the simulated latency.
+ */
+public class SimulatedDansBagValidator implements DansBagValidator {
+    private final Simulation simulation;
+
+    public SimulatedDansBagValidator(Simulation simulation) {
+        this.simulation = simulation;
+    }
+
+    @Override
+    public void checkConnection() {
+    }
+
+    @Override
+    public ValidateOkDto validateBag(Path bagDir, ValidateCommandDto.PackageTypeEnum packageType) {
+        simulation.call(Operation.VALIDATE_BAG);
+        var result = new ValidateOkDto();
+        result.setIsCompliant(true);
+        result.setRuleViolations(List.of());
+        result.setBagLocation(bagDir.toString());
+        return result;
+    }
+}
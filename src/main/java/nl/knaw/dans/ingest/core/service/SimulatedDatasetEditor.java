@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.knaw.dans.ingest.core.dataverse.SimulatedDatasetService;
+import nl.knaw.dans.ingest.core.domain.Deposit;
+import nl.knaw.dans.ingest.core.simulation.Simulation.Operation;
+import nl.knaw.dans.ingest.core.simulation.Simulation.Stage;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Creates or updates a dataset in a dry run. The files of the deposit are listed as in a real edit, and for each step the simulated Dataverse is called as
+ * often as the real editors would call Dataverse. An update is simulated as if every file were new.
+ */
+public class SimulatedDatasetEditor extends DatasetEditor {
+    private final SimulatedDatasetService simulatedDatasetService;
+    private final boolean create;
+
+    public SimulatedDatasetEditor(
+        boolean isMigration,
+        Dataset dataset,
+        Deposit deposit,
+        List<URI> supportedLicenses,
+        Pattern fileExclusionPattern,
+        ZipFileHandler zipFileHandler,
+        SimulatedDatasetService datasetService,
+        String vaultMetadataKey,
+        boolean create) {
+        super(isMigration, dataset, deposit, supportedLicenses, fileExclusionPattern, zipFileHandler, new ObjectMapper(), datasetService, vaultMetadataKey, false);
+        this.simulatedDatasetService = datasetService;
+        this.create = create;
+    }
+
+    @Override
+    public String performEdit() {
+        return simulatedDatasetService.getSimulation().time(Stage.EDIT_DATASET, this::simulateEdit);
+    }
+
+    private String simulateEdit() {
+        var simulation = simulatedDatasetService.getSimulation();
+        String persistentId;
+
+        if (!create) {
+            persistentId = deposit.getDataverseDoi();
+            simulatedDatasetService.createDraft(persistentId);
+        }
+        else if (isMigration) {
+            persistentId = String.format("doi:%s", deposit.getDoi());
+            simulatedDatasetService.importDataset(persistentId);
+        }
+        else {
+            persistentId = simulatedDatasetService.createDataset();
+        }
+
+        simulation.call(Operation.UPDATE_METADATA);
+        var files = getFileInfo();
+        // The original metadata zip is added as well
+        var numberOfFiles = files.size() + (isMigration ? 0 : 1);
+
+        for (var i = 0; i < numberOfFiles; i++) {
+            simulation.call(Operation.ADD_FILE);
+        }
+        for (var i = 0; i < numberOfFiles; i++) {
+            simulation.call(Operation.UPDATE_FILE_METADATA);
+        }
+        if (create) {
+            simulation.call(Operation.ASSIGN_ROLE);
+        }
+        var dateAvailable = getDateAvailable(deposit);
+        if (dateAvailable.isAfter(Instant.now())) {
+            simulatedDatasetService.setEmbargo(persistentId, dateAvailable, List.of());
+        }
+        return persistentId;
+    }
+}
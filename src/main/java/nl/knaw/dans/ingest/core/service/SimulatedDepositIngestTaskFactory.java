@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.config.IngestFlowConfig;
+import nl.knaw.dans.ingest.core.dataverse.SimulatedDatasetService;
+import nl.knaw.dans.ingest.core.deposit.DepositManager;
+import nl.knaw.dans.ingest.core.domain.DepositLocation;
+import nl.knaw.dans.ingest.core.service.mapper.DepositToDvDatasetMetadataMapperFactory;
+import nl.knaw.dans.ingest.core.validation.DepositorAuthorizationValidator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
+
+/**
+ * Creates the tasks for a dry run: the regular tasks, with the hooks of the simulation (see {@link SimulatedTaskHooks}) and the simulated Dataverse.
+ */
+public class SimulatedDepositIngestTaskFactory extends DepositIngestTaskFactory {
+    private final SimulatedTaskHooks simulatedTaskHooks;
+
+    public SimulatedDepositIngestTaskFactory(
+        boolean isMigration,
+        String depositorRole,
+        DansBagValidator dansBagValidator,
+        IngestFlowConfig ingestFlowConfig,
+        DepositManager depositManager,
+        DepositToDvDatasetMetadataMapperFactory depositToDvDatasetMetadataMapperFactory,
+        ZipFileHandler zipFileHandler,
+        SimulatedDatasetService datasetService,
+        BlockedTargetService blockedTargetService,
+        DepositorAuthorizationValidator depositorAuthorizationValidator,
+        String vaultMetadataKey,
+        Executor checkExecutor) throws IOException, URISyntaxException {
+        super(isMigration, depositorRole, dansBagValidator, ingestFlowConfig, depositManager, depositToDvDatasetMetadataMapperFactory, zipFileHandler, datasetService,
+            blockedTargetService, depositorAuthorizationValidator, vaultMetadataKey, checkExecutor);
+        this.simulatedTaskHooks = new SimulatedTaskHooks(datasetService);
+    }
+
+    @Override
+    protected DepositIngestTask newMigrationTask(DepositLocation depositLocation, Path outboxDir, EventWriter eventWriter, Pattern fileExclusionPattern, List<URI> licenses) {
+        var task = super.newMigrationTask(depositLocation, outboxDir, eventWriter, fileExclusionPattern, licenses);
+        task.setSimulatedTaskHooks(simulatedTaskHooks);
+        return task;
+    }
+
+    @Override
+    protected DepositIngestTask newIngestTask(DepositLocation depositLocation, Path outboxDir, EventWriter eventWriter, Pattern fileExclusionPattern, List<URI> licenses) {
+        var task = super.newIngestTask(depositLocation, outboxDir, eventWriter, fileExclusionPattern, licenses);
+        task.setSimulatedTaskHooks(simulatedTaskHooks);
+        return task;
+    }
+}
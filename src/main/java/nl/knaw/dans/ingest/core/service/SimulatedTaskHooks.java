@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.dataverse.SimulatedDatasetService;
+import nl.knaw.dans.ingest.core.simulation.Simulation;
+import nl.knaw.dans.ingest.core.simulation.Simulation.Stage;
+import nl.knaw.dans.ingest.core.simulation.Simulation.TimedCall;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
+
+/**
+ * What a task does differently in a dry run: counting the deposits, timing the stages and editing the dataset in the simulated Dataverse. A task for a dry
+ * run is a regular task with these hooks set (see {@link DepositIngestTask#setSimulatedTaskHooks(SimulatedTaskHooks)}).
+ */
+class SimulatedTaskHooks {
+    private final SimulatedDatasetService datasetService;
+    private final Simulation simulation;
+
+    SimulatedTaskHooks(SimulatedDatasetService datasetService) {
+        this.datasetService = datasetService;
+        this.simulation = datasetService.getSimulation();
+    }
+
+    /**
+     * Runs the processing of one or more deposits, counting them as processed when it ends.
+     *
+     * @param numberOfDeposits the number of deposits processed by the run
+     * @param run              the processing
+     */
+    void run(int numberOfDeposits, Runnable run) {
+        simulation.depositStarted();
+        try {
+            run.run();
+        }
+        finally {
+            for (var i = 0; i < numberOfDeposits; i++) {
+                simulation.depositFinished();
+            }
+        }
+    }
+
+    <T, E extends Throwable> T time(Stage stage, TimedCall<T, E> call) throws E {
+        return simulation.time(stage, call);
+    }
+
+    DatasetEditor newDatasetEditor(DepositIngestTask task, Dataset dataset, boolean isMigration, boolean create) {
+        return new SimulatedDatasetEditor(isMigration, dataset, task.deposit, task.supportedLicenses, task.fileExclusionPattern, task.zipFileHandler,
+            datasetService, "simulation", create);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.lifecycle.Managed;
+import nl.knaw.dans.ingest.core.TaskEvent;
+import nl.knaw.dans.ingest.core.dataverse.DataverseCallRecorder;
+import nl.knaw.dans.ingest.core.sequencing.InFlightTask;
+import nl.knaw.dans.ingest.core.sequencing.TargetedTaskSequenceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Looks for deposits that have been in the same processing stage for longer than the threshold for that stage, e.g., because they wait for a dataset lock
+ * that is never released. Such a deposit holds a worker slot and its target, without any sign in the log. For each of them the watchdog logs a warning with
+ * the stack of the worker thread and the Dataverse call made for the deposit, also on the pools, and writes a task event. A deposit is reported once per
+ * stage. The deposit itself is left alone, as the watchdog cannot tell whether it is stuck or only slow.
+ */
+public class StuckDepositWatchdog implements Managed {
+    private static final Logger log = LoggerFactory.getLogger(StuckDepositWatchdog.class);
+
+    private final TargetedTaskSequenceManager targetedTaskSequenceManager;
+    private final DataverseCallRecorder callRecorder;
+    private final Duration checkInterval;
+    private final Duration defaultThreshold;
+    private final Map<String, Duration> stageThresholds;
+    private final Meter detected;
+    private final ScheduledExecutorService checkExecutor;
+    private volatile Set<String> reported = Set.of();
+
+    /**
+     * @param targetedTaskSequenceManager the manager of the tasks to watch
+     * @param callRecorder                the recorder of the Dataverse calls, or null if they are not recorded
+     * @param checkInterval               the time between two checks
+     * @param defaultThreshold            the time after which a deposit is reported if there is no threshold for its stage
+     * @param stageThresholds             the thresholds by stage name
+     * @param metricRegistry              the registry for the metrics
+     * @param checkExecutor               the executor to run the checks on; a single thread is enough
+     */
+    public StuckDepositWatchdog(TargetedTaskSequenceManager targetedTaskSequenceManager, DataverseCallRecorder callRecorder, Duration checkInterval,
+        Duration defaultThreshold, Map<String, Duration> stageThresholds, MetricRegistry metricRegistry, ScheduledExecutorService checkExecutor) {
+        this.targetedTaskSequenceManager = targetedTaskSequenceManager;
+        this.callRecorder = callRecorder;
+        this.checkInterval = checkInterval;
+        this.defaultThreshold = defaultThreshold;
+        this.stageThresholds = stageThresholds;
+        this.checkExecutor = checkExecutor;
+        this.detected = metricRegistry.meter(MetricRegistry.name(StuckDepositWatchdog.class, "detected"));
+        metricRegistry.register(MetricRegistry.name(StuckDepositWatchdog.class, "stuck"), (Gauge<Integer>) () -> reported.size());
+    }
+
+    @Override
+    public void start() {
+        log.info("Starting stuck deposit watchdog; check interval = {}, default threshold = {}, stage thresholds = {}", checkInterval, defaultThreshold,
+            stageThresholds);
+        checkExecutor.scheduleWithFixedDelay(this::checkSafely, checkInterval.toMillis(), checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void checkSafely() {
+        try {
+            check(Instant.now());
+        }
+        catch (Exception e) {
+            // Must not throw, otherwise the check is not scheduled again
+            log.error("Stuck deposit check failed", e);
+        }
+    }
+
+    /**
+     * Reports the deposits that are stuck and were not reported before in the same stage.
+     *
+     * @param now the current time
+     * @return the number of deposits that are stuck
+     */
+    int check(Instant now) {
+        var stuck = new HashSet<String>();
+        for (var inFlightTask : targetedTaskSequenceManager.getInFlightTasks()) {
+            var task = inFlightTask.getTask();
+            var stage = task.getStage();
+            var stageStarted = task.getStageStarted() != null ? task.getStageStarted() : inFlightTask.getStarted();
+            var threshold = stage == null ? defaultThreshold : stageThresholds.getOrDefault(stage, defaultThreshold);
+            var inStage = Duration.between(stageStarted, now);
+            if (inStage.compareTo(threshold) > 0) {
+                // The start of the stage is part of the key, so that a deposit that enters the same stage again is reported again
+                var key = task.getDepositPath() + " " + stage + " " + stageStarted;
+                stuck.add(key);
+                if (!reported.contains(key)) {
+                    report(inFlightTask, stage, inStage, threshold);
+                }
+            }
+        }
+        reported = stuck;
+        return stuck.size();
+    }
+
+    private void report(InFlightTask inFlightTask, String stage, Duration inStage, Duration threshold) {
+        detected.mark();
+        var task = inFlightTask.getTask();
+        var lastCall = callRecorder == null ? "not recorded" : callRecorder.getLastCall(inFlightTask.getThreadId())
+            .map(DataverseCallRecorder.Call::toString)
+            .orElse("none");
+        var message = String.format("Deposit has been in stage %s for %d minutes, longer than the threshold of %d minutes; last Dataverse call: %s",
+            stage, inStage.toMinutes(), threshold.toMinutes(), lastCall);
+        log.warn("STUCK deposit {} (target {}) on thread {}: {}\n{}", task.getDepositPath(), task.getTarget(), inFlightTask.getThread(), message,
+            Arrays.stream(inFlightTask.getStackTrace())
+                .map(element -> "\tat " + element)
+                .collect(Collectors.joining("\n")));
+        try {
+            task.writeEvent(TaskEvent.EventType.STUCK, TaskEvent.Result.WARNING, message);
+        }
+        catch (Exception e) {
+            log.error("Could not write event for stuck deposit {}", task.getDepositPath(), e);
+        }
+    }
+}
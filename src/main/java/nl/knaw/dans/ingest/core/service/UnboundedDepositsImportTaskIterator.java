@@ -24,16 +24,28 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.nio.file.Path;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 public class UnboundedDepositsImportTaskIterator extends AbstractDepositsImportTaskIterator {
     private static final Logger log = LoggerFactory.getLogger(UnboundedDepositsImportTaskIterator.class);
     private final Set<Path> initialPathsRead = new HashSet<>();
+    private final Iterable<DepositIngestTask> resumedTasks;
     private boolean initialized = false;
     private boolean keepRunning = true;
 
     public UnboundedDepositsImportTaskIterator(Path inboxDir, Path outBox, int pollingInterval, DepositIngestTaskFactory taskFactory, EventWriter eventWriter) {
+        this(inboxDir, outBox, pollingInterval, taskFactory, eventWriter, List.of());
+    }
+
+    /**
+     * @param resumedTasks tasks for deposits that were already enqueued before the service was restarted; these are returned before any deposits found in the inbox
+     */
+    public UnboundedDepositsImportTaskIterator(Path inboxDir, Path outBox, int pollingInterval, DepositIngestTaskFactory taskFactory, EventWriter eventWriter,
+        Iterable<DepositIngestTask> resumedTasks) {
         super(inboxDir, outBox, taskFactory, eventWriter);
+        this.resumedTasks = resumedTasks;
         var observer = new FileAlterationObserver(inboxDir.toFile(), f -> f.isDirectory() && f.getParentFile().equals(inboxDir.toFile()));
         observer.addListener(new EventHandler());
         var monitor = new FileAlterationMonitor(pollingInterval);
@@ -77,8 +89,18 @@ public class UnboundedDepositsImportTaskIterator extends AbstractDepositsImportT
 
             initialized = true;
 
-            // find all deposits
-            var initialTasks = createDepositIngestTasks(getAllDepositPathsFromInbox());
+            // first the deposits that were already enqueued before a restart, in their original order
+            for (var task : resumedTasks) {
+                log.debug("onStart resumed deposit: {}", task.getDepositPath());
+                initialPathsRead.add(task.getDepositPath());
+                addTask(task);
+            }
+
+            // then all other deposits
+            var newDepositPaths = getAllDepositPathsFromInbox().stream()
+                .filter(p -> !initialPathsRead.contains(p))
+                .collect(Collectors.toList());
+            var initialTasks = createDepositIngestTasks(newDepositPaths);
 
             for (var task : initialTasks) {
                 var path = task.getDepositPath();
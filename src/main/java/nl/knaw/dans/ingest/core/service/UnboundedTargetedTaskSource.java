@@ -16,18 +16,26 @@
 package nl.knaw.dans.ingest.core.service;
 
 import java.nio.file.Path;
+import java.util.List;
 
 public class UnboundedTargetedTaskSource extends TargetedTaskSourceImpl {
+    private final Iterable<DepositIngestTask> resumedTasks;
     private UnboundedDepositsImportTaskIterator iterator;
 
     public UnboundedTargetedTaskSource(String name, Path inDir, Path outDir, TaskEventService taskEventService,
         DepositIngestTaskFactory taskFactory) {
+        this(name, inDir, outDir, taskEventService, taskFactory, List.of());
+    }
+
+    public UnboundedTargetedTaskSource(String name, Path inDir, Path outDir, TaskEventService taskEventService,
+        DepositIngestTaskFactory taskFactory, Iterable<DepositIngestTask> resumedTasks) {
         super(name, inDir, outDir, taskEventService, taskFactory);
+        this.resumedTasks = resumedTasks;
     }
 
     @Override
     protected UnboundedDepositsImportTaskIterator createIterator(Path inDir, Path outDir, DepositIngestTaskFactory taskFactory, EventWriter eventWriter) {
-        iterator = new UnboundedDepositsImportTaskIterator(inDir, outDir, 500, taskFactory, eventWriter); // TODO: make pollinginterval configurable
+        iterator = new UnboundedDepositsImportTaskIterator(inDir, outDir, 500, taskFactory, eventWriter, resumedTasks); // TODO: make pollinginterval configurable
         return iterator;
     }
 
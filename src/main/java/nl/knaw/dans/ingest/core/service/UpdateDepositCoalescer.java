@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.exception.FailedDepositException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Processes consecutive deposits for the same dataset as one. An update deposit contains the complete new version of the dataset, so the net result of a series
+ * of update deposits is the last one of them. Each deposit is checked as usual, but only the last one is applied, resulting in one draft and one publication.
+ * The other deposits are moved to the outbox with the same state and persistent identifiers as the one that was applied.
+ *
+ * Deposits are processed one by one, as they would be without coalescing, if they create a new dataset, if they were made by a different depositor than the
+ * preceding update, or if the depositor is not allowed to publish (so that the dataset goes into review after the first of them).
+ */
+class UpdateDepositCoalescer {
+    private static final Logger log = LoggerFactory.getLogger(UpdateDepositCoalescer.class);
+
+    private final List<DepositIngestTask> tasks;
+
+    UpdateDepositCoalescer(List<DepositIngestTask> tasks) {
+        this.tasks = tasks;
+    }
+
+    void run() {
+        var updates = new ArrayList<DepositIngestTask>();
+
+        for (var task : tasks) {
+            task.startProcessing();
+            if (!task.readDeposit()) {
+                continue;
+            }
+
+            var deposit = task.getDeposit();
+            if (!deposit.isUpdate()) {
+                applyUpdates(updates);
+                task.process();
+            }
+            else {
+                if (!updates.isEmpty() && !Objects.equals(updates.get(0).getDeposit().getDepositorUserId(), deposit.getDepositorUserId())) {
+                    applyUpdates(updates);
+                }
+                updates.add(task);
+            }
+        }
+
+        applyUpdates(updates);
+    }
+
+    private void applyUpdates(List<DepositIngestTask> updates) {
+        if (updates.size() < 2 || !isPublicationAllowed(updates.get(0))) {
+            updates.forEach(DepositIngestTask::process);
+            updates.clear();
+            return;
+        }
+
+        var checked = new ArrayList<DepositIngestTask>();
+        for (int i = 0; i < updates.size(); i++) {
+            var task = updates.get(i);
+            try {
+                task.checkDeposit();
+                checked.add(task);
+            }
+            catch (Throwable e) {
+                // The deposits before this one would have been published before it failed
+                applyLast(checked);
+                task.finishWithError(e);
+                // The deposits after the failed one are processed as they would have been without coalescing; for instance, they fail if the target is now blocked
+                updates.subList(i + 1, updates.size()).forEach(DepositIngestTask::process);
+                updates.clear();
+                return;
+            }
+        }
+
+        applyLast(checked);
+        updates.clear();
+    }
+
+    private void applyLast(List<DepositIngestTask> checked) {
+        if (checked.isEmpty()) {
+            return;
+        }
+
+        var last = checked.get(checked.size() - 1);
+        var superseded = checked.subList(0, checked.size() - 1);
+        log.info("Applying deposit {} for target {} as one version; it supersedes {} earlier deposit(s)", last.getDepositLocation().getDepositId(), last.getTarget(), superseded.size());
+
+        try {
+            var published = last.createOrUpdateDataset(true);
+            last.finishSuccessfully(published);
+            superseded.forEach(task -> task.finishSuperseded(last, published));
+        }
+        catch (Throwable e) {
+            last.finishWithError(e);
+            for (var task : superseded) {
+                task.finishWithError(new FailedDepositException(task.getDeposit(), String.format(
+                    "Deposit was combined with later deposit %s, which failed: %s", last.getDepositLocation().getDepositId(), e.getMessage())));
+            }
+        }
+    }
+
+    private boolean isPublicationAllowed(DepositIngestTask task) {
+        try {
+            return task.isDatasetPublicationAllowed();
+        }
+        catch (FailedDepositException e) {
+            log.warn("Could not determine whether deposit {} can be published; not coalescing", task.getDepositLocation().getDepositId(), e);
+            return false;
+        }
+    }
+}
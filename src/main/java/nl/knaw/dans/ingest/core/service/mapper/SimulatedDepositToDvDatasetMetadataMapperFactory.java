@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service.mapper;
+
+import nl.knaw.dans.ingest.core.simulation.Simulation;
+import nl.knaw.dans.ingest.core.simulation.Simulation.Operation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates mappers for a dry run. The active metadata blocks are configured, instead of fetched from Dataverse.
+ */
+public class SimulatedDepositToDvDatasetMetadataMapperFactory extends DepositToDvDatasetMetadataMapperFactory {
+    private final Simulation simulation;
+    private final Set<String> activeMetadataBlocks;
+
+    public SimulatedDepositToDvDatasetMetadataMapperFactory(
+        Map<String, String> iso1ToDataverseLanguage,
+        Map<String, String> iso2ToDataverseLanguage,
+        Map<String, String> abrReportCodeToTerm,
+        Map<String, String> abrAcquisitionMethodCodeToTerm,
+        Map<String, String> abrComplexCodeToTerm,
+        Map<String, String> abrArtifactCodeToTerm,
+        Map<String, String> abrPeriodCodeToTerm,
+        List<String> spatialCoverageCountryTerms,
+        Map<String, String> dataSuppliers,
+        List<String> skipFields,
+        Simulation simulation,
+        List<String> activeMetadataBlocks) {
+        super(iso1ToDataverseLanguage, iso2ToDataverseLanguage, abrReportCodeToTerm, abrAcquisitionMethodCodeToTerm, abrComplexCodeToTerm, abrArtifactCodeToTerm,
+            abrPeriodCodeToTerm, spatialCoverageCountryTerms, dataSuppliers, skipFields, null);
+        this.simulation = simulation;
+        this.activeMetadataBlocks = Set.copyOf(activeMetadataBlocks);
+    }
+
+    @Override
+    Set<String> getActiveMetadataBlocks() {
+        simulation.call(Operation.LIST_METADATA_BLOCKS);
+        return activeMetadataBlocks;
+    }
+}
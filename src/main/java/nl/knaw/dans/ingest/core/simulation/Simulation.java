@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.simulation;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import nl.knaw.dans.ingest.api.SimulationReport;
+import nl.knaw.dans.ingest.config.LatencyConfig;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the time spent in a dry run, in which the deposits are processed against a stand-in for Dataverse and the DANS bag validator. The stand-ins call
+ * {@link #call(Operation)} for every request they simulate, which waits for a latency sampled from the configured distribution. The tasks time their stages
+ * with {@link #time(Stage, TimedCall)}. The timings are registered as metrics and summarized in a {@link SimulationReport}.
+ */
+public class Simulation {
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    public enum Operation {
+        VALIDATE_BAG,
+        LIST_METADATA_BLOCKS,
+        GET_LICENSES,
+        GET_USER,
+        SEARCH_DATASETS,
+        GET_ROLE_ASSIGNMENTS,
+        GET_DATASET_STATE,
+        GET_LOCKS,
+        CREATE_DATASET,
+        UPDATE_METADATA,
+        ADD_FILE,
+        UPDATE_FILE_METADATA,
+        ASSIGN_ROLE,
+        SET_EMBARGO,
+        PUBLISH,
+        SUBMIT_FOR_REVIEW,
+        GET_URN
+    }
+
+    public enum Stage {
+        READ_DEPOSIT,
+        VALIDATE,
+        MAP_METADATA,
+        CHECK,
+        EDIT_DATASET
+    }
+
+    private final Map<Operation, LatencyConfig> latencies;
+    private final Map<Operation, Timing> operationTimings;
+    private final Map<Stage, Timing> stageTimings;
+    private final AtomicLong firstStart = new AtomicLong(NOT_STARTED);
+    private final AtomicLong lastFinish = new AtomicLong(NOT_STARTED);
+    private final LongAdder processedDeposits = new LongAdder();
+
+    public Simulation(Map<Operation, LatencyConfig> latencies, MetricRegistry metricRegistry) {
+        this.latencies = latencies;
+        this.operationTimings = Arrays.stream(Operation.values())
+            .collect(Collectors.toMap(o -> o, o -> new Timing(metricRegistry.timer(MetricRegistry.name(Simulation.class, "operation", o.name())))));
+        this.stageTimings = Arrays.stream(Stage.values())
+            .collect(Collectors.toMap(s -> s, s -> new Timing(metricRegistry.timer(MetricRegistry.name(Simulation.class, "stage", s.name())))));
+    }
+
+    /**
+     * Simulates a request to Dataverse or the validator by waiting for a sampled latency.
+     *
+     * @param operation the operation that is simulated
+     */
+    public void call(Operation operation) {
+        var latency = sampleLatency(operation);
+        var start = System.nanoTime();
+        try {
+            TimeUnit.NANOSECONDS.sleep(latency);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        operationTimings.get(operation).update(System.nanoTime() - start);
+    }
+
+    long sampleLatency(Operation operation) {
+        var latency = latencies.get(operation);
+        if (latency == null) {
+            return 0;
+        }
+        var median = latency.getMedian().toNanoseconds();
+        if (latency.getSpread() == 0) {
+            return median;
+        }
+        return Math.round(median * Math.exp(latency.getSpread() * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    public <T, E extends Throwable> T time(Stage stage, TimedCall<T, E> call) throws E {
+        var start = System.nanoTime();
+        try {
+            return call.call();
+        }
+        finally {
+            stageTimings.get(stage).update(System.nanoTime() - start);
+        }
+    }
+
+    public void depositStarted() {
+        firstStart.compareAndSet(NOT_STARTED, System.nanoTime());
+    }
+
+    public void depositFinished() {
+        processedDeposits.increment();
+        lastFinish.set(System.nanoTime());
+    }
+
+    public SimulationReport getReport() {
+        var processed = processedDeposits.sum();
+        var start = firstStart.get();
+        var finish = lastFinish.get();
+        var elapsedSeconds = start == NOT_STARTED || finish == NOT_STARTED ? 0.0 : (finish - start) / 1e9;
+        var depositsPerHour = elapsedSeconds == 0.0 ? 0.0 : processed * 3600 / elapsedSeconds;
+        return new SimulationReport(processed, elapsedSeconds, depositsPerHour, toReport(stageTimings), toReport(operationTimings));
+    }
+
+    private static <K extends Enum<K>> List<SimulationReport.Timing> toReport(Map<K, Timing> timings) {
+        var total = timings.values().stream().mapToLong(t -> t.totalNanos.sum()).sum();
+        return timings.entrySet().stream()
+            .filter(e -> e.getValue().timer.getCount() > 0)
+            .sorted(Map.Entry.comparingByKey())
+            .map(e -> e.getValue().toReport(e.getKey().name(), total))
+            .collect(Collectors.toList());
+    }
+
+    @FunctionalInterface
+    public interface TimedCall<T, E extends Throwable> {
+        T call() throws E;
+    }
+
+    private static class Timing {
+        private final Timer timer;
+        private final LongAdder totalNanos = new LongAdder();
+
+        private Timing(Timer timer) {
+            this.timer = timer;
+        }
+
+        private void update(long nanos) {
+            timer.update(nanos, TimeUnit.NANOSECONDS);
+            totalNanos.add(nanos);
+        }
+
+        private SimulationReport.Timing toReport(String name, long totalOfAll) {
+            var count = timer.getCount();
+            var total = totalNanos.sum();
+            var snapshot = timer.getSnapshot();
+            return new SimulationReport.Timing(
+                name,
+                count,
+                total / 1e9,
+                total / 1e6 / count,
+                snapshot.get95thPercentile() / 1e6,
+                totalOfAll == 0 ? 0.0 : 100.0 * total / totalOfAll);
+        }
+    }
+}
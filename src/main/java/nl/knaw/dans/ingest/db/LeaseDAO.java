@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.db;
+
+import io.dropwizard.hibernate.AbstractDAO;
+import nl.knaw.dans.ingest.core.Lease;
+import org.hibernate.SessionFactory;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public class LeaseDAO extends AbstractDAO<Lease> {
+    public LeaseDAO(SessionFactory sessionFactory) {
+        super(sessionFactory);
+    }
+
+    public Optional<Lease> getLease(String resource) {
+        return Optional.ofNullable(get(resource));
+    }
+
+    /**
+     * Acquires the lease on a resource for an owner. This succeeds if nobody holds the lease, if the owner already holds it (in which case it is extended) or
+     * if the lease of another owner has expired (in which case it is taken over). If two owners try to create the same lease at the same time, the insert of
+     * one of them fails with a constraint violation when the transaction is committed.
+     *
+     * @param resource the resource to lease
+     * @param owner    the node that wants the lease
+     * @param now      the current time
+     * @param expires  the time at which the lease expires if it is not renewed
+     * @return true if the owner holds the lease, false if another owner holds an unexpired lease
+     */
+    public boolean tryAcquire(String resource, String owner, OffsetDateTime now, OffsetDateTime expires) {
+        var updated = currentSession()
+            .createQuery("update Lease l set l.owner = :owner, l.expires = :expires, "
+                + "l.acquired = case when l.owner = :owner then l.acquired else :now end "
+                + "where l.resource = :resource and (l.owner = :owner or l.expires < :now)")
+            .setParameter("owner", owner)
+            .setParameter("expires", expires)
+            .setParameter("now", now)
+            .setParameter("resource", resource)
+            .executeUpdate();
+
+        if (updated > 0) {
+            return true;
+        }
+
+        var exists = currentSession()
+            .createQuery("select count(l) from Lease l where l.resource = :resource", Long.class)
+            .setParameter("resource", resource)
+            .getSingleResult() > 0;
+        if (exists) {
+            return false;
+        }
+
+        persist(new Lease(resource, owner, now, expires));
+        currentSession().flush();
+        return true;
+    }
+
+    /**
+     * Extends all leases held by an owner.
+     *
+     * @param owner   the node holding the leases
+     * @param expires the new expiration time
+     * @return the number of leases that were extended
+     */
+    public int renewAll(String owner, OffsetDateTime expires) {
+        return currentSession()
+            .createQuery("update Lease l set l.expires = :expires where l.owner = :owner")
+            .setParameter("expires", expires)
+            .setParameter("owner", owner)
+            .executeUpdate();
+    }
+
+    /**
+     * Releases a lease, if it is still held by the owner.
+     *
+     * @param resource the leased resource
+     * @param owner    the node holding the lease
+     * @return true if the lease was released, false if the owner did not hold it (anymore)
+     */
+    public boolean release(String resource, String owner) {
+        return currentSession()
+            .createQuery("delete from Lease l where l.resource = :resource and l.owner = :owner")
+            .setParameter("resource", resource)
+            .setParameter("owner", owner)
+            .executeUpdate() > 0;
+    }
+
+    public int releaseAll(String owner) {
+        return currentSession()
+            .createQuery("delete from Lease l where l.owner = :owner")
+            .setParameter("owner", owner)
+            .executeUpdate();
+    }
+
+    /**
+     * Removes a lease if it has expired, regardless of the owner.
+     *
+     * @param resource the leased resource
+     * @param now      the current time
+     * @return true if the lease was removed
+     */
+    public boolean deleteIfExpired(String resource, OffsetDateTime now) {
+        return currentSession()
+            .createQuery("delete from Lease l where l.resource = :resource and l.expires < :now")
+            .setParameter("resource", resource)
+            .setParameter("now", now)
+            .executeUpdate() > 0;
+    }
+
+    public List<Lease> getExpired(String resourcePrefix, OffsetDateTime now) {
+        var session = currentSession();
+        var cb = session.getCriteriaBuilder();
+        var crit = this.criteriaQuery();
+        var r = crit.from(Lease.class);
+
+        crit.select(r)
+            .where(cb.and(
+                cb.like(r.get("resource"), resourcePrefix + "%"),
+                cb.lessThan(r.get("expires"), now)))
+            .orderBy(cb.asc(r.get("acquired")));
+
+        return list(crit);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.db;
+
+import io.dropwizard.hibernate.AbstractDAO;
+import nl.knaw.dans.ingest.core.QueuedDeposit;
+import org.hibernate.SessionFactory;
+
+import java.util.List;
+import java.util.Optional;
+
+public class QueuedDepositDAO extends AbstractDAO<QueuedDeposit> {
+    public QueuedDepositDAO(SessionFactory sessionFactory) {
+        super(sessionFactory);
+    }
+
+    public QueuedDeposit save(QueuedDeposit queuedDeposit) {
+        return persist(queuedDeposit);
+    }
+
+    public Optional<QueuedDeposit> getQueuedDeposit(String depositId) {
+        return Optional.ofNullable(get(depositId));
+    }
+
+    /**
+     * Removes a deposit from the queue.
+     *
+     * @param depositId the id of the deposit
+     * @return true if the deposit was in the queue
+     */
+    public boolean delete(String depositId) {
+        return currentSession()
+            .createQuery("delete from QueuedDeposit d where d.depositId = :depositId")
+            .setParameter("depositId", depositId)
+            .executeUpdate() > 0;
+    }
+
+    /**
+     * Returns the deposits of an area that have not finished processing, in the order in which they must be processed.
+     *
+     * @param area the name of the ingest area
+     * @return the unfinished deposits, ordered by the creation timestamp of the bag and then by the time they were enqueued
+     */
+    public List<QueuedDeposit> getUnfinished(String area) {
+        var session = currentSession();
+        var cb = session.getCriteriaBuilder();
+        var crit = this.criteriaQuery();
+        var r = crit.from(QueuedDeposit.class);
+
+        crit.select(r)
+            .where(cb.equal(r.get("area"), area))
+            .orderBy(cb.asc(r.get("created")), cb.asc(r.get("enqueuedTimestamp")));
+
+        return list(crit);
+    }
+
+    /**
+     * Returns the deposits for a target, of all areas.
+     *
+     * @param target the target
+     * @return the deposits, ordered by the creation timestamp of the bag and then by the time they were enqueued
+     */
+    public List<QueuedDeposit> getByTarget(String target) {
+        var session = currentSession();
+        var cb = session.getCriteriaBuilder();
+        var crit = this.criteriaQuery();
+        var r = crit.from(QueuedDeposit.class);
+
+        crit.select(r)
+            .where(cb.equal(r.get("target"), target))
+            .orderBy(cb.asc(r.get("created")), cb.asc(r.get("enqueuedTimestamp")));
+
+        return list(crit);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.health;
+
+import com.codahale.metrics.health.HealthCheck;
+import nl.knaw.dans.ingest.core.sequencing.AdmissionController;
+
+import java.time.Duration;
+import java.util.ArrayList;
+
+/**
+ * Reports the number of tasks in flight per ingest area. Being paused is the normal response to a large batch, as long as the tasks of the area keep
+ * finishing. If a paused area has had no task finished for longer than the configured time, the workers are stuck, so the service is then reported as
+ * unhealthy.
+ */
+public class AdmissionHealthCheck extends HealthCheck {
+    private final AdmissionController admissionController;
+    private final Duration maxPausedTime;
+
+    public AdmissionHealthCheck(AdmissionController admissionController, Duration maxPausedTime) {
+        this.admissionController = admissionController;
+        this.maxPausedTime = maxPausedTime;
+    }
+
+    @Override
+    protected Result check() {
+        var builder = Result.builder();
+        var stalledAreas = new ArrayList<String>();
+
+        for (var entry : admissionController.getInFlightPerArea().entrySet()) {
+            var area = entry.getKey();
+            builder.withDetail(area + ".inFlight", entry.getValue());
+
+            var pausedTime = admissionController.getPausedTime(area);
+            if (pausedTime.isPresent()) {
+                builder.withDetail(area + ".pausedSeconds", pausedTime.get().toSeconds());
+            }
+
+            var timeSinceLastRelease = admissionController.getTimeSinceLastRelease(area);
+            if (timeSinceLastRelease.isPresent()) {
+                builder.withDetail(area + ".secondsSinceLastFinished", timeSinceLastRelease.get().toSeconds());
+                if (timeSinceLastRelease.get().compareTo(maxPausedTime) > 0) {
+                    stalledAreas.add(area);
+                }
+            }
+        }
+
+        if (stalledAreas.isEmpty()) {
+            return builder.healthy().build();
+        }
+        return builder.unhealthy()
+            .withMessage("Enqueuing is paused in areas %s and no task has finished there for more than %s", stalledAreas, maxPausedTime)
+            .build();
+    }
+}
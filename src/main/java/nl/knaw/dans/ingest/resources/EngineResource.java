@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.resources;
+
+import nl.knaw.dans.ingest.api.EngineStatus;
+import nl.knaw.dans.ingest.api.InFlightDeposit;
+import nl.knaw.dans.ingest.core.sequencing.InFlightTask;
+import nl.knaw.dans.ingest.core.sequencing.TargetedTaskSequenceManager;
+import nl.knaw.dans.ingest.core.sequencing.WeightedFairScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Lets an administrator stop the service from starting new deposits, for example for a maintenance window of Dataverse, without stopping the service
+ * itself. Pausing only stops the dispatching of work: new deposits are still enqueued, and the queues of the targets stay as they are. Draining pauses and
+ * then waits for the deposits that are in flight to finish.
+ */
+@Path("/engine")
+@Produces(MediaType.APPLICATION_JSON)
+public class EngineResource {
+    private static final Logger log = LoggerFactory.getLogger(EngineResource.class);
+    static final String PAUSE_REASON = "paused by administrator";
+
+    private final WeightedFairScheduler scheduler;
+    private final TargetedTaskSequenceManager targetedTaskSequenceManager;
+    private final List<String> areas;
+
+    public EngineResource(WeightedFairScheduler scheduler, TargetedTaskSequenceManager targetedTaskSequenceManager, List<String> areas) {
+        this.scheduler = scheduler;
+        this.targetedTaskSequenceManager = targetedTaskSequenceManager;
+        this.areas = areas;
+    }
+
+    @GET
+    public EngineStatus getStatus() {
+        var inFlight = targetedTaskSequenceManager.getInFlightTasks().stream()
+            .map(EngineResource::toInFlightDeposit)
+            .collect(Collectors.toList());
+        var pauseReasons = scheduler.getPauseReasons();
+        return new EngineStatus(!pauseReasons.isEmpty(), new ArrayList<>(pauseReasons), new ArrayList<>(scheduler.getPausedAreas()), inFlight);
+    }
+
+    @POST
+    @Path("/:pause")
+    public EngineStatus pause(@QueryParam("area") String area) {
+        if (area == null) {
+            scheduler.pause(PAUSE_REASON);
+        }
+        else {
+            scheduler.pauseArea(checkArea(area));
+        }
+        return getStatus();
+    }
+
+    @POST
+    @Path("/:resume")
+    public EngineStatus resume(@QueryParam("area") String area) {
+        if (area == null) {
+            scheduler.resume(PAUSE_REASON);
+        }
+        else {
+            scheduler.resumeArea(checkArea(area));
+        }
+        return getStatus();
+    }
+
+    /**
+     * Pauses dispatching and waits for the deposits in flight to finish.
+     *
+     * @param area           the area to drain, or null for all areas
+     * @param timeoutSeconds the maximum number of seconds to wait
+     * @return 200 with the status if nothing is in flight anymore, 202 with the status if the timeout expired first; dispatching stays paused in both cases
+     */
+    @POST
+    @Path("/:drain")
+    public Response drain(@QueryParam("area") String area, @QueryParam("timeout") @DefaultValue("300") long timeoutSeconds) {
+        if (timeoutSeconds < 0) {
+            throw new BadRequestException("timeout must not be negative");
+        }
+        pause(area);
+        log.info("Draining {}; waiting at most {} seconds", area == null ? "all areas" : "area " + area, timeoutSeconds);
+        boolean idle;
+        try {
+            idle = scheduler.awaitIdle(area, Duration.ofSeconds(timeoutSeconds));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while draining");
+        }
+        return Response.status(idle ? Response.Status.OK : Response.Status.ACCEPTED).entity(getStatus()).build();
+    }
+
+    static InFlightDeposit toInFlightDeposit(InFlightTask task) {
+        return new InFlightDeposit(task.getArea(), task.getTask().getTarget(), task.getTask().getDepositPath().toString(), task.getTask().getStage(),
+            task.getThread(), task.getStarted().atOffset(ZoneOffset.UTC));
+    }
+
+    private String checkArea(String area) {
+        if (!areas.contains(area)) {
+            throw new BadRequestException(String.format("Unknown area '%s'; must be one of %s", area, areas));
+        }
+        return area;
+    }
+}
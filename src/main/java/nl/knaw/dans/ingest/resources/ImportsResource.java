@@ -48,14 +48,14 @@ public class ImportsResource {
         String batchName;
         try {
             var securePath = importArea.getSecurePath(start.getInputPath());
-            batchName = importArea.startImport(securePath, start.isBatch(), start.isContinue());
+            batchName = importArea.startImport(securePath, start.isBatch(), start.isContinue(), start.isPreflight());
         }
         catch (IllegalArgumentException e) {
             throw new BadRequestException(e.getMessage());
         }
         return Response.accepted(
                 new ResponseMessage(Response.Status.ACCEPTED.getStatusCode(),
-                    String.format("import request was received (batch = %s, continue = %s", batchName, start.isContinue())))
+                    String.format("import request was received (batch = %s, continue = %s, preflight = %s", batchName, start.isContinue(), start.isPreflight())))
             .build();
     }
 }
@@ -48,14 +48,14 @@ public class MigrationsResource {
         String taskName;
         try {
             var securePath = migrationArea.getSecurePath(start.getInputPath());
-            taskName = migrationArea.startImport(securePath, start.isBatch(), start.isContinue());
+            taskName = migrationArea.startImport(securePath, start.isBatch(), start.isContinue(), start.isPreflight());
         }
         catch (IllegalArgumentException e) {
             throw new BadRequestException(e.getMessage());
         }
         return Response.accepted(
                 new ResponseMessage(Response.Status.ACCEPTED.getStatusCode(),
-                    String.format("migration request was received (batch = %s, continue = %s", taskName, start.isContinue())))
+                    String.format("migration request was received (batch = %s, continue = %s, preflight = %s", taskName, start.isContinue(), start.isPreflight())))
             .build();
     }
 
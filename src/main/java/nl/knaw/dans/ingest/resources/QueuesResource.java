@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.resources;
+
+import nl.knaw.dans.ingest.api.QueuesReport;
+import nl.knaw.dans.ingest.core.sequencing.TargetedTaskSequenceManager;
+import nl.knaw.dans.ingest.core.sequencing.WeightedFairScheduler;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Collectors;
+
+/**
+ * Shows the state of the queues: the queue of every target that has deposits, the sequencers waiting for a worker slot per area, and the task executor.
+ * The report is put together without taking the locks of the scheduler or the sequence manager, so the numbers may be a few moments apart.
+ */
+@Path("/queues")
+@Produces(MediaType.APPLICATION_JSON)
+public class QueuesResource {
+
+    private final WeightedFairScheduler scheduler;
+    private final TargetedTaskSequenceManager targetedTaskSequenceManager;
+    private final Executor taskExecutor;
+
+    public QueuesResource(WeightedFairScheduler scheduler, TargetedTaskSequenceManager targetedTaskSequenceManager, Executor taskExecutor) {
+        this.scheduler = scheduler;
+        this.targetedTaskSequenceManager = targetedTaskSequenceManager;
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * @param limit the maximum number of targets to list, those with the longest waiting deposit first
+     * @return the report
+     */
+    @GET
+    public QueuesReport getQueues(@QueryParam("limit") @DefaultValue("100") int limit) {
+        if (limit < 0) {
+            throw new BadRequestException("limit must not be negative");
+        }
+        var now = Instant.now();
+        var snapshots = targetedTaskSequenceManager.getTargetQueueSnapshots();
+        var targets = snapshots.stream()
+            .limit(limit)
+            .map(s -> new QueuesReport.TargetQueue(s.getTarget(), s.getQueueLength(), ageInSeconds(s.getOldestWaitingSince(), now),
+                s.getRunning() == null ? null : EngineResource.toInFlightDeposit(s.getRunning())))
+            .collect(Collectors.toList());
+        var oldest = snapshots.isEmpty() ? null : ageInSeconds(snapshots.get(0).getOldestWaitingSince(), now);
+        return new QueuesReport(snapshots.size(), oldest, getExecutorStats(), getAreaQueues(), targets);
+    }
+
+    private List<QueuesReport.AreaQueue> getAreaQueues() {
+        return scheduler.getAreas().stream()
+            .map(area -> {
+                var timer = targetedTaskSequenceManager.getTimeInQueue(area);
+                var count = timer == null ? 0 : timer.getCount();
+                var snapshot = timer == null ? null : timer.getSnapshot();
+                return new QueuesReport.AreaQueue(area, scheduler.getQueueDepth(area), scheduler.getRunning(area), count,
+                    snapshot == null ? 0.0 : snapshot.getMean() / 1e6,
+                    snapshot == null ? 0.0 : snapshot.get95thPercentile() / 1e6,
+                    snapshot == null ? 0.0 : snapshot.getMax() / 1e6);
+            })
+            .collect(Collectors.toList());
+    }
+
+    private QueuesReport.ExecutorStats getExecutorStats() {
+        if (taskExecutor instanceof ThreadPoolExecutor) {
+            var pool = (ThreadPoolExecutor) taskExecutor;
+            return new QueuesReport.ExecutorStats(pool.getActiveCount(), pool.getPoolSize(), pool.getQueue().size());
+        }
+        return null;
+    }
+
+    private static Long ageInSeconds(Instant since, Instant now) {
+        return since == null ? null : Duration.between(since, now).toSeconds();
+    }
+}
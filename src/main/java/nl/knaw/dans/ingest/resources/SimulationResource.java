@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.resources;
+
+import nl.knaw.dans.ingest.api.SimulationReport;
+import nl.knaw.dans.ingest.core.simulation.Simulation;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+@Path("/simulation")
+@Produces(MediaType.APPLICATION_JSON)
+public class SimulationResource {
+
+    private final Simulation simulation;
+
+    public SimulationResource(Simulation simulation) {
+        this.simulation = simulation;
+    }
+
+    @GET
+    public SimulationReport getReport() {
+        return simulation.getReport();
+    }
+}
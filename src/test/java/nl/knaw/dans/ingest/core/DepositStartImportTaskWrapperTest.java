@@ -113,7 +113,10 @@ public class DepositStartImportTaskWrapperTest {
             blockedTargetService,
             depositorAuthorizationValidator,
             vaultMetadataKey,
-            false
+            false,
+            false,
+            1,
+            Runnable::run
         );
     }
 
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.dataverse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataverseCallRecorderTest {
+    private final DataverseCallRecorder recorder = new DataverseCallRecorder();
+    private final ExecutorService pool = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void start_should_record_a_call_made_on_a_propagating_pool_for_the_submitting_thread() throws Exception {
+        var poolThreadId = CompletableFuture.supplyAsync(() -> {
+            recorder.start("updateMetadata", "doi:1");
+            return Thread.currentThread().getId();
+        }, recorder.propagating(pool)).get();
+
+        assertThat(recorder.getLastCall(Thread.currentThread().getId()))
+            .hasValueSatisfying(call -> assertThat(call.getOperation()).isEqualTo("updateMetadata"));
+        assertThat(recorder.getLastCall(poolThreadId)).isEmpty();
+    }
+
+    @Test
+    public void start_should_record_a_call_made_on_a_plain_pool_for_the_pool_thread() throws Exception {
+        var poolThreadId = CompletableFuture.supplyAsync(() -> {
+            recorder.start("updateMetadata", "doi:1");
+            return Thread.currentThread().getId();
+        }, pool).get();
+
+        assertThat(recorder.getLastCall(poolThreadId)).isPresent();
+        assertThat(recorder.getLastCall(Thread.currentThread().getId())).isEmpty();
+    }
+
+    @Test
+    public void getLastCall_should_prefer_the_oldest_call_in_progress_over_a_later_finished_one() throws Exception {
+        var threadId = Thread.currentThread().getId();
+        recorder.start("awaitUnlock", "doi:1");
+        Thread.sleep(5);
+        recorder.start("deleteFile", "doi:1").finish();
+
+        assertThat(recorder.getLastCall(threadId))
+            .hasValueSatisfying(call -> assertThat(call.getOperation()).isEqualTo("awaitUnlock"));
+    }
+
+    @Test
+    public void getLastCall_should_return_the_last_call_if_none_is_in_progress() {
+        var threadId = Thread.currentThread().getId();
+        recorder.start("awaitUnlock", "doi:1").finish();
+        recorder.start("deleteFile", "doi:1").finish();
+
+        assertThat(recorder.getLastCall(threadId))
+            .hasValueSatisfying(call -> assertThat(call.getOperation()).isEqualTo("deleteFile"));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.dataverse;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FileListReaderTest {
+
+    @Test
+    public void read_should_return_path_id_and_checksum_of_each_file() throws Exception {
+        var envelope = "{\"status\": \"OK\", \"data\": ["
+            + "{\"label\": \"a.txt\", \"restricted\": false, \"version\": 1, \"dataFile\": {\"id\": 11, \"filename\": \"a.txt\", \"checksum\": {\"type\": \"SHA-1\", \"value\": \"abc\"}}},"
+            + "{\"label\": \"b.txt\", \"directoryLabel\": \"dir/sub\", \"dataFile\": {\"id\": 12, \"checksum\": {\"type\": \"SHA-1\", \"value\": \"def\"}}}"
+            + "]}";
+
+        var files = FileListReader.read(envelope);
+
+        assertThat(files).hasSize(2);
+        assertThat(files.get(0).getPath()).isEqualTo(Path.of("a.txt"));
+        assertThat(files.get(0).getId()).isEqualTo(11);
+        assertThat(files.get(0).getChecksumType()).isEqualTo("SHA-1");
+        assertThat(files.get(0).getChecksumValue()).isEqualTo("abc");
+        assertThat(files.get(1).getPath()).isEqualTo(Path.of("dir/sub/b.txt"));
+        assertThat(files.get(1).getId()).isEqualTo(12);
+        assertThat(files.get(1).getChecksumValue()).isEqualTo("def");
+    }
+
+    @Test
+    public void read_should_skip_unknown_nested_fields() throws Exception {
+        var envelope = "{\"status\": \"OK\", \"extra\": {\"data\": []}, \"data\": ["
+            + "{\"categories\": [\"Documentation\", {\"label\": \"x\"}], \"label\": \"a.txt\", \"dataFile\": {\"tabularTags\": [{\"id\": 99}], \"id\": 11,"
+            + " \"checksum\": {\"algorithm\": {\"label\": \"y\"}, \"type\": \"SHA-1\", \"value\": \"abc\"}, \"md5\": null}}"
+            + "]}";
+
+        var files = FileListReader.read(envelope);
+
+        assertThat(files).hasSize(1);
+        assertThat(files.get(0).getPath()).isEqualTo(Path.of("a.txt"));
+        assertThat(files.get(0).getId()).isEqualTo(11);
+        assertThat(files.get(0).getChecksumValue()).isEqualTo("abc");
+    }
+
+    @Test
+    public void read_should_return_null_id_for_file_without_data_file() throws Exception {
+        var files = FileListReader.read("{\"status\": \"OK\", \"data\": [{\"label\": \"a.txt\"}]}");
+
+        assertThat(files).hasSize(1);
+        assertThat(files.get(0).getId()).isNull();
+        assertThat(files.get(0).getChecksumType()).isNull();
+    }
+
+    @Test
+    public void read_should_throw_IOException_if_envelope_has_no_data() {
+        assertThatThrownBy(() -> FileListReader.read("{\"status\": \"ERROR\", \"message\": \"Not found\"}"))
+            .isInstanceOf(IOException.class);
+    }
+}
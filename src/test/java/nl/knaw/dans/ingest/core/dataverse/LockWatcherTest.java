@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.dataverse;
+
+import nl.knaw.dans.lib.dataverse.DatasetApi;
+import nl.knaw.dans.lib.dataverse.DataverseResponse;
+import nl.knaw.dans.lib.dataverse.model.Lock;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LockWatcherTest {
+    private static final long LATER = TimeUnit.SECONDS.toNanos(2);
+
+    private final ScheduledExecutorService scheduler = Mockito.mock(ScheduledExecutorService.class);
+
+    @SuppressWarnings("unchecked")
+    private static DataverseResponse<List<Lock>> locks(int numberOfLocks) throws IOException {
+        var response = (DataverseResponse<List<Lock>>) Mockito.mock(DataverseResponse.class);
+        when(response.getData()).thenReturn(numberOfLocks == 0 ? List.of() : List.of(new Lock()));
+        return response;
+    }
+
+    @Test
+    public void constructor_should_schedule_polling() {
+        new LockWatcher(scheduler, Duration.ofSeconds(1), 0.25);
+
+        verify(scheduler).scheduleWithFixedDelay(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void constructor_should_reject_non_positive_poll_interval() {
+        assertThatThrownBy(() -> new LockWatcher(scheduler, Duration.ZERO, 0.25))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void awaitUnlock_should_return_after_one_request_if_dataset_is_not_locked() throws Exception {
+        var api = Mockito.mock(DatasetApi.class);
+        var unlocked = locks(0);
+        when(api.getLocks()).thenReturn(unlocked);
+        var watcher = new LockWatcher(scheduler, Duration.ofSeconds(1), 0.25);
+
+        watcher.awaitUnlock("doi:1", api, Duration.ofSeconds(10));
+
+        verify(api, times(1)).getLocks();
+        assertThat(watcher.getNumberOfWatchedDatasets()).isZero();
+    }
+
+    @Test
+    public void poll_should_poll_a_newly_watched_dataset_immediately() throws Exception {
+        var api = Mockito.mock(DatasetApi.class);
+        var unlocked = locks(0);
+        when(api.getLocks()).thenReturn(unlocked);
+        var watcher = new LockWatcher(scheduler, Duration.ofSeconds(1), 0.25);
+        var future = watcher.watch("doi:1", api, Duration.ofSeconds(10));
+
+        watcher.poll(System.nanoTime());
+
+        verify(api, times(1)).getLocks();
+        assertThat(future).isCompleted();
+        assertThat(watcher.getNumberOfWatchedDatasets()).isZero();
+    }
+
+    @Test
+    public void poll_should_not_poll_datasets_again_before_the_poll_interval_has_passed() throws Exception {
+        var api = Mockito.mock(DatasetApi.class);
+        var locked = locks(1);
+        when(api.getLocks()).thenReturn(locked);
+        var watcher = new LockWatcher(scheduler, Duration.ofSeconds(1), 0.25);
+        var future = watcher.watch("doi:1", api, Duration.ofSeconds(10));
+        var now = System.nanoTime();
+
+        watcher.poll(now);
+        watcher.poll(now + TimeUnit.MILLISECONDS.toNanos(100));
+
+        verify(api, times(1)).getLocks();
+        assertThat(future).isNotDone();
+    }
+
+    @Test
+    public void poll_should_complete_all_waiters_for_a_dataset_with_one_request_when_its_locks_clear() throws Exception {
+        var api = Mockito.mock(DatasetApi.class);
+        var locked = locks(1);
+        var unlocked = locks(0);
+        when(api.getLocks()).thenReturn(locked, unlocked);
+        var watcher = new LockWatcher(scheduler, Duration.ofSeconds(1), 0.25);
+        var first = watcher.watch("doi:1", api, Duration.ofSeconds(10));
+        var second = watcher.watch("doi:1", api, Duration.ofSeconds(10));
+
+        watcher.poll(System.nanoTime() + LATER);
+        assertThat(first).isNotDone();
+        assertThat(second).isNotDone();
+
+        watcher.poll(System.nanoTime() + 2 * LATER);
+        assertThat(first).isCompleted();
+        assertThat(second).isCompleted();
+        verify(api, times(2)).getLocks();
+        assertThat(watcher.getNumberOfWatchedDatasets()).isZero();
+    }
+
+    @Test
+    public void poll_should_fail_waiters_that_are_still_locked_after_the_timeout() throws Exception {
+        var api = Mockito.mock(DatasetApi.class);
+        var locked = locks(1);
+        when(api.getLocks()).thenReturn(locked);
+        var watcher = new LockWatcher(scheduler, Duration.ofSeconds(1), 0.25);
+        var future = watcher.watch("doi:1", api, Duration.ofSeconds(1));
+
+        watcher.poll(System.nanoTime() + LATER);
+
+        assertThat(future).isCompletedExceptionally();
+        assertThatThrownBy(future::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(watcher.getNumberOfWatchedDatasets()).isZero();
+    }
+
+    @Test
+    public void poll_should_fail_waiters_if_the_locks_cannot_be_retrieved() throws Exception {
+        var api = Mockito.mock(DatasetApi.class);
+        when(api.getLocks()).thenThrow(new IOException("connection refused"));
+        var watcher = new LockWatcher(scheduler, Duration.ofSeconds(1), 0.25);
+        var future = watcher.watch("doi:1", api, Duration.ofSeconds(10));
+
+        watcher.poll(System.nanoTime() + LATER);
+
+        assertThatThrownBy(future::join).hasCauseInstanceOf(IOException.class);
+    }
+}
@@ -16,17 +16,22 @@
 package nl.knaw.dans.ingest.core.deposit;
 
 import gov.loc.repository.bagit.domain.Metadata;
+import nl.knaw.dans.ingest.core.domain.DepositLocation;
 import nl.knaw.dans.ingest.core.exception.InvalidDepositException;
 import nl.knaw.dans.ingest.core.exception.MissingTargetException;
 import nl.knaw.dans.ingest.core.io.BagDataManager;
 import org.apache.commons.configuration2.BaseConfiguration;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.OffsetDateTime;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class DepositLocationReaderImplTest {
 
@@ -125,4 +130,59 @@ class DepositLocationReaderImplTest {
 
         assertThrows(MissingTargetException.class, () -> reader.getTarget(config));
     }
-}
\ No newline at end of file
+
+    @Test
+    void readBagInfo_should_use_payload_oxum(@TempDir Path depositDir) throws Throwable {
+        var bagDir = Files.createDirectories(depositDir.resolve("bag"));
+        var bagDataManager = Mockito.mock(BagDataManager.class);
+        var metadata = new Metadata();
+        metadata.add("Payload-Oxum", "123456.78");
+        Mockito.doReturn(metadata).when(bagDataManager).readBagMetadata(bagDir);
+
+        var location = new DepositLocation(depositDir, "target", "id", OffsetDateTime.now());
+        new DepositLocationReaderImpl(bagDataManager).readBagInfo(location);
+
+        assertEquals(123456L, location.getPayloadSize());
+        assertEquals(78L, location.getNumberOfFiles());
+    }
+
+    @Test
+    void readBagInfo_should_use_manifest_if_payload_oxum_is_missing(@TempDir Path depositDir) throws Throwable {
+        var bagDir = Files.createDirectories(depositDir.resolve("bag"));
+        Files.createDirectories(bagDir.resolve("data/sub"));
+        Files.writeString(bagDir.resolve("data/a.txt"), "12345");
+        Files.writeString(bagDir.resolve("data/sub/b c.txt"), "123");
+        Files.writeString(bagDir.resolve("manifest-sha1.txt"), "aaa  data/a.txt\nbbb  data/sub/b c.txt\n");
+        var bagDataManager = Mockito.mock(BagDataManager.class);
+        Mockito.doReturn(new Metadata()).when(bagDataManager).readBagMetadata(bagDir);
+
+        var location = new DepositLocation(depositDir, "target", "id", OffsetDateTime.now());
+        new DepositLocationReaderImpl(bagDataManager).readBagInfo(location);
+
+        assertEquals(8L, location.getPayloadSize());
+        assertEquals(2L, location.getNumberOfFiles());
+    }
+
+    @Test
+    void readBagInfo_should_mark_deposit_with_is_version_of_as_update(@TempDir Path depositDir) throws Throwable {
+        var bagDir = Files.createDirectories(depositDir.resolve("bag"));
+        var bagDataManager = Mockito.mock(BagDataManager.class);
+        var metadata = new Metadata();
+        metadata.add("Is-Version-Of", "urn:uuid:4e97185d-b38c-4ed9-bdf6-64339acfb6e8");
+        Mockito.doReturn(metadata).when(bagDataManager).readBagMetadata(bagDir);
+
+        var location = new DepositLocation(depositDir, "target", "id", OffsetDateTime.now());
+        new DepositLocationReaderImpl(bagDataManager).readBagInfo(location);
+
+        assertTrue(location.isUpdate());
+    }
+
+    @Test
+    void readBagInfo_should_leave_size_unknown_if_deposit_cannot_be_read() {
+        var location = new DepositLocation(Path.of("/some/path/to/4e97185d-b38c-4ed9-bdf6-64339acfb6e8"), "target", "id", OffsetDateTime.now());
+        new DepositLocationReaderImpl(Mockito.mock(BagDataManager.class)).readBagInfo(location);
+
+        assertEquals(0L, location.getPayloadSize());
+        assertEquals(0L, location.getNumberOfFiles());
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.deposit;
+
+import java.util.Random;
+
+/**
+ * A distribution of sizes (numbers of files, numbers of bytes) from which the {@link SyntheticDepositGenerator} draws.
+ */
+@FunctionalInterface
+public interface SizeDistribution {
+
+    long sample(Random random);
+
+    static SizeDistribution fixed(long size) {
+        return random -> size;
+    }
+
+    /**
+     * @param min the smallest size (inclusive)
+     * @param max the largest size (inclusive)
+     */
+    static SizeDistribution uniform(long min, long max) {
+        return random -> min + (long) (random.nextDouble() * (max - min + 1));
+    }
+
+    /**
+     * A log-normal distribution, which is a fair model for file sizes: most are small, a few are orders of magnitude larger.
+     *
+     * @param median the median size
+     * @param spread the standard deviation of the logarithm of the size; 0 means that every sample is the median
+     */
+    static SizeDistribution logNormal(long median, double spread) {
+        return random -> Math.round(median * Math.exp(spread * random.nextGaussian()));
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.deposit;
+
+import lombok.Builder;
+import nl.knaw.dans.ingest.core.service.XmlNamespaces;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Writes synthetic deposits for load, scale and integration tests. Each deposit has a deposit.properties and a bag with SHA-1 payload and tag
+ * manifests, a dataset.xml, a files.xml and, optionally, an amd.xml. Several deposits for the same dataset form an update chain: they share the SWORD
+ * token and the later ones refer to the bag of the first one in Is-Version-Of. The output is deterministic for a given seed, except for the UUIDs.
+ *
+ * <pre>
+ * var deposits = SyntheticDepositGenerator.builder()
+ *     .numberOfFiles(SizeDistribution.uniform(1, 100))
+ *     .fileSize(SizeDistribution.logNormal(10_000, 2))
+ *     .versionsPerDataset(3)
+ *     .build()
+ *     .generate(inbox, 10);
+ * </pre>
+ *
+ * To fill an inbox from the command line:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=nl.knaw.dans.ingest.core.deposit.SyntheticDepositGenerator \
+ *     -Dexec.args="inbox-dir number-of-datasets [versions-per-dataset [median-number-of-files [median-file-size]]]"
+ * </pre>
+ */
+@Builder
+public class SyntheticDepositGenerator {
+    private static final OffsetDateTime FIRST_CREATED = OffsetDateTime.of(2023, 1, 1, 12, 0, 0, 0, ZoneOffset.ofHours(1));
+
+    @Builder.Default
+    private final long seed = 0;
+
+    /**
+     * The number of payload files per deposit.
+     */
+    @Builder.Default
+    private final SizeDistribution numberOfFiles = SizeDistribution.fixed(10);
+
+    /**
+     * The size of each payload file in bytes.
+     */
+    @Builder.Default
+    private final SizeDistribution fileSize = SizeDistribution.fixed(1024);
+
+    @Builder.Default
+    private final int filesPerDirectory = 1000;
+
+    /**
+     * The number of values of each repeatable metadata field in the DDM (descriptions, authors, subjects, etc.). 0 means that the DDM only contains
+     * the required fields.
+     */
+    @Builder.Default
+    private final int metadataValues = 1;
+
+    /**
+     * The number of deposits per dataset. The deposits after the first one are updates of the dataset.
+     */
+    @Builder.Default
+    private final int versionsPerDataset = 1;
+
+    @Builder.Default
+    private final boolean withAmd = false;
+
+    /**
+     * The algorithm of the payload manifest; sha1 or md5.
+     */
+    @Builder.Default
+    private final String manifestAlgorithm = "sha1";
+
+    @Builder.Default
+    private final String depositorUserId = "user001";
+
+    /**
+     * Writes the deposits for a number of datasets to a directory. The deposits of one dataset are created one minute apart, in the order of the
+     * returned list.
+     *
+     * @param inbox            the directory to write the deposits to
+     * @param numberOfDatasets the number of datasets
+     * @return the deposit directories
+     */
+    public List<Path> generate(Path inbox, int numberOfDatasets) throws IOException {
+        var random = new Random(seed);
+        var result = new ArrayList<Path>();
+        Files.createDirectories(inbox);
+
+        for (var dataset = 0; dataset < numberOfDatasets; ++dataset) {
+            var firstBagId = UUID.randomUUID();
+
+            for (var version = 0; version < versionsPerDataset; ++version) {
+                var bagId = version == 0 ? firstBagId : UUID.randomUUID();
+                var created = FIRST_CREATED.plusMinutes((long) dataset * versionsPerDataset + version);
+                var title = String.format("Synthetic dataset %d, version %d", dataset, version + 1);
+                result.add(writeDeposit(inbox.resolve(bagId.toString()), bagId, version == 0 ? null : firstBagId, "sword:" + firstBagId, created, title, random));
+            }
+        }
+        return result;
+    }
+
+    private Path writeDeposit(Path depositDir, UUID bagId, UUID isVersionOf, String swordToken, OffsetDateTime created, String title, Random random)
+        throws IOException {
+        var bagDir = depositDir.resolve("bag");
+        var metadataDir = bagDir.resolve("metadata");
+        Files.createDirectories(metadataDir);
+
+        var manifest = new TreeMap<String, String>();
+        var filesXml = new StringBuilder()
+            .append("<?xml version='1.0' encoding='UTF-8'?>\n")
+            .append("<files xmlns='").append(XmlNamespaces.NAMESPACE_FILES_XML).append("' xmlns:dcterms='").append(XmlNamespaces.NAMESPACE_DCTERMS).append("'>\n");
+        var n = Math.max(0, numberOfFiles.sample(random));
+        long payloadBytes = 0;
+
+        for (var i = 0; i < n; ++i) {
+            var path = String.format("data/dir-%03d/file-%06d.bin", i / filesPerDirectory, i);
+            var size = Math.max(0, fileSize.sample(random));
+            manifest.put(path, writeRandomFile(bagDir.resolve(path), size, random));
+            payloadBytes += size;
+            filesXml.append("    <file filepath='").append(path).append("'>\n")
+                .append("        <dcterms:format>application/octet-stream</dcterms:format>\n")
+                .append("    </file>\n");
+        }
+        filesXml.append("</files>\n");
+
+        writeString(bagDir.resolve("bagit.txt"), "BagIt-Version: 1.0\nTag-File-Character-Encoding: UTF-8\n");
+        writeString(bagDir.resolve("bag-info.txt"), ""
+            + "Created: " + created + "\n"
+            + "Bagging-Date: " + created.toLocalDate() + "\n"
+            + "Payload-Oxum: " + payloadBytes + "." + n + "\n"
+            + (isVersionOf != null ? "Is-Version-Of: urn:uuid:" + isVersionOf + "\n" : ""));
+        writeString(metadataDir.resolve("dataset.xml"), ddm(title));
+        writeString(metadataDir.resolve("files.xml"), filesXml.toString());
+        if (withAmd) {
+            writeString(metadataDir.resolve("amd.xml"), amd(created));
+        }
+        writeManifest(bagDir.resolve("manifest-" + manifestAlgorithm + ".txt"), manifest);
+        writeTagManifest(bagDir);
+
+        writeString(depositDir.resolve("deposit.properties"), ""
+            + "state.label = SUBMITTED\n"
+            + "state.description = Generated deposit\n"
+            + "creation.timestamp = " + created + "\n"
+            + "depositor.userId = " + depositorUserId + "\n"
+            + "dataverse.bag-id = urn:uuid:" + bagId + "\n"
+            + "dataverse.sword-token = " + swordToken + "\n");
+        return depositDir;
+    }
+
+    /**
+     * Returns a DDM document with the required fields and {@code metadataValues} values for a number of repeatable fields.
+     */
+    public String ddm(String title) {
+        var ddm = new StringBuilder()
+            .append("<?xml version='1.0' encoding='UTF-8'?>\n")
+            .append("<ddm:DDM xmlns:ddm='").append(XmlNamespaces.NAMESPACE_DDM).append("'\n")
+            .append("         xmlns:dc='").append(XmlNamespaces.NAMESPACE_DC).append("'\n")
+            .append("         xmlns:dct='").append(XmlNamespaces.NAMESPACE_DCTERMS).append("'\n")
+            .append("         xmlns:dcx-dai='").append(XmlNamespaces.NAMESPACE_DCX_DAI).append("'\n")
+            .append("         xmlns:id-type='").append(XmlNamespaces.NAMESPACE_ID_TYPE).append("'\n")
+            .append("         xmlns:xsi='").append(XmlNamespaces.NAMESPACE_XSI).append("'>\n")
+            .append("    <ddm:profile>\n")
+            .append("        <dc:title>").append(title).append("</dc:title>\n");
+
+        for (var i = 0; i < Math.max(1, metadataValues); ++i) {
+            ddm.append("        <dc:description>Description paragraph ").append(i).append("</dc:description>\n");
+        }
+        for (var i = 0; i < Math.max(1, metadataValues); ++i) {
+            ddm.append("        <dcx-dai:creatorDetails><dcx-dai:author>\n")
+                .append("            <dcx-dai:initials>A.</dcx-dai:initials><dcx-dai:surname>Author").append(i).append("</dcx-dai:surname>\n")
+                .append("            <dcx-dai:organization><dcx-dai:name xml:lang='en'>Organization ").append(i).append("</dcx-dai:name></dcx-dai:organization>\n")
+                .append("        </dcx-dai:author></dcx-dai:creatorDetails>\n");
+        }
+        ddm.append("        <ddm:created>2015-09-09</ddm:created>\n")
+            .append("        <ddm:available>2016-09-08</ddm:available>\n")
+            .append("        <ddm:audience>D24000</ddm:audience>\n")
+            .append("        <ddm:accessRights>OPEN_ACCESS</ddm:accessRights>\n")
+            .append("    </ddm:profile>\n")
+            .append("    <ddm:dcmiMetadata>\n")
+            .append("        <dct:rightsHolder>Rights Holder</dct:rightsHolder>\n")
+            .append("        <dct:license xsi:type='dct:URI'>http://creativecommons.org/publicdomain/zero/1.0</dct:license>\n");
+
+        for (var i = 0; i < metadataValues; ++i) {
+            ddm.append("        <dct:alternative>Alternative title ").append(i).append("</dct:alternative>\n")
+                .append("        <dc:subject>Subject ").append(i).append("</dc:subject>\n")
+                .append("        <dct:spatial>Place ").append(i).append("</dct:spatial>\n")
+                .append("        <dct:identifier xsi:type='id-type:ARCHIS-ZAAK-IDENTIFICATIE'>").append(i).append("</dct:identifier>\n")
+                .append("        <dc:contributor>Contributor ").append(i).append("</dc:contributor>\n")
+                .append("        <dct:isPartOf>Collection ").append(i).append("</dct:isPartOf>\n");
+        }
+        return ddm.append("    </ddm:dcmiMetadata>\n")
+            .append("</ddm:DDM>\n")
+            .toString();
+    }
+
+    private String amd(OffsetDateTime created) {
+        return ""
+            + "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<damd:administrative-md version='0.1' xmlns:damd='" + XmlNamespaces.NAMESPACE_DAMD + "'>\n"
+            + "    <datasetState>PUBLISHED</datasetState>\n"
+            + "    <previousState>SUBMITTED</previousState>\n"
+            + "    <lastStateChange>" + created + "</lastStateChange>\n"
+            + "    <depositorId>" + depositorUserId + "</depositorId>\n"
+            + "    <stateChangeDates>\n"
+            + "        <damd:stateChangeDate>\n"
+            + "            <fromState>SUBMITTED</fromState>\n"
+            + "            <toState>PUBLISHED</toState>\n"
+            + "            <changeDate>" + created + "</changeDate>\n"
+            + "        </damd:stateChangeDate>\n"
+            + "    </stateChangeDates>\n"
+            + "</damd:administrative-md>\n";
+    }
+
+    private String writeRandomFile(Path file, long size, Random random) throws IOException {
+        Files.createDirectories(file.getParent());
+        var digest = "md5".equals(manifestAlgorithm) ? DigestUtils.getMd5Digest() : DigestUtils.getSha1Digest();
+        var buffer = new byte[(int) Math.min(size, 64 * 1024)];
+
+        try (var out = Files.newOutputStream(file)) {
+            for (var remaining = size; remaining > 0; remaining -= buffer.length) {
+                var length = (int) Math.min(remaining, buffer.length);
+                random.nextBytes(buffer);
+                out.write(buffer, 0, length);
+                digest.update(buffer, 0, length);
+            }
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private static void writeManifest(Path manifestFile, TreeMap<String, String> pathToChecksum) throws IOException {
+        try (var writer = Files.newBufferedWriter(manifestFile, StandardCharsets.UTF_8)) {
+            for (var entry : pathToChecksum.entrySet()) {
+                writer.write(entry.getValue() + "  " + entry.getKey() + "\n");
+            }
+        }
+    }
+
+    private static void writeTagManifest(Path bagDir) throws IOException {
+        var pathToChecksum = new TreeMap<String, String>();
+
+        try (var files = Files.walk(bagDir)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                var relative = bagDir.relativize(file);
+                var isTagFile = Files.isRegularFile(file) && !relative.startsWith("data") && !relative.toString().startsWith("tagmanifest-");
+
+                if (isTagFile) {
+                    pathToChecksum.put(relative.toString().replace('\\', '/'), sha1(file));
+                }
+            }
+        }
+        writeManifest(bagDir.resolve("tagmanifest-sha1.txt"), pathToChecksum);
+    }
+
+    private static String sha1(Path file) throws IOException {
+        try (var in = Files.newInputStream(file)) {
+            MessageDigest digest = DigestUtils.getSha1Digest();
+            return Hex.encodeHexString(DigestUtils.digest(digest, in));
+        }
+    }
+
+    private static void writeString(Path path, String content) throws IOException {
+        Files.writeString(path, content, StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SyntheticDepositGenerator inbox-dir number-of-datasets [versions-per-dataset [median-number-of-files [median-file-size]]]");
+            System.exit(1);
+        }
+        var generator = SyntheticDepositGenerator.builder()
+            .versionsPerDataset(args.length > 2 ? Integer.parseInt(args[2]) : 1)
+            .numberOfFiles(args.length > 3 ? SizeDistribution.logNormal(Long.parseLong(args[3]), 1) : SizeDistribution.fixed(10))
+            .fileSize(args.length > 4 ? SizeDistribution.logNormal(Long.parseLong(args[4]), 2) : SizeDistribution.fixed(1024))
+            .build();
+        var deposits = generator.generate(Path.of(args[0]), Integer.parseInt(args[1]));
+        System.out.printf("Wrote %d deposits to %s%n", deposits.size(), args[0]);
+    }
+}
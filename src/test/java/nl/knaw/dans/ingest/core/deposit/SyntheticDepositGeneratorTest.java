@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.deposit;
+
+import gov.loc.repository.bagit.reader.BagReader;
+import gov.loc.repository.bagit.verify.BagVerifier;
+import nl.knaw.dans.ingest.core.io.BagDataManagerImpl;
+import nl.knaw.dans.ingest.core.io.FileServiceImpl;
+import nl.knaw.dans.ingest.core.service.ManifestHelperImpl;
+import nl.knaw.dans.ingest.core.service.XmlReaderImpl;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SyntheticDepositGeneratorTest {
+    private final Path testDir = new File("target/test/" + getClass().getSimpleName()).toPath();
+
+    private final FileServiceImpl fileService = new FileServiceImpl();
+    private final BagDataManagerImpl bagDataManager = new BagDataManagerImpl(new BagReader());
+    private final DepositReaderImpl depositReader = new DepositReaderImpl(new XmlReaderImpl(), new BagDirResolverImpl(fileService), fileService, bagDataManager,
+        new DepositFileListerImpl(), new ManifestHelperImpl());
+
+    @BeforeEach
+    void clear() {
+        FileUtils.deleteQuietly(testDir.toFile());
+    }
+
+    @Test
+    void generate_should_write_valid_bags_with_the_sampled_number_of_files() throws Throwable {
+        var deposits = SyntheticDepositGenerator.builder()
+            .numberOfFiles(SizeDistribution.uniform(1, 20))
+            .fileSize(SizeDistribution.logNormal(1000, 1))
+            .filesPerDirectory(5)
+            .withAmd(true)
+            .build()
+            .generate(testDir, 3);
+
+        assertThat(deposits).hasSize(3);
+        try (var verifier = new BagVerifier()) {
+            for (var depositDir : deposits) {
+                var deposit = depositReader.readDeposit(depositDir);
+                verifier.isValid(deposit.getBag(), false);
+
+                assertThat(deposit.getFiles()).isNotEmpty().hasSizeLessThanOrEqualTo(20);
+                assertThat(deposit.getFiles()).allSatisfy(file -> assertThat(file.getChecksum()).isNotNull());
+                assertThat(deposit.getDdm()).isNotNull();
+                assertThat(deposit.getAmd()).isNotNull();
+                assertThat(deposit.isUpdate()).isFalse();
+            }
+        }
+    }
+
+    @Test
+    void generate_should_write_update_chains_for_the_same_target() throws Throwable {
+        var deposits = SyntheticDepositGenerator.builder()
+            .versionsPerDataset(3)
+            .build()
+            .generate(testDir, 2);
+        var locationReader = new DepositLocationReaderImpl(bagDataManager);
+
+        assertThat(deposits).hasSize(6);
+        var first = locationReader.readDepositLocation(deposits.get(0));
+        for (var i = 1; i < 3; ++i) {
+            var location = locationReader.readDepositLocation(deposits.get(i));
+            var deposit = depositReader.readDeposit(deposits.get(i));
+
+            assertThat(location.getTarget()).isEqualTo(first.getTarget());
+            assertThat(location.getCreated()).isAfter(first.getCreated());
+            assertThat(deposit.isUpdate()).isTrue();
+            assertThat(deposit.getIsVersionOf()).isEqualTo("urn:uuid:" + first.getDepositId());
+        }
+        assertThat(locationReader.readDepositLocation(deposits.get(3)).getTarget()).isNotEqualTo(first.getTarget());
+    }
+
+    @Test
+    void generate_should_write_the_configured_number_of_metadata_values() throws Throwable {
+        var deposits = SyntheticDepositGenerator.builder()
+            .numberOfFiles(SizeDistribution.fixed(0))
+            .metadataValues(50)
+            .build()
+            .generate(testDir, 1);
+
+        var deposit = depositReader.readDeposit(deposits.get(0));
+
+        assertThat(deposit.getFiles()).isEmpty();
+        assertThat(deposit.getDdm().getElementsByTagNameNS("http://purl.org/dc/elements/1.1/", "subject").getLength()).isEqualTo(50);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AdmissionControllerTest {
+
+    private static CompletableFuture<Void> admitAsync(AdmissionController controller, String area, CountDownLatch started) {
+        return CompletableFuture.runAsync(() -> {
+            started.countDown();
+            try {
+                controller.admit(area);
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    public void admit_should_block_from_the_high_water_mark_until_the_low_water_mark() throws Exception {
+        var controller = new AdmissionController(3, 1, new MetricRegistry());
+        for (int i = 0; i < 3; i++) {
+            controller.admit("import");
+        }
+        assertThat(controller.getPausedTime("import")).isPresent();
+
+        var started = new CountDownLatch(1);
+        var admitted = admitAsync(controller, "import", started);
+        started.await();
+        Thread.sleep(100);
+        assertThat(admitted).isNotDone();
+
+        // 2 in flight: still above the low-water mark
+        controller.release("import");
+        Thread.sleep(100);
+        assertThat(admitted).isNotDone();
+
+        controller.onFinished("import", null);
+        admitted.get(5, TimeUnit.SECONDS);
+        assertThat(controller.getPausedTime("import")).isEmpty();
+        assertThat(controller.getInFlight("import")).isEqualTo(2);
+    }
+
+    @Test
+    public void admit_should_not_block_other_areas() throws Exception {
+        var controller = new AdmissionController(1, 0, new MetricRegistry());
+        controller.admit("import");
+
+        var started = new CountDownLatch(1);
+        admitAsync(controller, "auto-ingest", started).get(5, TimeUnit.SECONDS);
+
+        assertThat(controller.getInFlightPerArea()).containsEntry("import", 1).containsEntry("auto-ingest", 1);
+        assertThat(controller.getPausedTime("import")).isPresent();
+    }
+
+    @Test
+    public void getTimeSinceLastRelease_should_count_from_the_last_release_while_paused() throws Exception {
+        var controller = new AdmissionController(3, 0, null);
+        assertThat(controller.getTimeSinceLastRelease("import")).isEmpty();
+        for (int i = 0; i < 3; i++) {
+            controller.admit("import");
+        }
+        Thread.sleep(200);
+        assertThat(controller.getTimeSinceLastRelease("import")).hasValueSatisfying(d -> assertThat(d).isGreaterThanOrEqualTo(Duration.ofMillis(200)));
+
+        controller.release("import");
+
+        assertThat(controller.getPausedTime("import")).hasValueSatisfying(d -> assertThat(d).isGreaterThanOrEqualTo(Duration.ofMillis(200)));
+        assertThat(controller.getTimeSinceLastRelease("import")).hasValueSatisfying(d -> assertThat(d).isLessThan(Duration.ofMillis(200)));
+    }
+
+    @Test
+    public void release_should_ignore_a_release_without_admission() {
+        var controller = new AdmissionController(2, 1, null);
+
+        controller.release("import");
+
+        assertThat(controller.getInFlight("import")).isEqualTo(0);
+    }
+
+    @Test
+    public void constructor_should_reject_a_low_water_mark_that_is_not_below_the_high_water_mark() {
+        assertThatThrownBy(() -> new AdmissionController(10, 10, null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AdmissionController(0, 0, null)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.ingest.core.TaskEvent;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TargetedTaskSequenceManagerTest {
+
+    private static class TestTask implements TargetedTask {
+        private final String target;
+        private final String name;
+        private final List<String> log;
+        private final AtomicInteger concurrentForTarget;
+        private final CountDownLatch done;
+
+        TestTask(String target, String name, List<String> log, AtomicInteger concurrentForTarget, CountDownLatch done) {
+            this.target = target;
+            this.name = name;
+            this.log = log;
+            this.concurrentForTarget = concurrentForTarget;
+            this.done = done;
+        }
+
+        @Override
+        public String getTarget() {
+            return target;
+        }
+
+        @Override
+        public Path getDepositPath() {
+            return Path.of(name);
+        }
+
+        @Override
+        public void writeEvent(TaskEvent.EventType eventType, TaskEvent.Result result, String message) {
+        }
+
+        @Override
+        public void run() {
+            if (concurrentForTarget.incrementAndGet() > 1) {
+                log.add("CONCURRENT " + name);
+            }
+            try {
+                Thread.sleep(5);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            log.add(name);
+            concurrentForTarget.decrementAndGet();
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void tasks_for_the_same_target_should_run_in_order_and_one_at_a_time() throws Exception {
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var manager = new TargetedTaskSequenceManager(new WeightedFairScheduler(executor, 4, new MetricRegistry()));
+            var log = new CopyOnWriteArrayList<String>();
+            var concurrent = new AtomicInteger();
+            var done = new CountDownLatch(6);
+
+            manager.scheduleTask("import", new TestTask("target", "first", log, concurrent, done));
+            manager.scheduleTask("auto-ingest", new TestTask("target", "second", log, concurrent, done));
+            manager.scheduleTask("import", new TestTask("target", "third", log, concurrent, done));
+            manager.scheduleTask("import", new TestTask("other1", "other1", new CopyOnWriteArrayList<>(), new AtomicInteger(), done));
+            manager.scheduleTask("import", new TestTask("other2", "other2", new CopyOnWriteArrayList<>(), new AtomicInteger(), done));
+            manager.scheduleTask("import", new TestTask("other3", "other3", new CopyOnWriteArrayList<>(), new AtomicInteger(), done));
+
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(log).containsExactly("first", "second", "third");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void a_failing_task_should_not_stop_the_tasks_after_it() throws Exception {
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var manager = new TargetedTaskSequenceManager(new WeightedFairScheduler(executor, 1, new MetricRegistry()));
+            var log = new CopyOnWriteArrayList<String>();
+            var done = new CountDownLatch(1);
+
+            manager.scheduleTask("import", new TestTask("target", "failing", log, new AtomicInteger(), new CountDownLatch(1)) {
+                @Override
+                public void run() {
+                    throw new IllegalStateException("failure");
+                }
+            });
+            manager.scheduleTask("import", new TestTask("target", "next", log, new AtomicInteger(), done));
+
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(log).containsExactly("next");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void scheduleTask_should_not_schedule_a_deposit_that_is_already_enqueued() throws Exception {
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var manager = new TargetedTaskSequenceManager(new WeightedFairScheduler(executor, 1, new MetricRegistry()));
+            var log = new CopyOnWriteArrayList<String>();
+            var started = new CountDownLatch(1);
+            var release = new CountDownLatch(1);
+            var done = new CountDownLatch(2);
+
+            manager.scheduleTask("import", new TestTask("target", "blocking", log, new AtomicInteger(), done) {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    super.run();
+                }
+            });
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(manager.scheduleTask("import", new TestTask("target", "deposit", log, new AtomicInteger(), done))).isTrue();
+            assertThat(manager.scheduleTask("import", new TestTask("target", "deposit", log, new AtomicInteger(), done))).isFalse();
+
+            release.countDown();
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(log).containsExactly("blocking", "deposit");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void listener_should_be_notified_of_enqueue_start_and_finish() throws Exception {
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var events = new CopyOnWriteArrayList<String>();
+            var finished = new CountDownLatch(1);
+            var listener = new TaskLifecycleListener() {
+
+                @Override
+                public void onEnqueued(String area, TargetedTask task) {
+                    events.add("enqueued " + area + " " + task.getDepositPath());
+                }
+
+                @Override
+                public void onStarted(String area, TargetedTask task) {
+                    events.add("started " + area + " " + task.getDepositPath());
+                }
+
+                @Override
+                public void onFinished(String area, TargetedTask task) {
+                    events.add("finished " + area + " " + task.getDepositPath());
+                    finished.countDown();
+                }
+            };
+            var manager = new TargetedTaskSequenceManager(new WeightedFairScheduler(executor, 1, new MetricRegistry()), listener);
+
+            manager.scheduleTask("auto-ingest", new TestTask("target", "deposit", new CopyOnWriteArrayList<>(), new AtomicInteger(), new CountDownLatch(1)));
+
+            assertThat(finished.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(events).containsExactly("enqueued auto-ingest deposit", "started auto-ingest deposit", "finished auto-ingest deposit");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class CoalescibleTestTask extends TestTask implements CoalescibleTask {
+        private final List<String> log;
+        private final String name;
+
+        CoalescibleTestTask(String target, String name, List<String> log, CountDownLatch done) {
+            super(target, name, log, new AtomicInteger(), done);
+            this.log = log;
+            this.name = name;
+        }
+
+        @Override
+        public boolean canCoalesceWith(TargetedTask other) {
+            return other instanceof CoalescibleTestTask;
+        }
+
+        @Override
+        public void runCoalesced(List<TargetedTask> laterTasks) {
+            var names = new StringBuilder(name);
+            laterTasks.forEach(t -> names.append("+").append(t.getDepositPath()));
+            log.add(names.toString());
+            for (int i = 0; i <= laterTasks.size(); i++) {
+                ((TestTask) (i == 0 ? this : laterTasks.get(i - 1))).done.countDown();
+            }
+        }
+    }
+
+    private void runWithBlockedTarget(TargetedTaskSequenceManager manager, List<String> log, Runnable scheduleMore) throws InterruptedException {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        manager.scheduleTask("auto-ingest", new TestTask("target", "blocking", log, new AtomicInteger(), new CountDownLatch(1)) {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.run();
+            }
+        });
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        scheduleMore.run();
+        release.countDown();
+    }
+
+    @Test
+    public void queued_coalescible_tasks_should_be_run_together_up_to_the_maximum() throws Exception {
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var manager = new TargetedTaskSequenceManager(new WeightedFairScheduler(executor, 1, new MetricRegistry()));
+            manager.setMaxCoalescedTasks(3);
+            var log = new CopyOnWriteArrayList<String>();
+            var done = new CountDownLatch(5);
+
+            runWithBlockedTarget(manager, log, () -> {
+                for (var name : List.of("u1", "u2", "u3", "u4")) {
+                    manager.scheduleTask("auto-ingest", new CoalescibleTestTask("target", name, log, done));
+                }
+                manager.scheduleTask("auto-ingest", new TestTask("target", "plain", log, new AtomicInteger(), done));
+            });
+
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(log).containsExactly("blocking", "u1+u2+u3", "u4", "plain");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void coalescible_tasks_should_be_run_one_by_one_if_coalescing_is_not_enabled() throws Exception {
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var manager = new TargetedTaskSequenceManager(new WeightedFairScheduler(executor, 1, new MetricRegistry()));
+            var log = new CopyOnWriteArrayList<String>();
+            var done = new CountDownLatch(2);
+
+            runWithBlockedTarget(manager, log, () -> {
+                manager.scheduleTask("auto-ingest", new CoalescibleTestTask("target", "u1", log, done));
+                manager.scheduleTask("auto-ingest", new CoalescibleTestTask("target", "u2", log, done));
+            });
+
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(log).containsExactly("blocking", "u1", "u2");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class PreparableTestTask extends TestTask implements PreparableTask {
+        private final List<String> prepared;
+        private final CountDownLatch preparedLatch;
+
+        PreparableTestTask(String name, List<String> log, List<String> prepared, CountDownLatch preparedLatch, CountDownLatch done) {
+            super("target", name, log, new AtomicInteger(), done);
+            this.prepared = prepared;
+            this.preparedLatch = preparedLatch;
+        }
+
+        @Override
+        public void prepare() {
+            prepared.add(getDepositPath().toString());
+            preparedLatch.countDown();
+        }
+    }
+
+    @Test
+    public void queued_tasks_should_be_prepared_ahead_up_to_the_maximum_and_run_in_order() throws Exception {
+        var executor = Executors.newSingleThreadExecutor();
+        var prepareExecutor = Executors.newFixedThreadPool(2);
+        try {
+            var manager = new TargetedTaskSequenceManager(new WeightedFairScheduler(executor, 1, new MetricRegistry()));
+            manager.setPrepareExecutor(prepareExecutor, 2);
+            var log = new CopyOnWriteArrayList<String>();
+            var prepared = new CopyOnWriteArrayList<String>();
+            var preparedLatch = new CountDownLatch(2);
+            var done = new CountDownLatch(3);
+
+            runWithBlockedTarget(manager, log, () -> {
+                for (var name : List.of("p1", "p2", "p3")) {
+                    manager.scheduleTask("import", new PreparableTestTask(name, log, prepared, preparedLatch, done));
+                }
+                try {
+                    // Prepared while the target is still blocked
+                    assertThat(preparedLatch.await(10, TimeUnit.SECONDS)).isTrue();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                assertThat(log).isEmpty();
+            });
+
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(log).containsExactly("blocking", "p1", "p2", "p3");
+            assertThat(prepared).containsExactlyInAnyOrder("p1", "p2");
+        }
+        finally {
+            executor.shutdownNow();
+            prepareExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void a_task_that_asks_to_be_retried_should_be_resubmitted_on_the_retry_executor_before_the_tasks_after_it() throws Exception {
+        var executor = Executors.newSingleThreadExecutor();
+        var retryExecutor = new ScheduledThreadPoolExecutor(1);
+        try {
+            var manager = new TargetedTaskSequenceManager(new WeightedFairScheduler(executor, 1, new MetricRegistry()));
+            manager.setRetryExecutor(retryExecutor);
+            var log = new CopyOnWriteArrayList<String>();
+            var done = new CountDownLatch(2);
+
+            class RetryingTask extends TestTask implements RetryableTask {
+                private int attempts = 0;
+
+                RetryingTask() {
+                    super("target", "retrying", log, new AtomicInteger(), done);
+                }
+
+                @Override
+                public void run() {
+                    attempts++;
+                    if (attempts > 1) {
+                        super.run();
+                    }
+                }
+
+                @Override
+                public Optional<Duration> getRetryDelay() {
+                    return attempts > 1 ? Optional.empty() : Optional.of(Duration.ofMillis(10));
+                }
+            }
+            manager.scheduleTask("import", new RetryingTask());
+            manager.scheduleTask("import", new TestTask("target", "next", log, new AtomicInteger(), done));
+
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(log).containsExactly("retrying", "next");
+            assertThat(retryExecutor.getTaskCount()).isEqualTo(1);
+        }
+        finally {
+            executor.shutdownNow();
+            retryExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void getInFlightTasks_should_list_the_tasks_that_are_being_processed() throws Exception {
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var scheduler = new WeightedFairScheduler(executor, 2, new MetricRegistry());
+            var manager = new TargetedTaskSequenceManager(scheduler);
+            var started = new CountDownLatch(1);
+            var release = new CountDownLatch(1);
+
+            manager.scheduleTask("auto-ingest", new TestTask("target", "running", new CopyOnWriteArrayList<>(), new AtomicInteger(), new CountDownLatch(1)) {
+
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            manager.scheduleTask("auto-ingest", new TestTask("target", "waiting", new CopyOnWriteArrayList<>(), new AtomicInteger(), new CountDownLatch(1)));
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // The second task is queued behind the first one for the same target, so it is not in flight
+            assertThat(manager.getInFlightTasks())
+                .extracting(t -> t.getArea() + " " + t.getTask().getDepositPath())
+                .containsExactly("auto-ingest running");
+
+            release.countDown();
+
+            assertThat(scheduler.awaitIdle(null, Duration.ofSeconds(10))).isTrue();
+            assertThat(manager.getInFlightTasks()).isEmpty();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void getTargetQueueSnapshots_should_show_the_running_and_waiting_tasks_per_target() throws Exception {
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var metrics = new MetricRegistry();
+            var scheduler = new WeightedFairScheduler(executor, 2, metrics);
+            var manager = new TargetedTaskSequenceManager(scheduler);
+            manager.setMetricRegistry(metrics);
+            var started = new CountDownLatch(1);
+            var release = new CountDownLatch(1);
+
+            manager.scheduleTask("import", new TestTask("target", "running", new CopyOnWriteArrayList<>(), new AtomicInteger(), new CountDownLatch(1)) {
+
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            manager.scheduleTask("import", new TestTask("target", "waiting1", new CopyOnWriteArrayList<>(), new AtomicInteger(), new CountDownLatch(1)));
+            manager.scheduleTask("import", new TestTask("target", "waiting2", new CopyOnWriteArrayList<>(), new AtomicInteger(), new CountDownLatch(1)));
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+            var snapshots = manager.getTargetQueueSnapshots();
+            assertThat(snapshots).hasSize(1);
+            var snapshot = snapshots.get(0);
+            assertThat(snapshot.getTarget()).isEqualTo("target");
+            assertThat(snapshot.getQueueLength()).isEqualTo(2);
+            assertThat(snapshot.getOldestWaitingSince()).isNotNull();
+            assertThat(snapshot.getRunning().getTask().getDepositPath()).isEqualTo(Path.of("running"));
+            assertThat(snapshot.getRunning().getThread()).isNotNull();
+            assertThat(manager.getOldestWaitingSince()).contains(snapshot.getOldestWaitingSince());
+            assertThat(metrics.getGauges()).containsKey("nl.knaw.dans.ingest.core.sequencing.TargetedTaskSequenceManager.active-targets");
+
+            release.countDown();
+
+            assertThat(scheduler.awaitIdle(null, Duration.ofSeconds(10))).isTrue();
+            assertThat(manager.getTargetQueueSnapshots()).isEmpty();
+            assertThat(manager.getOldestWaitingSince()).isEmpty();
+            assertThat(manager.getTimeInQueue("import").getCount()).isEqualTo(3);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class WeightedFairSchedulerTest {
+
+    /**
+     * Executor that only runs a runnable when the test asks it to, so that the number of occupied slots can be controlled.
+     */
+    private static class ManualExecutor implements Executor {
+        private final LinkedList<Runnable> pending = new LinkedList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            pending.add(command);
+        }
+
+        void runNext() {
+            pending.removeFirst().run();
+        }
+
+        int pendingCount() {
+            return pending.size();
+        }
+    }
+
+    private static Runnable record(List<String> log, String name) {
+        return () -> log.add(name);
+    }
+
+    @Test
+    public void submit_should_not_start_more_than_the_number_of_worker_slots() {
+        var executor = new ManualExecutor();
+        var scheduler = new WeightedFairScheduler(executor, 2, new MetricRegistry());
+        var log = new ArrayList<String>();
+
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit("import", record(log, "import-" + i));
+        }
+
+        assertThat(executor.pendingCount()).isEqualTo(2);
+        assertThat(scheduler.getRunning("import")).isEqualTo(2);
+        assertThat(scheduler.getQueueDepth("import")).isEqualTo(3);
+
+        executor.runNext();
+
+        assertThat(executor.pendingCount()).isEqualTo(2);
+        assertThat(scheduler.getQueueDepth("import")).isEqualTo(2);
+        assertThat(log).containsExactly("import-0");
+    }
+
+    @Test
+    public void reserved_slot_should_be_kept_free_for_its_own_area() {
+        var executor = new ManualExecutor();
+        var scheduler = new WeightedFairScheduler(executor, 2, new MetricRegistry());
+        scheduler.configureArea("auto-ingest", 1, 1);
+        var log = new ArrayList<String>();
+
+        for (int i = 0; i < 10; i++) {
+            scheduler.submit("migration", record(log, "migration-" + i));
+        }
+
+        // Only the unreserved slot is used by the migration area
+        assertThat(scheduler.getRunning("migration")).isEqualTo(1);
+        assertThat(scheduler.getQueueDepth("migration")).isEqualTo(9);
+
+        scheduler.submit("auto-ingest", record(log, "auto-ingest-0"));
+
+        assertThat(scheduler.getRunning("auto-ingest")).isEqualTo(1);
+        assertThat(scheduler.getQueueDepth("auto-ingest")).isEqualTo(0);
+        assertThat(executor.pendingCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void unreserved_slots_should_be_divided_according_to_weight() {
+        var executor = new ManualExecutor();
+        var scheduler = new WeightedFairScheduler(executor, 1, new MetricRegistry());
+        scheduler.configureArea("auto-ingest", 3, 0);
+        scheduler.configureArea("import", 1, 0);
+        var log = new ArrayList<String>();
+
+        // Occupy the only slot, so that the next submissions are all queued before the first selection is made
+        scheduler.submit("import", record(log, "blocker"));
+        for (int i = 0; i < 8; i++) {
+            scheduler.submit("import", record(log, "import"));
+            scheduler.submit("auto-ingest", record(log, "auto-ingest"));
+        }
+
+        for (int i = 0; i < 9; i++) {
+            executor.runNext();
+        }
+
+        var firstEight = log.subList(1, 9);
+        assertThat(firstEight.stream().filter("auto-ingest"::equals).count()).isEqualTo(6);
+        assertThat(firstEight.stream().filter("import"::equals).count()).isEqualTo(2);
+    }
+
+    @Test
+    public void configureArea_should_reject_reserving_all_slots() {
+        var scheduler = new WeightedFairScheduler(new ManualExecutor(), 2, new MetricRegistry());
+        scheduler.configureArea("auto-ingest", 1, 1);
+
+        assertThatThrownBy(() -> scheduler.configureArea("import", 1, 1))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void submit_should_register_queue_depth_and_wait_time_metrics() {
+        var metrics = new MetricRegistry();
+        var scheduler = new WeightedFairScheduler(new ManualExecutor(), 1, metrics);
+
+        scheduler.submit("import", () -> {});
+        scheduler.submit("import", () -> {});
+
+        assertThat(metrics.getGauges().get("nl.knaw.dans.ingest.core.sequencing.WeightedFairScheduler.import.queue-depth").getValue()).isEqualTo(1);
+        assertThat(metrics.getTimers().get("nl.knaw.dans.ingest.core.sequencing.WeightedFairScheduler.import.wait-time").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void large_lane_should_leave_slots_for_small_submissions() {
+        var executor = new ManualExecutor();
+        var scheduler = new WeightedFairScheduler(executor, 3, new MetricRegistry());
+        scheduler.configureLanes(1000, 100, 1, 3);
+        var log = new ArrayList<String>();
+
+        scheduler.submit("migration", record(log, "large-0"), 5000, 1);
+        scheduler.submit("migration", record(log, "large-1"), 1, 500);
+        scheduler.submit("migration", record(log, "small-0"), 10, 1);
+        scheduler.submit("migration", record(log, "small-1"), 0, 0);
+
+        assertThat(executor.pendingCount()).isEqualTo(3);
+        assertThat(scheduler.getRunningLarge()).isEqualTo(1);
+        assertThat(scheduler.getRunningSmall()).isEqualTo(2);
+        assertThat(scheduler.getQueueDepth("migration")).isEqualTo(1);
+
+        executor.runNext();
+        executor.runNext();
+        executor.runNext();
+
+        // The second large submission only starts when the first one has finished
+        assertThat(log).containsExactly("large-0", "small-0", "small-1");
+        executor.runNext();
+        assertThat(log).containsExactly("large-0", "small-0", "small-1", "large-1");
+    }
+
+    @Test
+    public void small_lane_should_not_use_more_than_its_slots() {
+        var executor = new ManualExecutor();
+        var scheduler = new WeightedFairScheduler(executor, 2, new MetricRegistry());
+        scheduler.configureLanes(1000, 100, 2, 1);
+
+        scheduler.submit("import", () -> {}, 1, 1);
+        scheduler.submit("import", () -> {}, 1, 1);
+
+        assertThat(executor.pendingCount()).isEqualTo(1);
+
+        scheduler.submit("import", () -> {}, 1000, 1);
+
+        assertThat(executor.pendingCount()).isEqualTo(2);
+        assertThat(scheduler.getQueueDepth("import")).isEqualTo(1);
+    }
+
+    @Test
+    public void large_submission_left_on_the_queue_by_a_rejecting_executor_should_start_when_the_small_lane_is_full() {
+        var executor = new ManualExecutor();
+        var rejectNext = new AtomicBoolean(false);
+        Executor rejectingExecutor = command -> {
+            if (rejectNext.getAndSet(false)) {
+                throw new RejectedExecutionException("rejected");
+            }
+            executor.execute(command);
+        };
+        var scheduler = new WeightedFairScheduler(rejectingExecutor, 2, new MetricRegistry());
+        scheduler.configureLanes(1000, 100, 1, 1);
+        var log = new ArrayList<String>();
+
+        scheduler.submit("import", record(log, "small-0"), 1, 1);
+        rejectNext.set(true);
+        scheduler.submit("import", record(log, "large-0"), 5000, 1);
+        assertThat(scheduler.getQueueDepth("import")).isEqualTo(1);
+
+        scheduler.submit("import", record(log, "small-1"), 1, 1);
+
+        assertThat(executor.pendingCount()).isEqualTo(2);
+        assertThat(scheduler.getRunningLarge()).isEqualTo(1);
+        assertThat(scheduler.getQueueDepth("import")).isEqualTo(1);
+        executor.runNext();
+        executor.runNext();
+        assertThat(log).containsExactly("small-0", "large-0");
+    }
+
+    @Test
+    public void configureLanes_should_reject_more_slots_than_worker_slots() {
+        var scheduler = new WeightedFairScheduler(new ManualExecutor(), 2, new MetricRegistry());
+
+        assertThatThrownBy(() -> scheduler.configureLanes(1000, 100, 3, 2))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> scheduler.configureLanes(1000, 100, 1, 0))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void pause_should_keep_submissions_queued_until_all_reasons_are_resumed() {
+        var executor = new ManualExecutor();
+        var scheduler = new WeightedFairScheduler(executor, 2, new MetricRegistry());
+        var log = new ArrayList<String>();
+        scheduler.submit("import", record(log, "import-0"));
+
+        scheduler.pause("Dataverse unavailable");
+        scheduler.pause("DansBagValidator unavailable");
+        scheduler.submit("import", record(log, "import-1"));
+        executor.runNext();
+
+        // The running work finished, but the freed slot is not used while paused
+        assertThat(executor.pendingCount()).isZero();
+        assertThat(scheduler.getQueueDepth("import")).isEqualTo(1);
+
+        scheduler.resume("Dataverse unavailable");
+        assertThat(executor.pendingCount()).isZero();
+        assertThat(scheduler.getPauseReasons()).containsExactly("DansBagValidator unavailable");
+
+        scheduler.resume("DansBagValidator unavailable");
+        assertThat(executor.pendingCount()).isEqualTo(1);
+        executor.runNext();
+        assertThat(log).containsExactly("import-0", "import-1");
+    }
+
+    @Test
+    public void pauseArea_should_keep_submissions_of_that_area_queued_and_let_other_areas_use_its_slots() {
+        var executor = new ManualExecutor();
+        var scheduler = new WeightedFairScheduler(executor, 2, new MetricRegistry());
+        scheduler.configureArea("auto-ingest", 1, 1);
+        var log = new ArrayList<String>();
+
+        scheduler.pauseArea("auto-ingest");
+        scheduler.submit("auto-ingest", record(log, "auto-ingest-0"));
+        scheduler.submit("import", record(log, "import-0"));
+        scheduler.submit("import", record(log, "import-1"));
+
+        // The reserved slot of the paused area is used by the import area
+        assertThat(scheduler.getRunning("import")).isEqualTo(2);
+        assertThat(scheduler.getQueueDepth("auto-ingest")).isEqualTo(1);
+        assertThat(scheduler.getPausedAreas()).containsExactly("auto-ingest");
+
+        executor.runNext();
+        executor.runNext();
+        assertThat(executor.pendingCount()).isZero();
+
+        scheduler.resumeArea("auto-ingest");
+        assertThat(scheduler.getPausedAreas()).isEmpty();
+        executor.runNext();
+        assertThat(log).containsExactly("import-0", "import-1", "auto-ingest-0");
+    }
+
+    @Test
+    public void awaitIdle_should_return_true_only_when_no_work_is_running_in_the_area() throws Exception {
+        var executor = new ManualExecutor();
+        var scheduler = new WeightedFairScheduler(executor, 2, new MetricRegistry());
+        scheduler.submit("import", () -> { });
+        scheduler.submit("migration", () -> { });
+
+        assertThat(scheduler.awaitIdle("import", Duration.ofMillis(10))).isFalse();
+
+        executor.runNext();
+
+        assertThat(scheduler.awaitIdle("import", Duration.ofMillis(10))).isTrue();
+        assertThat(scheduler.awaitIdle(null, Duration.ofMillis(10))).isFalse();
+    }
+
+    @Test
+    public void awaitIdle_should_wake_up_when_the_running_work_finishes() throws Exception {
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var started = new CountDownLatch(1);
+            var release = new CountDownLatch(1);
+            var scheduler = new WeightedFairScheduler(executor, 1, new MetricRegistry());
+            scheduler.submit("import", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            scheduler.pause("maintenance");
+            scheduler.submit("import", () -> { });
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+            release.countDown();
+
+            // The queued submission is not started while paused, so the scheduler becomes idle
+            assertThat(scheduler.awaitIdle(null, Duration.ofSeconds(10))).isTrue();
+            assertThat(scheduler.getQueueDepth("import")).isEqualTo(1);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void submit_should_not_hold_the_lock_of_the_scheduler_while_running_work_on_a_direct_executor() {
+        var holdsLock = new ArrayList<Boolean>();
+        var scheduler = new WeightedFairScheduler(Runnable::run, 1, new MetricRegistry());
+        scheduler.submit("import", () -> holdsLock.add(Thread.holdsLock(scheduler)));
+        scheduler.submit("import", () -> holdsLock.add(Thread.holdsLock(scheduler)));
+
+        assertThat(holdsLock).containsExactly(false, false);
+        assertThat(scheduler.getRunning("import")).isZero();
+    }
+}
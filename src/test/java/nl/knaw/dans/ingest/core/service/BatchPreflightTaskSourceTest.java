@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.domain.Deposit;
+import nl.knaw.dans.ingest.core.domain.DepositLocation;
+import nl.knaw.dans.ingest.core.exception.FailedDepositException;
+import nl.knaw.dans.ingest.core.exception.RejectedDepositException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.net.ConnectException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchPreflightTaskSourceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private DepositIngestTask mockTask(String depositId, String target, Throwable error) {
+        var task = Mockito.mock(DepositIngestTask.class);
+        Mockito.when(task.getDepositLocation()).thenReturn(new DepositLocation(Path.of(depositId), target, depositId, OffsetDateTime.now()));
+        Mockito.when(task.getTarget()).thenReturn(target);
+        Mockito.when(task.getPreparationError()).thenReturn(Optional.ofNullable(error));
+        return task;
+    }
+
+    private List<DepositIngestTask> runPreflight(List<DepositIngestTask> tasks) {
+        return runPreflight(tasks, 1000);
+    }
+
+    private List<DepositIngestTask> runPreflight(List<DepositIngestTask> tasks, int chunkSize) {
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var source = new BatchPreflightTaskSource(tasks::iterator, executor, tempDir.resolve(BatchPreflightTaskSource.REPORT_FILE), chunkSize);
+            var result = new ArrayList<DepositIngestTask>();
+            source.forEach(result::add);
+            return result;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void iterator_should_move_failing_deposits_to_the_outbox_and_enqueue_the_others() throws Exception {
+        var passed = mockTask("deposit-1", "target-1", null);
+        var failed = mockTask("deposit-2", "target-2", new FailedDepositException(new Deposit(), "cannot map"));
+        var rejected = mockTask("deposit-3", "target-3", new RejectedDepositException(new Deposit(), "invalid bag"));
+
+        var enqueued = runPreflight(List.of(passed, failed, rejected));
+
+        assertThat(enqueued).containsExactly(passed);
+        Mockito.verify(passed).prepare();
+        Mockito.verify(passed).discardPreparation();
+        Mockito.verify(passed, Mockito.never()).runWithoutRetry();
+        Mockito.verify(failed).runWithoutRetry();
+        Mockito.verify(rejected).runWithoutRetry();
+        // A retry would leave the deposit in the batch without it being processed again
+        Mockito.verify(failed, Mockito.never()).run();
+
+        var report = Files.readAllLines(tempDir.resolve(BatchPreflightTaskSource.REPORT_FILE));
+        assertThat(report).hasSize(4);
+        assertThat(report.get(0)).isEqualTo("depositId,target,result,action,message");
+        assertThat(report.get(1)).startsWith("deposit-1,target-1,OK,ENQUEUED");
+        assertThat(report.get(2)).startsWith("deposit-2,target-2,FAILED,MOVED_TO_OUTBOX");
+        assertThat(report.get(3)).startsWith("deposit-3,target-3,REJECTED,MOVED_TO_OUTBOX");
+    }
+
+    @Test
+    void iterator_should_enqueue_a_failing_deposit_after_a_passing_deposit_for_the_same_target() {
+        var first = mockTask("deposit-1", "target-1", null);
+        var second = mockTask("deposit-2", "target-1", new RejectedDepositException(new Deposit(), "invalid bag"));
+        var third = mockTask("deposit-3", "target-2", new RejectedDepositException(new Deposit(), "invalid bag"));
+        var fourth = mockTask("deposit-4", "target-2", null);
+
+        var enqueued = runPreflight(List.of(first, second, third, fourth));
+
+        // The second deposit must not block target-1 before the first one is processed
+        assertThat(enqueued).containsExactly(first, second, fourth);
+        Mockito.verify(second, Mockito.never()).runWithoutRetry();
+        Mockito.verify(second).discardPreparation();
+        Mockito.verify(third).runWithoutRetry();
+    }
+
+    @Test
+    void iterator_should_enqueue_a_deposit_that_failed_because_a_service_could_not_be_reached() throws Exception {
+        var unreachable = mockTask("deposit-1", "target-1", new ConnectException("Connection refused"));
+        var rejected = mockTask("deposit-2", "target-1", new RejectedDepositException(new Deposit(), "invalid bag"));
+
+        var enqueued = runPreflight(List.of(unreachable, rejected));
+
+        assertThat(enqueued).containsExactly(unreachable, rejected);
+        Mockito.verify(unreachable, Mockito.never()).runWithoutRetry();
+        Mockito.verify(unreachable).discardPreparation();
+        Mockito.verify(rejected, Mockito.never()).runWithoutRetry();
+
+        var report = Files.readAllLines(tempDir.resolve(BatchPreflightTaskSource.REPORT_FILE));
+        assertThat(report.get(1)).startsWith("deposit-1,target-1,FAILED,ENQUEUED");
+        assertThat(report.get(2)).startsWith("deposit-2,target-1,REJECTED,ENQUEUED");
+    }
+
+    @Test
+    void iterator_should_check_the_next_chunk_only_when_the_previous_one_has_been_enqueued() throws Exception {
+        var tasks = new ArrayList<DepositIngestTask>();
+        for (int i = 1; i <= 5; i++) {
+            tasks.add(mockTask("deposit-" + i, "target-" + i, i == 4 ? new RejectedDepositException(new Deposit(), "invalid bag") : null));
+        }
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var iterator = new BatchPreflightTaskSource(tasks::iterator, executor, tempDir.resolve(BatchPreflightTaskSource.REPORT_FILE), 2).iterator();
+
+            assertThat(iterator.next()).isSameAs(tasks.get(0));
+            Mockito.verify(tasks.get(1)).prepare();
+            Mockito.verify(tasks.get(2), Mockito.never()).prepare();
+
+            var rest = new ArrayList<DepositIngestTask>();
+            iterator.forEachRemaining(rest::add);
+            assertThat(rest).containsExactly(tasks.get(1), tasks.get(2), tasks.get(4));
+            Mockito.verify(tasks.get(3)).runWithoutRetry();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        var report = Files.readAllLines(tempDir.resolve(BatchPreflightTaskSource.REPORT_FILE));
+        assertThat(report).hasSize(6);
+        assertThat(report.get(4)).startsWith("deposit-4,target-4,REJECTED,MOVED_TO_OUTBOX");
+    }
+}
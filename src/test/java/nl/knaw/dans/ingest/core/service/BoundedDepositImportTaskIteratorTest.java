@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.domain.DepositLocation;
+import nl.knaw.dans.ingest.core.exception.InvalidDepositException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+class BoundedDepositImportTaskIteratorTest {
+
+    @TempDir
+    Path inbox;
+
+    private final Path outbox = Path.of("outbox");
+    private final EventWriter eventWriter = Mockito.mock(EventWriter.class);
+    private final DepositIngestTaskFactory taskFactory = Mockito.mock(DepositIngestTaskFactory.class);
+
+    private DepositLocation addDeposit(String name, String created) throws Throwable {
+        var dir = Files.createDirectory(inbox.resolve(name));
+        var location = new DepositLocation(dir, "target-" + name, name, OffsetDateTime.parse(created));
+        Mockito.when(taskFactory.readDepositLocation(dir, outbox)).thenReturn(location);
+        return location;
+    }
+
+    private DepositIngestTask mockTask(DepositLocation location) throws Throwable {
+        var task = Mockito.mock(DepositIngestTask.class);
+        Mockito.when(task.getDepositLocation()).thenReturn(location);
+        Mockito.when(taskFactory.createIngestTask(location, outbox, eventWriter)).thenReturn(task);
+        return task;
+    }
+
+    @Test
+    void next_should_create_the_tasks_one_by_one_in_order_of_creation() throws Throwable {
+        var second = mockTask(addDeposit("deposit-2", "2023-01-01T12:00:00+01:00"));
+        var first = mockTask(addDeposit("deposit-1", "2023-01-01T13:00:00+03:00"));
+        var third = mockTask(addDeposit("deposit-3", "2023-01-01T12:30:00+01:00"));
+
+        var iterator = new BoundedDepositImportTaskIterator(inbox, outbox, taskFactory, eventWriter);
+        Mockito.verify(taskFactory, Mockito.never()).createIngestTask(any(DepositLocation.class), any(), any());
+
+        assertThat(iterator.next()).isSameAs(first);
+        Mockito.verify(taskFactory, Mockito.times(1)).createIngestTask(any(DepositLocation.class), any(), any());
+        assertThat(iterator.next()).isSameAs(second);
+        assertThat(iterator.next()).isSameAs(third);
+        assertThat(iterator.hasNext()).isFalse();
+        assertThatThrownBy(iterator::next).isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void hasNext_should_skip_deposits_for_which_no_task_can_be_created() throws Throwable {
+        var first = mockTask(addDeposit("deposit-1", "2023-01-01T12:00:00+01:00"));
+        var broken = addDeposit("deposit-2", "2023-01-01T12:01:00+01:00");
+        Mockito.when(taskFactory.createIngestTask(eq(broken), any(), any())).thenThrow(new InvalidDepositException("cannot create task"));
+        var third = mockTask(addDeposit("deposit-3", "2023-01-01T12:02:00+01:00"));
+
+        var tasks = new ArrayList<DepositIngestTask>();
+        new BoundedDepositImportTaskIterator(inbox, outbox, taskFactory, eventWriter).forEachRemaining(tasks::add);
+
+        assertThat(tasks).containsExactly(first, third);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import com.codahale.metrics.health.HealthCheck;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CircuitBreakerTest {
+    private final ScheduledExecutorService probeExecutor = Mockito.mock(ScheduledExecutorService.class);
+    private final HealthCheck healthCheck = Mockito.mock(HealthCheck.class);
+    private final ArrayList<String> events = new ArrayList<>();
+
+    private CircuitBreaker createCircuitBreaker(Duration maxHoldTime) {
+        var circuitBreaker = new CircuitBreaker("Dataverse", healthCheck, 3, Duration.ofSeconds(30), maxHoldTime, probeExecutor);
+        circuitBreaker.addListener(new CircuitBreaker.Listener() {
+
+            @Override
+            public void opened(String name) {
+                events.add("opened " + name);
+            }
+
+            @Override
+            public void closed(String name) {
+                events.add("closed " + name);
+            }
+        });
+        return circuitBreaker;
+    }
+
+    @Test
+    public void recordFailure_should_open_after_the_threshold_of_consecutive_failures() {
+        var circuitBreaker = createCircuitBreaker(Duration.ofHours(1));
+
+        circuitBreaker.recordFailure(new ConnectException());
+        circuitBreaker.recordFailure(new ConnectException());
+        assertThat(circuitBreaker.isOpen()).isFalse();
+        circuitBreaker.recordFailure(new ConnectException());
+
+        assertThat(circuitBreaker.isOpen()).isTrue();
+        assertThat(events).containsExactly("opened Dataverse");
+        verify(probeExecutor).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void recordSuccess_should_reset_the_number_of_consecutive_failures() {
+        var circuitBreaker = createCircuitBreaker(Duration.ofHours(1));
+
+        circuitBreaker.recordFailure(new ConnectException());
+        circuitBreaker.recordFailure(new ConnectException());
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure(new ConnectException());
+        circuitBreaker.recordFailure(new ConnectException());
+
+        assertThat(circuitBreaker.isOpen()).isFalse();
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    public void probe_should_stay_open_and_probe_again_while_unhealthy() {
+        var circuitBreaker = createCircuitBreaker(Duration.ofHours(1));
+        when(healthCheck.execute()).thenReturn(HealthCheck.Result.unhealthy("down"));
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure(new ConnectException());
+        }
+
+        circuitBreaker.probe();
+
+        assertThat(circuitBreaker.isOpen()).isTrue();
+        verify(probeExecutor, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void probe_should_close_and_release_held_tasks_when_healthy() throws Exception {
+        var circuitBreaker = createCircuitBreaker(Duration.ofHours(1));
+        when(healthCheck.execute()).thenReturn(HealthCheck.Result.healthy());
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure(new ConnectException());
+        }
+        var held = new Thread(circuitBreaker::awaitClosed);
+        held.start();
+        held.join(100);
+        assertThat(held.isAlive()).isTrue();
+
+        circuitBreaker.probe();
+        held.join(5000);
+
+        assertThat(held.isAlive()).isFalse();
+        assertThat(circuitBreaker.isOpen()).isFalse();
+        assertThat(events).containsExactly("opened Dataverse", "closed Dataverse");
+    }
+
+    @Test
+    public void awaitClosed_should_return_after_the_max_hold_time() {
+        var circuitBreaker = createCircuitBreaker(Duration.ofMillis(50));
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure(new ConnectException());
+        }
+
+        circuitBreaker.awaitClosed();
+
+        assertThat(circuitBreaker.isOpen()).isTrue();
+        verify(healthCheck, never()).execute();
+    }
+
+    @Test
+    public void isConnectionFailure_should_look_at_the_causes() {
+        assertThat(CircuitBreaker.isConnectionFailure(new RuntimeException(new ConnectException("refused")))).isTrue();
+        assertThat(CircuitBreaker.isConnectionFailure(new IOException("not a connection failure"))).isFalse();
+        assertThat(CircuitBreaker.isConnectionFailure(new IllegalStateException())).isFalse();
+    }
+}
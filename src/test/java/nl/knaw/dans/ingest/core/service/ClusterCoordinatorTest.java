@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.hibernate.UnitOfWorkAwareProxyFactory;
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import nl.knaw.dans.ingest.core.AbstractIngestArea;
+import nl.knaw.dans.ingest.core.Lease;
+import nl.knaw.dans.ingest.core.QueuedDeposit;
+import nl.knaw.dans.ingest.core.TaskEvent;
+import nl.knaw.dans.ingest.core.sequencing.TargetedTask;
+import nl.knaw.dans.ingest.core.sequencing.TargetedTaskSequenceManager;
+import nl.knaw.dans.ingest.core.sequencing.TaskLifecycleListener;
+import nl.knaw.dans.ingest.core.sequencing.WeightedFairScheduler;
+import nl.knaw.dans.ingest.db.LeaseDAO;
+import nl.knaw.dans.ingest.db.QueuedDepositDAO;
+import org.hibernate.context.internal.ManagedSessionContext;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs several cluster nodes in one JVM against the same (in-memory) database.
+ */
+@ExtendWith(DropwizardExtensionsSupport.class)
+class ClusterCoordinatorTest {
+
+    // HSQLDB instead of the default H2, because H2 does not always detect concurrent inserts of the same primary key, which the nodes rely on
+    public DAOTestExtension database = DAOTestExtension
+        .newBuilder()
+        .setUrl("jdbc:hsqldb:mem:cluster-coordinator-test")
+        .setDriver(JDBCDriver.class)
+        .addEntityClass(Lease.class)
+        .addEntityClass(QueuedDeposit.class)
+        .build();
+
+    @TempDir
+    Path inbox;
+
+    private LeaseService leaseService;
+    private DepositQueueService depositQueueService;
+
+    @BeforeEach
+    void setUp() {
+        // Each node must use its own sessions, as in production, instead of the session that the extension binds to the test thread
+        ManagedSessionContext.unbind(database.getSessionFactory());
+        var proxyFactory = new UnitOfWorkAwareProxyFactory("test", database.getSessionFactory());
+        leaseService = proxyFactory.create(LeaseServiceImpl.class, LeaseDAO.class, new LeaseDAO(database.getSessionFactory()));
+        depositQueueService = proxyFactory.create(DepositQueueServiceImpl.class, QueuedDepositDAO.class, new QueuedDepositDAO(database.getSessionFactory()));
+    }
+
+    private ClusterCoordinator node(String nodeId, Duration leaseDuration) {
+        return new ClusterCoordinator(nodeId, leaseService, depositQueueService, leaseDuration, leaseDuration.dividedBy(4), Duration.ofMillis(20));
+    }
+
+    private class TestTask implements TargetedTask {
+        private final String target;
+        private final String depositId;
+        private final Runnable work;
+
+        TestTask(String target, String depositId, Runnable work) {
+            this.target = target;
+            this.depositId = depositId;
+            this.work = work;
+            try {
+                Files.createDirectories(getDepositPath());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public String getTarget() {
+            return target;
+        }
+
+        @Override
+        public Path getDepositPath() {
+            return inbox.resolve(depositId);
+        }
+
+        @Override
+        public void writeEvent(TaskEvent.EventType eventType, TaskEvent.Result result, String message) {
+        }
+
+        @Override
+        public void run() {
+            work.run();
+        }
+    }
+
+    @Test
+    void claimDeposit_should_fail_if_deposit_is_claimed_by_another_node() {
+        var node1 = node("node-1", Duration.ofMinutes(2));
+        var node2 = node("node-2", Duration.ofMinutes(2));
+        var task = new TestTask("target", "d1", () -> {});
+
+        assertThat(node1.claimDeposit(task)).isTrue();
+        assertThat(node2.claimDeposit(task)).isFalse();
+
+        node1.releaseDeposit(task);
+        assertThat(node2.claimDeposit(task)).isTrue();
+    }
+
+    @Test
+    void claimDeposit_should_fail_if_deposit_was_processed_by_another_node_in_the_meantime() throws Exception {
+        var node1 = node("node-1", Duration.ofMinutes(2));
+        var node2 = node("node-2", Duration.ofMinutes(2));
+        var task = new TestTask("target", "d1", () -> {});
+        assertThat(node1.claimDeposit(task)).isTrue();
+
+        // Node 1 moves the deposit to the outbox when it has processed it, and then releases it
+        Files.delete(task.getDepositPath());
+        node1.releaseDeposit(task);
+
+        assertThat(node2.claimDeposit(task)).isFalse();
+        assertThat(leaseService.getExpired(ClusterCoordinator.DEPOSIT_PREFIX)).isEmpty();
+    }
+
+    @Test
+    void acquireTarget_should_fail_while_the_oldest_deposit_for_the_target_is_held_by_another_node() {
+        var node1 = node("node-1", Duration.ofMinutes(2));
+        var node2 = node("node-2", Duration.ofMinutes(2));
+        var now = OffsetDateTime.now();
+        var create = new TestTask("target", "d1", () -> {});
+        var update = new TestTask("target", "d2", () -> {});
+        assertThat(node1.claimDeposit(create)).isTrue();
+        depositQueueService.recordEnqueued("import", "batch", "d1", "target", create.getDepositPath(), Path.of("/outbox"), now);
+        assertThat(node2.claimDeposit(update)).isTrue();
+        depositQueueService.recordEnqueued("import", "batch", "d2", "target", update.getDepositPath(), Path.of("/outbox"), now.plusMinutes(1));
+
+        assertThat(node2.acquireTarget("target")).isFalse();
+        assertThat(node1.acquireTarget("target")).isTrue();
+
+        depositQueueService.recordFinished("d1");
+        node1.releaseDeposit(create);
+        node1.releaseTarget("target");
+        assertThat(node2.acquireTarget("target")).isTrue();
+    }
+
+    @Test
+    void acquireTarget_should_fail_while_another_node_holds_the_target() {
+        var node1 = node("node-1", Duration.ofMinutes(2));
+        var node2 = node("node-2", Duration.ofMinutes(2));
+
+        assertThat(node1.acquireTarget("doi:10.5072/x")).isTrue();
+        assertThat(node2.acquireTarget("doi:10.5072/x")).isFalse();
+        assertThat(node2.acquireTarget("doi:10.5072/y")).isTrue();
+
+        node1.releaseTarget("doi:10.5072/x");
+        assertThat(node2.acquireTarget("doi:10.5072/x")).isTrue();
+    }
+
+    @Test
+    void heartbeat_should_keep_leases_from_expiring() throws Exception {
+        var node1 = node("node-1", Duration.ofMillis(400));
+        var node2 = node("node-2", Duration.ofMillis(400));
+        assertThat(node1.acquireTarget("target")).isTrue();
+
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(100);
+            node1.heartbeat();
+        }
+
+        assertThat(node2.acquireTarget("target")).isFalse();
+    }
+
+    @Test
+    void acquireTarget_should_take_over_target_when_lease_of_other_node_expired() throws Exception {
+        var node1 = node("node-1", Duration.ofMillis(100));
+        var node2 = node("node-2", Duration.ofMillis(100));
+        assertThat(node1.acquireTarget("target")).isTrue();
+
+        Thread.sleep(200);
+
+        assertThat(node2.acquireTarget("target")).isTrue();
+        assertThat(node1.acquireTarget("target")).isFalse();
+    }
+
+    @Test
+    void heartbeat_should_resume_unfinished_deposits_of_a_node_whose_leases_expired() throws Exception {
+        var node1 = node("node-1", Duration.ofMillis(100));
+        var node2 = node("node-2", Duration.ofMillis(100));
+        var area = Mockito.mock(AbstractIngestArea.class);
+        when(area.getName()).thenReturn("import");
+        node2.registerArea(area);
+
+        var now = OffsetDateTime.now();
+        depositQueueService.recordEnqueued("import", "batch", "d2", "target", Path.of("/inbox/d2"), Path.of("/outbox"), now.plusMinutes(1));
+        depositQueueService.recordEnqueued("import", "batch", "d1", "target", Path.of("/inbox/d1"), Path.of("/outbox"), now);
+        assertThat(node1.claimDeposit(new TestTask("target", "d2", () -> {}))).isTrue();
+        assertThat(node1.claimDeposit(new TestTask("target", "d1", () -> {}))).isTrue();
+
+        Thread.sleep(200);
+        node2.heartbeat();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<QueuedDeposit>> captor = ArgumentCaptor.forClass(List.class);
+        verify(area).resumeDeposits(captor.capture());
+        assertThat(captor.getValue()).extracting(QueuedDeposit::getDepositId).containsExactly("d1", "d2");
+        assertThat(node1.claimDeposit(new TestTask("target", "d1", () -> {}))).isFalse();
+    }
+
+    @Test
+    void heartbeat_should_not_resume_finished_deposits() throws Exception {
+        var node1 = node("node-1", Duration.ofMillis(100));
+        var node2 = node("node-2", Duration.ofMillis(100));
+        var area = Mockito.mock(AbstractIngestArea.class);
+        when(area.getName()).thenReturn("import");
+        node2.registerArea(area);
+
+        depositQueueService.recordEnqueued("import", "batch", "d1", "target", Path.of("/inbox/d1"), Path.of("/outbox"), OffsetDateTime.now());
+        depositQueueService.recordFinished("d1");
+        assertThat(node1.claimDeposit(new TestTask("target", "d1", () -> {}))).isTrue();
+
+        Thread.sleep(200);
+        node2.heartbeat();
+
+        verify(area, never()).resumeDeposits(any());
+        assertThat(leaseService.getExpired(ClusterCoordinator.DEPOSIT_PREFIX)).isEmpty();
+    }
+
+    @Test
+    void tasks_for_the_same_target_should_not_run_concurrently_on_different_nodes() throws Exception {
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var managers = List.of(
+                new TargetedTaskSequenceManager(new WeightedFairScheduler(executor, 2, new MetricRegistry()), TaskLifecycleListener.NONE, node("node-1", Duration.ofMinutes(2))),
+                new TargetedTaskSequenceManager(new WeightedFairScheduler(executor, 2, new MetricRegistry()), TaskLifecycleListener.NONE, node("node-2", Duration.ofMinutes(2))));
+            var concurrent = new AtomicInteger();
+            var log = new CopyOnWriteArrayList<String>();
+            var done = new CountDownLatch(6);
+
+            for (int i = 0; i < 6; i++) {
+                var name = "d" + i;
+                managers.get(i % 2).scheduleTask("import", new TestTask("target", name, () -> {
+                    if (concurrent.incrementAndGet() > 1) {
+                        log.add("CONCURRENT " + name);
+                    }
+                    try {
+                        Thread.sleep(20);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    log.add(name);
+                    concurrent.decrementAndGet();
+                    done.countDown();
+                }));
+            }
+
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(log).hasSize(6).allMatch(entry -> !entry.startsWith("CONCURRENT"));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void scheduleTask_should_not_schedule_deposit_claimed_by_another_node() {
+        var node1 = node("node-1", Duration.ofMinutes(2));
+        var node2 = node("node-2", Duration.ofMinutes(2));
+        var manager = new TargetedTaskSequenceManager(new WeightedFairScheduler(Runnable::run, 1, new MetricRegistry()), TaskLifecycleListener.NONE, node2);
+        var ran = new AtomicInteger();
+        var task = new TestTask("target", "d1", ran::incrementAndGet);
+        assertThat(node1.claimDeposit(task)).isTrue();
+
+        assertThat(manager.scheduleTask("import", task)).isFalse();
+        assertThat(ran.get()).isZero();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.service.CreationJournal.AddedFile;
+import nl.knaw.dans.ingest.core.service.CreationJournal.Step;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CreationJournalTest {
+
+    @TempDir
+    Path depositDir;
+
+    @Test
+    void open_should_return_empty_journal_if_no_file_exists() throws Exception {
+        var journal = CreationJournal.open(depositDir);
+
+        assertThat(journal.isPersistent()).isTrue();
+        assertThat(journal.getPersistentId()).isEmpty();
+        assertThat(journal.isCompleted(Step.METADATA_UPDATED)).isFalse();
+        assertThat(journal.getAddedFiles()).isEmpty();
+    }
+
+    @Test
+    void open_should_restore_progress_of_earlier_attempt() throws Exception {
+        var journal = CreationJournal.open(depositDir);
+        journal.datasetCreated("doi:10.5072/FK2/ABCDEF");
+        journal.stepCompleted(Step.METADATA_UPDATED);
+        journal.stepCompleted(Step.LICENSE_SET);
+        journal.fileAdded("a/b.txt", 12, "abc123");
+        journal.fileAdded("c.txt", 13, "def456");
+
+        var reopened = CreationJournal.open(depositDir);
+
+        assertThat(reopened.getPersistentId()).contains("doi:10.5072/FK2/ABCDEF");
+        assertThat(reopened.isCompleted(Step.METADATA_UPDATED)).isTrue();
+        assertThat(reopened.isCompleted(Step.LICENSE_SET)).isTrue();
+        assertThat(reopened.isCompleted(Step.FILE_METADATA_UPDATED)).isFalse();
+        assertThat(reopened.getAddedFiles()).containsOnlyKeys("a/b.txt", "c.txt");
+        assertThat(reopened.getAddedFiles().get("a/b.txt")).isEqualTo(new AddedFile(12, "abc123"));
+    }
+
+    @Test
+    void datasetCreated_should_discard_progress_for_earlier_dataset() throws Exception {
+        var journal = CreationJournal.open(depositDir);
+        journal.datasetCreated("doi:10.5072/FK2/OLD");
+        journal.stepCompleted(Step.METADATA_UPDATED);
+        journal.fileAdded("c.txt", 13, "def456");
+        journal.datasetCreated("doi:10.5072/FK2/NEW");
+
+        var reopened = CreationJournal.open(depositDir);
+
+        assertThat(reopened.getPersistentId()).contains("doi:10.5072/FK2/NEW");
+        assertThat(reopened.isCompleted(Step.METADATA_UPDATED)).isFalse();
+        assertThat(reopened.getAddedFiles()).isEmpty();
+    }
+
+    @Test
+    void open_should_ignore_partially_written_last_line() throws Exception {
+        var journal = CreationJournal.open(depositDir);
+        journal.datasetCreated("doi:10.5072/FK2/ABCDEF");
+        journal.fileAdded("a.txt", 12, "abc123");
+        Files.writeString(depositDir.resolve(CreationJournal.FILENAME), "{\"step\":\"FILE_ADDED\",\"pa", StandardOpenOption.APPEND);
+
+        var reopened = CreationJournal.open(depositDir);
+
+        assertThat(reopened.getPersistentId()).contains("doi:10.5072/FK2/ABCDEF");
+        assertThat(reopened.getAddedFiles()).containsOnlyKeys("a.txt");
+    }
+
+    @Test
+    void inMemory_should_not_write_a_file() throws Exception {
+        var journal = CreationJournal.inMemory();
+        journal.datasetCreated("doi:10.5072/FK2/ABCDEF");
+        journal.stepCompleted(Step.LICENSE_SET);
+
+        assertThat(journal.isPersistent()).isFalse();
+        assertThat(journal.isCompleted(Step.LICENSE_SET)).isTrue();
+        assertThat(depositDir.resolve(CreationJournal.FILENAME)).doesNotExist();
+    }
+}
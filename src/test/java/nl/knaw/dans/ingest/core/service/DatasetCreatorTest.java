@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.dataverse.DatasetFile;
+import nl.knaw.dans.ingest.core.domain.FileInfo;
+import nl.knaw.dans.ingest.core.service.CreationJournal.AddedFile;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DatasetCreatorTest {
+
+    private static FileInfo fileInfo(String path, String checksum) {
+        return new FileInfo(Path.of(path), Path.of("bag/data", path), checksum, new FileMeta());
+    }
+
+    @Test
+    void findFilesAddedEarlier_should_match_files_by_journaled_id_or_checksum() {
+        var a = fileInfo("a.txt", "sha-a");
+        var b = fileInfo("dir/b.txt", "sha-b");
+        var c = fileInfo("c.txt", "sha-c");
+        var draftFiles = List.of(
+            new DatasetFile(null, "a.txt", 1, "SHA-1", "other"),
+            new DatasetFile("dir", "b.txt", 2, "SHA-1", "sha-b"),
+            new DatasetFile(null, "c.txt", 3, "SHA-1", "different"));
+
+        var result = DatasetCreator.findFilesAddedEarlier(draftFiles, Map.of("a.txt", new AddedFile(1, "sha-a")),
+            Map.of(a.getPath(), a, b.getPath(), b, c.getPath(), c));
+
+        assertThat(result).containsOnlyKeys(1, 2);
+        assertThat(result.get(1)).isSameAs(a);
+        assertThat(result.get(2)).isSameAs(b);
+    }
+
+    @Test
+    void findFilesAddedEarlier_should_skip_draft_files_without_label() {
+        var a = fileInfo("a.txt", "sha-a");
+        var draftFiles = List.of(
+            new DatasetFile("dir", null, 7, "SHA-1", "sha-x"),
+            new DatasetFile(null, "a.txt", 1, "SHA-1", "sha-a"));
+
+        var result = DatasetCreator.findFilesAddedEarlier(draftFiles, Map.of(), Map.of(a.getPath(), a));
+
+        assertThat(result).containsOnlyKeys(1);
+    }
+}
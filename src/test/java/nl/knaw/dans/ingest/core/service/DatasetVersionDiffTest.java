@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.dataset.MetadataBlock;
+import nl.knaw.dans.lib.dataverse.model.dataset.MetadataField;
+import nl.knaw.dans.lib.dataverse.model.dataset.PrimitiveSingleValueField;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DatasetVersionDiffTest {
+    private final DatasetVersionDiff diff = new DatasetVersionDiff(new ObjectMapper());
+
+    private static DatasetVersion version(MetadataField... fields) {
+        var block = new MetadataBlock();
+        block.setName("citation");
+        block.setFields(new ArrayList<>(List.of(fields)));
+        var version = new DatasetVersion();
+        version.setMetadataBlocks(Map.of("citation", block));
+        version.setTermsOfAccess("N/a");
+        return version;
+    }
+
+    private static DatasetVersion versionWithVaultMetadata(String bagId, String swordToken, String dataversePidVersion, MetadataField... fields) {
+        var vault = new MetadataBlock();
+        vault.setName("dansDataVaultMetadata");
+        vault.setFields(new ArrayList<>(List.of(
+            new PrimitiveSingleValueField("dansBagId", bagId),
+            new PrimitiveSingleValueField("dansNbn", "urn:nbn:nl:ui:13-ar2-u8v"),
+            new PrimitiveSingleValueField("dansSwordToken", swordToken),
+            new PrimitiveSingleValueField("dansDataversePid", "doi:10.5072/DAR/XYZ"),
+            new PrimitiveSingleValueField("dansDataversePidVersion", dataversePidVersion),
+            new PrimitiveSingleValueField("dansOtherId", "DCTEST1234"),
+            new PrimitiveSingleValueField("dansDataSupplier", "A supplier"))));
+        var version = version(fields);
+        version.setMetadataBlocks(Map.of("citation", version.getMetadataBlocks().get("citation"), "dansDataVaultMetadata", vault));
+        return version;
+    }
+
+    private static FileMeta fileMeta(String directoryLabel, String label, String description) {
+        var fileMeta = new FileMeta();
+        fileMeta.setDirectoryLabel(directoryLabel);
+        fileMeta.setLabel(label);
+        fileMeta.setDescription(description);
+        fileMeta.setRestricted(false);
+        return fileMeta;
+    }
+
+    @Test
+    public void getChangedFields_should_return_nothing_for_equal_versions() {
+        var latest = version(new PrimitiveSingleValueField("title", "A title"), new PrimitiveSingleValueField("alternativeTitle", "Other"));
+        var update = version(new PrimitiveSingleValueField("alternativeTitle", "Other"), new PrimitiveSingleValueField("title", "A title"));
+
+        assertThat(diff.getChangedFields(latest, update)).isEmpty();
+    }
+
+    @Test
+    public void getChangedFields_should_return_changed_added_and_removed_fields() {
+        var latest = version(new PrimitiveSingleValueField("title", "A title"), new PrimitiveSingleValueField("alternativeTitle", "Other"));
+        var update = version(new PrimitiveSingleValueField("title", "A new title"), new PrimitiveSingleValueField("subtitle", "Sub"));
+        update.setTermsOfAccess("Ask");
+
+        assertThat(diff.getChangedFields(latest, update)).containsExactly("termsOfAccess", "alternativeTitle", "subtitle", "title");
+    }
+
+    @Test
+    public void getChangedFields_should_leave_out_vault_fields_that_identify_the_deposit() {
+        var latest = versionWithVaultMetadata("urn:uuid:0b9bb5ee-3187-4387-bb39-2c3c9cb8c2c8", "sword:0b9bb5ee-3187-4387-bb39-2c3c9cb8c2c8", "1.0",
+            new PrimitiveSingleValueField("title", "A title"));
+        var update = versionWithVaultMetadata("urn:uuid:7b4f3b0e-9a4d-4c1e-8f0e-2f1d4c6b9a11", "sword:0b9bb5ee-3187-4387-bb39-2c3c9cb8c2c8", "2.0",
+            new PrimitiveSingleValueField("title", "A title"));
+
+        assertThat(diff.getChangedFields(latest, update)).isEmpty();
+        assertThat(diff.getChangedVersionFields(latest, update)).containsExactly("dansBagId", "dansDataversePidVersion");
+    }
+
+    @Test
+    public void getChangedFields_should_return_changed_content_of_the_vault_metadata() {
+        var latest = versionWithVaultMetadata("urn:uuid:0b9bb5ee-3187-4387-bb39-2c3c9cb8c2c8", "sword:0b9bb5ee-3187-4387-bb39-2c3c9cb8c2c8", "1.0");
+        var update = versionWithVaultMetadata("urn:uuid:0b9bb5ee-3187-4387-bb39-2c3c9cb8c2c8", "sword:0b9bb5ee-3187-4387-bb39-2c3c9cb8c2c8", "1.0");
+        update.getMetadataBlocks().get("dansDataVaultMetadata").getFields().set(6, new PrimitiveSingleValueField("dansDataSupplier", "Another supplier"));
+
+        assertThat(diff.getChangedFields(latest, update)).containsExactly("dansDataSupplier");
+        assertThat(diff.getChangedVersionFields(latest, update)).isEmpty();
+    }
+
+    @Test
+    public void isFileMetadataChanged_should_ignore_missing_versus_empty_values() {
+        assertThat(diff.isFileMetadataChanged(fileMeta(null, "a.txt", null), fileMeta("", "a.txt", ""))).isFalse();
+    }
+
+    @Test
+    public void isFileMetadataChanged_should_detect_changed_description_and_path() {
+        assertThat(diff.isFileMetadataChanged(fileMeta("dir", "a.txt", "old"), fileMeta("dir", "a.txt", "new"))).isTrue();
+        assertThat(diff.isFileMetadataChanged(fileMeta("dir", "a.txt", null), fileMeta("other", "a.txt", null))).isTrue();
+    }
+}
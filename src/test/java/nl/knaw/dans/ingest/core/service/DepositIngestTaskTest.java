@@ -15,28 +15,44 @@
  */
 package nl.knaw.dans.ingest.core.service;
 
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.ingest.api.SimulationReport;
 import nl.knaw.dans.ingest.core.TaskEvent.EventType;
 import nl.knaw.dans.ingest.core.TaskEvent.Result;
 import nl.knaw.dans.ingest.core.dataverse.DatasetService;
+import nl.knaw.dans.ingest.core.dataverse.SimulatedDatasetService;
 import nl.knaw.dans.ingest.core.deposit.DepositManager;
 import nl.knaw.dans.ingest.core.domain.Deposit;
 import nl.knaw.dans.ingest.core.domain.DepositLocation;
 import nl.knaw.dans.ingest.core.domain.DepositState;
 import nl.knaw.dans.ingest.core.exception.RejectedDepositException;
 import nl.knaw.dans.ingest.core.service.mapper.DepositToDvDatasetMetadataMapperFactory;
+import nl.knaw.dans.ingest.core.simulation.Simulation;
 import nl.knaw.dans.ingest.core.validation.DepositorAuthorizationValidator;
 import nl.knaw.dans.lib.dataverse.DataverseClient;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
 import nl.knaw.dans.validatedansbag.client.api.ValidateOkDto;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.net.ConnectException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class DepositIngestTaskTest {
 
@@ -106,7 +122,10 @@ public class DepositIngestTaskTest {
             blockedTargetService,
             depositorAuthorizationValidator,
             "dummy",
-            false
+            false,
+            false,
+            1,
+            Runnable::run
         );
     }
 
@@ -226,4 +245,268 @@ public class DepositIngestTaskTest {
         // and blockedTargetService was never invoked
         Mockito.verifyNoInteractions(blockedTargetService);
     }
+
+    @Test
+    void finishSuperseded_should_give_deposit_the_state_and_identifiers_of_the_superseding_deposit() throws Throwable {
+        var depositId = UUID.fromString("4466a9d0-b835-4bff-81e2-ef104f8195d0");
+        var supersedingTask = getDepositIngestTask("doi:id", "5577a9d0-b835-4bff-81e2-ef104f8195d0", "version1");
+        supersedingTask.readDeposit();
+        var task = getDepositIngestTask("doi:id", depositId.toString(), "version1");
+        task.readDeposit();
+        supersedingTask.getDeposit().setDoi("10.5072/id");
+        supersedingTask.getDeposit().setUrn("urn:nbn:nl:ui:13-id");
+
+        task.finishSuperseded(supersedingTask, true);
+
+        var deposit = task.getDeposit();
+        assertEquals(DepositState.PUBLISHED, deposit.getState());
+        assertEquals("10.5072/id", deposit.getDoi());
+        assertEquals("urn:nbn:nl:ui:13-id", deposit.getUrn());
+        Mockito.verify(depositManager).updateAndMoveDeposit(deposit, Path.of("outbox", "processed"));
+        Mockito.verify(eventWriter).write(Mockito.eq(depositId), Mockito.eq(EventType.END_PROCESSING), Mockito.eq(Result.OK),
+            Mockito.contains("5577a9d0-b835-4bff-81e2-ef104f8195d0"));
+    }
+
+    @Test
+    void prepare_should_not_change_the_order_of_the_checks() throws Throwable {
+        var depositId = UUID.fromString("4466a9d0-b835-4bff-81e2-ef104f8195d0");
+        var task = getDepositIngestTask("doi:id", depositId.toString(), "version1");
+
+        var spiedTask = Mockito.spy(task);
+        Mockito.doThrow(new RejectedDepositException(new Deposit(), "invalid bag"))
+            .when(spiedTask).validateDeposit();
+        Mockito.doReturn("doi:id")
+            .when(spiedTask).resolveDoi(Mockito.any());
+        Mockito.doReturn(true)
+            .when(depositorAuthorizationValidator).isDatasetUpdateAllowed(Mockito.any());
+        Mockito.doReturn(true)
+            .when(blockedTargetService).isBlocked(Mockito.anyString());
+
+        spiedTask.prepare();
+        spiedTask.run();
+
+        // The blocked target is checked before the validation result is used, as it would have been without preparation
+        assertEquals(DepositState.FAILED, spiedTask.getDeposit().getState());
+        Mockito.verify(eventWriter).write(depositId, EventType.END_PROCESSING, Result.FAILED,
+            "Deposit with id 4466a9d0-b835-4bff-81e2-ef104f8195d0 and target doi:id is blocked by a previous deposit");
+        Mockito.verify(depositManager, Mockito.times(1)).readDeposit(Mockito.any());
+        Mockito.verify(spiedTask, Mockito.times(1)).validateDeposit();
+    }
+
+    @Test
+    void prepare_should_do_nothing_once_processing_has_started() throws Throwable {
+        var task = getDepositIngestTask(null, UUID.randomUUID().toString(), null);
+
+        task.readDeposit();
+        task.prepare();
+
+        Mockito.verify(depositManager, Mockito.times(1)).readDeposit(Mockito.any());
+        Mockito.verifyNoInteractions(dansBagValidator);
+    }
+
+    @Test
+    void getPreparationError_should_return_the_validation_error() throws Throwable {
+        var task = Mockito.spy(getDepositIngestTask(null, UUID.randomUUID().toString(), null));
+        var rejection = new RejectedDepositException(new Deposit(), "invalid bag");
+        Mockito.doThrow(rejection).when(task).validateDeposit();
+        Mockito.doThrow(new IllegalStateException("cannot map")).when(task).getMetadata();
+
+        assertTrue(task.getPreparationError().isEmpty());
+        task.prepare();
+
+        assertEquals(Optional.of(rejection), task.getPreparationError());
+        task.discardPreparation();
+        assertTrue(task.getPreparationError().isEmpty());
+    }
+
+    @Test
+    void checkDeposit_should_validate_while_doing_the_other_checks() throws Throwable {
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var base = getDepositIngestTask("doi:id", UUID.randomUUID().toString(), "version1");
+            var task = Mockito.spy(new DepositIngestTask(depositToDvDatasetMetadataMapperFactory, base.getDepositLocation(), "dummy", null, zipFileHandler, List.of(),
+                dansBagValidator, Path.of("outbox"), eventWriter, depositManager, datasetService, blockedTargetService, depositorAuthorizationValidator, "dummy",
+                false, false, 1, executor));
+            var lookupStarted = new CountDownLatch(1);
+
+            // The validation can only finish while the DOI is being looked up
+            Mockito.doAnswer(invocation -> {
+                assertTrue(lookupStarted.await(10, TimeUnit.SECONDS));
+                throw new RejectedDepositException(new Deposit(), "invalid bag");
+            }).when(task).validateDeposit();
+            Mockito.doAnswer(invocation -> {
+                lookupStarted.countDown();
+                return "doi:id";
+            }).when(task).resolveDoi(Mockito.any());
+            Mockito.doReturn(true)
+                .when(depositorAuthorizationValidator).isDatasetUpdateAllowed(Mockito.any());
+
+            task.readDeposit();
+
+            assertThrows(RejectedDepositException.class, task::checkDeposit);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void checkDeposit_should_do_update_checks_concurrently_and_report_the_first_failing_check_in_order() throws Throwable {
+        var executor = Executors.newFixedThreadPool(3);
+        try {
+            var task = Mockito.spy(getDepositIngestTask("doi:id", UUID.randomUUID().toString(), "version1"));
+            task.setPreCheckExecutor(executor);
+            Mockito.doReturn("doi:id").when(task).resolveDoi(Mockito.any());
+            var started = new CountDownLatch(3);
+
+            // Each check can only finish once all three have started
+            Mockito.doAnswer(invocation -> {
+                started.countDown();
+                started.await(5, TimeUnit.SECONDS);
+                return false;
+            }).when(depositorAuthorizationValidator).isDatasetUpdateAllowed(Mockito.any());
+            Mockito.doAnswer(invocation -> {
+                started.countDown();
+                started.await(5, TimeUnit.SECONDS);
+                return true;
+            }).when(datasetService).isDatasetInReview("doi:id");
+            Mockito.doAnswer(invocation -> {
+                started.countDown();
+                started.await(5, TimeUnit.SECONDS);
+                return true;
+            }).when(blockedTargetService).isBlocked("doi:id");
+
+            task.readDeposit();
+
+            var e = assertThrows(RejectedDepositException.class, task::checkDeposit);
+            assertTrue(e.getMessage().contains("Dataset doi:id is not allowed to be updated"));
+            assertEquals(0, started.getCount());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void canCoalesceWith_should_only_accept_update_deposits_for_the_same_target() throws Throwable {
+        var first = getDepositIngestTask("doi:id", UUID.randomUUID().toString(), "version1");
+        var second = getDepositIngestTask("doi:id", UUID.randomUUID().toString(), "version1");
+        var otherTarget = getDepositIngestTask("doi:other", UUID.randomUUID().toString(), "version1");
+        var notUpdate = getDepositIngestTask("doi:id", UUID.randomUUID().toString(), "version1");
+        first.getDepositLocation().setUpdate(true);
+        second.getDepositLocation().setUpdate(true);
+        otherTarget.getDepositLocation().setUpdate(true);
+
+        assertTrue(first.canCoalesceWith(second));
+        assertFalse(first.canCoalesceWith(otherTarget));
+        assertFalse(first.canCoalesceWith(notUpdate));
+        assertFalse(notUpdate.canCoalesceWith(first));
+    }
+
+    @Test
+    void canCoalesceWith_should_not_accept_migration_deposits() throws Throwable {
+        var task = getDepositIngestTask("doi:id", UUID.randomUUID().toString(), "version1");
+        task.getDepositLocation().setUpdate(true);
+        var location = new DepositLocation(Path.of("path/to/migration"), "doi:id", UUID.randomUUID().toString(), OffsetDateTime.now());
+        location.setUpdate(true);
+        var migrationTask = new DepositMigrationTask(depositToDvDatasetMetadataMapperFactory, location, "dummy", null, zipFileHandler, List.of(), dansBagValidator,
+            Path.of("outbox"), eventWriter, depositManager, datasetService, blockedTargetService, depositorAuthorizationValidator, "dummy", false, false, 1,
+            Runnable::run);
+
+        assertFalse(task.canCoalesceWith(migrationTask));
+        assertFalse(migrationTask.canCoalesceWith(task));
+    }
+
+    @Test
+    void run_should_ask_to_be_retried_without_blocking_target_if_checks_fail_transiently() throws Throwable {
+        var depositId = UUID.fromString("4466a9d0-b835-4bff-81e2-ef104f8195d0");
+        var task = getDepositIngestTask("doi:id", depositId.toString(), "version1");
+        task.setRetryPolicy(new RetryPolicy(3, Duration.ofSeconds(10), Duration.ofSeconds(10), 0));
+
+        var spiedTask = Mockito.spy(task);
+        Mockito.doReturn(true)
+                .when(depositorAuthorizationValidator)
+                .isDatasetUpdateAllowed(Mockito.any());
+
+        Mockito.doThrow(new RuntimeException(new ConnectException("Connection refused")))
+                .when(spiedTask).validateDeposit();
+
+        Mockito.doReturn("doi:id")
+                .when(spiedTask).resolveDoi(Mockito.any());
+
+        spiedTask.run();
+
+        assertEquals(Optional.of(Duration.ofSeconds(10)), spiedTask.getRetryDelay());
+        Mockito.verify(eventWriter)
+                .write(Mockito.eq(depositId), Mockito.eq(EventType.END_PROCESSING), Mockito.eq(Result.RETRY), Mockito.startsWith("Attempt 1 of 3 failed"));
+        Mockito.verify(spiedTask, Mockito.never()).createOrUpdateDataset(Mockito.anyBoolean());
+        Mockito.verify(blockedTargetService, Mockito.never()).blockTarget(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.verify(depositManager, Mockito.never()).updateAndMoveDeposit(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void run_should_fail_deposit_if_checks_fail_transiently_and_attempts_are_used_up() throws Throwable {
+        var depositId = UUID.fromString("4466a9d0-b835-4bff-81e2-ef104f8195d0");
+        var task = getDepositIngestTask("doi:id", depositId.toString(), "version1");
+        task.setRetryPolicy(new RetryPolicy(1, Duration.ofSeconds(10), Duration.ofSeconds(10), 0));
+
+        var spiedTask = Mockito.spy(task);
+        Mockito.doReturn(true)
+                .when(depositorAuthorizationValidator)
+                .isDatasetUpdateAllowed(Mockito.any());
+
+        Mockito.doThrow(new RuntimeException(new ConnectException("Connection refused")))
+                .when(spiedTask).validateDeposit();
+
+        Mockito.doReturn("doi:id")
+                .when(spiedTask).resolveDoi(Mockito.any());
+
+        spiedTask.run();
+
+        assertEquals(Optional.empty(), spiedTask.getRetryDelay());
+        assertEquals(DepositState.FAILED, spiedTask.getDeposit().getState());
+    }
+
+    @Test
+    void runWithoutRetry_should_fail_deposit_if_checks_fail_transiently_and_attempts_are_left() throws Throwable {
+        var depositId = UUID.fromString("4466a9d0-b835-4bff-81e2-ef104f8195d0");
+        var task = getDepositIngestTask("doi:id", depositId.toString(), "version1");
+        task.setRetryPolicy(new RetryPolicy(3, Duration.ofSeconds(10), Duration.ofSeconds(10), 0));
+
+        var spiedTask = Mockito.spy(task);
+        Mockito.doReturn(true)
+                .when(depositorAuthorizationValidator)
+                .isDatasetUpdateAllowed(Mockito.any());
+
+        Mockito.doThrow(new RuntimeException(new ConnectException("Connection refused")))
+                .when(spiedTask).validateDeposit();
+
+        Mockito.doReturn("doi:id")
+                .when(spiedTask).resolveDoi(Mockito.any());
+
+        spiedTask.runWithoutRetry();
+
+        assertEquals(Optional.empty(), spiedTask.getRetryDelay());
+        assertEquals(DepositState.FAILED, spiedTask.getDeposit().getState());
+        Mockito.verify(eventWriter, Mockito.never())
+                .write(Mockito.eq(depositId), Mockito.eq(EventType.END_PROCESSING), Mockito.eq(Result.RETRY), Mockito.any());
+    }
+
+    @Test
+    void task_with_simulation_hooks_should_time_its_stages_and_use_the_simulated_dataverse() throws Throwable {
+        var simulation = new Simulation(Map.of(), new MetricRegistry());
+        var task = getDepositIngestTask(null, UUID.randomUUID().toString(), null);
+        task.setSimulatedTaskHooks(new SimulatedTaskHooks(new SimulatedDatasetService(simulation, List.of())));
+
+        assertTrue(task.readDeposit());
+        task.validateDeposit();
+
+        assertTrue(task.newDatasetCreator(new Dataset(), "contributor", false) instanceof SimulatedDatasetEditor);
+        assertTrue(task.newDatasetUpdater(new Dataset(), false, false) instanceof SimulatedDatasetEditor);
+        assertEquals(List.of(Simulation.Stage.READ_DEPOSIT.name(), Simulation.Stage.VALIDATE.name()), simulation.getReport().getStages().stream()
+            .filter(timing -> timing.getCount() > 0)
+            .map(SimulationReport.Timing::getName)
+            .sorted()
+            .collect(Collectors.toList()));
+    }
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.dataverse.DatasetFile;
+import nl.knaw.dans.ingest.core.domain.FileInfo;
+import nl.knaw.dans.lib.dataverse.model.file.Checksum;
+import nl.knaw.dans.lib.dataverse.model.file.DataFile;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileChangePlanTest {
+
+    private static FileMeta fileMeta(Path path, int id, String checksum) {
+        var value = new Checksum();
+        value.setType("SHA-1");
+        value.setValue(checksum);
+        var dataFile = new DataFile();
+        dataFile.setId(id);
+        dataFile.setChecksum(value);
+        var fileMeta = new FileMeta();
+        fileMeta.setDirectoryLabel(path.getParent() == null ? null : path.getParent().toString());
+        fileMeta.setLabel(path.getFileName().toString());
+        fileMeta.setDataFile(dataFile);
+        return fileMeta;
+    }
+
+    private static DatasetFile datasetFile(Path path, int id, String checksum) {
+        return new DatasetFile(path.getParent() == null ? null : path.getParent().toString(), path.getFileName().toString(), id, "SHA-1", checksum);
+    }
+
+    private static FileInfo fileInfo(Path path, String checksum) {
+        var fileMeta = new FileMeta();
+        fileMeta.setDirectoryLabel(path.getParent() == null ? null : path.getParent().toString());
+        fileMeta.setLabel(path.getFileName().toString());
+        return new FileInfo(path, path, checksum, fileMeta);
+    }
+
+    @Test
+    public void compute_should_find_moves_replacements_deletions_and_additions() {
+        var latest = new HashMap<Path, DatasetFile>();
+        latest.put(Path.of("a.txt"), datasetFile(Path.of("a.txt"), 1, "c1"));
+        latest.put(Path.of("b.txt"), datasetFile(Path.of("b.txt"), 2, "c2"));
+        latest.put(Path.of("c.txt"), datasetFile(Path.of("c.txt"), 3, "c3"));
+        latest.put(Path.of("d.txt"), datasetFile(Path.of("d.txt"), 4, "c4"));
+        var deposit = new HashMap<Path, FileInfo>();
+        deposit.put(Path.of("a.txt"), fileInfo(Path.of("a.txt"), "c1"));
+        deposit.put(Path.of("dir/b.txt"), fileInfo(Path.of("dir/b.txt"), "c2"));
+        deposit.put(Path.of("c.txt"), fileInfo(Path.of("c.txt"), "c3-changed"));
+        deposit.put(Path.of("e.txt"), fileInfo(Path.of("e.txt"), "c5"));
+
+        var plan = FileChangePlan.compute(latest, deposit);
+
+        assertThat(plan.getMovedFiles()).containsOnly(Map.entry(Path.of("a.txt"), Path.of("a.txt")), Map.entry(Path.of("b.txt"), Path.of("dir/b.txt")));
+        assertThat(plan.getFileMovements()).containsOnlyKeys(1, 2);
+        assertThat(plan.getFilesToReplace()).containsOnlyKeys(3);
+        assertThat(plan.getPathsToDelete()).containsOnly(Path.of("d.txt"));
+        assertThat(plan.getFileDeletions()).containsOnly(4);
+        assertThat(plan.getPathsToAdd()).containsOnly(Path.of("e.txt"));
+        assertThat(plan.getFilesToAdd()).extracting(FileInfo::getPath).containsOnly(Path.of("e.txt"));
+    }
+
+    @Test
+    public void compute_should_not_move_files_with_duplicate_checksums() {
+        var latest = new HashMap<Path, DatasetFile>();
+        latest.put(Path.of("a.txt"), datasetFile(Path.of("a.txt"), 1, "same"));
+        latest.put(Path.of("b.txt"), datasetFile(Path.of("b.txt"), 2, "same"));
+        var deposit = new HashMap<Path, FileInfo>();
+        deposit.put(Path.of("c.txt"), fileInfo(Path.of("c.txt"), "same"));
+
+        var plan = FileChangePlan.compute(latest, deposit);
+
+        assertThat(plan.getMovedFiles()).isEmpty();
+        assertThat(plan.getFileDeletions()).containsOnly(1, 2);
+        assertThat(plan.getPathsToAdd()).containsOnly(Path.of("c.txt"));
+    }
+
+    @Test
+    public void compute_should_give_the_same_plan_as_the_reference_implementation_for_random_versions() {
+        var paths = Stream.of("a", "b", "c", "d", "x/a", "x/b", "x/c", "y/a", "y/d", "y/z/e")
+            .map(name -> Path.of(name + ".txt"))
+            .collect(Collectors.toList());
+
+        for (var seed = 0L; seed < 2000; seed++) {
+            var random = new Random(seed);
+            // Few checksums for many paths, so that duplicates, moves onto occupied paths and replacements all occur
+            var numberOfChecksums = 1 + random.nextInt(8);
+            var latest = new LinkedHashMap<Path, DatasetFile>();
+            var latestFileMetas = new LinkedHashMap<Path, FileMeta>();
+            var deposit = new LinkedHashMap<Path, FileInfo>();
+            var id = 1;
+            for (var path : paths) {
+                if (random.nextInt(3) > 0) {
+                    var checksum = "c" + random.nextInt(numberOfChecksums);
+                    latest.put(path, datasetFile(path, id, checksum));
+                    latestFileMetas.put(path, fileMeta(path, id, checksum));
+                    id++;
+                }
+                if (random.nextInt(3) > 0) {
+                    deposit.put(path, fileInfo(path, "c" + random.nextInt(numberOfChecksums)));
+                }
+            }
+
+            var plan = FileChangePlan.compute(latest, deposit);
+            var reference = new ReferencePlan(latestFileMetas, deposit);
+
+            var description = "seed " + seed + ", latest = " + latest.keySet() + ", deposit = " + deposit.keySet();
+            assertThat(plan.getMovedFiles()).as(description).isEqualTo(reference.oldToNewPathMovedFiles);
+            assertThat(plan.getFileMovements()).as(description).isEqualTo(reference.fileMovements);
+            assertThat(plan.getFilesToReplace()).as(description).isEqualTo(reference.filesToReplace);
+            assertThat(plan.getPathsToDelete()).as(description).isEqualTo(reference.pathsToDelete);
+            assertThat(plan.getFileDeletions()).as(description).isEqualTo(reference.fileDeletions);
+            assertThat(plan.getPathsToAdd()).as(description).isEqualTo(reference.pathsToAdd);
+            assertThat(plan.getFilesToAdd()).as(description).containsExactlyInAnyOrderElementsOf(reference.pathsToAdd.stream().map(deposit::get).collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * The set operations that DatasetUpdater used before the FileChangePlan, kept as the reference for the expected outcome.
+     */
+    private static class ReferencePlan {
+        private final Map<Path, Path> oldToNewPathMovedFiles;
+        private final Map<Integer, FileMeta> fileMovements;
+        private final Map<Integer, FileInfo> filesToReplace;
+        private final Set<Path> pathsToDelete;
+        private final Set<Integer> fileDeletions;
+        private final Set<Path> pathsToAdd;
+
+        ReferencePlan(Map<Path, FileMeta> pathToFileMetaInLatestVersion, Map<Path, FileInfo> pathToFileInfo) {
+            oldToNewPathMovedFiles = getOldToNewPathOfFilesToMove(pathToFileMetaInLatestVersion, pathToFileInfo);
+            fileMovements = oldToNewPathMovedFiles.keySet().stream()
+                .map(path -> Map.entry(pathToFileMetaInLatestVersion.get(path).getDataFile().getId(), pathToFileInfo.get(oldToNewPathMovedFiles.get(path)).getMetadata()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+            var fileReplacementCandidates = pathToFileMetaInLatestVersion.entrySet().stream()
+                .filter(pathToFileInfoEntry -> !oldToNewPathMovedFiles.containsKey(pathToFileInfoEntry.getKey()))
+                .filter(pathToFileInfoEntry -> !oldToNewPathMovedFiles.containsValue(pathToFileInfoEntry.getKey()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            filesToReplace = intersection(pathToFileInfo.keySet(), fileReplacementCandidates.keySet()).stream()
+                .filter(p -> !pathToFileInfo.get(p).getChecksum().equals(fileReplacementCandidates.get(p).getDataFile().getChecksum().getValue()))
+                .map(p -> Map.entry(fileReplacementCandidates.get(p).getDataFile().getId(), pathToFileInfo.get(p)))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+            var newPathsOfMovedFiles = new HashSet<>(oldToNewPathMovedFiles.values());
+            var candidateRemainingFiles = diff(pathToFileInfo.keySet(), newPathsOfMovedFiles);
+            var oldPathsOfMovedFiles = new HashSet<>(oldToNewPathMovedFiles.keySet());
+            pathsToDelete = diff(diff(pathToFileMetaInLatestVersion.keySet(), candidateRemainingFiles), oldPathsOfMovedFiles);
+            fileDeletions = pathsToDelete.stream()
+                .map(p -> pathToFileMetaInLatestVersion.get(p).getDataFile().getId())
+                .collect(Collectors.toSet());
+
+            var diffed = diff(diff(pathToFileMetaInLatestVersion.keySet(), newPathsOfMovedFiles), pathsToDelete);
+            var occupiedPaths = union(diffed, oldToNewPathMovedFiles.values());
+            pathsToAdd = diff(pathToFileInfo.keySet(), occupiedPaths);
+        }
+
+        private static Map<Path, Path> getOldToNewPathOfFilesToMove(Map<Path, FileMeta> pathToFileMetaInLatestVersion, Map<Path, FileInfo> pathToFileInfo) {
+            var depositChecksums = pathToFileInfo.entrySet().stream()
+                .map(e -> Map.entry(e.getKey(), e.getValue().getChecksum()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            var latestFileChecksums = pathToFileMetaInLatestVersion.entrySet().stream()
+                .map(e -> Map.entry(e.getKey(), e.getValue().getDataFile().getChecksum().getValue()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            var inDeposit = getChecksumsToPathOfNonDuplicateFiles(depositChecksums);
+            var inLatestVersion = getChecksumsToPathOfNonDuplicateFiles(latestFileChecksums);
+
+            return inDeposit.keySet().stream()
+                .filter(inLatestVersion::containsKey)
+                .map(c -> Map.entry(inLatestVersion.get(c), inDeposit.get(c)))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        }
+
+        private static Map<String, Path> getChecksumsToPathOfNonDuplicateFiles(Map<Path, String> pathToChecksum) {
+            var inversed = pathToChecksum.entrySet().stream()
+                .collect(Collectors.groupingBy(Map.Entry::getValue, Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+            return inversed.entrySet().stream()
+                .filter(item -> item.getValue().size() == 1)
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get(0)));
+        }
+
+        private static <T> Set<T> diff(Collection<T> a, Collection<T> b) {
+            return a.stream().filter(k -> !b.contains(k)).collect(Collectors.toSet());
+        }
+
+        private static <T> Set<T> intersection(Collection<T> a, Collection<T> b) {
+            return a.stream().filter(b::contains).collect(Collectors.toSet());
+        }
+
+        private static <T> Set<T> union(Collection<T> a, Collection<T> b) {
+            return Stream.of(a.stream(), b.stream()).flatMap(i -> i).collect(Collectors.toSet());
+        }
+    }
+}
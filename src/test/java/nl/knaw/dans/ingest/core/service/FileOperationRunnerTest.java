@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FileOperationRunnerTest {
+
+    private static final List<Integer> ITEMS = IntStream.rangeClosed(1, 10).boxed().collect(Collectors.toList());
+
+    private static ExecutorService executor;
+
+    @BeforeAll
+    static void startExecutor() {
+        executor = Executors.newFixedThreadPool(5);
+    }
+
+    @AfterAll
+    static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void run_should_return_the_same_results_as_sequential_mode() throws Exception {
+        var sequential = new FileOperationRunner(executor, 1, 0).run(ITEMS, i -> i * 10, () -> {});
+        var parallel = new FileOperationRunner(executor, 4, 0).run(ITEMS, i -> i * 10, () -> {});
+
+        assertThat(parallel).isEqualTo(sequential).containsExactly(10, 20, 30, 40, 50, 60, 70, 80, 90, 100);
+    }
+
+    @Test
+    public void run_should_wait_for_unlock_once_per_wave() throws Exception {
+        var unlockWaits = new AtomicInteger();
+
+        new FileOperationRunner(executor, 4, 0).run(ITEMS, i -> i, unlockWaits::incrementAndGet);
+
+        assertThat(unlockWaits.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void run_should_wait_for_unlock_after_each_item_in_sequential_mode() throws Exception {
+        var unlockWaits = new AtomicInteger();
+
+        new FileOperationRunner(executor, 1, 0).run(ITEMS, i -> i, unlockWaits::incrementAndGet);
+
+        assertThat(unlockWaits.get()).isEqualTo(10);
+    }
+
+    @Test
+    public void run_should_retry_operations_that_fail_on_a_lock() throws Exception {
+        var attempts = new ConcurrentHashMap<Integer, AtomicInteger>();
+
+        var results = new FileOperationRunner(executor, 3, 2).run(ITEMS, i -> {
+            var attempt = attempts.computeIfAbsent(i, k -> new AtomicInteger()).incrementAndGet();
+            if (i % 4 == 0 && attempt < 3) {
+                throw new DataverseException(409, "Dataset cannot be edited due to dataset lock.");
+            }
+            return i;
+        }, () -> {});
+
+        assertThat(results).isEqualTo(ITEMS);
+        assertThat(attempts.get(4).get()).isEqualTo(3);
+        assertThat(attempts.get(5).get()).isEqualTo(1);
+    }
+
+    @Test
+    public void run_should_throw_after_the_maximum_number_of_lock_retries() {
+        var runner = new FileOperationRunner(executor, 3, 2);
+
+        assertThatThrownBy(() -> runner.run(ITEMS, i -> {
+            if (i == 7) {
+                throw new DataverseException(409, "Dataset cannot be edited due to dataset lock.");
+            }
+            return i;
+        }, () -> {}))
+            .isInstanceOf(DataverseException.class);
+    }
+
+    @Test
+    public void run_should_throw_the_failure_of_the_first_item_in_a_wave() {
+        var runner = new FileOperationRunner(executor, 5, 0);
+        var started = Collections.synchronizedList(new ArrayList<Integer>());
+
+        assertThatThrownBy(() -> runner.run(ITEMS, i -> {
+            started.add(i);
+            if (i == 2 || i == 4) {
+                throw new IllegalStateException("failed " + i);
+            }
+            return i;
+        }, () -> {}))
+            .hasMessage("failed 2");
+        // The second wave is not started
+        assertThat(started).containsExactlyInAnyOrder(1, 2, 3, 4, 5);
+    }
+
+    @Test
+    public void run_should_not_have_more_operations_on_the_shared_executor_than_its_concurrency() throws Exception {
+        var running = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+
+        new FileOperationRunner(executor, 2, 0).run(ITEMS, i -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return i;
+        }, () -> {});
+
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+    }
+}
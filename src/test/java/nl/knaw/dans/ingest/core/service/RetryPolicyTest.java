@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RetryPolicyTest {
+
+    private final RetryPolicy policy = new RetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(4), 0);
+
+    @Test
+    public void call_should_retry_a_transient_failure_until_it_succeeds() throws Exception {
+        var attempts = new AtomicInteger();
+        var result = policy.call("test", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ConnectException("Connection refused");
+            }
+            return "ok";
+        });
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    public void call_should_not_retry_a_permanent_failure() {
+        var attempts = new AtomicInteger();
+        assertThatThrownBy(() -> policy.call("test", () -> {
+            attempts.incrementAndGet();
+            throw new IOException("Bad request");
+        })).hasMessage("Bad request");
+
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    public void call_should_give_up_after_the_maximum_number_of_attempts() {
+        var attempts = new AtomicInteger();
+        assertThatThrownBy(() -> policy.call("test", () -> {
+            attempts.incrementAndGet();
+            throw new ConnectException("Connection refused");
+        })).isInstanceOf(ConnectException.class);
+
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    public void getDelay_should_double_after_each_attempt_up_to_the_maximum() {
+        var p = new RetryPolicy(10, Duration.ofSeconds(1), Duration.ofSeconds(5), 0);
+
+        assertThat(p.getDelay(1)).isEqualTo(Duration.ofSeconds(1));
+        assertThat(p.getDelay(2)).isEqualTo(Duration.ofSeconds(2));
+        assertThat(p.getDelay(3)).isEqualTo(Duration.ofSeconds(4));
+        assertThat(p.getDelay(4)).isEqualTo(Duration.ofSeconds(5));
+        assertThat(p.getDelay(9)).isEqualTo(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void getDelay_should_leave_out_at_most_the_jitter_fraction() {
+        var p = new RetryPolicy(10, Duration.ofSeconds(10), Duration.ofSeconds(10), 0.5);
+
+        for (var i = 0; i < 100; i++) {
+            assertThat(p.getDelay(1)).isBetween(Duration.ofSeconds(5), Duration.ofSeconds(10));
+        }
+    }
+
+    @Test
+    public void classify_should_treat_wrapped_connection_failures_as_transient() {
+        assertThat(FailureClassifier.classify(new RuntimeException(new ConnectException("Connection refused"))))
+            .isEqualTo(FailureClassifier.FailureClass.TRANSIENT);
+        assertThat(FailureClassifier.classify(new IllegalArgumentException("invalid")))
+            .isEqualTo(FailureClassifier.FailureClass.PERMANENT);
+    }
+}
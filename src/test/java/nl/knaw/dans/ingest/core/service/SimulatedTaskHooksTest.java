@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.ingest.core.dataverse.SimulatedDatasetService;
+import nl.knaw.dans.ingest.core.simulation.Simulation;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SimulatedTaskHooksTest {
+
+    @Test
+    void run_should_count_all_deposits_of_the_run_as_processed_even_if_it_fails() {
+        var simulation = new Simulation(Map.of(), new MetricRegistry());
+        var hooks = new SimulatedTaskHooks(new SimulatedDatasetService(simulation, List.of()));
+
+        hooks.run(3, () -> { });
+        assertThatThrownBy(() -> hooks.run(1, () -> {
+            throw new IllegalStateException("failed");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(simulation.getReport().getProcessedDeposits()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.ingest.core.TaskEvent;
+import nl.knaw.dans.ingest.core.dataverse.DataverseCallRecorder;
+import nl.knaw.dans.ingest.core.sequencing.TargetedTask;
+import nl.knaw.dans.ingest.core.sequencing.TargetedTaskSequenceManager;
+import nl.knaw.dans.ingest.core.sequencing.WeightedFairScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StuckDepositWatchdogTest {
+
+    private final DataverseCallRecorder callRecorder = new DataverseCallRecorder();
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ExecutorService executor;
+    private TargetedTaskSequenceManager manager;
+
+    private class BlockingTask implements TargetedTask {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final Instant stageStarted = Instant.now();
+
+        @Override
+        public String getTarget() {
+            return "doi:10.5072/stuck";
+        }
+
+        @Override
+        public Path getDepositPath() {
+            return Path.of("stuck-deposit");
+        }
+
+        @Override
+        public void writeEvent(TaskEvent.EventType eventType, TaskEvent.Result result, String message) {
+            events.add(eventType + " " + result + " " + message);
+        }
+
+        @Override
+        public String getStage() {
+            return "EDITING_DATASET";
+        }
+
+        @Override
+        public Instant getStageStarted() {
+            return stageStarted;
+        }
+
+        @Override
+        public void run() {
+            callRecorder.start("awaitUnlock", getTarget());
+            started.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        manager = new TargetedTaskSequenceManager(new WeightedFairScheduler(executor, 1, metrics));
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    private StuckDepositWatchdog createWatchdog() {
+        return new StuckDepositWatchdog(manager, callRecorder, Duration.ofMinutes(1), Duration.ofHours(6), Map.of("EDITING_DATASET", Duration.ofHours(1)),
+            metrics, Mockito.mock(ScheduledExecutorService.class));
+    }
+
+    @Test
+    public void check_should_report_a_deposit_that_exceeds_the_threshold_of_its_stage_once() throws Exception {
+        var task = new BlockingTask();
+        manager.scheduleTask("import", task);
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        var watchdog = createWatchdog();
+
+        assertThat(watchdog.check(task.stageStarted.plus(Duration.ofMinutes(59)))).isZero();
+        assertThat(task.events).isEmpty();
+
+        assertThat(watchdog.check(task.stageStarted.plus(Duration.ofMinutes(61)))).isEqualTo(1);
+        assertThat(watchdog.check(task.stageStarted.plus(Duration.ofMinutes(62)))).isEqualTo(1);
+
+        assertThat(task.events).hasSize(1);
+        assertThat(task.events.get(0))
+            .startsWith("STUCK WARNING Deposit has been in stage EDITING_DATASET for 61 minutes, longer than the threshold of 60 minutes")
+            .contains("awaitUnlock(doi:10.5072/stuck)", "still in progress");
+        assertThat(metrics.meter(MetricRegistry.name(StuckDepositWatchdog.class, "detected")).getCount()).isEqualTo(1);
+        assertThat(metrics.getGauges().get(MetricRegistry.name(StuckDepositWatchdog.class, "stuck")).getValue()).isEqualTo(1);
+    }
+
+    @Test
+    public void check_should_forget_a_deposit_that_is_no_longer_in_flight() throws Exception {
+        var task = new BlockingTask();
+        manager.scheduleTask("import", task);
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        var watchdog = createWatchdog();
+        assertThat(watchdog.check(task.stageStarted.plus(Duration.ofHours(2)))).isEqualTo(1);
+
+        release.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(watchdog.check(task.stageStarted.plus(Duration.ofHours(3)))).isZero();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.domain.Deposit;
+import nl.knaw.dans.ingest.core.domain.DepositLocation;
+import nl.knaw.dans.ingest.core.exception.RejectedDepositException;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class UpdateDepositCoalescerTest {
+
+    private DepositIngestTask task(String depositId, boolean update, String depositor) throws Exception {
+        var deposit = new Deposit();
+        deposit.setDir(Path.of("inbox", depositId));
+        deposit.setUpdate(update);
+        deposit.setDepositorUserId(depositor);
+
+        var task = Mockito.mock(DepositIngestTask.class);
+        doReturn(true).when(task).readDeposit();
+        doReturn(deposit).when(task).getDeposit();
+        doReturn(true).when(task).isDatasetPublicationAllowed();
+        doReturn(true).when(task).createOrUpdateDataset(anyBoolean());
+        doReturn(new DepositLocation(Path.of(depositId), "sword-token", depositId, OffsetDateTime.now())).when(task).getDepositLocation();
+        doReturn("sword-token").when(task).getTarget();
+        return task;
+    }
+
+    @Test
+    void run_should_only_apply_the_last_of_consecutive_updates() throws Exception {
+        var u1 = task("u1", true, "user001");
+        var u2 = task("u2", true, "user001");
+        var u3 = task("u3", true, "user001");
+
+        new UpdateDepositCoalescer(List.of(u1, u2, u3)).run();
+
+        for (var task : List.of(u1, u2, u3)) {
+            verify(task).startProcessing();
+            verify(task).checkDeposit();
+        }
+        verify(u1, never()).createOrUpdateDataset(anyBoolean());
+        verify(u2, never()).createOrUpdateDataset(anyBoolean());
+        verify(u3).createOrUpdateDataset(true);
+        verify(u3).finishSuccessfully(true);
+        verify(u1).finishSuperseded(u3, true);
+        verify(u2).finishSuperseded(u3, true);
+    }
+
+    @Test
+    void run_should_process_a_new_dataset_deposit_on_its_own() throws Exception {
+        var create = task("c", false, "user001");
+        var u1 = task("u1", true, "user001");
+        var u2 = task("u2", true, "user001");
+
+        new UpdateDepositCoalescer(List.of(create, u1, u2)).run();
+
+        verify(create).process();
+        verify(u1, never()).createOrUpdateDataset(anyBoolean());
+        verify(u2).createOrUpdateDataset(true);
+        verify(u1).finishSuperseded(u2, true);
+    }
+
+    @Test
+    void run_should_not_coalesce_updates_of_different_depositors() throws Exception {
+        var u1 = task("u1", true, "user001");
+        var u2 = task("u2", true, "user002");
+
+        new UpdateDepositCoalescer(List.of(u1, u2)).run();
+
+        verify(u1).process();
+        verify(u2).process();
+        verify(u1, never()).finishSuperseded(any(), anyBoolean());
+    }
+
+    @Test
+    void run_should_not_coalesce_if_depositor_may_not_publish() throws Exception {
+        var u1 = task("u1", true, "user001");
+        var u2 = task("u2", true, "user001");
+        doReturn(false).when(u1).isDatasetPublicationAllowed();
+
+        new UpdateDepositCoalescer(List.of(u1, u2)).run();
+
+        verify(u1).process();
+        verify(u2).process();
+    }
+
+    @Test
+    void run_should_apply_updates_before_a_rejected_one_and_process_the_rest_on_their_own() throws Exception {
+        var u1 = task("u1", true, "user001");
+        var u2 = task("u2", true, "user001");
+        var u3 = task("u3", true, "user001");
+        var u4 = task("u4", true, "user001");
+        var rejected = new RejectedDepositException(u3.getDeposit(), "invalid bag");
+        doThrow(rejected).when(u3).checkDeposit();
+
+        new UpdateDepositCoalescer(List.of(u1, u2, u3, u4)).run();
+
+        var order = inOrder(u1, u2, u3, u4);
+        order.verify(u2).createOrUpdateDataset(true);
+        order.verify(u1).finishSuperseded(u2, true);
+        order.verify(u3).finishWithError(rejected);
+        order.verify(u4).process();
+        verify(u3, never()).createOrUpdateDataset(anyBoolean());
+    }
+
+    @Test
+    void run_should_fail_superseded_deposits_if_applying_the_last_one_fails() throws Exception {
+        var u1 = task("u1", true, "user001");
+        var u2 = task("u2", true, "user001");
+        var failure = new IllegalStateException("Dataverse error");
+        doThrow(failure).when(u2).createOrUpdateDataset(anyBoolean());
+
+        new UpdateDepositCoalescer(List.of(u1, u2)).run();
+
+        verify(u2).finishWithError(failure);
+        verify(u1).finishWithError(Mockito.argThat(e -> e.getMessage().contains("u2") && e.getMessage().contains("Dataverse error")));
+        verify(u1, never()).finishSuperseded(any(), anyBoolean());
+    }
+
+    @Test
+    void run_should_skip_deposits_that_cannot_be_read() throws Exception {
+        var u1 = task("u1", true, "user001");
+        var broken = task("broken", true, "user001");
+        var u2 = task("u2", true, "user001");
+        doReturn(false).when(broken).readDeposit();
+
+        new UpdateDepositCoalescer(List.of(u1, broken, u2)).run();
+
+        verify(broken, never()).checkDeposit();
+        verify(u2).createOrUpdateDataset(true);
+        verify(u1).finishSuperseded(u2, true);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.simulation;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.util.Duration;
+import nl.knaw.dans.ingest.config.LatencyConfig;
+import nl.knaw.dans.ingest.core.dataverse.SimulatedDatasetService;
+import nl.knaw.dans.ingest.core.exception.InvalidDatasetStateException;
+import nl.knaw.dans.ingest.core.simulation.Simulation.Operation;
+import nl.knaw.dans.ingest.core.simulation.Simulation.Stage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SimulationTest {
+
+    private static LatencyConfig latency(long medianMillis, double spread) {
+        var config = new LatencyConfig();
+        config.setMedian(Duration.milliseconds(medianMillis));
+        config.setSpread(spread);
+        return config;
+    }
+
+    @Test
+    void sampleLatency_should_return_the_median_if_there_is_no_spread() {
+        var simulation = new Simulation(Map.of(Operation.ADD_FILE, latency(20, 0)), new MetricRegistry());
+
+        assertThat(simulation.sampleLatency(Operation.ADD_FILE)).isEqualTo(20_000_000L);
+        assertThat(simulation.sampleLatency(Operation.PUBLISH)).isEqualTo(0L);
+    }
+
+    @Test
+    void sampleLatency_should_have_the_configured_median() {
+        var simulation = new Simulation(Map.of(Operation.ADD_FILE, latency(100, 0.5)), new MetricRegistry());
+
+        var samples = IntStream.range(0, 10001)
+            .mapToLong(i -> simulation.sampleLatency(Operation.ADD_FILE))
+            .sorted()
+            .toArray();
+
+        assertThat(samples[5000]).isBetween(90_000_000L, 110_000_000L);
+        assertThat(samples[0]).isLessThan(samples[10000]);
+    }
+
+    @Test
+    void getReport_should_summarize_the_operations_and_stages() {
+        var simulation = new Simulation(Map.of(Operation.ADD_FILE, latency(10, 0)), new MetricRegistry());
+
+        simulation.depositStarted();
+        simulation.time(Stage.EDIT_DATASET, () -> {
+            simulation.call(Operation.ADD_FILE);
+            simulation.call(Operation.ADD_FILE);
+            simulation.call(Operation.PUBLISH);
+            return null;
+        });
+        simulation.depositFinished();
+        var report = simulation.getReport();
+
+        assertThat(report.getProcessedDeposits()).isEqualTo(1);
+        assertThat(report.getElapsedSeconds()).isGreaterThanOrEqualTo(0.02);
+        assertThat(report.getDepositsPerHour()).isGreaterThan(0);
+        assertThat(report.getStages()).extracting("name").containsExactly("EDIT_DATASET");
+        assertThat(report.getOperations()).extracting("name").containsExactly("ADD_FILE", "PUBLISH");
+        var addFile = report.getOperations().get(0);
+        assertThat(addFile.getCount()).isEqualTo(2);
+        assertThat(addFile.getMeanMillis()).isGreaterThanOrEqualTo(10);
+        assertThat(addFile.getPercentage()).isGreaterThan(50);
+    }
+
+    @Test
+    void getReport_should_report_no_throughput_before_the_first_deposit_finished() {
+        var simulation = new Simulation(Map.of(), new MetricRegistry());
+        simulation.depositStarted();
+
+        var report = simulation.getReport();
+
+        assertThat(report.getProcessedDeposits()).isZero();
+        assertThat(report.getDepositsPerHour()).isZero();
+    }
+
+    @Test
+    void simulated_dataset_should_be_released_after_publication() throws Throwable {
+        var service = new SimulatedDatasetService(new Simulation(Map.of(), new MetricRegistry()), List.of("contributorplus"));
+
+        var persistentId = service.createDataset();
+        assertThatThrownBy(() -> service.waitForState(persistentId, "RELEASED")).isInstanceOf(InvalidDatasetStateException.class);
+        service.publishDataset(persistentId);
+
+        service.waitForState(persistentId, "RELEASED");
+        assertThat(service.getDatasetState(persistentId)).isEqualTo("RELEASED");
+        assertThat(service.getDatasetRoleAssignments("user001", persistentId)).containsExactly("contributorplus");
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.db;
+
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import nl.knaw.dans.ingest.core.Lease;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.time.OffsetDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+class LeaseDAOTest {
+
+    public DAOTestExtension database = DAOTestExtension
+        .newBuilder()
+        .addEntityClass(Lease.class)
+        .build();
+
+    private LeaseDAO leaseDAO;
+
+    @BeforeEach
+    void setUp() {
+        leaseDAO = new LeaseDAO(database.getSessionFactory());
+    }
+
+    private Lease getLease(String resource) {
+        // The bulk updates bypass the session, so make sure the lease is read from the database
+        database.getSessionFactory().getCurrentSession().clear();
+        return database.inTransaction(() -> leaseDAO.getLease(resource).orElse(null));
+    }
+
+    @Test
+    void tryAcquire_should_create_lease_if_none_exists() {
+        var now = OffsetDateTime.now();
+
+        var acquired = database.inTransaction(() -> leaseDAO.tryAcquire("target:doi:10.5072/x", "node-1", now, now.plusMinutes(2)));
+
+        assertThat(acquired).isTrue();
+        assertThat(getLease("target:doi:10.5072/x").getOwner()).isEqualTo("node-1");
+    }
+
+    @Test
+    void tryAcquire_should_fail_if_another_owner_holds_an_unexpired_lease() {
+        var now = OffsetDateTime.now();
+        database.inTransaction(() -> leaseDAO.tryAcquire("target:t", "node-1", now, now.plusMinutes(2)));
+
+        var acquired = database.inTransaction(() -> leaseDAO.tryAcquire("target:t", "node-2", now.plusMinutes(1), now.plusMinutes(3)));
+
+        assertThat(acquired).isFalse();
+        assertThat(getLease("target:t").getOwner()).isEqualTo("node-1");
+    }
+
+    @Test
+    void tryAcquire_should_extend_lease_of_the_same_owner() {
+        var now = OffsetDateTime.now();
+        database.inTransaction(() -> leaseDAO.tryAcquire("target:t", "node-1", now, now.plusMinutes(2)));
+
+        var acquired = database.inTransaction(() -> leaseDAO.tryAcquire("target:t", "node-1", now.plusMinutes(1), now.plusMinutes(3)));
+
+        assertThat(acquired).isTrue();
+        var lease = getLease("target:t");
+        assertThat(lease.getExpires()).isAfter(now.plusMinutes(2));
+        assertThat(lease.getAcquired()).isEqualToIgnoringNanos(now);
+    }
+
+    @Test
+    void tryAcquire_should_take_over_expired_lease_of_another_owner() {
+        var now = OffsetDateTime.now();
+        database.inTransaction(() -> leaseDAO.tryAcquire("deposit:d1", "node-1", now, now.plusMinutes(2)));
+
+        var acquired = database.inTransaction(() -> leaseDAO.tryAcquire("deposit:d1", "node-2", now.plusMinutes(3), now.plusMinutes(5)));
+
+        assertThat(acquired).isTrue();
+        assertThat(getLease("deposit:d1").getOwner()).isEqualTo("node-2");
+    }
+
+    @Test
+    void renewAll_should_only_extend_the_leases_of_the_owner() {
+        var now = OffsetDateTime.now();
+        database.inTransaction(() -> {
+            leaseDAO.tryAcquire("deposit:d1", "node-1", now, now.plusMinutes(2));
+            leaseDAO.tryAcquire("deposit:d2", "node-1", now, now.plusMinutes(2));
+            leaseDAO.tryAcquire("deposit:d3", "node-2", now, now.plusMinutes(2));
+        });
+
+        var renewed = database.inTransaction(() -> leaseDAO.renewAll("node-1", now.plusMinutes(10)));
+
+        assertThat(renewed).isEqualTo(2);
+        assertThat(getLease("deposit:d1").getExpires()).isEqualToIgnoringNanos(now.plusMinutes(10));
+        assertThat(getLease("deposit:d3").getExpires()).isEqualToIgnoringNanos(now.plusMinutes(2));
+    }
+
+    @Test
+    void release_should_only_remove_lease_held_by_the_owner() {
+        var now = OffsetDateTime.now();
+        database.inTransaction(() -> leaseDAO.tryAcquire("target:t", "node-1", now, now.plusMinutes(2)));
+
+        assertThat(database.inTransaction(() -> leaseDAO.release("target:t", "node-2"))).isFalse();
+        assertThat(getLease("target:t")).isNotNull();
+        assertThat(database.inTransaction(() -> leaseDAO.release("target:t", "node-1"))).isTrue();
+        assertThat(getLease("target:t")).isNull();
+    }
+
+    @Test
+    void getExpired_should_return_expired_leases_with_the_prefix() {
+        var now = OffsetDateTime.now();
+        database.inTransaction(() -> {
+            leaseDAO.tryAcquire("deposit:d1", "node-1", now.minusMinutes(5), now.minusMinutes(3));
+            leaseDAO.tryAcquire("deposit:d2", "node-1", now, now.plusMinutes(2));
+            leaseDAO.tryAcquire("target:t", "node-1", now.minusMinutes(5), now.minusMinutes(3));
+        });
+
+        var expired = database.inTransaction(() -> leaseDAO.getExpired("deposit:", now));
+
+        assertThat(expired).extracting(Lease::getResource).containsExactly("deposit:d1");
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.db;
+
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import nl.knaw.dans.ingest.core.QueuedDeposit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.time.OffsetDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+class QueuedDepositDAOTest {
+
+    public DAOTestExtension database = DAOTestExtension
+        .newBuilder()
+        .addEntityClass(QueuedDeposit.class)
+        .build();
+
+    private QueuedDepositDAO queuedDepositDAO;
+
+    @BeforeEach
+    void setUp() {
+        queuedDepositDAO = new QueuedDepositDAO(database.getSessionFactory());
+    }
+
+    private QueuedDeposit queuedDeposit(String depositId, String area, OffsetDateTime created, QueuedDeposit.State state) {
+        var queuedDeposit = new QueuedDeposit(depositId, area, "batch", "target", "/inbox/" + depositId, "/outbox", created, OffsetDateTime.now());
+        queuedDeposit.setState(state);
+        return queuedDeposit;
+    }
+
+    @Test
+    void getUnfinished_should_return_empty_list_if_no_deposits_are_queued() {
+        assertThat(queuedDepositDAO.getUnfinished("import")).isEmpty();
+    }
+
+    @Test
+    void getUnfinished_should_return_the_queued_deposits_of_the_area_ordered_by_created() {
+        var now = OffsetDateTime.now();
+        database.inTransaction(() -> {
+            queuedDepositDAO.save(queuedDeposit("d3", "import", now.plusMinutes(2), QueuedDeposit.State.ENQUEUED));
+            queuedDepositDAO.save(queuedDeposit("d1", "import", now, QueuedDeposit.State.IN_PROGRESS));
+            queuedDepositDAO.save(queuedDeposit("d2", "import", now.plusMinutes(1), QueuedDeposit.State.ENQUEUED));
+            queuedDepositDAO.save(queuedDeposit("d4", "migration", now, QueuedDeposit.State.ENQUEUED));
+        });
+
+        var unfinished = database.inTransaction(() -> queuedDepositDAO.getUnfinished("import"));
+
+        assertThat(unfinished).extracting(QueuedDeposit::getDepositId).containsExactly("d1", "d2", "d3");
+    }
+
+    @Test
+    void delete_should_remove_the_deposit_from_the_queue() {
+        database.inTransaction(() -> {
+            queuedDepositDAO.save(queuedDeposit("d1", "import", OffsetDateTime.now(), QueuedDeposit.State.IN_PROGRESS));
+            queuedDepositDAO.save(queuedDeposit("d2", "import", OffsetDateTime.now(), QueuedDeposit.State.ENQUEUED));
+        });
+
+        assertThat(database.inTransaction(() -> queuedDepositDAO.delete("d1"))).isTrue();
+        assertThat(database.inTransaction(() -> queuedDepositDAO.delete("d1"))).isFalse();
+
+        var unfinished = database.inTransaction(() -> queuedDepositDAO.getUnfinished("import"));
+        assertThat(unfinished).extracting(QueuedDeposit::getDepositId).containsExactly("d2");
+    }
+
+    @Test
+    void getQueuedDeposit_should_return_saved_deposit() {
+        database.inTransaction(() -> {
+            queuedDepositDAO.save(queuedDeposit("d1", "auto-ingest", OffsetDateTime.now(), QueuedDeposit.State.ENQUEUED));
+        });
+
+        var result = database.inTransaction(() -> queuedDepositDAO.getQueuedDeposit("d1"));
+
+        assertThat(result).isPresent();
+        assertThat(result.get().getArea()).isEqualTo("auto-ingest");
+        assertThat(result.get().getState()).isEqualTo(QueuedDeposit.State.ENQUEUED);
+        assertThat(database.inTransaction(() -> queuedDepositDAO.getQueuedDeposit("d2"))).isEmpty();
+    }
+}
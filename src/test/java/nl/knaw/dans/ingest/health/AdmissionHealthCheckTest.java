@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.health;
+
+import nl.knaw.dans.ingest.core.sequencing.AdmissionController;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdmissionHealthCheckTest {
+
+    @Test
+    public void check_should_be_healthy_while_the_tasks_of_a_paused_area_keep_finishing() throws Exception {
+        var controller = new AdmissionController(10, 0, null);
+        var healthCheck = new AdmissionHealthCheck(controller, Duration.ofMillis(300));
+        for (int i = 0; i < 10; i++) {
+            controller.admit("import");
+        }
+
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(150);
+            controller.release("import");
+        }
+
+        assertThat(controller.getPausedTime("import")).hasValueSatisfying(d -> assertThat(d).isGreaterThan(Duration.ofMillis(300)));
+        assertThat(healthCheck.check().isHealthy()).isTrue();
+    }
+
+    @Test
+    public void check_should_be_unhealthy_when_no_task_of_a_paused_area_finished_for_too_long() throws Exception {
+        var controller = new AdmissionController(2, 0, null);
+        var healthCheck = new AdmissionHealthCheck(controller, Duration.ofMillis(100));
+        controller.admit("import");
+        controller.admit("import");
+        controller.admit("auto-ingest");
+
+        Thread.sleep(200);
+        var result = healthCheck.check();
+
+        assertThat(result.isHealthy()).isFalse();
+        assertThat(result.getMessage()).contains("[import]");
+        assertThat(result.getDetails()).containsEntry("import.inFlight", 2).containsEntry("auto-ingest.inFlight", 1);
+    }
+
+    @Test
+    public void check_should_be_healthy_when_no_area_is_paused() throws Exception {
+        var controller = new AdmissionController(2, 0, null);
+        var healthCheck = new AdmissionHealthCheck(controller, Duration.ofMillis(1));
+        controller.admit("import");
+
+        Thread.sleep(10);
+
+        assertThat(healthCheck.check().isHealthy()).isTrue();
+    }
+}